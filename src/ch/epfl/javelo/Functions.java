@@ -89,7 +89,8 @@ public final class Functions {
                 return samples[samples.length - 1];
             } else {
                 double delta = xMax / (samples.length - 1);
-                int leftIndex = (int) Math.floor(x / delta);
+                //x / delta peut être arrondi au dernier index lorsque x est très proche de xMax
+                int leftIndex = Math.min((int) Math.floor(x / delta), samples.length - 2);
                 return Math2.interpolate(
                         samples[leftIndex],
                         samples[leftIndex + 1],
@@ -0,0 +1,276 @@
+package ch.epfl.javelo.cli;
+
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.gui.GpxGenerator;
+import ch.epfl.javelo.projection.Ch1903;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.SwissBounds;
+import ch.epfl.javelo.routing.*;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+/**
+ * Command-line batch router
+ *
+ * <p>Reads a CSV file whose lines have the form {@code id,lat1,lon1,lat2,lon2[,lat3,lon3...]}
+ * (WGS 84 degrees, or {@code e,n} Swiss coordinates with {@code --swiss}), routes every line
+ * through its waypoints in parallel and writes one line {@code id,status,length,ascent,descent}
+ * per input line, in the input order. A first line whose first field is {@code id} is a header, and
+ * is skipped. A line which cannot be routed because of an unexpected error gets the status
+ * {@code error}, the other lines being routed anyway. With {@code --gpx <directory>}, the GPX file of
+ * every route is written to {@code <directory>/<id>.gpx}, the ids of the routes being then restricted
+ * to letters, digits, dots, dashes and underscores.</p>
+ *
+ * <p>Lines flow through a bounded pipeline (reader, routing threads, writer), so that the
+ * memory used does not depend on the size of the input.</p>
+ *
+ * <p>Usage: {@code BatchRouter <graphDirectory> <input.csv> <output.csv> [--gpx <directory>]
+ * [--threads <n>] [--swiss]}</p>
+ *
+ * @author Elias Mir(341277)
+ * @author Jan Staszewicz(341201)
+ */
+public final class BatchRouter {
+
+    private final Graph graph;
+    private final ThreadLocal<RouteComputer> routeComputers;
+    private final Path gpxDirectory;
+    private final boolean swissCoordinates;
+
+    private static final int SEARCH_DISTANCE = 500;
+    private static final double MAX_STEP_LENGTH = 5;
+    private static final int PENDING_LINES_PER_THREAD = 64;
+    private static final int PROGRESS_INTERVAL = 10_000;
+    private static final String HEADER = "id,status,length,ascent,descent";
+    private static final String ID_FIELD = "id";
+    //the ids which can be used as file names, without leaving the GPX directory
+    private static final Pattern FILE_NAME_ID = Pattern.compile("(?!\\.{1,2}$)[A-Za-z0-9._-]+");
+
+    /**
+     * Constructs a batch router
+     *
+     * @param graph            the graph
+     * @param gpxDirectory     the directory in which the GPX files are written, or null
+     * @param swissCoordinates true iff the input coordinates are Swiss coordinates (e,n)
+     */
+    public BatchRouter(Graph graph, Path gpxDirectory, boolean swissCoordinates) {
+        this.graph = graph;
+        CostFunction costFunction = new CityBikeCF(graph);
+        this.routeComputers = ThreadLocal.withInitial(() -> new RouteComputer(graph, costFunction));
+        this.gpxDirectory = gpxDirectory;
+        this.swissCoordinates = swissCoordinates;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 3) {
+            System.err.println("usage: BatchRouter <graphDirectory> <input.csv> <output.csv>"
+                    + " [--gpx <directory>] [--threads <n>] [--swiss]");
+            System.exit(1);
+        }
+
+        Path gpxDirectory = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean swiss = false;
+        for (int i = 3; i < args.length; i++) {
+            switch (args[i]) {
+                case "--gpx" -> gpxDirectory = Path.of(args[++i]);
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--swiss" -> swiss = true;
+                default -> throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        if (gpxDirectory != null) Files.createDirectories(gpxDirectory);
+
+        BatchRouter router = new BatchRouter(Graph.loadFrom(Path.of(args[0])), gpxDirectory, swiss);
+        long t0 = System.nanoTime();
+        long count;
+        try (BufferedReader r = Files.newBufferedReader(Path.of(args[1]));
+             BufferedWriter w = Files.newBufferedWriter(Path.of(args[2]))) {
+            count = router.run(r, w, threads);
+        }
+        double seconds = (System.nanoTime() - t0) / 1e9;
+        System.err.printf(Locale.ROOT, "%d routes in %.1f s (%.0f routes/s)%n", count, seconds, count / seconds);
+    }
+
+    /**
+     * Routes all the lines read from r and writes the results to w, in the input order
+     *
+     * @param r       the input
+     * @param w       the output
+     * @param threads the number of routing threads
+     * @return the number of lines routed
+     * @throws IOException          in case of input/output error
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public long run(BufferedReader r, Writer w, int threads) throws IOException, InterruptedException {
+        ExecutorService routingThreads = Executors.newFixedThreadPool(threads);
+        //futures of the lines being routed, in input order: bounds the number of lines in memory
+        BlockingQueue<Future<String>> pending = new ArrayBlockingQueue<>(threads * PENDING_LINES_PER_THREAD);
+        Future<String> endOfInput = routingThreads.submit(() -> null);
+
+        //error of the writer, which stops the reader; the queue is still drained after it so that the
+        //reader never blocks
+        AtomicReference<Exception> writerError = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            long written = 0;
+            try {
+                w.write(HEADER);
+                w.write('\n');
+            } catch (IOException e) {
+                writerError.compareAndSet(null, e);
+            }
+            try {
+                for (Future<String> result = pending.take(); result != endOfInput; result = pending.take()) {
+                    if (writerError.get() != null) {
+                        result.cancel(true);
+                        continue;
+                    }
+                    try {
+                        w.write(result.get());
+                        w.write('\n');
+                    } catch (IOException | ExecutionException e) {
+                        writerError.compareAndSet(null, e);
+                    }
+                    if (++written % PROGRESS_INTERVAL == 0) System.err.printf("%d routes%n", written);
+                }
+                w.flush();
+            } catch (IOException | InterruptedException e) {
+                writerError.compareAndSet(null, e);
+            }
+        }, "BatchRouter-writer");
+        writer.start();
+
+        long count = 0;
+        boolean first = true;
+        try {
+            for (String line = r.readLine(); line != null && writerError.get() == null; line = r.readLine()) {
+                if (line.isBlank()) continue;
+                if (first) {
+                    first = false;
+                    if (isHeader(line)) continue;
+                }
+                String inputLine = line;
+                pending.put(routingThreads.submit(() -> routeLineOrError(inputLine)));
+                count += 1;
+            }
+        } finally {
+            pending.put(endOfInput);
+            writer.join();
+            routingThreads.shutdown();
+        }
+
+        Exception e = writerError.get();
+        if (e instanceof IOException ioException) throw ioException;
+        if (e instanceof ExecutionException executionException) {
+            throw new RuntimeException(executionException.getCause());
+        }
+        if (e != null) throw new RuntimeException(e);
+        return count;
+    }
+
+    /**
+     * Routes the given input line, the output line having the status error if it cannot be routed
+     * because of an unexpected error
+     *
+     * @param line the input line
+     * @return the output line
+     */
+    private String routeLineOrError(String line) {
+        try {
+            return routeLine(line);
+        } catch (RuntimeException e) {
+            System.err.printf("line %s: %s%n", line, e);
+            return result(line.split(",")[0].trim(), "error");
+        }
+    }
+
+    /**
+     * Routes the given input line
+     *
+     * @param line the input line
+     * @return the output line
+     */
+    private String routeLine(String line) {
+        String[] fields = line.split(",");
+        String id = fields[0].trim();
+        if (gpxDirectory != null && !FILE_NAME_ID.matcher(id).matches()) return result(id, "invalid_id");
+
+        List<PointCh> waypoints = new ArrayList<>();
+        try {
+            if (fields.length < 5 || fields.length % 2 == 0) return result(id, "invalid");
+            for (int i = 1; i < fields.length; i += 2) {
+                PointCh point = point(Double.parseDouble(fields[i].trim()), Double.parseDouble(fields[i + 1].trim()));
+                if (point == null) return result(id, "invalid");
+                waypoints.add(point);
+            }
+        } catch (NumberFormatException e) {
+            return result(id, "invalid");
+        }
+
+        int[] nodeIds = new int[waypoints.size()];
+        for (int i = 0; i < nodeIds.length; i++) {
+            nodeIds[i] = graph.nodeClosestTo(waypoints.get(i), SEARCH_DISTANCE);
+            if (nodeIds[i] == -1) return result(id, "no_node");
+        }
+
+        RouteComputer routeComputer = routeComputers.get();
+        List<Route> segments = new ArrayList<>();
+        for (int i = 0; i < nodeIds.length - 1; i++) {
+            if (nodeIds[i] == nodeIds[i + 1]) continue;
+            Route segment = routeComputer.bestRouteBetween(nodeIds[i], nodeIds[i + 1]);
+            if (segment == null) return result(id, "no_route");
+            segments.add(segment);
+        }
+        if (segments.isEmpty()) return result(id, "same_node");
+
+        Route route = new MultiRoute(segments);
+        ElevationProfile profile = ElevationProfileComputer.elevationProfile(route, MAX_STEP_LENGTH);
+        if (gpxDirectory != null) {
+            try {
+                GpxGenerator.writeGpx(gpxDirectory.resolve(id + ".gpx").toString(), route, profile);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return String.format(Locale.ROOT, "%s,ok,%.2f,%.1f,%.1f",
+                id, route.length(), profile.totalAscent(), profile.totalDescent());
+    }
+
+    /**
+     * Returns the point with the given coordinates (lat/lon degrees or Swiss coordinates),
+     * or null if it is outside Switzerland
+     */
+    private PointCh point(double c1, double c2) {
+        double e = swissCoordinates ? c1 : Ch1903.e(Math.toRadians(c2), Math.toRadians(c1));
+        double n = swissCoordinates ? c2 : Ch1903.n(Math.toRadians(c2), Math.toRadians(c1));
+        return SwissBounds.containsEN(e, n) ? new PointCh(e, n) : null;
+    }
+
+    private static String result(String id, String status) {
+        return id + "," + status + ",,,";
+    }
+
+    /**
+     * Returns true iff the given first line is a header, i.e. if its first field is id
+     */
+    private static boolean isHeader(String line) {
+        return line.split(",")[0].trim().equalsIgnoreCase(ID_FIELD);
+    }
+}
@@ -0,0 +1,323 @@
+package ch.epfl.javelo.cli;
+
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.Preconditions;
+import ch.epfl.javelo.gui.DirectoryTileStore;
+import ch.epfl.javelo.gui.PackedTileStore;
+import ch.epfl.javelo.gui.TileFetcher;
+import ch.epfl.javelo.gui.TileManager;
+import ch.epfl.javelo.gui.TileStore;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.PointWebMercator;
+import ch.epfl.javelo.projection.SwissBounds;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Command-line tile seeder
+ *
+ * <p>Downloads all the map tiles of a rectangle, given in Swiss coordinates and clamped to
+ * {@link SwissBounds}, for a range of zoom levels, into the disk cache of JaVelo: the packed tile store
+ * of its {@code packed} subdirectory, which JaVelo reads, or the old directory tree with {@code --tree}.
+ * The tiles are enumerated lazily, lowest zoom levels first, and downloaded in parallel, with a limited
+ * rate; those already in the cache are skipped, so that an interrupted seeding can simply be run again.
+ * The progress and throughput are reported regularly. As the packed store cannot be opened twice,
+ * JaVelo must not be running meanwhile.</p>
+ *
+ * <p>The tile server must be given: the tile usage policy of OpenStreetMap forbids bulk downloads from
+ * its servers, and the default rate is meant for tile servers of one's own.</p>
+ *
+ * <p>Usage: {@code TileSeeder <minE> <minN> <maxE> <maxN> <minZoom> <maxZoom> <cacheDirectory>
+ * --server <baseUri> [--tree] [--threads <n>] [--rate <tiles/s>]}</p>
+ *
+ * @author Elias Mir(341277)
+ * @author Jan Staszewicz(341201)
+ */
+public final class TileSeeder {
+
+    private final TileStore store;
+    private final TileFetcher fetcher;
+    private final int threads;
+    private final long intervalNanos;
+
+    private final AtomicLong downloaded = new AtomicLong();
+    private final AtomicLong cached = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong downloadedBytes = new AtomicLong();
+
+    //guarded by this: the next tile to seed and the start time of the next download
+    private TileRange[] ranges;
+    private int rangeIndex;
+    private long tileIndex;
+    private long nextStart;
+
+    private static final int TILE_SIZE = 256;
+    private static final int MAX_ZOOM = 19;
+    private static final String PACKED_DIRECTORY = "packed";
+    private static final String USAGE = "usage: TileSeeder <minE> <minN> <maxE> <maxN> <minZoom> <maxZoom>"
+            + " <cacheDirectory> --server <baseUri> [--tree] [--threads <n>] [--rate <tiles/s>]";
+    private static final int DEFAULT_THREADS = 8;
+    private static final double DEFAULT_RATE = 50;
+    private static final int PROGRESS_INTERVAL_SECONDS = 5;
+
+    /**
+     * The tiles of a zoom level covering the rectangle
+     */
+    record TileRange(int zoomLevel, int minX, int minY, int maxX, int maxY) {
+        long size() {
+            return (long) (maxX - minX + 1) * (maxY - minY + 1);
+        }
+
+        TileManager.TileId tileAt(long index) {
+            int width = maxX - minX + 1;
+            return new TileManager.TileId(zoomLevel, minX + (int) (index % width), minY + (int) (index / width));
+        }
+    }
+
+    /**
+     * Constructs a tile seeder
+     *
+     * @param store          the tile store in which the tiles are written
+     * @param fetcher        the tile fetcher downloading the tiles
+     * @param threads        the number of downloading threads
+     * @param tilesPerSecond the maximal number of tiles downloaded per second, or 0 for no limit
+     * @throws IllegalArgumentException if the number of threads is not strictly positive, or the rate
+     *                                  is negative
+     */
+    public TileSeeder(TileStore store, TileFetcher fetcher, int threads, double tilesPerSecond) {
+        Preconditions.checkArgument(threads > 0 && tilesPerSecond >= 0);
+        this.store = store;
+        this.fetcher = fetcher;
+        this.threads = threads;
+        this.intervalNanos = tilesPerSecond == 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) / tilesPerSecond);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 7) usage();
+
+        boolean tree = false;
+        String server = null;
+        int threads = DEFAULT_THREADS;
+        double rate = DEFAULT_RATE;
+        for (int i = 7; i < args.length; i++) {
+            switch (args[i]) {
+                case "--tree" -> tree = true;
+                case "--server" -> server = optionValue(args, ++i);
+                case "--threads" -> threads = Integer.parseInt(optionValue(args, ++i));
+                case "--rate" -> rate = Double.parseDouble(optionValue(args, ++i));
+                default -> throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        if (server == null) usage();
+
+        //the same layout as the disk cache of JaVelo
+        Path cacheDirectory = Path.of(args[6]);
+        Path packedDirectory = cacheDirectory.resolve(PACKED_DIRECTORY);
+        Path validatorsPath = tree ? null : packedDirectory.resolve("validators");
+        try (TileStore store = tree ? new DirectoryTileStore(cacheDirectory) : PackedTileStore.open(packedDirectory);
+             TileFetcher fetcher = new TileFetcher(server, validatorsPath, threads)) {
+            TileSeeder seeder = new TileSeeder(store, fetcher, threads, rate);
+            long t0 = System.nanoTime();
+            long count = seeder.seed(
+                    Double.parseDouble(args[0]), Double.parseDouble(args[1]),
+                    Double.parseDouble(args[2]), Double.parseDouble(args[3]),
+                    Integer.parseInt(args[4]), Integer.parseInt(args[5]));
+            System.err.println(seeder.progress(count, (System.nanoTime() - t0) / 1e9));
+        }
+    }
+
+    /**
+     * Prints the usage and exits
+     */
+    private static void usage() {
+        System.err.println(USAGE);
+        System.exit(1);
+    }
+
+    /**
+     * Returns the value of the option preceding the given index of the arguments
+     *
+     * @throws IllegalArgumentException if the option has no value
+     */
+    private static String optionValue(String[] args, int i) {
+        if (i >= args.length) throw new IllegalArgumentException("missing value of option " + args[i - 1]);
+        return args[i];
+    }
+
+    /**
+     * Seeds all the tiles of the given rectangle, clamped to the bounds of Switzerland, for the given
+     * range of zoom levels, reporting the progress on the standard error output
+     *
+     * @param minE         the minimal E coordinate of the rectangle
+     * @param minN         the minimal N coordinate of the rectangle
+     * @param maxE         the maximal E coordinate of the rectangle
+     * @param maxN         the maximal N coordinate of the rectangle
+     * @param minZoomLevel the lowest zoom level
+     * @param maxZoomLevel the highest zoom level
+     * @return the number of tiles of the rectangle
+     * @throws IOException              in case of input/output error while writing to the store
+     * @throws InterruptedException     if the thread is interrupted
+     * @throws IllegalArgumentException if the rectangle or the zoom range is invalid
+     */
+    public long seed(double minE, double minN, double maxE, double maxN, int minZoomLevel, int maxZoomLevel)
+            throws IOException, InterruptedException {
+        Preconditions.checkArgument(minE <= maxE && minN <= maxN
+                && 0 <= minZoomLevel && minZoomLevel <= maxZoomLevel && maxZoomLevel <= MAX_ZOOM);
+
+        List<TileRange> tileRanges = new ArrayList<>();
+        long total = 0;
+        for (int zoomLevel = minZoomLevel; zoomLevel <= maxZoomLevel; zoomLevel++) {
+            TileRange range = tileRange(zoomLevel, minE, minN, maxE, maxN);
+            tileRanges.add(range);
+            total += range.size();
+        }
+        synchronized (this) {
+            ranges = tileRanges.toArray(new TileRange[0]);
+            rangeIndex = 0;
+            tileIndex = 0;
+        }
+
+        long totalTiles = total;
+        long t0 = System.nanoTime();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        reporter.scheduleAtFixedRate(
+                () -> System.err.println(progress(totalTiles, (System.nanoTime() - t0) / 1e9)),
+                PROGRESS_INTERVAL_SECONDS, PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+        ExecutorService downloadingThreads = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> workers = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) workers.add(downloadingThreads.submit(this::seedTiles));
+            for (Future<Void> worker : workers) worker.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) throw ioException;
+            throw new RuntimeException(e.getCause());
+        } finally {
+            downloadingThreads.shutdownNow();
+            reporter.shutdownNow();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the range of tiles of the given zoom level covering the given rectangle, clamped to the
+     * bounds of Switzerland
+     */
+    static TileRange tileRange(int zoomLevel, double minE, double minN, double maxE, double maxN) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int corner = 0; corner < 4; corner++) {
+            double e = Math2.clamp(SwissBounds.MIN_E, corner % 2 == 0 ? minE : maxE, SwissBounds.MAX_E);
+            double n = Math2.clamp(SwissBounds.MIN_N, corner / 2 == 0 ? minN : maxN, SwissBounds.MAX_N);
+            PointWebMercator point = PointWebMercator.ofPointCh(new PointCh(e, n));
+            minX = Math.min(minX, point.xAtZoomLevel(zoomLevel));
+            maxX = Math.max(maxX, point.xAtZoomLevel(zoomLevel));
+            minY = Math.min(minY, point.yAtZoomLevel(zoomLevel));
+            maxY = Math.max(maxY, point.yAtZoomLevel(zoomLevel));
+        }
+        return new TileRange(zoomLevel,
+                (int) (minX / TILE_SIZE), (int) (minY / TILE_SIZE),
+                (int) (maxX / TILE_SIZE), (int) (maxY / TILE_SIZE));
+    }
+
+    /**
+     * Returns the next tile to seed, or null if all the tiles have been given
+     */
+    private synchronized TileManager.TileId nextTile() {
+        while (rangeIndex < ranges.length && tileIndex == ranges[rangeIndex].size()) {
+            rangeIndex += 1;
+            tileIndex = 0;
+        }
+        return rangeIndex < ranges.length ? ranges[rangeIndex].tileAt(tileIndex++) : null;
+    }
+
+    /**
+     * Seeds tiles until all the tiles have been given, skipping those already in the store
+     */
+    private Void seedTiles() throws IOException, InterruptedException {
+        for (TileManager.TileId tileId = nextTile(); tileId != null; tileId = nextTile()) {
+            if (store.contains(tileId)) {
+                cached.incrementAndGet();
+                continue;
+            }
+            awaitRateLimit();
+            byte[] image;
+            try {
+                image = fetcher.fetch(tileId);
+            } catch (IOException e) {
+                //the tile is downloaded by the next seeding
+                failed.incrementAndGet();
+                continue;
+            }
+            store.write(tileId, image);
+            downloaded.incrementAndGet();
+            downloadedBytes.addAndGet(image.length);
+        }
+        return null;
+    }
+
+    /**
+     * Waits until the next download can start according to the rate limit
+     */
+    private void awaitRateLimit() throws InterruptedException {
+        if (intervalNanos == 0) return;
+        long start;
+        synchronized (this) {
+            start = Math.max(nextStart, System.nanoTime());
+            nextStart = start + intervalNanos;
+        }
+        long delay = start - System.nanoTime();
+        if (delay > 0) TimeUnit.NANOSECONDS.sleep(delay);
+    }
+
+    /**
+     * Returns the number of tiles downloaded
+     *
+     * @return the number of tiles downloaded
+     */
+    long downloadedTiles() {
+        return downloaded.get();
+    }
+
+    /**
+     * Returns the number of tiles skipped because they were already in the store
+     *
+     * @return the number of tiles skipped
+     */
+    long cachedTiles() {
+        return cached.get();
+    }
+
+    /**
+     * Returns the number of tiles which could not be downloaded
+     *
+     * @return the number of tiles which could not be downloaded
+     */
+    long failedTiles() {
+        return failed.get();
+    }
+
+    /**
+     * Returns a line describing the progress and the throughput of the seeding
+     */
+    private String progress(long total, double seconds) {
+        long done = downloaded.get() + cached.get() + failed.get();
+        double tilesPerSecond = seconds > 0 ? downloaded.get() / seconds : 0;
+        double megabytesPerSecond = seconds > 0 ? downloadedBytes.get() / seconds / 1e6 : 0;
+        return String.format(Locale.ROOT,
+                "%d/%d tiles (%.1f%%): %d downloaded, %d cached, %d failed in %.0f s (%.1f tiles/s, %.2f MB/s)",
+                done, total, total == 0 ? 100 : 100.0 * done / total,
+                downloaded.get(), cached.get(), failed.get(), seconds, tilesPerSecond, megabytesPerSecond);
+    }
+}
@@ -11,6 +11,7 @@ import java.nio.ShortBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.DoubleUnaryOperator;
 
@@ -113,6 +114,42 @@ public final class Graph {
         return -1;
     }
 
+    /**
+     * Retourne les identités de tous les nœuds se trouvant à la distance maximale donnée du point donné
+     *
+     * @param point          point donné
+     * @param searchDistance distance maximale donnée
+     * @return les identités de tous les nœuds se trouvant à la distance maximale donnée du point donné
+     */
+    public int[] nodesCloseTo(PointCh point, double searchDistance) {
+        List<GraphSectors.Sector> possibleSector = sectors.sectorsInArea(point, searchDistance);
+        int[] nodeIds = new int[16];
+        int count = 0;
+        for (GraphSectors.Sector sector : possibleSector) {
+            for (int i = sector.startNodeId(); i < sector.endNodeId(); i++) {
+                if (point.squaredDistanceTo(nodePoint(i)) <= searchDistance * searchDistance) {
+                    if (count == nodeIds.length) nodeIds = Arrays.copyOf(nodeIds, 2 * count);
+                    nodeIds[count++] = i;
+                }
+            }
+        }
+        return Arrays.copyOf(nodeIds, count);
+    }
+
+    /**
+     * Retourne la liste de tous les secteurs ayant une intersection avec le rectangle donné, limité à la
+     * Suisse
+     *
+     * @param minE coordonnée E minimale du rectangle
+     * @param minN coordonnée N minimale du rectangle
+     * @param maxE coordonnée E maximale du rectangle
+     * @param maxN coordonnée N maximale du rectangle
+     * @return la liste de tous les secteurs ayant une intersection avec le rectangle donné
+     */
+    public List<GraphSectors.Sector> sectorsInRectangle(double minE, double minN, double maxE, double maxN) {
+        return sectors.sectorsInRectangle(minE, minN, maxE, maxN);
+    }
+
     /**
      * Retourne l'identité du nœud destination de l'arête d'identité donnée
      *
@@ -164,18 +201,30 @@ public final class Graph {
     }
 
     /**
-     * Retourne le profil en long de l'arête d'identité donnée, sous la forme d'une fonction
+     * Retourne le profil en long de l'arête d'identité donnée, sous la forme d'une fonction.
+     * Les échantillons du profil ne sont décodés que lors de la première évaluation de la fonction.
      *
      * @param edgeId identité du noeud donnée
      * @return le profil en long de l'arête d'identité donnée, sous la forme d'une fonction
      */
     public DoubleUnaryOperator edgeProfile(int edgeId) {
         if (edges.hasProfile(edgeId)) {
-            return Functions.sampled(edges.profileSamples(edgeId), edges.length(edgeId));
+            return new LazyProfile(edges, edgeId);
         }
         return Functions.constant(Double.NaN);
     }
 
+    /**
+     * Retourne les échantillons du profil en long de l'arête d'identité donnée,
+     * qui sont répartis uniformément sur sa longueur
+     *
+     * @param edgeId identité de l'arête donnée
+     * @return les échantillons du profil de l'arête d'identité donnée, vide si elle ne possède pas de profil
+     */
+    public float[] edgeProfileSamples(int edgeId) {
+        return edges.hasProfile(edgeId) ? edges.profileSamples(edgeId) : new float[0];
+    }
+
     /**
      * Retourne le graphe JaVelo obtenu à partir des fichiers se trouvant dans le répertoire
      * dont le chemin d'accès est basePath
@@ -243,4 +292,36 @@ public final class Graph {
         }
         return new Graph(nodes, sectors, edges, attributeSets);
     }
+
+    /**
+     * Profil en long d'une arête, dont les échantillons sont décodés lors de la première évaluation
+     */
+    private static final class LazyProfile implements DoubleUnaryOperator {
+
+        private final GraphEdges edges;
+        private final int edgeId;
+        //profil décodé, immuable, qui peut au pire être décodé plusieurs fois par des appels concurrents
+        private DoubleUnaryOperator profile;
+
+        private LazyProfile(GraphEdges edges, int edgeId) {
+            this.edges = edges;
+            this.edgeId = edgeId;
+        }
+
+        /**
+         * Retourne l'altitude à la position donnée le long de l'arête, en décodant son profil si nécessaire
+         *
+         * @param x position le long de l'arête
+         * @return l'altitude à la position donnée le long de l'arête
+         */
+        @Override
+        public double applyAsDouble(double x) {
+            DoubleUnaryOperator decoded = profile;
+            if (decoded == null) {
+                decoded = Functions.sampled(edges.profileSamples(edgeId), edges.length(edgeId));
+                profile = decoded;
+            }
+            return decoded.applyAsDouble(x);
+        }
+    }
 }
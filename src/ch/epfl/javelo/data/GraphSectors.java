@@ -4,6 +4,7 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
+import ch.epfl.javelo.Math2;
 import ch.epfl.javelo.projection.PointCh;
 import ch.epfl.javelo.projection.SwissBounds;
 
@@ -51,6 +52,39 @@ public record GraphSectors(ByteBuffer buffer) {
         return sectors;
     }
 
+    /**
+     * Retourne la liste de tous les secteurs ayant une intersection avec le rectangle donné, limité à la
+     * Suisse
+     *
+     * @param minE coordonnée E minimale du rectangle
+     * @param minN coordonnée N minimale du rectangle
+     * @param maxE coordonnée E maximale du rectangle
+     * @param maxN coordonnée N maximale du rectangle
+     * @return la liste de tous les secteurs ayant une intersection avec le rectangle donné
+     */
+    public List<Sector> sectorsInRectangle(double minE, double minN, double maxE, double maxN) {
+        List<Sector> sectors = new ArrayList<>();
+        if (maxE < SwissBounds.MIN_E || minE > SwissBounds.MAX_E
+                || maxN < SwissBounds.MIN_N || minN > SwissBounds.MAX_N) return sectors;
+
+        int xMin = Math2.clamp(0, (int) ((minE - SwissBounds.MIN_E) / sectorWidth), 127);
+        int xMax = Math2.clamp(0, (int) ((maxE - SwissBounds.MIN_E) / sectorWidth), 127);
+        int yMin = Math2.clamp(0, (int) ((minN - SwissBounds.MIN_N) / sectorLength), 127);
+        int yMax = Math2.clamp(0, (int) ((maxN - SwissBounds.MIN_N) / sectorLength), 127);
+
+        for (int j = yMin; j <= yMax; j++) {
+            for (int i = xMin; i <= xMax; i++) {
+                int index = i + 128 * j;
+                int startNodeId = buffer.getInt(SECTORS_INTS*index + OFFSET_START_NODE_ID);
+                int endNodeId = startNodeId + Short.toUnsignedInt(
+                        buffer.getShort(SECTORS_INTS*index + OFFSET_NODE_COUNT)
+                );
+                sectors.add(new Sector(startNodeId, endNodeId));
+            }
+        }
+        return sectors;
+    }
+
     /**
      * Enregistrement Sector
      *
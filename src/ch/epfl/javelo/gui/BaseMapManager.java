@@ -5,17 +5,33 @@ import javafx.application.Platform;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleLongProperty;
 import javafx.scene.canvas.Canvas;
+import javafx.scene.SnapshotParameters;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
 import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.transform.Transform;
 
-import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
 
 
 /**
  *
  * The base map manager
  *
+ * <p>The tiles are drawn on a canvas used as a tile-aligned buffer, which covers the visible tiles plus
+ * a margin of one tile on each side, and is moved under the pane to follow the map. A pan within the
+ * buffer therefore only moves the canvas. When the visible tiles leave the buffer, its pixels are
+ * shifted and only the newly exposed tiles are drawn. The buffer is redrawn entirely only when the zoom
+ * level changes or when the pane grows. Tiles which are not loaded yet are drawn once they are.</p>
+ *
+ * <p>Meanwhile, a placeholder is drawn in their place, made of their four children or of a scaled up
+ * ancestor found in the memory cache, so that zooming never leaves holes. The tiles of the next zoom
+ * level around the cursor are prefetched, so that zooming in is immediate.</p>
+ *
  * @author Elias Mir(341277)
  * @author Jan Staszewicz(341201)
  *
@@ -29,13 +45,31 @@ public final class BaseMapManager {
     private boolean redrawNeeded;
     private final Canvas canvas;
 
+    //the buffer: the zoom level and the indexes of the top left tile and size in tiles of the canvas
+    private int bufferZoomLevel;
+    private int bufferMinX;
+    private int bufferMinY;
+    private int bufferColumns;
+    private int bufferRows;
+    //the tiles of the buffer whose image has been drawn
+    private final Set<TileManager.TileId> drawnTiles;
+    //the tiles of the buffer whose placeholder has been drawn
+    private final Set<TileManager.TileId> placeholderTiles;
+    //the image into which the buffer is copied when it is shifted, reused as long as its size fits
+    private WritableImage shiftImage;
+
     private double lastX; //saves last mouse x coordinate
     private double lastY; //saves last mouse y coordinate
     private boolean isDragged; //true on map dragging, else false
+    private double cursorX; //saves last mouse x coordinate over the map, for prefetching
+    private double cursorY; //saves last mouse y coordinate over the map, for prefetching
 
     private static final int TILE_SIZE = 256;
     private static final int MIN_ZOOM = 8;
     private static final int MAX_ZOOM = 19;
+    private static final int BUFFER_MARGIN = 1;
+    private static final int MAX_PLACEHOLDER_LEVELS = 4;
+    private static final int PREFETCH_RADIUS = 1;
 
     /**
      * Constructs a new basemap manager
@@ -51,17 +85,29 @@ public final class BaseMapManager {
         this.tileManager = tileManager;
         this.wayPointsManager = wayPointsManager;
         this.mapViewParametersObjectProperty = mapViewParametersObjectProperty;
+        this.drawnTiles = new HashSet<>();
+        this.placeholderTiles = new HashSet<>();
+        this.bufferZoomLevel = -1;
 
         this.mapViewParametersObjectProperty.addListener((o, oV, nV) ->redrawOnNextPulse());
 
+        //tiles are loaded in the background, the tile is (re)drawn on the FX thread when it is available
+        this.tileManager.setTileLoadedListener(tileId -> Platform.runLater(() -> {
+            drawnTiles.remove(tileId);
+            redrawOnNextPulse();
+        }));
+
         this.canvas = new Canvas();
         this.pane = new Pane();
 
         pane.getChildren().add(canvas);
 
-        //set canvas size
-        canvas.widthProperty().bind(pane.widthProperty());
-        canvas.heightProperty().bind(pane.heightProperty());
+        //the canvas is larger than the pane, it is neither laid out by it nor drawn outside of it
+        canvas.setManaged(false);
+        Rectangle clip = new Rectangle();
+        clip.widthProperty().bind(pane.widthProperty());
+        clip.heightProperty().bind(pane.heightProperty());
+        pane.setClip(clip);
 
         //Sets canvas redraw conditions
         canvas.sceneProperty().addListener((p, oldS, newS) -> {
@@ -69,8 +115,8 @@ public final class BaseMapManager {
             newS.addPreLayoutPulseListener(this::redrawIfNeeded);
         });
 
-        canvas.widthProperty().addListener((o, oV, nV) -> redrawOnNextPulse());
-        canvas.heightProperty().addListener((o, oV, nV) ->redrawOnNextPulse());
+        pane.widthProperty().addListener((o, oV, nV) -> redrawOnNextPulse());
+        pane.heightProperty().addListener((o, oV, nV) ->redrawOnNextPulse());
 
         //listener handling scrolling actions
         SimpleLongProperty minScrollTime = new SimpleLongProperty();
@@ -103,6 +149,13 @@ public final class BaseMapManager {
             redrawOnNextPulse();
         });
 
+        //prefetches the next zoom level around the cursor
+        pane.setOnMouseMoved(e -> {
+            cursorX = e.getX();
+            cursorY = e.getY();
+            prefetchAroundCursor();
+        });
+
         //check if mouse is being pressed for dragging
         pane.setOnMousePressed(e ->{
             lastX = e.getX();
@@ -151,7 +204,10 @@ public final class BaseMapManager {
     }
 
     /**
-     *  Redraws the map background if needed
+     *  Redraws the map background if needed, with the tiles already loaded. The buffer is moved,
+     *  shifted or redrawn to cover the visible tiles, then the tiles of the buffer which are loaded but
+     *  not drawn yet are drawn. The missing ones are loaded in the background, and the visible tiles are
+     *  kept in the memory cache.
      */
     private void redrawIfNeeded(){
 
@@ -160,33 +216,194 @@ public final class BaseMapManager {
 
         MapViewParameters mvp = getProperty();
 
-        GraphicsContext gc = canvas.getGraphicsContext2D();
         double topLeftX = mvp.topLeft().getX();
         double topLeftY = mvp.topLeft().getY();
 
-        int xMin = (int)(topLeftX/TILE_SIZE);
-        int xMax = (int)((topLeftX + canvas.getWidth())/TILE_SIZE);
-        int yMin = (int)(topLeftY / TILE_SIZE);
-        int yMax = (int)((topLeftY + canvas.getHeight())/TILE_SIZE);
+        int xMin = (int) Math.floor(topLeftX / TILE_SIZE);
+        int xMax = (int) Math.floor((topLeftX + pane.getWidth()) / TILE_SIZE);
+        int yMin = (int) Math.floor(topLeftY / TILE_SIZE);
+        int yMax = (int) Math.floor((topLeftY + pane.getHeight()) / TILE_SIZE);
 
         int zoomLevel = mvp.zoomLevel();
+        int columns = xMax - xMin + 1 + 2 * BUFFER_MARGIN;
+        int rows = yMax - yMin + 1 + 2 * BUFFER_MARGIN;
+
+        if (zoomLevel != bufferZoomLevel || columns > bufferColumns || rows > bufferRows) {
+            resetBuffer(zoomLevel, xMin - BUFFER_MARGIN, yMin - BUFFER_MARGIN, columns, rows);
+        } else if (xMin < bufferMinX || xMax >= bufferMinX + bufferColumns
+                || yMin < bufferMinY || yMax >= bufferMinY + bufferRows) {
+            shiftBuffer(xMin - BUFFER_MARGIN, yMin - BUFFER_MARGIN);
+        }
 
-        gc.clearRect(0,0, canvas.getWidth(), canvas.getHeight());
+        //a pan within the buffer only moves the canvas
+        canvas.setTranslateX(TILE_SIZE * bufferMinX - topLeftX);
+        canvas.setTranslateY(TILE_SIZE * bufferMinY - topLeftY);
 
-        for (int i = xMin; i <= xMax; i++) {
-            for (int j = yMin; j <= yMax; j++) {
-                try{
-                    if(TileManager.TileId.isValid(zoomLevel, i, j)){
-                        TileManager.TileId tileId = new TileManager.TileId(zoomLevel, i, j);
-                        Image image = tileManager.imageForTileAt(tileId);
-                        gc.drawImage(image, TILE_SIZE*i - topLeftX, TILE_SIZE*j - topLeftY);
+        //the tiles of the margin of the buffer are loaded too, so that they are ready when panning
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        Set<TileManager.TileId> bufferTiles = new HashSet<>();
+        for (int i = bufferMinX; i < bufferMinX + bufferColumns; i++) {
+            for (int j = bufferMinY; j < bufferMinY + bufferRows; j++) {
+                if(TileManager.TileId.isValid(zoomLevel, i, j)){
+                    TileManager.TileId tileId = new TileManager.TileId(zoomLevel, i, j);
+                    bufferTiles.add(tileId);
+                    if (drawnTiles.contains(tileId)) continue;
+                    Image image = tileManager.cachedImageForTileAt(tileId);
+                    double x = TILE_SIZE * (i - bufferMinX);
+                    double y = TILE_SIZE * (j - bufferMinY);
+                    //until the image is loaded, a placeholder is drawn in its place
+                    if (image != null) {
+                        if (placeholderTiles.remove(tileId)) gc.clearRect(x, y, TILE_SIZE, TILE_SIZE);
+                        gc.drawImage(image, x, y);
+                        drawnTiles.add(tileId);
+                    } else if (!placeholderTiles.contains(tileId) && drawPlaceholder(gc, tileId, x, y)) {
+                        placeholderTiles.add(tileId);
                     }
-                } catch (IOException e){
-                    //IMAGE IS NOT DRAWN
                 }
             }
         }
 
+        tileManager.setVisibleTiles(bufferTiles);
+        prefetchAroundCursor();
+
+    }
+
+    /**
+     * Draws a placeholder for the given tile, made of its four children if they are all in the memory
+     * cache, or else of the nearest of its ancestors in the memory cache, scaled up
+     *
+     * @param gc     the graphics context of the canvas
+     * @param tileId the tile
+     * @param x      the x coordinate of the tile on the canvas
+     * @param y      the y coordinate of the tile on the canvas
+     * @return true iff a placeholder was drawn
+     */
+    private boolean drawPlaceholder(GraphicsContext gc, TileManager.TileId tileId, double x, double y) {
+        int zoomLevel = tileId.zoomLevel();
+        double half = TILE_SIZE / 2d;
+
+        //after zooming out, the children are usually available
+        Image[] children = new Image[4];
+        for (int k = 0; k < children.length; k++) {
+            children[k] = tileManager.memoryImageForTileAt(new TileManager.TileId(
+                    zoomLevel + 1, 2 * tileId.x() + k % 2, 2 * tileId.y() + k / 2));
+            if (children[k] == null) break;
+        }
+        if (children[children.length - 1] != null) {
+            for (int k = 0; k < children.length; k++) {
+                gc.drawImage(children[k], x + half * (k % 2), y + half * (k / 2), half, half);
+            }
+            return true;
+        }
+
+        //after zooming in, an ancestor is usually available
+        for (int d = 1; d <= Math.min(MAX_PLACEHOLDER_LEVELS, zoomLevel); d++) {
+            Image ancestor = tileManager.memoryImageForTileAt(
+                    new TileManager.TileId(zoomLevel - d, tileId.x() >> d, tileId.y() >> d));
+            if (ancestor != null) {
+                int mask = (1 << d) - 1;
+                double size = (double) TILE_SIZE / (1 << d);
+                gc.drawImage(ancestor,
+                        (tileId.x() & mask) * size, (tileId.y() & mask) * size, size, size,
+                        x, y, TILE_SIZE, TILE_SIZE);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Prefetches the tiles of the next zoom level around the cursor, which become visible when zooming
+     * in at the cursor
+     */
+    private void prefetchAroundCursor() {
+        MapViewParameters mvp = getProperty();
+        int nextZoomLevel = mvp.zoomLevel() + 1;
+        if (nextZoomLevel > MAX_ZOOM) return;
+
+        PointWebMercator cursor = mvp.pointAt(cursorX, cursorY);
+        int cursorTileX = (int) Math.floor(cursor.xAtZoomLevel(nextZoomLevel) / TILE_SIZE);
+        int cursorTileY = (int) Math.floor(cursor.yAtZoomLevel(nextZoomLevel) / TILE_SIZE);
+
+        Set<TileManager.TileId> tiles = new HashSet<>();
+        for (int i = cursorTileX - PREFETCH_RADIUS; i <= cursorTileX + PREFETCH_RADIUS; i++) {
+            for (int j = cursorTileY - PREFETCH_RADIUS; j <= cursorTileY + PREFETCH_RADIUS; j++) {
+                if (TileManager.TileId.isValid(nextZoomLevel, i, j))
+                    tiles.add(new TileManager.TileId(nextZoomLevel, i, j));
+            }
+        }
+        tileManager.prefetch(tiles);
+    }
+
+    /**
+     * Resizes and clears the buffer, which then covers the given tiles
+     *
+     * @param zoomLevel the zoom level of the tiles
+     * @param minX      the x index of the top left tile
+     * @param minY      the y index of the top left tile
+     * @param columns   the number of columns of tiles
+     * @param rows      the number of rows of tiles
+     */
+    private void resetBuffer(int zoomLevel, int minX, int minY, int columns, int rows) {
+        bufferZoomLevel = zoomLevel;
+        bufferMinX = minX;
+        bufferMinY = minY;
+        bufferColumns = columns;
+        bufferRows = rows;
+        drawnTiles.clear();
+        placeholderTiles.clear();
+
+        canvas.setWidth(TILE_SIZE * columns);
+        canvas.setHeight(TILE_SIZE * rows);
+        canvas.getGraphicsContext2D().clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+    }
+
+    /**
+     * Moves the buffer so that its top left tile is the given one, shifting the pixels of the tiles it
+     * still covers
+     *
+     * @param minX the x index of the new top left tile
+     * @param minY the y index of the new top left tile
+     */
+    private void shiftBuffer(int minX, int minY) {
+        //the snapshot is taken at the resolution of the screen, so that the shifted tiles stay sharp
+        double scale = canvas.getScene().getWindow() == null ? 1 : canvas.getScene().getWindow().getOutputScaleX();
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        parameters.setTransform(Transform.scale(scale, scale));
+        int width = (int) Math.ceil(canvas.getWidth() * scale);
+        int height = (int) Math.ceil(canvas.getHeight() * scale);
+        if (shiftImage == null || shiftImage.getWidth() != width || shiftImage.getHeight() != height)
+            shiftImage = new WritableImage(width, height);
+        //the snapshot covers the bounds of the canvas in its parent, which must be aligned on the pixels;
+        //the translation is set again by the caller
+        canvas.setTranslateX(0);
+        canvas.setTranslateY(0);
+        shiftImage = canvas.snapshot(parameters, shiftImage);
+
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        gc.drawImage(shiftImage,
+                TILE_SIZE * (bufferMinX - minX),
+                TILE_SIZE * (bufferMinY - minY),
+                canvas.getWidth(),
+                canvas.getHeight());
+
+        bufferMinX = minX;
+        bufferMinY = minY;
+        drawnTiles.removeIf(tileId -> !isInBuffer(tileId));
+        placeholderTiles.removeIf(tileId -> !isInBuffer(tileId));
+    }
+
+    /**
+     * Returns true iff the given tile, of the zoom level of the buffer, is covered by the buffer
+     *
+     * @param tileId the tile
+     * @return true iff the tile is covered by the buffer
+     */
+    private boolean isInBuffer(TileManager.TileId tileId) {
+        return tileId.x() >= bufferMinX && tileId.x() < bufferMinX + bufferColumns
+                && tileId.y() >= bufferMinY && tileId.y() < bufferMinY + bufferRows;
     }
 
     /**
@@ -0,0 +1,107 @@
+package ch.epfl.javelo.gui;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * A tile store keeping each image in its own file, at zoomLevel/x/y.png in the base directory, like
+ * the tile servers do
+ *
+ * @author Elias Mir(341277)
+ * @author Jan Staszewicz(341201)
+ */
+public final class DirectoryTileStore implements TileStore {
+
+    private final Path basePath;
+
+    /**
+     * Constructs the tile store
+     *
+     * @param basePath the access path to the base directory
+     */
+    public DirectoryTileStore(Path basePath) {
+        this.basePath = basePath;
+    }
+
+    /**
+     * Returns the path of the file of the given tile
+     *
+     * @param tileId the tileId
+     * @return the path of the file of the tile
+     */
+    private Path pathOf(TileManager.TileId tileId) {
+        return basePath
+                .resolve(String.valueOf(tileId.zoomLevel()))
+                .resolve(String.valueOf(tileId.x()))
+                .resolve(tileId.y() + ".png");
+    }
+
+    @Override
+    public ByteBuffer read(TileManager.TileId tileId) throws IOException {
+        try {
+            return ByteBuffer.wrap(Files.readAllBytes(pathOf(tileId))).asReadOnlyBuffer();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean contains(TileManager.TileId tileId) {
+        return Files.isRegularFile(pathOf(tileId));
+    }
+
+    /**
+     * Writes the image of the given tile. The image is first written to a temporary file, then moved,
+     * so that an interrupted write never leaves a truncated image.
+     */
+    @Override
+    public void write(TileManager.TileId tileId, byte[] image) throws IOException {
+        Path target = pathOf(tileId);
+        Files.createDirectories(target.getParent());
+        Path temporary = Files.createTempFile(target.getParent(), "tile", ".tmp");
+        try {
+            Files.write(temporary, image);
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    @Override
+    public void delete(TileManager.TileId tileId) throws IOException {
+        Files.deleteIfExists(pathOf(tileId));
+    }
+
+    @Override
+    public void forEachTile(BiConsumer<TileManager.TileId, Integer> consumer) throws IOException {
+        if (!Files.isDirectory(basePath)) return;
+        try (Stream<Path> files = Files.find(basePath, 3, (p, a) -> a.isRegularFile())) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Path relative = basePath.relativize(file);
+                String name = relative.getFileName().toString();
+                if (relative.getNameCount() != 3 || !name.endsWith(".png")) continue;
+                try {
+                    int zoomLevel = Integer.parseInt(relative.getName(0).toString());
+                    int x = Integer.parseInt(relative.getName(1).toString());
+                    int y = Integer.parseInt(name.substring(0, name.length() - ".png".length()));
+                    if (TileManager.TileId.isValid(zoomLevel, x, y)) {
+                        long size = Files.readAttributes(file, BasicFileAttributes.class).size();
+                        consumer.accept(new TileManager.TileId(zoomLevel, x, y), (int) size);
+                    }
+                } catch (NumberFormatException e) {
+                    //not a tile of the store
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {}
+}
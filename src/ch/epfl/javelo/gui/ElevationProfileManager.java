@@ -1,23 +1,30 @@
 package ch.epfl.javelo.gui;
 
 import ch.epfl.javelo.routing.ElevationProfile;
+import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.*;
 import javafx.geometry.Insets;
-import javafx.geometry.Point2D;
 import javafx.geometry.Rectangle2D;
 import javafx.geometry.VPos;
-import javafx.scene.Group;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.layout.*;
+import javafx.scene.paint.Color;
 import javafx.scene.shape.*;
 import javafx.scene.text.Font;
 import javafx.scene.text.Text;
+import javafx.scene.text.TextAlignment;
 import javafx.scene.transform.Affine;
 import javafx.scene.transform.NonInvertibleTransformException;
 
 /**
  * ElevationProfile manager
  *
+ * <p>The profile, its grid and their labels are drawn on a canvas, at most once per pulse. The
+ * profile is drawn with one point per pixel column, at the maximum elevation of the part of the
+ * profile covered by the column, so that peaks are never missed whatever the profile's length.</p>
+ *
  * @author Elias Mir(341277)
  * @author Jan Staszewicz(341201)
  */
@@ -31,12 +38,14 @@ public final class ElevationProfileManager {
     private Affine worldToScreen;
     private final ObjectProperty<Rectangle2D> rectangleProperty;
     private final Pane pane;
-    private final Polygon polygon;
-    private final Path grid;
-    private final Group group;
+    private final Canvas canvas;
+    private boolean redrawNeeded;
     private Line line;
     private double width;
     private double height;
+    //points of the profile's polygon, reused from one redraw to the next
+    private double[] polygonX;
+    private double[] polygonY;
 
     private final static int[] POS_STEPS = {1000, 2000, 5000, 10_000, 25_000, 50_000, 100_000};
     private final static int[] ELE_STEPS = {5, 10, 20, 25, 50, 100, 200, 250, 500, 1_000};
@@ -45,6 +54,12 @@ public final class ElevationProfileManager {
     private final static double METERS_IN_ONE_KM = 1000d;
     private final static int MIN_ELEVATION_PIXEL = 25;
     private final static int MIN_POSITION_PIXEL = 50;
+    private final static Color PROFILE_FILL = Color.hsb(0, 1, 1, 0.5);
+    private final static Color PROFILE_STROKE = Color.hsb(0, 0, 0, 0.2);
+    private final static double PROFILE_STROKE_WIDTH = 2;
+    private final static Color GRID_STROKE = Color.GRAY;
+    private final static double GRID_OPACITY = 0.5;
+    private final static double LABEL_MARGIN = 2;
 
     /**
      * Constructs the elevation profile manager
@@ -71,32 +86,20 @@ public final class ElevationProfileManager {
         pane = new Pane();
         borderPane.setCenter(pane);
 
-        grid = new Path();
-        grid.setId("grid");
-        pane.getChildren().add(grid);
-
-        group = new Group();
-        pane.getChildren().add(group);
+        canvas = new Canvas();
+        canvas.widthProperty().bind(pane.widthProperty());
+        canvas.heightProperty().bind(pane.heightProperty());
+        pane.getChildren().add(canvas);
 
-        polygon = new Polygon();
-        polygon.setId("profile");
-        pane.getChildren().add(polygon);
-
-        //Redraws the profile if the pane's height changes
-        pane.heightProperty().addListener((o, oV, nV) -> {
-            if (this.elevationProfile.get() != null) {
-                redrawPolygon();
-                createGrid();
-            }
+        //Redraws the profile at most once per pulse
+        canvas.sceneProperty().addListener((p, oldS, newS) -> {
+            assert oldS == null;
+            newS.addPreLayoutPulseListener(this::redrawIfNeeded);
         });
 
-        //Redraws the profile if the pane's width changes
-        pane.widthProperty().addListener((o, oV, nV) -> {
-            if (this.elevationProfile.get() != null) {
-                redrawPolygon();
-                createGrid();
-            }
-        });
+        //Redraws the profile if the pane's size changes
+        canvas.widthProperty().addListener((o, oV, nV) -> redrawOnNextPulse());
+        canvas.heightProperty().addListener((o, oV, nV) -> redrawOnNextPulse());
 
         createLine();
 
@@ -114,9 +117,8 @@ public final class ElevationProfileManager {
         this.elevationProfile.addListener((o, oV, nV) -> {
             if (this.elevationProfile.get() != null) {
                 drawDataInfo();
-                redrawPolygon();
-                createGrid();
             }
+            redrawOnNextPulse();
         });
     }
 
@@ -139,11 +141,34 @@ public final class ElevationProfileManager {
     }
 
     /**
-     * Redraws the polygon
+     * Requests a redraw of the profile on the next pulse
      */
-    private void redrawPolygon() {
-        polygon.getPoints().clear();
+    private void redrawOnNextPulse() {
+        redrawNeeded = true;
+        Platform.requestNextPulse();
+    }
+
+    /**
+     * Redraws the profile if needed
+     */
+    private void redrawIfNeeded() {
+        if (!redrawNeeded) return;
+        redrawNeeded = false;
+
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        if (elevationProfile.get() == null) return;
+
+        updateTransforms();
+        if (width == 0 || height == 0) return;
+        drawGrid(gc);
+        drawGraph(gc);
+    }
 
+    /**
+     * Updates the rectangle containing the profile and the transformations between screen and world
+     */
+    private void updateTransforms() {
         width = (int) (pane.getWidth() - INSETS.getLeft() - INSETS.getRight());
         height = (int) (pane.getHeight() - INSETS.getBottom() - INSETS.getTop());
         width = Math.max(width, 0);
@@ -165,17 +190,14 @@ public final class ElevationProfileManager {
         } catch (NonInvertibleTransformException e) {
             e.printStackTrace();
         }
-
-        createGraph();
     }
 
     /**
-     * Recreates the grid
+     * Draws the grid and its labels
+     *
+     * @param gc the canvas' graphics context
      */
-    private void createGrid() {
-
-        grid.getElements().clear();
-        group.getChildren().clear();
+    private void drawGrid(GraphicsContext gc) {
 
         int x_step = POS_STEPS[POS_STEPS.length - 1];
         int y_step = ELE_STEPS[ELE_STEPS.length - 1];
@@ -198,43 +220,40 @@ public final class ElevationProfileManager {
             }
         }
 
+        gc.setFont(FONT);
+        gc.setFill(Color.BLACK);
+        gc.setStroke(GRID_STROKE);
+        gc.setLineWidth(1);
+
         //vertical lines
+        gc.setTextAlign(TextAlignment.CENTER);
+        gc.setTextBaseline(VPos.TOP);
         for (int i = 0; i <= elevationProfile.get().length(); i += x_step) {
 
             double step = worldToScreen.deltaTransform(i, 0).getX();
 
-            grid.getElements().addAll(
-                    new MoveTo(step + INSETS.getLeft(), INSETS.getTop()),
-                    new LineTo(step + INSETS.getLeft(), rectangleProperty.get().getHeight() + INSETS.getTop())
-            );
-
-            createPositionLabel(
-                    step + INSETS.getLeft(),
-                    rectangleProperty.get().getHeight() + INSETS.getTop(),
-                    (int) (i / METERS_IN_ONE_KM)
-            );
+            gc.setGlobalAlpha(GRID_OPACITY);
+            gc.strokeLine(step + INSETS.getLeft(), INSETS.getTop(),
+                    step + INSETS.getLeft(), rectangleProperty.get().getHeight() + INSETS.getTop());
+            gc.setGlobalAlpha(1);
+            gc.fillText(Integer.toString((int) (i / METERS_IN_ONE_KM)),
+                    step + INSETS.getLeft(), rectangleProperty.get().getHeight() + INSETS.getTop());
         }
 
         double firstValue = (elevationProfile.get().minElevation() + (y_step - elevationProfile.get().minElevation() % y_step));
 
         //horizontal lines
+        gc.setTextAlign(TextAlignment.RIGHT);
+        gc.setTextBaseline(VPos.CENTER);
         for (double i = firstValue; i <= elevationProfile.get().maxElevation(); i += y_step) {
 
             double step = worldToScreen.deltaTransform(0, elevationProfile.get().minElevation() - i).getY();
+            double y = rectangleProperty.get().getHeight() - step + INSETS.getTop();
 
-            grid.getElements().addAll(
-                    new MoveTo(INSETS.getLeft(), rectangleProperty.get().getHeight() - step + INSETS.getTop()),
-                    new LineTo(
-                            rectangleProperty.get().getWidth() + INSETS.getLeft(),
-                            rectangleProperty.get().getHeight() - step + INSETS.getTop()
-                    )
-            );
-
-            createElevationLabel(
-                    INSETS.getLeft(),
-                    rectangleProperty.get().getHeight() - step + INSETS.getTop(),
-                    (int) i
-            );
+            gc.setGlobalAlpha(GRID_OPACITY);
+            gc.strokeLine(INSETS.getLeft(), y, rectangleProperty.get().getWidth() + INSETS.getLeft(), y);
+            gc.setGlobalAlpha(1);
+            gc.fillText(Integer.toString((int) i), INSETS.getLeft() - LABEL_MARGIN, y);
         }
     }
 
@@ -254,64 +273,41 @@ public final class ElevationProfileManager {
     }
 
     /**
-     * Creates the graph of the elevation profile
+     * Draws the graph of the elevation profile, each pixel column being drawn at the maximum
+     * elevation of the part of the profile it covers
+     *
+     * @param gc the canvas' graphics context
      */
-    private void createGraph() {
+    private void drawGraph(GraphicsContext gc) {
         ElevationProfile profile = elevationProfile.get();
-
-        for (int i = 0; i < width; i++) {
-            double x = screenToWorld.transform(i + INSETS.getLeft(), 0).getX();
-            double y = profile.elevationAt(x);
-            Point2D newPoint = worldToScreen.transform(0, y);
-            polygon.getPoints().addAll((double) i + INSETS.getLeft(), newPoint.getY());
+        int columns = (int) width;
+        int pointsCount = columns + 3;
+        if (polygonX == null || polygonX.length < pointsCount) {
+            polygonX = new double[pointsCount];
+            polygonY = new double[pointsCount];
         }
-        
-        //draws the bottom line
-        for (int i = (int) width; i > 0; i--) {
-            polygon.getPoints().addAll((double) i + INSETS.getLeft(), INSETS.getTop() + height);
-        }
-    }
 
-    /**
-     * Creates the position label at coordinate (x,y) and with value n
-     *
-     * @param x x coordinate
-     * @param y y coordinate
-     * @param n position value
-     */
-    private void createPositionLabel(double x, double y, int n) {
-
-        Text label = new Text();
-        label.setFont(FONT);
-        label.setText(Integer.toString(n));
-        label.setTextOrigin(VPos.TOP);
-        label.setX(x - label.prefWidth(0) / 2);
-        label.setY(y);
-        label.getStyleClass().add("grid_label");
-        label.getStyleClass().add("vertical");
-
-        group.getChildren().add(label);
-    }
+        double columnLength = profile.length() / width;
+        double bottom = INSETS.getTop() + height;
+        for (int i = 0; i <= columns; i++) {
+            double from = i * columnLength;
+            double elevation = profile.maxElevation(Math.max(0, from - columnLength / 2),
+                    Math.min(profile.length(), from + columnLength / 2));
+            polygonX[i] = i + INSETS.getLeft();
+            polygonY[i] = worldToScreen.getMyy() * elevation + worldToScreen.getTy();
+        }
 
-    /**
-     * Creates the elevation label at coordinate (x,y) and with value n
-     *
-     * @param x x coordinate
-     * @param y y coordinate
-     * @param n elevation value
-     */
-    private void createElevationLabel(double x, double y, int n) {
-
-        Text label = new Text();
-        label.setFont(FONT);
-        label.setText(Integer.toString(n));
-        label.setTextOrigin(VPos.CENTER);
-        label.setX(x - (label.prefWidth(0) + 2));
-        label.setY(y - (label.prefHeight(0)) / 2);
-        label.getStyleClass().add("grid_label");
-        label.getStyleClass().add("horizontal");
-
-        group.getChildren().add(label);
+        //closes the polygon along the bottom line
+        polygonX[columns + 1] = columns + INSETS.getLeft();
+        polygonY[columns + 1] = bottom;
+        polygonX[columns + 2] = INSETS.getLeft();
+        polygonY[columns + 2] = bottom;
+
+        gc.setFill(PROFILE_FILL);
+        gc.fillPolygon(polygonX, polygonY, pointsCount);
+        gc.setStroke(PROFILE_STROKE);
+        gc.setLineWidth(PROFILE_STROKE_WIDTH);
+        gc.strokePolygon(polygonX, polygonY, pointsCount);
     }
 
     /**
@@ -9,14 +9,15 @@ import org.w3c.dom.Element;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.*;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import java.io.IOException;
-import java.io.Writer;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * GPX file route generator for JaVelo
@@ -26,6 +27,14 @@ import java.util.List;
  */
 public class GpxGenerator {
 
+    private static final String GPX_NAMESPACE = "http://www.topografix.com/GPX/1/1";
+    private static final String XSI_NAMESPACE = "http://www.w3.org/2001/XMLSchema-instance";
+    private static final String SCHEMA_LOCATION =
+            "http://www.topografix.com/GPX/1/1 " + "http://www.topografix.com/GPX/1/1/gpx.xsd";
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final String[] INDENTATIONS = {"", "    ", "        ", "            "};
+    private static final int BUFFER_SIZE = 1 << 16;
+
     //non-instantiable
     private GpxGenerator() {}
 
@@ -38,23 +47,139 @@ public class GpxGenerator {
      * @throws IOException if there is an issue when handling the buffer
      */
     public static void writeGpx(String fileName, Route route, ElevationProfile profile) throws IOException {
+        writeGpx(Path.of(fileName), route, profile, false);
+    }
 
-        Document doc = createGpx(route, profile);
+    /**
+     * Write a new gpx file with given route and elevation profile, optionally compressed with gzip
+     *
+     * @param file       the file
+     * @param route      the route
+     * @param profile    the route's profile
+     * @param compressed true iff the file must be compressed with gzip
+     * @throws IOException if there is an issue when writing
+     */
+    public static void writeGpx(Path file, Route route, ElevationProfile profile, boolean compressed)
+            throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            writeGpx(out, route, profile, compressed);
+        }
+    }
 
-        try (Writer w = Files.newBufferedWriter(Path.of(fileName))) {
-            Transformer transformer = TransformerFactory
-                    .newDefaultInstance()
-                    .newTransformer();
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            transformer.transform(new DOMSource(doc),
-                    new StreamResult(w));
-        } catch (TransformerConfigurationException e) {
-            throw new Error(e); // Should never happen
-        } catch (TransformerException e) {
-            throw new Error(e); // Should never happen
+    /**
+     * Writes the gpx document of the given route and elevation profile to the given stream,
+     * encoded in UTF-8 and optionally compressed with gzip. The stream is left open.
+     *
+     * @param out        the output stream
+     * @param route      the route
+     * @param profile    the route's profile
+     * @param compressed true iff the document must be compressed with gzip
+     * @throws IOException if there is an issue when writing
+     */
+    public static void writeGpx(OutputStream out, Route route, ElevationProfile profile, boolean compressed)
+            throws IOException {
+        GZIPOutputStream gzip = compressed ? new GZIPOutputStream(out, BUFFER_SIZE) : null;
+        Writer w = new BufferedWriter(
+                new OutputStreamWriter(compressed ? gzip : out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        writeGpx(w, route, profile);
+        w.flush();
+        if (compressed) gzip.finish();
+    }
+
+    /**
+     * Writes the gpx document of the given route and elevation profile to the given writer,
+     * which is left open
+     *
+     * <p>The document is streamed point by point while walking the edges of the route, so the
+     * memory used does not depend on the length of the route. The output is the same as the
+     * serialization of {@link #createGpx(Route, ElevationProfile)}.</p>
+     *
+     * @param w       the writer
+     * @param route   the route
+     * @param profile the route's profile
+     * @throws IOException if there is an issue when writing
+     */
+    public static void writeGpx(Writer w, Route route, ElevationProfile profile) throws IOException {
+        //XMLStreamWriter cannot write the standalone pseudo-attribute written by the DOM serializer
+        w.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
+        w.write(LINE_SEPARATOR);
+        try {
+            XMLStreamWriter xml = XMLOutputFactory.newDefaultFactory().createXMLStreamWriter(w);
+
+            xml.writeStartElement("gpx");
+            xml.writeAttribute("creator", "JaVelo");
+            xml.writeAttribute("version", "1.1");
+            xml.writeNamespace("xsi", XSI_NAMESPACE);
+            xml.writeAttribute("xsi", XSI_NAMESPACE, "schemaLocation", SCHEMA_LOCATION);
+            xml.writeDefaultNamespace(GPX_NAMESPACE);
+
+            indent(xml, 1);
+            xml.writeStartElement("metadata");
+            indent(xml, 2);
+            xml.writeStartElement("name");
+            xml.writeCharacters("Route JaVelo");
+            xml.writeEndElement();
+            indent(xml, 1);
+            xml.writeEndElement();
+
+            indent(xml, 1);
+            xml.writeStartElement("rte");
+            double l = 0;
+            for (Edge edge : route.edges()) {
+                if (l == 0) {
+                    writeGpxPoint(xml, edge.fromPoint(), profile.elevationAt(l));
+                }
+
+                l += edge.length();
+                writeGpxPoint(xml, edge.toPoint(), profile.elevationAt(l));
+            }
+            indent(xml, 1);
+            xml.writeEndElement();
+
+            indent(xml, 0);
+            xml.writeEndElement();
+            xml.writeCharacters(LINE_SEPARATOR);
+            xml.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
         }
     }
 
+    /**
+     * Writes a new gpx point element
+     *
+     * @param xml       the stream writer, positioned in the rte element
+     * @param point     the point
+     * @param elevation the elevation at the point position
+     * @throws XMLStreamException if there is an issue when writing
+     */
+    private static void writeGpxPoint(XMLStreamWriter xml, PointCh point, double elevation)
+            throws XMLStreamException {
+        indent(xml, 2);
+        xml.writeStartElement("rtept");
+        xml.writeAttribute("lat", String.valueOf(Math.toDegrees(point.lat())));
+        xml.writeAttribute("lon", String.valueOf(Math.toDegrees(point.lon())));
+        indent(xml, 3);
+        xml.writeStartElement("ele");
+        xml.writeCharacters(String.valueOf(elevation));
+        xml.writeEndElement();
+        indent(xml, 2);
+        xml.writeEndElement();
+    }
+
+    /**
+     * Writes a line break followed by the indentation of the given depth, like the indenting
+     * DOM serializer
+     *
+     * @param xml   the stream writer
+     * @param depth the depth of the next element
+     * @throws XMLStreamException if there is an issue when writing
+     */
+    private static void indent(XMLStreamWriter xml, int depth) throws XMLStreamException {
+        xml.writeCharacters(LINE_SEPARATOR);
+        xml.writeCharacters(INDENTATIONS[depth]);
+    }
+
     /**
      * Creates a new document for the gpx route
      *
@@ -79,10 +204,7 @@ public class GpxGenerator {
      */
     private static void createHeader(Document doc, Element root) {
 
-        root.setAttributeNS(
-                "http://www.w3.org/2001/XMLSchema-instance",
-                "xsi:schemaLocation",
-                "http://www.topografix.com/GPX/1/1 " + "http://www.topografix.com/GPX/1/1/gpx.xsd");
+        root.setAttributeNS(XSI_NAMESPACE, "xsi:schemaLocation", SCHEMA_LOCATION);
         root.setAttribute("version", "1.1");
         root.setAttribute("creator", "JaVelo");
 
@@ -134,11 +256,11 @@ public class GpxGenerator {
 
         for (Edge edge : edges) {
             if (l == 0) {
-                createGpxPoint(doc, rte, route.pointAt(l), profile.elevationAt(l));
+                createGpxPoint(doc, rte, edge.fromPoint(), profile.elevationAt(l));
             }
 
             l += edge.length();
-            createGpxPoint(doc, rte, route.pointAt(l), profile.elevationAt(l));
+            createGpxPoint(doc, rte, edge.toPoint(), profile.elevationAt(l));
         }
     }
 
@@ -154,7 +276,7 @@ public class GpxGenerator {
         Document doc = newDocument();
 
         //create root
-        Element root = doc.createElementNS("http://www.topografix.com/GPX/1/1", "gpx");
+        Element root = doc.createElementNS(GPX_NAMESPACE, "gpx");
         doc.appendChild(root);
 
         createHeader(doc, root);
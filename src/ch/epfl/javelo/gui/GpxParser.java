@@ -0,0 +1,114 @@
+package ch.epfl.javelo.gui;
+
+import ch.epfl.javelo.projection.Ch1903;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.SwissBounds;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streaming GPX file parser, reading the points of the recorded tracks (trkpt)
+ * and of the routes (rtept) of a GPX document
+ *
+ * @author Elias Mir(341277)
+ * @author Jan Staszewicz(341201)
+ */
+public final class GpxParser {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    //non-instantiable
+    private GpxParser() {}
+
+    /**
+     * Reads the tracks of the given gpx file, which is decompressed if its name ends with ".gz"
+     *
+     * @param file the file
+     * @return the tracks of the file (see {@link #readTracks(InputStream)})
+     * @throws IOException if there is an issue when reading or if the file is not a valid XML document
+     */
+    public static List<List<PointCh>> readTracks(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return readTracks(file.getFileName().toString().endsWith(".gz")
+                    ? new GZIPInputStream(in, BUFFER_SIZE)
+                    : new BufferedInputStream(in, BUFFER_SIZE));
+        }
+    }
+
+    /**
+     * Reads the tracks of the gpx document read from the given stream, which is left open. Every track
+     * segment (trkseg) and every route (rte) gives one track, points outside Switzerland are ignored
+     * and empty tracks are dropped.
+     *
+     * @param in the input stream
+     * @return the tracks of the document, in document order
+     * @throws IOException if there is an issue when reading or if the document is not a valid XML document
+     */
+    public static List<List<PointCh>> readTracks(InputStream in) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newDefaultFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        List<List<PointCh>> tracks = new ArrayList<>();
+        List<PointCh> track = new ArrayList<>();
+        try {
+            XMLStreamReader xml = factory.createXMLStreamReader(in);
+            while (xml.hasNext()) {
+                switch (xml.next()) {
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        String name = xml.getLocalName();
+                        if (name.equals("trkpt") || name.equals("rtept")) {
+                            PointCh point = point(xml);
+                            if (point != null) track.add(point);
+                        }
+                    }
+                    case XMLStreamConstants.END_ELEMENT -> {
+                        String name = xml.getLocalName();
+                        if ((name.equals("trkseg") || name.equals("rte")) && !track.isEmpty()) {
+                            tracks.add(track);
+                            track = new ArrayList<>();
+                        }
+                    }
+                    default -> {}
+                }
+            }
+            xml.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        return tracks;
+    }
+
+    /**
+     * Returns the point of the current trkpt or rtept element, or null if it is
+     * outside Switzerland or if its coordinates are invalid
+     *
+     * @param xml the stream reader, positioned on the start of a point element
+     * @return the point of the current element, or null
+     */
+    private static PointCh point(XMLStreamReader xml) {
+        String lat = xml.getAttributeValue(null, "lat");
+        String lon = xml.getAttributeValue(null, "lon");
+        if (lat == null || lon == null) return null;
+        try {
+            double latRad = Math.toRadians(Double.parseDouble(lat));
+            double lonRad = Math.toRadians(Double.parseDouble(lon));
+            double e = Ch1903.e(lonRad, latRad);
+            double n = Ch1903.n(lonRad, latRad);
+            return SwissBounds.containsEN(e, n) ? new PointCh(e, n) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
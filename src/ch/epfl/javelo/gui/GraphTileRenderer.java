@@ -0,0 +1,471 @@
+package ch.epfl.javelo.gui;
+
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.data.AttributeSet;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.data.GraphSectors;
+import ch.epfl.javelo.projection.Ch1903;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.PointWebMercator;
+import ch.epfl.javelo.projection.SwissBounds;
+
+import javax.imageio.ImageIO;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static ch.epfl.javelo.data.Attribute.*;
+
+/**
+ * A tile source rendering the tiles from the road network of the graph itself, so that the map does
+ * not depend on a tile server
+ *
+ * <p>At the low zoom levels, where only the major roads are drawn, the edges of a tile are obtained
+ * from an index of the edges drawn at its zoom level, built on first use. At the others, the short edges
+ * are obtained from the nodes of the sectors of the graph intersecting the tile, enlarged by a margin,
+ * and the edges longer than that margin from an index of their own, so that a long edge crossing a tile
+ * is drawn even when both of its nodes are far outside of it. Only the edges whose segment intersects
+ * the tile are drawn, each once, styled by the attributes of its way: its highway type gives its color,
+ * width and the lowest zoom level at which it is drawn, unpaved ways are dashed, and cycle routes are
+ * highlighted. The tiles are rendered with Java 2D and encoded in PNG, independently of JavaFX, so that
+ * the loading threads of the tile manager render them in parallel; they are then cached like downloaded
+ * tiles.</p>
+ *
+ * @author Elias Mir(341277)
+ * @author Jan Staszewicz(341201)
+ */
+public final class GraphTileRenderer implements TileSource {
+
+    private final static int TILE_SIZE = 256;
+    //the margin in meters around a tile, in which the nodes of the short edges crossing its border are searched
+    private final static double MARGIN_METERS = 250;
+    //the padding in pixels around a tile, in which the edges are drawn so that their width reaches its border
+    private final static double PADDING_PIXELS = 16;
+    //the lowest zoom level at which the edges are obtained from the sectors, below it only major roads are drawn
+    private final static int MIN_SECTOR_ZOOM = 13;
+    //the side in meters of the cells of the edge indexes
+    private final static double CELL_METERS = 4000;
+    private final static int INITIAL_INDEX_CAPACITY = 1024;
+    //the zoom level at which the roads have their nominal width
+    private final static int NOMINAL_ZOOM = 16;
+    private final static float MIN_WIDTH = 0.5f;
+    private final static Color BACKGROUND = new Color(0xF2EFE9);
+    private final static Color CYCLE_ROUTE = new Color(0x80B04FC9, true);
+    private final static float CYCLE_ROUTE_EXTRA_WIDTH = 6;
+    private final static float CASING_EXTRA_WIDTH = 1.5f;
+    private final static float[] DASHES = {4, 3};
+    private final static AttributeSet CYCLE_ROUTES = AttributeSet.of(ICN_YES, NCN_YES, RCN_YES, LCN_YES);
+    private final static AttributeSet UNPAVED = AttributeSet.of(SURFACE_UNPAVED, SURFACE_GRAVEL, SURFACE_GROUND,
+            SURFACE_COMPACTED, SURFACE_GRASS, SURFACE_DIRT, SURFACE_FINE_GRAVEL, SURFACE_PEBBLESTONE, SURFACE_SAND,
+            TRACKTYPE_GRADE2, TRACKTYPE_GRADE3, TRACKTYPE_GRADE4, TRACKTYPE_GRADE5);
+
+    private final Graph graph;
+    //the index of the edges drawn at each zoom level below MIN_SECTOR_ZOOM, shared by the zoom levels drawing
+    //the same styles, and the index of the edges longer than the margin; guarded by this
+    private final EdgeIndex[] zoomIndexes = new EdgeIndex[MIN_SECTOR_ZOOM];
+    private EdgeIndex longEdges;
+
+    /**
+     * The style of the roads, in drawing order
+     */
+    private enum RoadStyle {
+        PATH(AttributeSet.of(HIGHWAY_PATH, HIGHWAY_FOOTWAY, HIGHWAY_STEPS, HIGHWAY_PEDESTRIAN),
+                14, 0xFA8072, -1, 1),
+        TRACK(AttributeSet.of(HIGHWAY_TRACK), 13, 0x996600, -1, 1.5f),
+        MINOR(AttributeSet.of(HIGHWAY_RESIDENTIAL, HIGHWAY_LIVING_STREET, HIGHWAY_UNCLASSIFIED, HIGHWAY_SERVICE,
+                HIGHWAY_ROAD), 13, 0xFFFFFF, 0xBBBBBB, 3),
+        CYCLEWAY(AttributeSet.of(HIGHWAY_CYCLEWAY), 13, 0x3050FF, -1, 1.5f),
+        TERTIARY(AttributeSet.of(HIGHWAY_TERTIARY), 11, 0xFFFFFF, 0x999999, 4),
+        SECONDARY(AttributeSet.of(HIGHWAY_SECONDARY), 10, 0xF7FABF, 0x9A9A60, 5),
+        PRIMARY(AttributeSet.of(HIGHWAY_PRIMARY), 8, 0xFCD6A4, 0xA06B00, 5.5f),
+        TRUNK(AttributeSet.of(HIGHWAY_TRUNK, MOTORROAD_YES), 8, 0xF9B29C, 0xC84E2F, 6),
+        MOTORWAY(AttributeSet.of(HIGHWAY_MOTORWAY), 8, 0xE892A2, 0xDC2A67, 6.5f);
+
+        private final AttributeSet highways;
+        private final int minZoomLevel;
+        private final Color color;
+        private final Color casing;
+        private final float width;
+
+        RoadStyle(AttributeSet highways, int minZoomLevel, int color, int casing, float width) {
+            this.highways = highways;
+            this.minZoomLevel = minZoomLevel;
+            this.color = new Color(color);
+            this.casing = casing < 0 ? null : new Color(casing);
+            this.width = width;
+        }
+
+        private final static RoadStyle[] ALL = values();
+
+        /**
+         * Returns the style of the ways with the given attributes, or null if they are not drawn
+         */
+        static RoadStyle of(AttributeSet attributes) {
+            for (int i = ALL.length - 1; i >= 0; i--) {
+                if (attributes.intersects(ALL[i].highways)) return ALL[i];
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Constructs a renderer of the tiles of the given graph
+     *
+     * @param graph the graph
+     */
+    public GraphTileRenderer(Graph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Renders the image of the given tile
+     *
+     * @param tileId the tileId of the image
+     * @return the image, in PNG
+     * @throws IOException if the image cannot be encoded
+     */
+    @Override
+    public byte[] fetch(TileManager.TileId tileId) throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(render(tileId), "png", png);
+        return png.toByteArray();
+    }
+
+    /**
+     * Renders the image of the given tile
+     *
+     * @param tileId the tileId of the image
+     * @return the image
+     */
+    BufferedImage render(TileManager.TileId tileId) {
+        int zoomLevel = tileId.zoomLevel();
+        double originX = (double) tileId.x() * TILE_SIZE;
+        double originY = (double) tileId.y() * TILE_SIZE;
+
+        //the rectangle of the tile enlarged by the padding, in Swiss coordinates
+        double minE = Double.POSITIVE_INFINITY, minN = Double.POSITIVE_INFINITY;
+        double maxE = Double.NEGATIVE_INFINITY, maxN = Double.NEGATIVE_INFINITY;
+        for (int corner = 0; corner < 4; corner++) {
+            PointWebMercator point = PointWebMercator.of(zoomLevel,
+                    originX - PADDING_PIXELS + (TILE_SIZE + 2 * PADDING_PIXELS) * (corner % 2),
+                    originY - PADDING_PIXELS + (TILE_SIZE + 2 * PADDING_PIXELS) * (corner / 2));
+            double e = Ch1903.e(point.lon(), point.lat());
+            double n = Ch1903.n(point.lon(), point.lat());
+            minE = Math.min(minE, e);
+            maxE = Math.max(maxE, e);
+            minN = Math.min(minN, n);
+            maxN = Math.max(maxN, n);
+        }
+
+        TilePaths tilePaths = new TilePaths(zoomLevel, originX, originY);
+        if (zoomLevel < MIN_SECTOR_ZOOM) {
+            EdgeIndex index = zoomIndex(zoomLevel);
+            if (index != null) index.forEachEdge(minE, minN, maxE, maxN, tilePaths::add);
+        } else {
+            //the short edges intersecting the tile start in it, enlarged by the margin
+            double sectorMinE = minE - MARGIN_METERS, sectorMinN = minN - MARGIN_METERS;
+            double sectorMaxE = maxE + MARGIN_METERS, sectorMaxN = maxN + MARGIN_METERS;
+            for (GraphSectors.Sector sector : graph.sectorsInRectangle(sectorMinE, sectorMinN, sectorMaxE, sectorMaxN)) {
+                for (int nodeId = sector.startNodeId(); nodeId < sector.endNodeId(); nodeId++) {
+                    if (!isInRectangle(graph.nodePoint(nodeId), sectorMinE, sectorMinN, sectorMaxE, sectorMaxN))
+                        continue;
+
+                    for (int i = 0; i < graph.nodeOutDegree(nodeId); i++) {
+                        int edgeId = graph.nodeOutEdgeId(nodeId, i);
+                        if (graph.edgeLength(edgeId) > MARGIN_METERS) continue;
+                        int toNodeId = graph.edgeTargetNodeId(edgeId);
+                        //an edge whose reverse edge is drawn from the other node is not drawn twice
+                        if (toNodeId < nodeId && hasEdge(toNodeId, nodeId) && isInRectangle(
+                                graph.nodePoint(toNodeId), sectorMinE, sectorMinN, sectorMaxE, sectorMaxN)) continue;
+                        tilePaths.add(nodeId, edgeId);
+                    }
+                }
+            }
+            longEdgeIndex().forEachEdge(minE, minN, maxE, maxN, tilePaths::add);
+        }
+        Path2D.Float[] paths = tilePaths.paths;
+        RoadStyle[] styles = RoadStyle.ALL;
+
+        BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setColor(BACKGROUND);
+            g.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+
+            float scale = (float) Math.scalb(1d, zoomLevel - NOMINAL_ZOOM);
+            g.setColor(CYCLE_ROUTE);
+            g.setStroke(stroke(RoadStyle.MINOR.width * scale + CYCLE_ROUTE_EXTRA_WIDTH, false));
+            g.draw(tilePaths.cycleRoutes);
+
+            //the casings of all the roads are drawn below the roads, so that crossings look joined
+            for (int i = 0; i < paths.length; i++) {
+                RoadStyle style = styles[i / 2];
+                if (paths[i] == null || style.casing == null) continue;
+                g.setColor(style.casing);
+                g.setStroke(stroke(style.width * scale + CASING_EXTRA_WIDTH, false));
+                g.draw(paths[i]);
+            }
+            for (int i = 0; i < paths.length; i++) {
+                RoadStyle style = styles[i / 2];
+                if (paths[i] == null) continue;
+                g.setColor(style.color);
+                g.setStroke(stroke(style.width * scale, i % 2 == 1 || style == RoadStyle.PATH));
+                g.draw(paths[i]);
+            }
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Returns true iff the given point is in the given rectangle
+     */
+    private static boolean isInRectangle(PointCh point, double minE, double minN, double maxE, double maxN) {
+        return minE <= point.e() && point.e() <= maxE && minN <= point.n() && point.n() <= maxN;
+    }
+
+    /**
+     * Returns true iff the graph has an edge going from the first given node to the second
+     */
+    private boolean hasEdge(int fromNodeId, int toNodeId) {
+        for (int i = 0; i < graph.nodeOutDegree(fromNodeId); i++) {
+            if (graph.edgeTargetNodeId(graph.nodeOutEdgeId(fromNodeId, i)) == toNodeId) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true iff the segment between the given points, in the coordinates of the tile, intersects the
+     * tile enlarged by the padding, by clipping it against each of its sides
+     */
+    private static boolean intersectsTile(double x1, double y1, double x2, double y2) {
+        double min = -PADDING_PIXELS;
+        double max = TILE_SIZE + PADDING_PIXELS;
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        //the direction of the segment and the distance of its start to each side, towards the inside
+        double[] p = {-dx, dx, -dy, dy};
+        double[] q = {x1 - min, max - x1, y1 - min, max - y1};
+        double t0 = 0, t1 = 1;
+        for (int i = 0; i < p.length; i++) {
+            if (p[i] == 0) {
+                if (q[i] < 0) return false;
+            } else {
+                double t = q[i] / p[i];
+                if (p[i] < 0) t0 = Math.max(t0, t);
+                else t1 = Math.min(t1, t);
+                if (t0 > t1) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the index of the edges drawn at the given zoom level, below MIN_SECTOR_ZOOM, or null if no
+     * edge is drawn at it
+     */
+    private synchronized EdgeIndex zoomIndex(int zoomLevel) {
+        //the zoom levels drawing the same styles share the index of the lowest of them
+        int indexZoomLevel = -1;
+        for (RoadStyle style : RoadStyle.ALL) {
+            if (style.minZoomLevel <= zoomLevel) indexZoomLevel = Math.max(indexZoomLevel, style.minZoomLevel);
+        }
+        if (indexZoomLevel == -1) return null;
+        if (zoomIndexes[indexZoomLevel] == null) zoomIndexes[indexZoomLevel] = newEdgeIndex(indexZoomLevel, false);
+        return zoomIndexes[indexZoomLevel];
+    }
+
+    /**
+     * Returns the index of the edges of all the drawn styles longer than the margin
+     */
+    private synchronized EdgeIndex longEdgeIndex() {
+        if (longEdges == null) longEdges = newEdgeIndex(Integer.MAX_VALUE, true);
+        return longEdges;
+    }
+
+    /**
+     * Returns a new index of the edges drawn at the given zoom level, only those longer than the margin if
+     * longOnly is true. An edge whose reverse edge is indexed is not.
+     */
+    private EdgeIndex newEdgeIndex(int zoomLevel, boolean longOnly) {
+        int[] fromNodeIds = new int[INITIAL_INDEX_CAPACITY];
+        int[] edgeIds = new int[INITIAL_INDEX_CAPACITY];
+        int count = 0;
+        for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId++) {
+            for (int i = 0; i < graph.nodeOutDegree(nodeId); i++) {
+                int edgeId = graph.nodeOutEdgeId(nodeId, i);
+                if (longOnly && graph.edgeLength(edgeId) <= MARGIN_METERS) continue;
+                int toNodeId = graph.edgeTargetNodeId(edgeId);
+                if (toNodeId < nodeId && hasEdge(toNodeId, nodeId)) continue;
+                RoadStyle style = RoadStyle.of(graph.edgeAttributes(edgeId));
+                if (style == null || zoomLevel < style.minZoomLevel) continue;
+
+                if (count == edgeIds.length) {
+                    fromNodeIds = Arrays.copyOf(fromNodeIds, 2 * count);
+                    edgeIds = Arrays.copyOf(edgeIds, 2 * count);
+                }
+                fromNodeIds[count] = nodeId;
+                edgeIds[count] = edgeId;
+                count += 1;
+            }
+        }
+        return new EdgeIndex(fromNodeIds, edgeIds, count);
+    }
+
+    /**
+     * A consumer of the edges of an index, given by their start node and their identity
+     */
+    @FunctionalInterface
+    private interface EdgeConsumer {
+        void accept(int fromNodeId, int edgeId);
+    }
+
+    /**
+     * An index of edges in a grid of square cells covering Switzerland, in which each edge is registered in
+     * all the cells intersecting its bounding box
+     */
+    private final class EdgeIndex {
+        private final int columns = (int) Math.ceil(SwissBounds.WIDTH / CELL_METERS);
+        private final int rows = (int) Math.ceil(SwissBounds.HEIGHT / CELL_METERS);
+        //the entries of the cell of index c are at the positions cellStart[c] (inclusive) to cellStart[c + 1]
+        private final int[] cellStart = new int[columns * rows + 1];
+        private final int[] fromNodeIds;
+        private final int[] edgeIds;
+
+        EdgeIndex(int[] fromNodeIds, int[] edgeIds, int count) {
+            //the entries are counted per cell, then placed in a second pass
+            for (int k = 0; k < count; k++) {
+                PointCh from = graph.nodePoint(fromNodeIds[k]);
+                PointCh to = graph.nodePoint(graph.edgeTargetNodeId(edgeIds[k]));
+                for (int row = minRow(from, to); row <= maxRow(from, to); row++) {
+                    for (int column = minColumn(from, to); column <= maxColumn(from, to); column++) {
+                        cellStart[row * columns + column + 1] += 1;
+                    }
+                }
+            }
+            for (int c = 0; c < columns * rows; c++) cellStart[c + 1] += cellStart[c];
+
+            this.fromNodeIds = new int[cellStart[columns * rows]];
+            this.edgeIds = new int[cellStart[columns * rows]];
+            int[] next = Arrays.copyOf(cellStart, columns * rows);
+            for (int k = 0; k < count; k++) {
+                PointCh from = graph.nodePoint(fromNodeIds[k]);
+                PointCh to = graph.nodePoint(graph.edgeTargetNodeId(edgeIds[k]));
+                for (int row = minRow(from, to); row <= maxRow(from, to); row++) {
+                    for (int column = minColumn(from, to); column <= maxColumn(from, to); column++) {
+                        int position = next[row * columns + column]++;
+                        this.fromNodeIds[position] = fromNodeIds[k];
+                        this.edgeIds[position] = edgeIds[k];
+                    }
+                }
+            }
+        }
+
+        /**
+         * Passes to the given consumer, once each, the edges of the index whose bounding box may intersect
+         * the given rectangle
+         */
+        void forEachEdge(double minE, double minN, double maxE, double maxN, EdgeConsumer consumer) {
+            int firstColumn = column(minE), lastColumn = column(maxE);
+            int firstRow = row(minN), lastRow = row(maxN);
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    int cell = row * columns + column;
+                    for (int position = cellStart[cell]; position < cellStart[cell + 1]; position++) {
+                        //an edge registered in several cells is passed from the first of them in the rectangle
+                        PointCh from = graph.nodePoint(fromNodeIds[position]);
+                        PointCh to = graph.nodePoint(graph.edgeTargetNodeId(edgeIds[position]));
+                        if (column == Math.max(minColumn(from, to), firstColumn)
+                                && row == Math.max(minRow(from, to), firstRow))
+                            consumer.accept(fromNodeIds[position], edgeIds[position]);
+                    }
+                }
+            }
+        }
+
+        private int minColumn(PointCh from, PointCh to) {
+            return column(Math.min(from.e(), to.e()));
+        }
+
+        private int maxColumn(PointCh from, PointCh to) {
+            return column(Math.max(from.e(), to.e()));
+        }
+
+        private int minRow(PointCh from, PointCh to) {
+            return row(Math.min(from.n(), to.n()));
+        }
+
+        private int maxRow(PointCh from, PointCh to) {
+            return row(Math.max(from.n(), to.n()));
+        }
+
+        private int column(double e) {
+            return Math2.clamp(0, (int) Math.floor((e - SwissBounds.MIN_E) / CELL_METERS), columns - 1);
+        }
+
+        private int row(double n) {
+            return Math2.clamp(0, (int) Math.floor((n - SwissBounds.MIN_N) / CELL_METERS), rows - 1);
+        }
+    }
+
+    /**
+     * The paths of the edges drawn in a tile, one per style, solid and dashed, and one for the cycle routes
+     */
+    private final class TilePaths {
+        private final int zoomLevel;
+        private final double originX;
+        private final double originY;
+        private final Path2D.Float[] paths = new Path2D.Float[2 * RoadStyle.ALL.length];
+        private final Path2D.Float cycleRoutes = new Path2D.Float();
+
+        TilePaths(int zoomLevel, double originX, double originY) {
+            this.zoomLevel = zoomLevel;
+            this.originX = originX;
+            this.originY = originY;
+        }
+
+        /**
+         * Adds the given edge to the paths, if its style is drawn at the zoom level and it intersects the tile.
+         * The whole segment is added, so that its dashes match those of the neighbouring tiles.
+         */
+        void add(int fromNodeId, int edgeId) {
+            AttributeSet attributes = graph.edgeAttributes(edgeId);
+            RoadStyle style = RoadStyle.of(attributes);
+            if (style == null || zoomLevel < style.minZoomLevel) return;
+
+            PointWebMercator p1 = PointWebMercator.ofPointCh(graph.nodePoint(fromNodeId));
+            PointWebMercator p2 = PointWebMercator.ofPointCh(graph.nodePoint(graph.edgeTargetNodeId(edgeId)));
+            double x1 = p1.xAtZoomLevel(zoomLevel) - originX, y1 = p1.yAtZoomLevel(zoomLevel) - originY;
+            double x2 = p2.xAtZoomLevel(zoomLevel) - originX, y2 = p2.yAtZoomLevel(zoomLevel) - originY;
+            if (!intersectsTile(x1, y1, x2, y2)) return;
+
+            int pathIndex = 2 * style.ordinal() + (attributes.intersects(UNPAVED) ? 1 : 0);
+            if (paths[pathIndex] == null) paths[pathIndex] = new Path2D.Float();
+            addSegment(paths[pathIndex], x1, y1, x2, y2);
+            if (attributes.intersects(CYCLE_ROUTES)) addSegment(cycleRoutes, x1, y1, x2, y2);
+        }
+
+        private static void addSegment(Path2D.Float path, double x1, double y1, double x2, double y2) {
+            path.moveTo(x1, y1);
+            path.lineTo(x2, y2);
+        }
+    }
+
+    /**
+     * Returns the stroke of the given width, at least MIN_WIDTH, solid or dashed
+     */
+    private static BasicStroke stroke(float width, boolean dashed) {
+        float w = Math.max(MIN_WIDTH, width);
+        return dashed
+                ? new BasicStroke(w, BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND, 10, DASHES, 0)
+                : new BasicStroke(w, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+    }
+}
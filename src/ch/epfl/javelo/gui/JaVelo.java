@@ -15,7 +15,11 @@ import javafx.scene.layout.StackPane;
 import javafx.stage.Stage;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 
 /**
@@ -29,6 +33,26 @@ public final class JaVelo extends Application {
 
     private static final int MIN_WIDTH = 800;
     private static final int MIN_HEIGHT = 600;
+    private static final long TILE_CACHE_QUOTA_BYTES = 2L << 30;
+    //the rendered tiles are cheap to render again, so their cache is smaller
+    private static final long RENDERED_TILE_CACHE_QUOTA_BYTES = 512L << 20;
+    //with -Djavelo.tiles=local, the tiles are rendered from the graph instead of being downloaded
+    private static final String TILES_PROPERTY = "javelo.tiles";
+    private static final String LOCAL_TILES = "local";
+    //with -Djavelo.tileServer=<baseUri>, the tiles are downloaded from the given server instead of OpenStreetMap
+    private static final String TILE_SERVER_PROPERTY = "javelo.tileServer";
+    private static final String OSM_TILE_SERVER = "https://tile.openstreetmap.org";
+    private static final String OSM_DOMAIN = "openstreetmap.org";
+    //the corridor of the route prefetched for offline use
+    private static final double CORRIDOR_BUFFER_METERS = 500;
+    private static final int CORRIDOR_MIN_ZOOM = 10;
+    private static final int CORRIDOR_MAX_ZOOM = 16;
+    private static final double CORRIDOR_TILES_PER_SECOND = 2;
+
+    private TileStore tileStore;
+    private PackedTileStore downloadedTileStore;
+    private TileFetcher tileFetcher;
+    private RouteCorridorPrefetcher corridorPrefetcher;
 
     public static void main(String[] args) {launch(args);}
 
@@ -36,13 +60,39 @@ public final class JaVelo extends Application {
     public void start(Stage primaryStage) throws Exception {
         Graph graph = Graph.loadFrom(Path.of("javelo-data"));
         Path cacheBasePath = Path.of("osm-cache");
-        String serverHost = "tile.openstreetmap.org";
+        String tileServer = System.getProperty(TILE_SERVER_PROPERTY, OSM_TILE_SERVER);
+        boolean localTiles = LOCAL_TILES.equals(System.getProperty(TILES_PROPERTY));
         CostFunction costFunction = new CityBikeCF(graph);
 
-        TileManager tileManager = new TileManager(cacheBasePath, serverHost);
+        TileManager tileManager;
+        if (localTiles) {
+            //the tiles are rendered from the graph, and cached in their own packed file, whose size is limited
+            //by a quota
+            tileStore = QuotaTileStore.open(PackedTileStore.open(cacheBasePath.resolve("rendered")),
+                    cacheBasePath.resolve("rendered").resolve("access.idx"), RENDERED_TILE_CACHE_QUOTA_BYTES);
+            tileManager = new TileManager(tileStore, new GraphTileRenderer(graph));
+        } else {
+            //the tiles are stored in a single packed file, to which the tiles of the old directory tree are
+            //copied, whose size is limited by a quota
+            downloadedTileStore = PackedTileStore.open(cacheBasePath.resolve("packed"));
+            if (downloadedTileStore.isEmpty()) copyTiles(new DirectoryTileStore(cacheBasePath), downloadedTileStore);
+            tileStore = QuotaTileStore.open(
+                    downloadedTileStore, cacheBasePath.resolve("packed").resolve("access.idx"), TILE_CACHE_QUOTA_BYTES);
+
+            tileFetcher = new TileFetcher(tileServer, cacheBasePath.resolve("packed").resolve("validators"));
+            tileManager = new TileManager(tileStore, tileFetcher);
+        }
         ErrorManager errorManager = new ErrorManager();
         RouteBean routeBean = new RouteBean(new RouteComputer(graph, costFunction));
 
+        //the tiles along the route are cached in the background, for offline use, unless they come from the
+        //servers of OpenStreetMap, whose tile usage policy forbids such bulk downloads
+        if (localTiles || !isOsmTileServer(tileServer)) {
+            corridorPrefetcher = new RouteCorridorPrefetcher(tileManager, cacheBasePath.resolve("corridor"),
+                    CORRIDOR_BUFFER_METERS, CORRIDOR_MIN_ZOOM, CORRIDOR_MAX_ZOOM, CORRIDOR_TILES_PER_SECOND);
+            routeBean.getRouteProperty().addListener((o, oV, nV) -> corridorPrefetcher.prefetch(nV));
+        }
+
         AnnotatedMapManager annotatedMapManager =
                 new AnnotatedMapManager(graph, tileManager, routeBean, errorManager::displayError);
         
@@ -108,4 +158,44 @@ public final class JaVelo extends Application {
         primaryStage.setTitle("JaVelo");
         primaryStage.show();
     }
+
+    @Override
+    public void stop() throws Exception {
+        if (corridorPrefetcher != null) corridorPrefetcher.close();
+        if (tileFetcher != null) {
+            //the validators of the tiles evicted by the quota are not saved
+            tileFetcher.retainValidators(downloadedTileStore);
+            tileFetcher.close();
+        }
+        if (tileStore != null) tileStore.close();
+    }
+
+    /**
+     * Returns true iff the given tile server, given by its base URI, is one of the servers of OpenStreetMap
+     *
+     * @param tileServer the base URI of the tile server
+     * @return true iff the tile server is one of the servers of OpenStreetMap
+     */
+    private static boolean isOsmTileServer(String tileServer) {
+        String host = URI.create(tileServer).getHost();
+        return host == null || host.equals(OSM_DOMAIN) || host.endsWith("." + OSM_DOMAIN);
+    }
+
+    /**
+     * Copies all the tiles of the given directory tile store to the given tile store
+     *
+     * @param from the directory tile store
+     * @param to   the tile store to which tiles are copied
+     * @throws IOException in case of input/output error
+     */
+    private static void copyTiles(DirectoryTileStore from, TileStore to) throws IOException {
+        List<TileManager.TileId> tileIds = new ArrayList<>();
+        from.forEachTile((tileId, size) -> tileIds.add(tileId));
+        for (TileManager.TileId tileId : tileIds) {
+            ByteBuffer image = from.read(tileId);
+            byte[] bytes = new byte[image.remaining()];
+            image.get(bytes);
+            to.write(tileId, bytes);
+        }
+    }
 }
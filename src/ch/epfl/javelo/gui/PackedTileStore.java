@@ -0,0 +1,722 @@
+package ch.epfl.javelo.gui;
+
+import ch.epfl.javelo.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * A tile store keeping all the images in a single append-only data file, memory-mapped, indexed by a
+ * sorted index file
+ *
+ * <p>Each record of the data file is made of the key of the tile (its zoom level and coordinates packed
+ * in a long), the length and the CRC-32 of the image, followed by the image itself. Deleting a tile
+ * appends a record without image, whose length is -1. The index file
+ * contains the generation of the data file it refers to, the length of the data it covers, and the keys
+ * and offsets of the records of the tiles, sorted by key. The records appended since the index was
+ * last written are indexed in memory, and are found again when the store is opened by scanning the
+ * data file after the indexed length, stopping at the first incomplete or corrupted record.</p>
+ *
+ * <p>Compaction copies the live records to a data file of the next generation, then atomically
+ * replaces the index by one referring to it, so that a crash at any moment leaves either the old
+ * or the new store, never a mix of both. The records indexed when compaction starts are copied without
+ * holding the lock of the store, so that tiles can still be read and written meanwhile; only the
+ * records appended during the copy are copied while holding it.</p>
+ *
+ * <p>Images are read as slices of the mapped data file, without any copy. The data file is mapped in
+ * overlapping segments, each one being long enough to contain all the records starting in it. The index
+ * is read in memory rather than mapped, so that its file can be replaced while the store is open.</p>
+ *
+ * <p>The store is locked while it is open, so that it cannot be opened by another program, or twice by
+ * the same one, whose records would otherwise be mixed in the data file.</p>
+ *
+ * @author Elias Mir(341277)
+ * @author Jan Staszewicz(341201)
+ */
+public final class PackedTileStore implements TileStore {
+
+    /**
+     * The maximal size in bytes of an image
+     */
+    public final static int MAX_IMAGE_BYTES = 1 << 24;
+
+    private final static String INDEX_FILE = "tiles.idx";
+    private final static String LOCK_FILE = "lock";
+    private final static String DATA_FILE_PREFIX = "tiles-";
+    private final static String DATA_FILE_SUFFIX = ".dat";
+    private final static int INDEX_MAGIC = 0x4A56_5449;
+    //magic, generation, indexed data length and number of entries
+    private final static int INDEX_HEADER_BYTES = Integer.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES;
+    //key and offset of the record
+    private final static int INDEX_ENTRY_BYTES = Long.BYTES + Long.BYTES;
+    //key, length and CRC-32 of the image
+    private final static int RECORD_HEADER_BYTES = Long.BYTES + Integer.BYTES + Integer.BYTES;
+    private final static int MAX_ZOOM_LEVEL = 29;
+    private final static int DEFAULT_SEGMENT_BYTES = 1 << 30;
+    //number of appended records after which the index is written again
+    private final static int INDEX_WRITE_INTERVAL = 4096;
+    private final static long DELETED = -1;
+    private final static int DELETED_LENGTH = -1;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final FileChannel lockChannel;
+    private final List<MappedByteBuffer> segments;
+    //offsets of the records appended since the index was written, or DELETED
+    private final Map<Long, Long> recentOffsets;
+    private int generation;
+    private FileChannel data;
+    private long dataLength;
+    private ByteBuffer index;
+    private int indexCount;
+    private long deadBytes;
+    private int tileCount;
+    private boolean compacting;
+
+    private PackedTileStore(Path directory, int segmentBytes, FileChannel lockChannel) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.lockChannel = lockChannel;
+        this.segments = new ArrayList<>();
+        this.recentOffsets = new HashMap<>();
+    }
+
+    /**
+     * Opens the packed tile store located in the given directory, creating it if needed
+     *
+     * @param directory the access path to the directory of the store
+     * @return the tile store
+     * @throws IOException in case of input/output error, or if the store is already open
+     */
+    public static PackedTileStore open(Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * Opens the packed tile store located in the given directory, creating it if needed, mapping its
+     * data file in segments of the given size
+     *
+     * @param directory    the access path to the directory of the store
+     * @param segmentBytes the size of the segments
+     * @return the tile store
+     * @throws IOException in case of input/output error, or if the store is already open
+     */
+    static PackedTileStore open(Path directory, int segmentBytes) throws IOException {
+        Preconditions.checkArgument(segmentBytes > 0);
+        Files.createDirectories(directory);
+        FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            FileLock lock;
+            try {
+                lock = lockChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) throw new IOException("the tile store " + directory + " is already open");
+
+            PackedTileStore store = new PackedTileStore(directory, segmentBytes, lockChannel);
+            store.load();
+            return store;
+        } catch (IOException | RuntimeException e) {
+            //closing the channel releases the lock
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Loads the index, deletes the data files it does not refer to, and indexes in memory the records
+     * appended after the indexed length
+     */
+    private void load() throws IOException {
+        long indexedLength = 0;
+        index = ByteBuffer.allocate(0);
+        indexCount = 0;
+        generation = lastDataFileGeneration();
+
+        Path indexPath = directory.resolve(INDEX_FILE);
+        if (Files.exists(indexPath)) {
+            ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(indexPath));
+            if (content.capacity() >= INDEX_HEADER_BYTES && content.getInt(0) == INDEX_MAGIC) {
+                int count = content.getInt(INDEX_HEADER_BYTES - Integer.BYTES);
+                long length = content.getLong(2 * Integer.BYTES);
+                Path dataPath = dataPath(content.getInt(Integer.BYTES));
+                if (content.capacity() == INDEX_HEADER_BYTES + (long) count * INDEX_ENTRY_BYTES
+                        && Files.exists(dataPath) && Files.size(dataPath) >= length) {
+                    generation = content.getInt(Integer.BYTES);
+                    index = content.slice(INDEX_HEADER_BYTES, count * INDEX_ENTRY_BYTES);
+                    indexCount = count;
+                    tileCount = count;
+                    indexedLength = length;
+                }
+            }
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(DATA_FILE_PREFIX) && !file.equals(dataPath(generation))) {
+                    Files.delete(file);
+                }
+            }
+        }
+
+        data = FileChannel.open(dataPath(generation),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        dataLength = indexedLength;
+        scan(data.size());
+    }
+
+    /**
+     * Returns the highest generation of the data files in the directory, or 0 if there is none
+     */
+    private int lastDataFileGeneration() throws IOException {
+        int last = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(DATA_FILE_PREFIX) && name.endsWith(DATA_FILE_SUFFIX)) {
+                    try {
+                        last = Math.max(last, Integer.parseInt(
+                                name.substring(DATA_FILE_PREFIX.length(), name.length() - DATA_FILE_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        //not a data file
+                    }
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Indexes in memory the valid records between dataLength and the given file size, and truncates
+     * the data file after the last one
+     */
+    private void scan(long fileSize) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        while (dataLength + RECORD_HEADER_BYTES <= fileSize) {
+            header.clear();
+            readFully(header, dataLength);
+            long key = header.getLong(0);
+            int length = header.getInt(Long.BYTES);
+            int crc = header.getInt(Long.BYTES + Integer.BYTES);
+            if (length == DELETED_LENGTH && crc == 0) {
+                recordDeletion(key);
+                dataLength += RECORD_HEADER_BYTES;
+                continue;
+            }
+            if (length < 0 || length > MAX_IMAGE_BYTES
+                    || dataLength + RECORD_HEADER_BYTES + length > fileSize) break;
+
+            ByteBuffer image = ByteBuffer.allocate(length);
+            readFully(image, dataLength + RECORD_HEADER_BYTES);
+            if (crc(image.flip()) != crc) break;
+
+            recordWrite(key);
+            dataLength += RECORD_HEADER_BYTES + length;
+        }
+        if (dataLength < fileSize) data.truncate(dataLength);
+    }
+
+    /**
+     * Indexes in memory the record of the tile of given key appended at dataLength
+     */
+    private void recordWrite(long key) throws IOException {
+        long previous = offsetOf(key);
+        if (previous != DELETED) deadBytes += recordBytesAt(previous);
+        else tileCount++;
+        recentOffsets.put(key, dataLength);
+    }
+
+    /**
+     * Indexes in memory the deletion of the tile of given key, recorded at dataLength
+     */
+    private void recordDeletion(long key) throws IOException {
+        long previous = offsetOf(key);
+        deadBytes += RECORD_HEADER_BYTES;
+        if (previous != DELETED) {
+            deadBytes += recordBytesAt(previous);
+            tileCount--;
+        }
+        recentOffsets.put(key, DELETED);
+    }
+
+    /**
+     * Fills the given buffer with the bytes of the data file starting at the given position
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        readFully(data, buffer, position);
+    }
+
+    /**
+     * Fills the given buffer with the bytes of the given file starting at the given position
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new IOException("unexpected end of file");
+        }
+    }
+
+    /**
+     * Returns the path of the data file of the given generation
+     */
+    private Path dataPath(int generation) {
+        return directory.resolve(DATA_FILE_PREFIX + generation + DATA_FILE_SUFFIX);
+    }
+
+    /**
+     * Returns the key of the given tile, a positive long whose order is the one of the zoom levels,
+     * then of the x coordinates, then of the y coordinates
+     *
+     * @param tileId the tileId
+     * @return the key of the tile
+     * @throws IllegalArgumentException if the zoom level of the tile is too high
+     */
+    static long key(TileManager.TileId tileId) {
+        Preconditions.checkArgument(tileId.zoomLevel() <= MAX_ZOOM_LEVEL);
+        return ((long) tileId.zoomLevel() << 2 * MAX_ZOOM_LEVEL) | ((long) tileId.x() << MAX_ZOOM_LEVEL) | tileId.y();
+    }
+
+    /**
+     * Returns the tile of given key
+     *
+     * @param key the key of the tile
+     * @return the tileId
+     */
+    static TileManager.TileId tileIdOf(long key) {
+        int mask = (1 << MAX_ZOOM_LEVEL) - 1;
+        return new TileManager.TileId(
+                (int) (key >>> 2 * MAX_ZOOM_LEVEL), (int) (key >>> MAX_ZOOM_LEVEL) & mask, (int) key & mask);
+    }
+
+    /**
+     * Returns the CRC-32 of the remaining bytes of the given buffer
+     */
+    private static int crc(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Returns the offset of the record of the tile of given key, or DELETED if there is none
+     */
+    private long offsetOf(long key) {
+        Long recent = recentOffsets.get(key);
+        if (recent != null) return recent;
+
+        int entry = find(index, indexCount, key);
+        return entry < 0 ? DELETED : index.getLong(entry * INDEX_ENTRY_BYTES + Long.BYTES);
+    }
+
+    /**
+     * Returns the index of the entry of given key in the given sorted index, or -1 if there is none
+     */
+    private static int find(ByteBuffer index, int indexCount, long key) {
+        int low = 0;
+        int high = indexCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleKey = index.getLong(middle * INDEX_ENTRY_BYTES);
+            if (middleKey < key) low = middle + 1;
+            else if (middleKey > key) high = middle - 1;
+            else return middle;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a read-only buffer of the mapped data file, whose position is the given offset and
+     * containing at least the given number of bytes after it
+     */
+    private ByteBuffer mappedAt(long offset, int bytes) throws IOException {
+        int segment = (int) (offset / segmentBytes);
+        long segmentStart = (long) segment * segmentBytes;
+        int position = (int) (offset - segmentStart);
+        while (segments.size() <= segment) segments.add(null);
+
+        MappedByteBuffer mapped = segments.get(segment);
+        if (mapped == null || mapped.capacity() < position + bytes) {
+            //the segment contains all the records starting in it, which can therefore be read at once
+            long size = Math.min((long) segmentBytes + RECORD_HEADER_BYTES + MAX_IMAGE_BYTES, dataLength - segmentStart);
+            mapped = data.map(FileChannel.MapMode.READ_ONLY, segmentStart, size);
+            segments.set(segment, mapped);
+        }
+        return mapped.asReadOnlyBuffer().position(position);
+    }
+
+    /**
+     * Returns the size in bytes of the record starting at the given offset
+     */
+    private int recordBytesAt(long offset) throws IOException {
+        return RECORD_HEADER_BYTES + mappedAt(offset, RECORD_HEADER_BYTES).getInt((int) (offset % segmentBytes) + Long.BYTES);
+    }
+
+    @Override
+    public synchronized ByteBuffer read(TileManager.TileId tileId) throws IOException {
+        long offset = offsetOf(key(tileId));
+        if (offset == DELETED) return null;
+
+        int position = (int) (offset % segmentBytes);
+        int length = mappedAt(offset, RECORD_HEADER_BYTES).getInt(position + Long.BYTES);
+        return mappedAt(offset, RECORD_HEADER_BYTES + length)
+                .slice(position + RECORD_HEADER_BYTES, length)
+                .asReadOnlyBuffer();
+    }
+
+    @Override
+    public synchronized boolean contains(TileManager.TileId tileId) throws IOException {
+        return offsetOf(key(tileId)) != DELETED;
+    }
+
+    /**
+     * Appends the image of the given tile to the data file
+     *
+     * @throws IllegalArgumentException if the image is bigger than MAX_IMAGE_BYTES, or if the zoom level
+     *                                  of the tile is too high
+     */
+    @Override
+    public synchronized void write(TileManager.TileId tileId, byte[] image) throws IOException {
+        Preconditions.checkArgument(image.length <= MAX_IMAGE_BYTES);
+        long key = key(tileId);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + image.length)
+                .putLong(key)
+                .putInt(image.length)
+                .putInt(crc(ByteBuffer.wrap(image)))
+                .put(image)
+                .flip();
+        while (record.hasRemaining()) data.write(record, dataLength + record.position());
+
+        recordWrite(key);
+        dataLength += record.capacity();
+        writeIndexIfNeeded();
+    }
+
+    /**
+     * Appends a record of deletion of the given tile to the data file, if the store contains it
+     */
+    @Override
+    public synchronized void delete(TileManager.TileId tileId) throws IOException {
+        long key = key(tileId);
+        if (offsetOf(key) == DELETED) return;
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES)
+                .putLong(key)
+                .putInt(DELETED_LENGTH)
+                .putInt(0)
+                .flip();
+        while (record.hasRemaining()) data.write(record, dataLength + record.position());
+
+        recordDeletion(key);
+        dataLength += RECORD_HEADER_BYTES;
+        writeIndexIfNeeded();
+    }
+
+    /**
+     * Writes the index if enough records have been appended since it was last written, unless a
+     * compaction is running
+     */
+    private void writeIndexIfNeeded() throws IOException {
+        if (!compacting && recentOffsets.size() >= INDEX_WRITE_INTERVAL) writeIndex();
+    }
+
+    /**
+     * The tiles are passed to the consumer by increasing zoom level, x and y coordinates, without
+     * holding the lock of the store.
+     */
+    @Override
+    public void forEachTile(BiConsumer<TileManager.TileId, Integer> consumer) throws IOException {
+        long[] keys;
+        int[] sizes;
+        synchronized (this) {
+            keys = new long[tileCount];
+            sizes = new int[tileCount];
+            int[] count = new int[1];
+            forEachEntry((key, offset) -> {
+                keys[count[0]] = key;
+                sizes[count[0]] = recordBytesAt(offset) - RECORD_HEADER_BYTES;
+                count[0]++;
+            });
+        }
+        for (int i = 0; i < keys.length; i++) consumer.accept(tileIdOf(keys[i]), sizes[i]);
+    }
+
+    /**
+     * Returns the number of tiles in the store
+     *
+     * @return the number of tiles in the store
+     */
+    public synchronized int tileCount() {
+        return tileCount;
+    }
+
+    /**
+     * Returns true iff the store contains no tile
+     *
+     * @return true iff the store contains no tile
+     */
+    public synchronized boolean isEmpty() {
+        return tileCount == 0;
+    }
+
+    /**
+     * Returns the number of bytes of the data file used by images which have been replaced or deleted,
+     * and which compaction would free
+     *
+     * @return the number of bytes freed by compaction
+     */
+    public synchronized long deadBytes() {
+        return deadBytes;
+    }
+
+    /**
+     * Consumer of the entries of the store
+     */
+    private interface EntryConsumer {
+        void accept(long key, long offset) throws IOException;
+    }
+
+    /**
+     * Passes the keys and record offsets of all the tiles of the store to the given consumer, by
+     * increasing key, merging the index file with the records appended after it
+     */
+    private void forEachEntry(EntryConsumer consumer) throws IOException {
+        merge(index, indexCount, recentOffsets, consumer);
+    }
+
+    /**
+     * Passes to the given consumer, by increasing key, the entries of the given sorted index merged
+     * with the given offsets, which replace the ones of the index having the same key
+     */
+    private static void merge(ByteBuffer index, int indexCount, Map<Long, Long> offsets, EntryConsumer consumer)
+            throws IOException {
+        long[] keys = offsets.keySet().stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(keys);
+
+        int i = 0;
+        int j = 0;
+        while (i < indexCount || j < keys.length) {
+            long indexKey = i < indexCount ? index.getLong(i * INDEX_ENTRY_BYTES) : Long.MAX_VALUE;
+            if (j < keys.length && keys[j] <= indexKey) {
+                long offset = offsets.get(keys[j]);
+                if (offset != DELETED) consumer.accept(keys[j], offset);
+                if (keys[j] == indexKey) i++;
+                j++;
+            } else {
+                consumer.accept(indexKey, index.getLong(i * INDEX_ENTRY_BYTES + Long.BYTES));
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Writes the index of all the tiles of the store, after having made the data file durable, then
+     * atomically replaces the index file by it
+     */
+    private void writeIndex() throws IOException {
+        data.force(false);
+        ByteBuffer entries = ByteBuffer.allocate((indexCount + recentOffsets.size()) * INDEX_ENTRY_BYTES);
+        forEachEntry((key, offset) -> entries.putLong(key).putLong(offset));
+        replaceIndex(generation, dataLength, entries.flip());
+        recentOffsets.clear();
+    }
+
+    /**
+     * Atomically replaces the index file by one with the given content, which becomes the index in memory
+     */
+    private void replaceIndex(int generation, long dataLength, ByteBuffer entries) throws IOException {
+        Path indexPath = directory.resolve(INDEX_FILE);
+        Path temporary = directory.resolve(INDEX_FILE + ".tmp");
+        int count = entries.remaining() / INDEX_ENTRY_BYTES;
+        ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_BYTES)
+                .putInt(INDEX_MAGIC)
+                .putInt(generation)
+                .putLong(dataLength)
+                .putInt(count)
+                .flip();
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining() || entries.hasRemaining()) {
+                channel.write(new ByteBuffer[]{header, entries});
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        index = entries.rewind();
+        indexCount = count;
+    }
+
+    /**
+     * Copies the images of all the tiles to a new data file, without the images which have been replaced
+     * or deleted, then switches atomically to it. Tiles can be read and written during the compaction.
+     *
+     * @throws IOException in case of input/output error
+     */
+    public void compact() throws IOException {
+        ByteBuffer snapshotIndex;
+        int snapshotCount;
+        FileChannel snapshotData;
+        int newGeneration;
+        synchronized (this) {
+            if (compacting || !data.isOpen()) return;
+            //from this point, the index is not written again until the end of the compaction, so that
+            //the records appended meanwhile are all in recentOffsets
+            writeIndex();
+            compacting = true;
+            snapshotIndex = index;
+            snapshotCount = indexCount;
+            snapshotData = data;
+            newGeneration = generation + 1;
+        }
+
+        Path newDataPath = dataPath(newGeneration);
+        FileChannel newData = null;
+        boolean done = false;
+        try {
+            newData = FileChannel.open(newDataPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            //the records of the snapshot never change, they are copied without holding the lock
+            ByteBuffer copied = ByteBuffer.allocate(snapshotCount * INDEX_ENTRY_BYTES);
+            int[] copiedBytes = new int[snapshotCount];
+            long newLength = 0;
+            for (int i = 0; i < snapshotCount; i++) {
+                long offset = snapshotIndex.getLong(i * INDEX_ENTRY_BYTES + Long.BYTES);
+                copied.putLong(snapshotIndex.getLong(i * INDEX_ENTRY_BYTES)).putLong(newLength);
+                copiedBytes[i] = copyRecord(snapshotData, offset, newData, newLength);
+                newLength += copiedBytes[i];
+            }
+            copied.flip();
+
+            synchronized (this) {
+                if (!data.isOpen()) return;
+
+                //the records appended during the copy are copied in turn, the copied records of the tiles
+                //they replace or delete being dead
+                Map<Long, Long> newOffsets = new HashMap<>();
+                long newDeadBytes = 0;
+                for (Map.Entry<Long, Long> e : recentOffsets.entrySet()) {
+                    int replaced = find(copied, snapshotCount, e.getKey());
+                    if (replaced >= 0) newDeadBytes += copiedBytes[replaced];
+
+                    long offset = e.getValue();
+                    if (offset != DELETED) {
+                        newOffsets.put(e.getKey(), newLength);
+                        newLength += copyRecord(data, offset, newData, newLength);
+                    } else {
+                        newOffsets.put(e.getKey(), DELETED);
+                    }
+                }
+                newData.force(true);
+
+                ByteBuffer entries = ByteBuffer.allocate((snapshotCount + newOffsets.size()) * INDEX_ENTRY_BYTES);
+                merge(copied, snapshotCount, newOffsets, (key, offset) -> entries.putLong(key).putLong(offset));
+
+                //from this point, the store is made of the new data file, whatever happens next
+                replaceIndex(newGeneration, newLength, entries.flip());
+                FileChannel oldData = data;
+                int oldGeneration = generation;
+                recentOffsets.clear();
+                segments.clear();
+                generation = newGeneration;
+                data = newData;
+                dataLength = newLength;
+                deadBytes = newDeadBytes;
+                done = true;
+
+                //the old data file may still be mapped by images being read, which prevents its deletion
+                //on some systems; it is then deleted when the store is opened again
+                try {
+                    oldData.close();
+                    Files.deleteIfExists(dataPath(oldGeneration));
+                } catch (IOException e) {
+                    //deleted by load
+                }
+            }
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+            if (!done) {
+                if (newData != null) newData.close();
+                Files.deleteIfExists(newDataPath);
+            }
+        }
+    }
+
+    /**
+     * Copies the record starting at the given offset of the given data file to the given position of
+     * the given file, and returns its size
+     */
+    private static int copyRecord(FileChannel from, long offset, FileChannel to, long position) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        readFully(from, header, offset);
+        int bytes = RECORD_HEADER_BYTES + header.getInt(Long.BYTES);
+        long copied = 0;
+        while (copied < bytes) {
+            long count = from.transferTo(offset + copied, bytes - copied, to.position(position + copied));
+            if (count <= 0) throw new IOException("unexpected end of file");
+            copied += count;
+        }
+        return bytes;
+    }
+
+    /**
+     * Frees the space used by the replaced or deleted images, by compacting the store if they are
+     * more than a quarter of the data file
+     *
+     * @throws IOException in case of input/output error
+     */
+    @Override
+    public void reclaimSpace() throws IOException {
+        synchronized (this) {
+            if (deadBytes <= dataLength / 4) return;
+        }
+        compact();
+    }
+
+    /**
+     * Writes the index and closes the store
+     *
+     * @throws IOException in case of input/output error
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!data.isOpen()) return;
+        try {
+            if (!recentOffsets.isEmpty()) writeIndex();
+            data.close();
+        } finally {
+            lockChannel.close();
+        }
+    }
+
+    /**
+     * Closes the store without writing its index, as if the program had been terminated
+     *
+     * @throws IOException in case of input/output error
+     */
+    synchronized void abandon() throws IOException {
+        data.close();
+        lockChannel.close();
+    }
+}
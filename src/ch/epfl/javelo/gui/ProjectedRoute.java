@@ -0,0 +1,258 @@
+package ch.epfl.javelo.gui;
+
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.PointWebMercator;
+import ch.epfl.javelo.routing.Route;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The points of a route projected once to Web Mercator
+ *
+ * <p>The coordinates of the points are stored at zoom level 0, so that those at any other zoom
+ * level are obtained by a simple scale. For each zoom level, a version of the route simplified
+ * with the Douglas–Peucker algorithm, keeping only the points which are more than
+ * SIMPLIFICATION_TOLERANCE pixels away from the simplified line, is computed on first use.</p>
+ *
+ * <p>The segments of each simplified version are grouped in blocks of SEGMENTS_PER_BLOCK consecutive
+ * segments, whose bounding boxes allow to find quickly the parts of the route which are visible.</p>
+ *
+ * @author Elias Mir(341277)
+ * @author Jan Staszewicz(341201)
+ */
+final class ProjectedRoute {
+
+    private final Route route;
+    //coordinates of the points at zoom level 0, between 0 and 1
+    private final double[] xs;
+    private final double[] ys;
+    //interleaved x and y coordinates of the simplified points, at each zoom level
+    private final double[][] simplifiedCoordinates;
+    //min x, min y, max x and max y of each block of simplified segments, at each zoom level
+    private final double[][] blockBoxes;
+
+    static final int SEGMENTS_PER_BLOCK = 32;
+
+    private static final int MAX_ZOOM_LEVEL = 19;
+    private static final int ZOOM_0_SCALE = 8;
+    private static final double SIMPLIFICATION_TOLERANCE = 0.5;
+
+    /**
+     * Projects the points of the given route
+     *
+     * @param route the route
+     */
+    ProjectedRoute(Route route) {
+        this.route = route;
+        List<PointCh> points = route.points();
+        this.xs = new double[points.size()];
+        this.ys = new double[points.size()];
+        for (int i = 0; i < xs.length; i++) {
+            PointWebMercator point = PointWebMercator.ofPointCh(points.get(i));
+            xs[i] = point.x();
+            ys[i] = point.y();
+        }
+        this.simplifiedCoordinates = new double[MAX_ZOOM_LEVEL + 1][];
+        this.blockBoxes = new double[MAX_ZOOM_LEVEL + 1][];
+    }
+
+    /**
+     * Returns the projected route
+     *
+     * @return the projected route
+     */
+    Route route() {
+        return route;
+    }
+
+    /**
+     * Returns the number of points of the route
+     *
+     * @return the number of points of the route
+     */
+    int size() {
+        return xs.length;
+    }
+
+    /**
+     * Returns the x coordinate of the point of given index at the given zoom level
+     *
+     * @param index     the index of the point
+     * @param zoomLevel the zoom level
+     * @return the x coordinate of the point at the given zoom level
+     */
+    double x(int index, int zoomLevel) {
+        return Math.scalb(xs[index], zoomLevel + ZOOM_0_SCALE);
+    }
+
+    /**
+     * Returns the y coordinate of the point of given index at the given zoom level
+     *
+     * @param index     the index of the point
+     * @param zoomLevel the zoom level
+     * @return the y coordinate of the point at the given zoom level
+     */
+    double y(int index, int zoomLevel) {
+        return Math.scalb(ys[index], zoomLevel + ZOOM_0_SCALE);
+    }
+
+    /**
+     * Returns the interleaved x and y coordinates, at the given zoom level, of the points of the route
+     * simplified for this zoom level. The returned array is shared and must not be modified.
+     *
+     * @param zoomLevel the zoom level
+     * @return the coordinates of the simplified points at the given zoom level
+     * @throws IndexOutOfBoundsException if the zoom level is not between 0 and MAX_ZOOM_LEVEL
+     */
+    double[] simplifiedCoordinates(int zoomLevel) {
+        Objects.checkIndex(zoomLevel, simplifiedCoordinates.length);
+        double[] coordinates = simplifiedCoordinates[zoomLevel];
+        if (coordinates == null) {
+            double tolerance = Math.scalb(SIMPLIFICATION_TOLERANCE, -(zoomLevel + ZOOM_0_SCALE));
+            int[] indices = simplify(xs, ys, tolerance);
+            coordinates = new double[2 * indices.length];
+            for (int i = 0; i < indices.length; i++) {
+                coordinates[2 * i] = x(indices[i], zoomLevel);
+                coordinates[2 * i + 1] = y(indices[i], zoomLevel);
+            }
+            simplifiedCoordinates[zoomLevel] = coordinates;
+            blockBoxes[zoomLevel] = blockBoxes(coordinates);
+        }
+        return coordinates;
+    }
+
+    /**
+     * Returns the bounding boxes of the blocks of segments of the line of given interleaved coordinates
+     */
+    private static double[] blockBoxes(double[] coordinates) {
+        int pointsCount = coordinates.length / 2;
+        int blocksCount = Math.max(1, Math2.ceilDiv(pointsCount - 1, SEGMENTS_PER_BLOCK));
+        double[] boxes = new double[4 * blocksCount];
+        for (int block = 0; block < blocksCount; block++) {
+            double minX = Double.POSITIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            int last = Math.min((block + 1) * SEGMENTS_PER_BLOCK, pointsCount - 1);
+            for (int i = block * SEGMENTS_PER_BLOCK; i <= last; i++) {
+                minX = Math.min(minX, coordinates[2 * i]);
+                minY = Math.min(minY, coordinates[2 * i + 1]);
+                maxX = Math.max(maxX, coordinates[2 * i]);
+                maxY = Math.max(maxY, coordinates[2 * i + 1]);
+            }
+            boxes[4 * block] = minX;
+            boxes[4 * block + 1] = minY;
+            boxes[4 * block + 2] = maxX;
+            boxes[4 * block + 3] = maxY;
+        }
+        return boxes;
+    }
+
+    /**
+     * Returns the number of blocks of segments of the route simplified for the given zoom level.
+     * The block of index b contains the segments going from the simplified point of index
+     * b * SEGMENTS_PER_BLOCK to the one of index min((b + 1) * SEGMENTS_PER_BLOCK, number of points - 1).
+     *
+     * @param zoomLevel the zoom level
+     * @return the number of blocks of segments at the given zoom level
+     * @throws IndexOutOfBoundsException if the zoom level is not between 0 and MAX_ZOOM_LEVEL
+     */
+    int blockCount(int zoomLevel) {
+        simplifiedCoordinates(zoomLevel);
+        return blockBoxes[zoomLevel].length / 4;
+    }
+
+    /**
+     * Returns true iff the bounding box of the block of segments of given index, at the given zoom level,
+     * intersects the given rectangle
+     *
+     * @param zoomLevel the zoom level
+     * @param block     the index of the block
+     * @param minX      the min x coordinate of the rectangle, at the given zoom level
+     * @param minY      the min y coordinate of the rectangle, at the given zoom level
+     * @param maxX      the max x coordinate of the rectangle, at the given zoom level
+     * @param maxY      the max y coordinate of the rectangle, at the given zoom level
+     * @return true iff the block of segments may intersect the given rectangle
+     */
+    boolean blockIntersects(int zoomLevel, int block, double minX, double minY, double maxX, double maxY) {
+        simplifiedCoordinates(zoomLevel);
+        double[] boxes = blockBoxes[zoomLevel];
+        return boxes[4 * block] <= maxX && minX <= boxes[4 * block + 2]
+                && boxes[4 * block + 1] <= maxY && minY <= boxes[4 * block + 3];
+    }
+
+    /**
+     * Returns the indices, in increasing order, of the points of the line kept by the Douglas–Peucker
+     * algorithm with the given tolerance: the first and last points are always kept, and the points
+     * which are not kept are at most at the given distance from the simplified line.
+     *
+     * @param xs        the x coordinates of the points of the line
+     * @param ys        the y coordinates of the points of the line
+     * @param tolerance the tolerance
+     * @return the indices of the points kept
+     */
+    static int[] simplify(double[] xs, double[] ys, double tolerance) {
+        int count = xs.length;
+        if (count <= 2) {
+            int[] all = new int[count];
+            for (int i = 0; i < count; i++) all[i] = i;
+            return all;
+        }
+
+        boolean[] kept = new boolean[count];
+        kept[0] = kept[count - 1] = true;
+        int keptCount = 2;
+        double squaredTolerance = tolerance * tolerance;
+
+        //ranges [first, last] still to be simplified, handled with an explicit stack to bound the depth
+        int[] stack = new int[2 * count];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        stack[stackSize++] = count - 1;
+        while (stackSize > 0) {
+            int last = stack[--stackSize];
+            int first = stack[--stackSize];
+
+            int farthest = -1;
+            double farthestDistance = squaredTolerance;
+            for (int i = first + 1; i < last; i++) {
+                double distance = squaredSegmentDistance(xs, ys, first, last, i);
+                if (distance > farthestDistance) {
+                    farthest = i;
+                    farthestDistance = distance;
+                }
+            }
+
+            if (farthest != -1) {
+                kept[farthest] = true;
+                keptCount++;
+                stack[stackSize++] = first;
+                stack[stackSize++] = farthest;
+                stack[stackSize++] = farthest;
+                stack[stackSize++] = last;
+            }
+        }
+
+        int[] indices = new int[keptCount];
+        for (int i = 0, j = 0; i < count; i++) {
+            if (kept[i]) indices[j++] = i;
+        }
+        return indices;
+    }
+
+    /**
+     * Returns the squared distance between the point of index i and the segment going from the point
+     * of index first to the point of index last
+     */
+    private static double squaredSegmentDistance(double[] xs, double[] ys, int first, int last, int i) {
+        double dx = xs[last] - xs[first];
+        double dy = ys[last] - ys[first];
+        double px = xs[i] - xs[first];
+        double py = ys[i] - ys[first];
+        double squaredLength = Math2.squaredNorm(dx, dy);
+        double t = squaredLength == 0 ? 0 : Math2.clamp(0, Math2.dotProduct(px, py, dx, dy) / squaredLength, 1);
+        return Math2.squaredNorm(px - t * dx, py - t * dy);
+    }
+}
@@ -0,0 +1,363 @@
+package ch.epfl.javelo.gui;
+
+import ch.epfl.javelo.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongSupplier;
+
+/**
+ * A tile store limiting the total size of the images of another one, by deleting in the background
+ * the tiles which have not been accessed for the longest time
+ *
+ * <p>The minute of the last access to each tile, either read or written, is kept in a compact access
+ * index saved next to the store, rather than obtained from the file system. Once the total size of
+ * the images exceeds the quota, the tiles are deleted by increasing retention score until it goes
+ * under 90% of the quota. The retention score of a tile is the minute of its last access plus a bonus
+ * depending on its zoom level, so that the tiles of the low zoom levels, which are few and shared by
+ * large areas, are kept longer.</p>
+ *
+ * <p>The eviction, as well as the indexing of the tiles already in the store when it is opened, runs
+ * on a background thread, and never holds the lock of the access index while accessing the store, so
+ * that tiles can be read and written meanwhile. The tiles accessed during an eviction are kept. A tile
+ * is read, written or deleted while holding one of a few tile locks, which the eviction also holds
+ * while deleting it, so that a tile written while it is evicted is either evicted or kept, both in
+ * the store and in the access index.</p>
+ *
+ * @author Elias Mir(341277)
+ * @author Jan Staszewicz(341201)
+ */
+public final class QuotaTileStore implements TileStore {
+
+    /**
+     * The default retention bonus, in minutes, as a function of the zoom level: one week per zoom level
+     * below 13
+     */
+    public final static IntUnaryOperator DEFAULT_RETENTION_BONUS = zoomLevel -> Math.max(0, 13 - zoomLevel) * 7 * 24 * 60;
+
+    private final static double LOW_WATERMARK = 0.9;
+    private final static long MILLIS_PER_MINUTE = 60_000;
+    private final static int CLOSE_TIMEOUT_SECONDS = 10;
+    private final static int TILE_LOCKS = 64;
+
+    private final TileStore store;
+    private final Path accessIndexPath;
+    private final long quotaBytes;
+    private final IntUnaryOperator retentionBonus;
+    private final LongSupplier clock;
+    //guarded by itself
+    private final TileAccessIndex accesses;
+    private final ExecutorService evictor;
+    private final Object[] tileLocks;
+    //guarded by accesses
+    private boolean evictionScheduled;
+    //the keys of the tiles accessed since the eviction took its snapshot, or null if none is running
+    private Set<Long> accessedDuringEviction;
+
+    private QuotaTileStore(TileStore store, Path accessIndexPath, long quotaBytes,
+                           IntUnaryOperator retentionBonus, LongSupplier clock) throws IOException {
+        Preconditions.checkArgument(quotaBytes > 0);
+        this.store = store;
+        this.accessIndexPath = accessIndexPath;
+        this.quotaBytes = quotaBytes;
+        this.retentionBonus = retentionBonus;
+        this.clock = clock;
+        this.accesses = TileAccessIndex.load(accessIndexPath);
+        this.tileLocks = new Object[TILE_LOCKS];
+        for (int i = 0; i < TILE_LOCKS; i++) tileLocks[i] = new Object();
+        this.evictor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "tile-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.execute(this::indexStoreInBackground);
+    }
+
+    /**
+     * Returns a tile store limiting the total size of the images of the given one, with the default
+     * retention bonus
+     *
+     * @param store           the limited tile store
+     * @param accessIndexPath the path of the file of the access index
+     * @param quotaBytes      the maximal total size in bytes of the images
+     * @return the tile store
+     * @throws IOException              in case of input/output error while reading the access index
+     * @throws IllegalArgumentException if the quota is not strictly positive
+     */
+    public static QuotaTileStore open(TileStore store, Path accessIndexPath, long quotaBytes) throws IOException {
+        return open(store, accessIndexPath, quotaBytes, DEFAULT_RETENTION_BONUS);
+    }
+
+    /**
+     * Returns a tile store limiting the total size of the images of the given one
+     *
+     * @param store           the limited tile store
+     * @param accessIndexPath the path of the file of the access index
+     * @param quotaBytes      the maximal total size in bytes of the images
+     * @param retentionBonus  the retention bonus, in minutes, as a function of the zoom level
+     * @return the tile store
+     * @throws IOException              in case of input/output error while reading the access index
+     * @throws IllegalArgumentException if the quota is not strictly positive
+     */
+    public static QuotaTileStore open(TileStore store, Path accessIndexPath, long quotaBytes,
+                                      IntUnaryOperator retentionBonus) throws IOException {
+        return new QuotaTileStore(store, accessIndexPath, quotaBytes, retentionBonus, System::currentTimeMillis);
+    }
+
+    /**
+     * Returns a tile store limiting the total size of the images of the given one, whose time is given
+     * in milliseconds by the given clock
+     */
+    static QuotaTileStore open(TileStore store, Path accessIndexPath, long quotaBytes,
+                               IntUnaryOperator retentionBonus, LongSupplier clock) throws IOException {
+        return new QuotaTileStore(store, accessIndexPath, quotaBytes, retentionBonus, clock);
+    }
+
+    /**
+     * Returns the current minute
+     */
+    private int currentMinute() {
+        return (int) (clock.getAsLong() / MILLIS_PER_MINUTE);
+    }
+
+    /**
+     * Returns the lock of the tile of given key
+     */
+    private Object tileLock(long key) {
+        return tileLocks[Long.hashCode(key) & (TILE_LOCKS - 1)];
+    }
+
+    /**
+     * Records an access to the tile of given key during the eviction, if one is running. Must be called
+     * while holding the lock of the access index.
+     */
+    private void recordAccessDuringEviction(long key) {
+        if (accessedDuringEviction != null) accessedDuringEviction.add(key);
+    }
+
+    @Override
+    public ByteBuffer read(TileManager.TileId tileId) throws IOException {
+        long key = PackedTileStore.key(tileId);
+        synchronized (tileLock(key)) {
+            ByteBuffer image = store.read(tileId);
+            if (image != null) {
+                synchronized (accesses) {
+                    recordAccessDuringEviction(key);
+                    if (!accesses.touch(key, currentMinute())) {
+                        accesses.put(key, image.remaining(), currentMinute());
+                        scheduleEvictionIfNeeded();
+                    }
+                }
+            }
+            return image;
+        }
+    }
+
+    /**
+     * Returns true iff the limited store contains the image of the given tile, which then counts as
+     * accessed
+     */
+    @Override
+    public boolean contains(TileManager.TileId tileId) throws IOException {
+        boolean contained = store.contains(tileId);
+        if (contained) {
+            long key = PackedTileStore.key(tileId);
+            synchronized (accesses) {
+                recordAccessDuringEviction(key);
+                accesses.touch(key, currentMinute());
+            }
+        }
+        return contained;
+    }
+
+    @Override
+    public void write(TileManager.TileId tileId, byte[] image) throws IOException {
+        long key = PackedTileStore.key(tileId);
+        synchronized (tileLock(key)) {
+            store.write(tileId, image);
+            synchronized (accesses) {
+                recordAccessDuringEviction(key);
+                accesses.put(key, image.length, currentMinute());
+                scheduleEvictionIfNeeded();
+            }
+        }
+    }
+
+    @Override
+    public void delete(TileManager.TileId tileId) throws IOException {
+        long key = PackedTileStore.key(tileId);
+        synchronized (tileLock(key)) {
+            store.delete(tileId);
+            synchronized (accesses) {
+                accesses.remove(key);
+            }
+        }
+    }
+
+    @Override
+    public void forEachTile(BiConsumer<TileManager.TileId, Integer> consumer) throws IOException {
+        store.forEachTile(consumer);
+    }
+
+    @Override
+    public void reclaimSpace() throws IOException {
+        store.reclaimSpace();
+    }
+
+    /**
+     * Returns the total size in bytes of the images of the store, as known by the access index
+     *
+     * @return the total size in bytes of the images
+     */
+    public long totalBytes() {
+        synchronized (accesses) {
+            return accesses.totalBytes();
+        }
+    }
+
+    /**
+     * Schedules an eviction on the background thread if the quota is exceeded and none is scheduled.
+     * Must be called while holding the lock of the access index.
+     */
+    private void scheduleEvictionIfNeeded() {
+        if (evictionScheduled || accesses.totalBytes() <= quotaBytes || evictor.isShutdown()) return;
+        evictionScheduled = true;
+        evictor.execute(() -> {
+            try {
+                evict();
+            } catch (IOException e) {
+                //the eviction is attempted again on the next write
+            }
+        });
+    }
+
+    /**
+     * Adds to the access index the tiles of the store it does not contain yet, typically the ones
+     * written before the access index was last saved, as if they had just been accessed
+     */
+    private void indexStoreInBackground() {
+        try {
+            int minute = currentMinute();
+            store.forEachTile((tileId, size) -> {
+                long key = PackedTileStore.key(tileId);
+                synchronized (accesses) {
+                    if (!accesses.contains(key)) accesses.put(key, size, minute);
+                }
+            });
+            synchronized (accesses) {
+                scheduleEvictionIfNeeded();
+            }
+        } catch (IOException e) {
+            //the tiles which are not indexed are not evicted
+        }
+    }
+
+    /**
+     * Deletes the tiles of lowest retention score until the total size of the images is under the low
+     * watermark, if it exceeds the quota, then reclaims the disk space and saves the access index
+     *
+     * @throws IOException in case of input/output error
+     */
+    void evict() throws IOException {
+        TileAccessIndex snapshot;
+        synchronized (accesses) {
+            evictionScheduled = false;
+            if (accesses.totalBytes() <= quotaBytes) return;
+            snapshot = accesses.copy();
+            accessedDuringEviction = new HashSet<>();
+        }
+        try {
+            evict(snapshot);
+        } finally {
+            synchronized (accesses) {
+                accessedDuringEviction = null;
+            }
+        }
+
+        store.reclaimSpace();
+        saveAccessIndex();
+    }
+
+    /**
+     * Deletes the tiles of lowest retention score of the given snapshot of the access index, until the
+     * total size of the images is under the low watermark
+     */
+    private void evict(TileAccessIndex snapshot) throws IOException {
+        //the retention score and the position of each entry in the snapshot, packed in a long to be sorted
+        long[] keys = new long[snapshot.size()];
+        int[] sizes = new int[snapshot.size()];
+        long[] order = new long[snapshot.size()];
+        int[] count = new int[1];
+        snapshot.forEach((key, size, minute) -> {
+            int i = count[0]++;
+            keys[i] = key;
+            sizes[i] = size;
+            long score = (long) minute + retentionBonus.applyAsInt(PackedTileStore.tileIdOf(key).zoomLevel());
+            order[i] = (score << Integer.SIZE) | i;
+        });
+        Arrays.sort(order);
+
+        long excessBytes = snapshot.totalBytes() - (long) (quotaBytes * LOW_WATERMARK);
+        for (int j = 0; j < order.length && excessBytes > 0; j++) {
+            int i = (int) order[j];
+            synchronized (tileLock(keys[i])) {
+                synchronized (accesses) {
+                    //a tile accessed or deleted since the snapshot is kept
+                    if (accessedDuringEviction.contains(keys[i]) || !accesses.contains(keys[i])) continue;
+                    accesses.remove(keys[i]);
+                }
+                store.delete(PackedTileStore.tileIdOf(keys[i]));
+            }
+            excessBytes -= sizes[i];
+        }
+    }
+
+    /**
+     * Saves the access index
+     */
+    private void saveAccessIndex() throws IOException {
+        TileAccessIndex snapshot;
+        synchronized (accesses) {
+            snapshot = accesses.copy();
+        }
+        snapshot.save(accessIndexPath);
+    }
+
+    /**
+     * Waits until the work scheduled on the background thread is done
+     */
+    void awaitBackgroundWork() {
+        try {
+            evictor.submit(() -> {}).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Stops the background thread, saves the access index and closes the limited store
+     *
+     * @throws IOException in case of input/output error
+     */
+    @Override
+    public void close() throws IOException {
+        evictor.shutdown();
+        try {
+            evictor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        saveAccessIndex();
+        store.close();
+    }
+}
@@ -0,0 +1,325 @@
+package ch.epfl.javelo.gui;
+
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.Preconditions;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.PointWebMercator;
+import ch.epfl.javelo.projection.SwissBounds;
+import ch.epfl.javelo.routing.Route;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A prefetcher of the tiles of the corridor of a route, so that they are in the disk cache before the
+ * rider loses connectivity
+ *
+ * <p>The corridor is made of all the tiles, for a range of zoom levels, closer to the polyline of the
+ * route than a given buffer. Its tiles are downloaded in the background through the tile manager,
+ * lowest zoom levels first and along the route, those already in the disk cache being skipped. The
+ * downloads are rate limited, and only a few of them are in flight at once, so that the visible tiles
+ * are always loaded first. A tile which cannot be downloaded is attempted again later.</p>
+ *
+ * <p>Prefetching is resumable: it can be paused and resumed, and the tiles not prefetched yet are
+ * saved when the prefetcher is closed, if a file is given, and prefetched once it is opened again.</p>
+ *
+ * @author Elias Mir(341277)
+ * @author Jan Staszewicz(341201)
+ */
+public final class RouteCorridorPrefetcher implements Closeable {
+
+    private final static int TILE_SIZE = 256;
+    private final static int MAX_ZOOM = 19;
+    private final static int MAX_IN_FLIGHT = 2;
+    private final static int MAX_ATTEMPTS = 3;
+    private final static int CLOSE_TIMEOUT_SECONDS = 10;
+
+    private final TileManager tileManager;
+    private final Path statePath;
+    private final double bufferMeters;
+    private final int minZoomLevel;
+    private final int maxZoomLevel;
+    private final long intervalNanos;
+    private final Thread worker;
+
+    //guarded by this
+    private final Deque<TileManager.TileId> remaining;
+    private final Map<TileManager.TileId, Integer> failures;
+    private final Set<TileManager.TileId> inFlight;
+    private int generation;
+    private boolean paused;
+    private boolean closed;
+
+    /**
+     * Constructs a prefetcher of the corridor of routes, which does not save the tiles not prefetched yet
+     *
+     * @param tileManager    the tile manager through which tiles are downloaded
+     * @param bufferMeters   the width in meters of the corridor on each side of the route
+     * @param minZoomLevel   the lowest zoom level prefetched
+     * @param maxZoomLevel   the highest zoom level prefetched
+     * @param tilesPerSecond the maximal number of tiles prefetched per second
+     * @throws IllegalArgumentException if the buffer or the rate is not strictly positive, or if the zoom
+     *                                  range is invalid
+     */
+    public RouteCorridorPrefetcher(TileManager tileManager, double bufferMeters, int minZoomLevel,
+                                   int maxZoomLevel, double tilesPerSecond) {
+        this(tileManager, null, bufferMeters, minZoomLevel, maxZoomLevel, tilesPerSecond, List.of());
+    }
+
+    /**
+     * Constructs a prefetcher of the corridor of routes, which resumes the prefetching saved in the
+     * given file, if it exists, and saves the tiles not prefetched yet to it when closed
+     *
+     * @param tileManager    the tile manager through which tiles are downloaded
+     * @param statePath      the path of the file of the tiles not prefetched yet
+     * @param bufferMeters   the width in meters of the corridor on each side of the route
+     * @param minZoomLevel   the lowest zoom level prefetched
+     * @param maxZoomLevel   the highest zoom level prefetched
+     * @param tilesPerSecond the maximal number of tiles prefetched per second
+     * @throws IOException              in case of input/output error while reading the file
+     * @throws IllegalArgumentException if the buffer or the rate is not strictly positive, or if the zoom
+     *                                  range is invalid
+     */
+    public RouteCorridorPrefetcher(TileManager tileManager, Path statePath, double bufferMeters,
+                                   int minZoomLevel, int maxZoomLevel, double tilesPerSecond) throws IOException {
+        this(tileManager, statePath, bufferMeters, minZoomLevel, maxZoomLevel, tilesPerSecond, loadState(statePath));
+    }
+
+    private RouteCorridorPrefetcher(TileManager tileManager, Path statePath, double bufferMeters, int minZoomLevel,
+                                    int maxZoomLevel, double tilesPerSecond, List<TileManager.TileId> resumed) {
+        Preconditions.checkArgument(bufferMeters > 0 && tilesPerSecond > 0
+                && 0 <= minZoomLevel && minZoomLevel <= maxZoomLevel && maxZoomLevel <= MAX_ZOOM);
+        this.tileManager = tileManager;
+        this.statePath = statePath;
+        this.bufferMeters = bufferMeters;
+        this.minZoomLevel = minZoomLevel;
+        this.maxZoomLevel = maxZoomLevel;
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / tilesPerSecond);
+        this.remaining = new ArrayDeque<>(resumed);
+        this.failures = new HashMap<>();
+        this.inFlight = new LinkedHashSet<>();
+
+        this.worker = new Thread(this::prefetchTiles, "tile-prefetcher");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Returns the tiles of the corridor of the polyline made of the given points, lowest zoom levels
+     * first and, for each zoom level, in the order of the polyline
+     *
+     * @param points       the points of the polyline
+     * @param bufferMeters the width in meters of the corridor on each side of the polyline
+     * @param minZoomLevel the lowest zoom level
+     * @param maxZoomLevel the highest zoom level
+     * @return the tiles of the corridor, without duplicates
+     */
+    static List<TileManager.TileId> corridorTiles(List<PointCh> points, double bufferMeters,
+                                                 int minZoomLevel, int maxZoomLevel) {
+        Set<TileManager.TileId> tiles = new LinkedHashSet<>();
+        if (points.isEmpty()) return List.of();
+        for (int zoomLevel = minZoomLevel; zoomLevel <= maxZoomLevel; zoomLevel++) {
+            for (int i = 0; i < Math.max(1, points.size() - 1); i++) {
+                PointCh from = points.get(i);
+                PointCh to = points.get(Math.min(i + 1, points.size() - 1));
+
+                //squares of half side the buffer, centered every half buffer, cover the corridor
+                int steps = Math.max(1, (int) Math.ceil(2 * from.distanceTo(to) / bufferMeters));
+                for (int s = 0; s <= steps; s++) {
+                    double e = from.e() + (to.e() - from.e()) * s / steps;
+                    double n = from.n() + (to.n() - from.n()) * s / steps;
+                    addTilesAround(tiles, zoomLevel, e, n, bufferMeters);
+                }
+            }
+        }
+        return new ArrayList<>(tiles);
+    }
+
+    /**
+     * Adds the tiles of the given zoom level covering the square of the given half side centered on the
+     * given point, clamped to the bounds of Switzerland
+     */
+    private static void addTilesAround(Set<TileManager.TileId> tiles, int zoomLevel,
+                                       double e, double n, double halfSide) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int corner = 0; corner < 4; corner++) {
+            double cornerE = Math2.clamp(SwissBounds.MIN_E, e + (corner % 2 == 0 ? -halfSide : halfSide), SwissBounds.MAX_E);
+            double cornerN = Math2.clamp(SwissBounds.MIN_N, n + (corner / 2 == 0 ? -halfSide : halfSide), SwissBounds.MAX_N);
+            PointWebMercator point = PointWebMercator.ofPointCh(new PointCh(cornerE, cornerN));
+            minX = Math.min(minX, point.xAtZoomLevel(zoomLevel));
+            maxX = Math.max(maxX, point.xAtZoomLevel(zoomLevel));
+            minY = Math.min(minY, point.yAtZoomLevel(zoomLevel));
+            maxY = Math.max(maxY, point.yAtZoomLevel(zoomLevel));
+        }
+        for (int x = (int) (minX / TILE_SIZE); x <= (int) (maxX / TILE_SIZE); x++) {
+            for (int y = (int) (minY / TILE_SIZE); y <= (int) (maxY / TILE_SIZE); y++) {
+                if (TileManager.TileId.isValid(zoomLevel, x, y)) tiles.add(new TileManager.TileId(zoomLevel, x, y));
+            }
+        }
+    }
+
+    /**
+     * Prefetches the corridor of the given route, replacing the prefetching of the previous one. The
+     * tiles of the previous route already in flight are still downloaded.
+     *
+     * @param route the route, or null to stop prefetching
+     */
+    public void prefetch(Route route) {
+        prefetch(route == null ? List.of() : corridorTiles(route.points(), bufferMeters, minZoomLevel, maxZoomLevel));
+    }
+
+    /**
+     * Prefetches the given tiles, replacing the tiles not prefetched yet
+     *
+     * @param tiles the tiles
+     */
+    void prefetch(List<TileManager.TileId> tiles) {
+        synchronized (this) {
+            generation++;
+            remaining.clear();
+            remaining.addAll(tiles);
+            failures.clear();
+            notifyAll();
+        }
+    }
+
+    /**
+     * Pauses the prefetching, the downloads in flight being completed
+     */
+    public synchronized void pause() {
+        paused = true;
+    }
+
+    /**
+     * Resumes the prefetching
+     */
+    public synchronized void resume() {
+        paused = false;
+        notifyAll();
+    }
+
+    /**
+     * Returns the number of tiles not prefetched yet, including those in flight
+     *
+     * @return the number of tiles not prefetched yet
+     */
+    public synchronized int remainingTiles() {
+        return remaining.size() + inFlight.size();
+    }
+
+    /**
+     * Waits until all the tiles have been prefetched or have failed too many times
+     *
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    synchronized void awaitCompletion() throws InterruptedException {
+        while (!remaining.isEmpty() || !inFlight.isEmpty()) wait();
+    }
+
+    /**
+     * Downloads the remaining tiles, one at a time, at the given rate, with at most MAX_IN_FLIGHT
+     * downloads in flight
+     */
+    private void prefetchTiles() {
+        long nextStart = System.nanoTime();
+        try {
+            while (true) {
+                TileManager.TileId tileId;
+                int tileGeneration;
+                synchronized (this) {
+                    while (!closed && (paused || remaining.isEmpty() || inFlight.size() >= MAX_IN_FLIGHT)) wait();
+                    if (closed) return;
+                    tileId = remaining.poll();
+                    tileGeneration = generation;
+                    inFlight.add(tileId);
+                }
+
+                tileManager.storeInBackground(tileId).whenComplete((downloaded, error) -> {
+                    synchronized (this) {
+                        inFlight.remove(tileId);
+                        int failed = error == null ? 0 : failures.merge(tileId, 1, Integer::sum);
+                        //a failed tile of the current route is attempted again after the others
+                        if (failed > 0 && failed < MAX_ATTEMPTS && tileGeneration == generation) remaining.add(tileId);
+                        notifyAll();
+                    }
+                });
+
+                //the rate limit
+                nextStart = Math.max(nextStart + intervalNanos, System.nanoTime());
+                long delay = nextStart - System.nanoTime();
+                if (delay > 0) TimeUnit.NANOSECONDS.sleep(delay);
+            }
+        } catch (InterruptedException e) {
+            //the prefetcher is closed
+        }
+    }
+
+    /**
+     * Returns the tiles not prefetched yet saved in the given file, if it exists
+     */
+    private static List<TileManager.TileId> loadState(Path statePath) throws IOException {
+        List<TileManager.TileId> tiles = new ArrayList<>();
+        if (!Files.exists(statePath)) return tiles;
+        try (DataInputStream stream = new DataInputStream(new BufferedInputStream(Files.newInputStream(statePath)))) {
+            int count = stream.readInt();
+            for (int i = 0; i < count; i++) {
+                tiles.add(new TileManager.TileId(stream.readInt(), stream.readInt(), stream.readInt()));
+            }
+        } catch (EOFException e) {
+            //a truncated file only loses the tiles which were not read
+        }
+        return tiles;
+    }
+
+    /**
+     * Stops the prefetching and saves the tiles not prefetched yet, including those in flight, to the
+     * file, if one was given
+     *
+     * @throws IOException in case of input/output error
+     */
+    @Override
+    public void close() throws IOException {
+        List<TileManager.TileId> tiles;
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+            tiles = new ArrayList<>(inFlight);
+            tiles.addAll(remaining);
+        }
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(CLOSE_TIMEOUT_SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (statePath == null) return;
+
+        Path temporary = statePath.resolveSibling(statePath.getFileName() + ".tmp");
+        try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            stream.writeInt(tiles.size());
+            for (TileManager.TileId tileId : tiles) {
+                stream.writeInt(tileId.zoomLevel());
+                stream.writeInt(tileId.x());
+                stream.writeInt(tileId.y());
+            }
+        }
+        Files.move(temporary, statePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -2,20 +2,26 @@ package ch.epfl.javelo.gui;
 
 import ch.epfl.javelo.projection.PointCh;
 import ch.epfl.javelo.projection.PointWebMercator;
+import ch.epfl.javelo.routing.Route;
+import javafx.application.Platform;
 import javafx.beans.Observable;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.ReadOnlyObjectProperty;
 import javafx.geometry.Point2D;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
-import javafx.scene.shape.Polyline;
-
-import java.util.ArrayList;
-import java.util.List;
+import javafx.scene.shape.StrokeLineCap;
+import javafx.scene.shape.StrokeLineJoin;
 
 /**
  * Route manager for JaVelo
  *
+ * <p>The route is drawn on a canvas, at most once per pulse, and only the blocks of segments of the
+ * projected route which intersect the visible part of the map are drawn.</p>
+ *
  * @author Elias Mir(341277)
  * @author Jan Staszewicz(341201)
  */
@@ -23,9 +29,14 @@ public final class RouteManager {
     private final RouteBean routeBean;
     private final ReadOnlyObjectProperty<MapViewParameters> mapProperty;
     private final Pane pane;
-    private final Polyline line;
+    private final Canvas canvas;
     private final Circle circle;
+    //projection of the current route, computed once per route
+    private ProjectedRoute projectedRoute;
+    private boolean redrawNeeded;
     private final static int CIRCLE_RADIUS = 5;
+    private final static Color ROUTE_STROKE = Color.hsb(0, 1, 1, 0.6);
+    private final static double ROUTE_STROKE_WIDTH = 4;
 
     /**
      * Constructs a route manager
@@ -41,9 +52,19 @@ public final class RouteManager {
         pane = new Pane();
         pane.setPickOnBounds(false);
 
-        line = new Polyline();
-        line.setId("route");
-        pane.getChildren().add(line);
+        canvas = new Canvas();
+        canvas.setMouseTransparent(true);
+        canvas.widthProperty().bind(pane.widthProperty());
+        canvas.heightProperty().bind(pane.heightProperty());
+        pane.getChildren().add(canvas);
+
+        //Sets canvas redraw conditions
+        canvas.sceneProperty().addListener((p, oldS, newS) -> {
+            assert oldS == null;
+            newS.addPreLayoutPulseListener(this::redrawIfNeeded);
+        });
+        canvas.widthProperty().addListener((o, oV, nV) -> redrawOnNextPulse());
+        canvas.heightProperty().addListener((o, oV, nV) -> redrawOnNextPulse());
 
         circle = new Circle(CIRCLE_RADIUS);
         circle.setId("highlight");
@@ -56,18 +77,12 @@ public final class RouteManager {
         //Redraws the circle and the line when the parameters of the basemap changes
         this.mapProperty.addListener((o, oV, nV) -> {
             redrawCircle();
-
-            if (oV.zoomLevel() != nV.zoomLevel()) {
-                redrawLine();
-            } else {
-                line.setLayoutX(-nV.x());
-                line.setLayoutY(-nV.y());
-            }
+            redrawOnNextPulse();
         });
 
-        //Redraws the circle and the line when the waypoints changes
-        this.routeBean.getWaypoints().addListener((Observable o) -> {
-            redrawLine();
+        //Redraws the circle and the line when the route changes
+        this.routeBean.getRouteProperty().addListener((Observable o) -> {
+            redrawOnNextPulse();
             redrawCircle();
         });
 
@@ -89,32 +104,66 @@ public final class RouteManager {
 
 
     /**
-     * Redraws the line when it is possible
+     * Redraws the line if needed, drawing only the blocks of segments which intersect the visible
+     * part of the map
      */
-    private void redrawLine() {
-        if (routeBean.getRoute() != null) {
+    private void redrawIfNeeded() {
+        if (!redrawNeeded) return;
+        redrawNeeded = false;
 
-            MapViewParameters mvp = this.mapProperty.get();
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
 
-            line.getPoints().clear();
-            List<Double> pointList = new ArrayList<>();
-            List<PointCh> points = routeBean.getRoute().points();
+        Route route = routeBean.getRoute();
+        if (route == null) {
+            projectedRoute = null;
+            return;
+        }
+        if (projectedRoute == null || projectedRoute.route() != route) {
+            projectedRoute = new ProjectedRoute(route);
+        }
 
-            for (PointCh pointCh : points) {
-                PointWebMercator point = PointWebMercator.ofPointCh(pointCh);
-                int zoomLevel = mvp.zoomLevel();
-                
-                pointList.add(point.xAtZoomLevel(zoomLevel));
-                pointList.add(point.yAtZoomLevel(zoomLevel));
+        MapViewParameters mvp = mapProperty.get();
+        int zoomLevel = mvp.zoomLevel();
+        double[] coordinates = projectedRoute.simplifiedCoordinates(zoomLevel);
+
+        //the viewport is enlarged by the width of the line, so that segments just outside of it are drawn
+        double minX = mvp.x() - ROUTE_STROKE_WIDTH;
+        double minY = mvp.y() - ROUTE_STROKE_WIDTH;
+        double maxX = mvp.x() + canvas.getWidth() + ROUTE_STROKE_WIDTH;
+        double maxY = mvp.y() + canvas.getHeight() + ROUTE_STROKE_WIDTH;
+
+        gc.setStroke(ROUTE_STROKE);
+        gc.setLineWidth(ROUTE_STROKE_WIDTH);
+        gc.setLineJoin(StrokeLineJoin.ROUND);
+        gc.setLineCap(StrokeLineCap.BUTT);
+        gc.beginPath();
+
+        int lastPoint = coordinates.length / 2 - 1;
+        int previousBlock = -2;
+        for (int block = 0; block < projectedRoute.blockCount(zoomLevel); block++) {
+            if (!projectedRoute.blockIntersects(zoomLevel, block, minX, minY, maxX, maxY)) continue;
+
+            int first = block * ProjectedRoute.SEGMENTS_PER_BLOCK;
+            int last = Math.min(first + ProjectedRoute.SEGMENTS_PER_BLOCK, lastPoint);
+            //the path is only interrupted between blocks which are not consecutive
+            if (block != previousBlock + 1) {
+                gc.moveTo(coordinates[2 * first] - mvp.x(), coordinates[2 * first + 1] - mvp.y());
             }
-
-            line.getPoints().addAll(pointList);
-            line.setLayoutX(-mvp.x());
-            line.setLayoutY(-mvp.y());
-            line.setVisible(true);
-        } else {
-            line.setVisible(false);
+            for (int i = first + 1; i <= last; i++) {
+                gc.lineTo(coordinates[2 * i] - mvp.x(), coordinates[2 * i + 1] - mvp.y());
+            }
+            previousBlock = block;
         }
+        gc.stroke();
+    }
+
+    /**
+     * Redraws on next pulse
+     */
+    private void redrawOnNextPulse() {
+        redrawNeeded = true;
+        Platform.requestNextPulse();
     }
 
     /**
@@ -125,10 +174,11 @@ public final class RouteManager {
             PointCh pt_ch = routeBean.getRoute().pointAt(routeBean.getHighlightedPosition());
             PointWebMercator point = PointWebMercator.ofPointCh(pt_ch);
 
-            int zoomLevel = mapProperty.get().zoomLevel();
+            MapViewParameters mvp = mapProperty.get();
+            int zoomLevel = mvp.zoomLevel();
 
-            circle.setLayoutX(point.xAtZoomLevel(zoomLevel) + line.getLayoutX());
-            circle.setLayoutY(point.yAtZoomLevel(zoomLevel) + line.getLayoutY());
+            circle.setLayoutX(point.xAtZoomLevel(zoomLevel) - mvp.x());
+            circle.setLayoutY(point.yAtZoomLevel(zoomLevel) - mvp.y());
             circle.setVisible(true);
         } else {
             circle.setVisible(false);
@@ -156,7 +206,6 @@ public final class RouteManager {
 
             routeBean.getWaypoints().add(index, waypoint);
         } else {
-            line.setVisible(false);
             circle.setVisible(false);
         }
     }
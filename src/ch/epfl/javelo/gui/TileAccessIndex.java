@@ -0,0 +1,262 @@
+package ch.epfl.javelo.gui;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * A compact index of the tiles of a store, giving for each one the size of its image and the minute
+ * of its last access
+ *
+ * <p>The tiles are identified by their key, as given by PackedTileStore.key, and stored in an open
+ * addressing hash table made of three arrays, using 16 bytes per tile. The index is not thread-safe.</p>
+ *
+ * @author Elias Mir(341277)
+ * @author Jan Staszewicz(341201)
+ */
+final class TileAccessIndex {
+
+    private final static long EMPTY = -1;
+    private final static int INITIAL_CAPACITY = 1 << 10;
+    private final static double MAX_LOAD_FACTOR = 0.7;
+
+    private long[] keys;
+    private int[] sizes;
+    private int[] minutes;
+    private int count;
+    private long totalBytes;
+
+    /**
+     * Consumer of the entries of the index
+     */
+    interface EntryConsumer {
+        void accept(long key, int size, int minute);
+    }
+
+    /**
+     * Constructs an empty index
+     */
+    TileAccessIndex() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        sizes = new int[capacity];
+        minutes = new int[capacity];
+    }
+
+    /**
+     * Returns the slot where the search for the given key starts
+     */
+    private int homeSlotOf(long key) {
+        return (int) ((key * 0x9E37_79B9_7F4A_7C15L) >>> 32) & (keys.length - 1);
+    }
+
+    /**
+     * Returns the slot containing the given key, or the empty slot where it would be inserted
+     */
+    private int slotOf(long key) {
+        int mask = keys.length - 1;
+        int slot = homeSlotOf(key);
+        while (keys[slot] != EMPTY && keys[slot] != key) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /**
+     * Adds the tile of given key, or updates it if the index already contains it
+     *
+     * @param key    the key of the tile
+     * @param size   the size in bytes of its image
+     * @param minute the minute of its last access
+     */
+    void put(long key, int size, int minute) {
+        int slot = slotOf(key);
+        if (keys[slot] == EMPTY) {
+            if (count + 1 > keys.length * MAX_LOAD_FACTOR) {
+                grow();
+                slot = slotOf(key);
+            }
+            keys[slot] = key;
+            count++;
+        } else {
+            totalBytes -= sizes[slot];
+        }
+        sizes[slot] = size;
+        minutes[slot] = minute;
+        totalBytes += size;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldSizes = sizes;
+        int[] oldMinutes = minutes;
+        allocate(2 * oldKeys.length);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY) continue;
+            int slot = slotOf(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            sizes[slot] = oldSizes[i];
+            minutes[slot] = oldMinutes[i];
+        }
+    }
+
+    /**
+     * Sets the minute of the last access to the tile of given key, if the index contains it
+     *
+     * @param key    the key of the tile
+     * @param minute the minute of its last access
+     * @return true iff the index contains the tile
+     */
+    boolean touch(long key, int minute) {
+        int slot = slotOf(key);
+        if (keys[slot] == EMPTY) return false;
+        minutes[slot] = Math.max(minutes[slot], minute);
+        return true;
+    }
+
+    /**
+     * Returns true iff the index contains the tile of given key
+     *
+     * @param key the key of the tile
+     * @return true iff the index contains the tile
+     */
+    boolean contains(long key) {
+        return keys[slotOf(key)] != EMPTY;
+    }
+
+    /**
+     * Returns the minute of the last access to the tile of given key, or -1 if the index does not
+     * contain it
+     *
+     * @param key the key of the tile
+     * @return the minute of its last access, or -1
+     */
+    int minuteOf(long key) {
+        int slot = slotOf(key);
+        return keys[slot] == EMPTY ? -1 : minutes[slot];
+    }
+
+    /**
+     * Removes the tile of given key from the index, if it contains it
+     *
+     * @param key the key of the tile
+     */
+    void remove(long key) {
+        int mask = keys.length - 1;
+        int slot = slotOf(key);
+        if (keys[slot] == EMPTY) return;
+        totalBytes -= sizes[slot];
+        count--;
+
+        //the following entries of the cluster are shifted back, so that they stay reachable
+        int hole = slot;
+        int next = (slot + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = homeSlotOf(keys[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                sizes[hole] = sizes[next];
+                minutes[hole] = minutes[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = EMPTY;
+    }
+
+    /**
+     * Returns the number of tiles in the index
+     *
+     * @return the number of tiles in the index
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Returns the total size in bytes of the images of the tiles in the index
+     *
+     * @return the total size in bytes of the images
+     */
+    long totalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Passes all the entries of the index to the given consumer, in no particular order
+     *
+     * @param consumer the consumer
+     */
+    void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) consumer.accept(keys[i], sizes[i], minutes[i]);
+        }
+    }
+
+    /**
+     * Returns a copy of this index
+     *
+     * @return a copy of this index
+     */
+    TileAccessIndex copy() {
+        TileAccessIndex copy = new TileAccessIndex();
+        copy.keys = keys.clone();
+        copy.sizes = sizes.clone();
+        copy.minutes = minutes.clone();
+        copy.count = count;
+        copy.totalBytes = totalBytes;
+        return copy;
+    }
+
+    /**
+     * Writes the index to the given file, atomically replacing it
+     *
+     * @param path the path of the file
+     * @throws IOException in case of input/output error
+     */
+    void save(Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream stream = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            stream.writeInt(count);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == EMPTY) continue;
+                stream.writeLong(keys[i]);
+                stream.writeInt(sizes[i]);
+                stream.writeInt(minutes[i]);
+            }
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the index written to the given file, or returns an empty index if the file does not exist
+     * or is truncated
+     *
+     * @param path the path of the file
+     * @return the index
+     * @throws IOException in case of input/output error
+     */
+    static TileAccessIndex load(Path path) throws IOException {
+        TileAccessIndex index = new TileAccessIndex();
+        if (!Files.exists(path)) return index;
+        try (DataInputStream stream = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            int count = stream.readInt();
+            for (int i = 0; i < count; i++) {
+                index.put(stream.readLong(), stream.readInt(), stream.readInt());
+            }
+        } catch (EOFException e) {
+            return new TileAccessIndex();
+        }
+        return index;
+    }
+}
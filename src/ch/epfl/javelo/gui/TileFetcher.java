@@ -0,0 +1,372 @@
+package ch.epfl.javelo.gui;
+
+import ch.epfl.javelo.Preconditions;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A downloader of tiles from a tile server
+ *
+ * <p>All the requests go through a single HTTP client, which reuses its connections and uses HTTP/2
+ * when the server supports it. The number of simultaneous requests to a given host is bounded, each
+ * request has a timeout, and the requests which fail because of the network or of the server are
+ * retried after an exponentially increasing delay, or after the delay asked by the server in its
+ * Retry-After header.</p>
+ *
+ * <p>The validators of the downloaded tiles (ETag and Last-Modified headers) and their expiry time,
+ * given by the Cache-Control or Expires headers, are remembered, and saved to a file if one is given.
+ * Once a cached tile has expired, it is revalidated with a conditional request, so that it is only
+ * downloaded again if it has changed. Tiles whose validators are unknown, typically because they were
+ * downloaded by another program, are considered as fresh during the default lifetime after the
+ * validators were first saved, and are then revalidated once, which records their validators. The
+ * validators of the tiles which are no longer cached can be dropped with
+ * {@link #retainValidators(TileStore)}.</p>
+ *
+ * @author Elias Mir(341277)
+ * @author Jan Staszewicz(341201)
+ */
+public final class TileFetcher implements TileSource, Closeable {
+
+    private final static String USER_AGENT = "JaVelo";
+    private final static Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private final static Duration REQUEST_TIMEOUT = Duration.ofSeconds(15);
+    //the tile usage policy of OpenStreetMap asks for at most two simultaneous downloads
+    private final static int DEFAULT_MAX_CONCURRENT_REQUESTS = 2;
+    private final static int MAX_ATTEMPTS = 4;
+    private final static long DEFAULT_INITIAL_BACKOFF_MILLIS = 250;
+    //the longest delay asked by a server before a retry, longer delays make the request fail at once
+    private final static long MAX_RETRY_AFTER_MILLIS = 30_000;
+    //the minimal lifetime of a tile in the cache, according to the tile usage policy of OpenStreetMap
+    private final static long DEFAULT_LIFETIME_MILLIS = Duration.ofDays(7).toMillis();
+    private final static Pattern MAX_AGE = Pattern.compile("max-age=(\\d+)");
+    private final static int HTTP_OK = 200;
+    private final static int HTTP_NOT_MODIFIED = 304;
+    private final static int HTTP_TOO_MANY_REQUESTS = 429;
+    private final static int HTTP_SERVER_ERROR = 500;
+    private final static int HTTP_SERVICE_UNAVAILABLE = 503;
+
+    private final String baseUri;
+    private final Path validatorsPath;
+    private final int maxConcurrentRequests;
+    private final long initialBackoffMillis;
+    private final LongSupplier clock;
+    private final HttpClient client;
+    private final Map<String, Semaphore> hostPermits;
+    private final Map<TileManager.TileId, Validators> validators;
+    //the time from which the tiles whose validators are unknown are considered as downloaded
+    private volatile long unknownSince;
+
+    /**
+     * The validators and the expiry time, in milliseconds since the epoch, of a downloaded tile
+     */
+    private record Validators(String eTag, String lastModified, long expiresAt) {}
+
+    /**
+     * Constructs a tile fetcher downloading tiles from the given server, without saving the validators
+     *
+     * @param baseUri the base URI of the tile server, for example https://tile.openstreetmap.org
+     */
+    public TileFetcher(String baseUri) {
+        this(baseUri, null, DEFAULT_MAX_CONCURRENT_REQUESTS, DEFAULT_INITIAL_BACKOFF_MILLIS, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructs a tile fetcher downloading tiles from the given server, and saving the validators of
+     * the tiles in the given file when closed
+     *
+     * @param baseUri        the base URI of the tile server, for example https://tile.openstreetmap.org
+     * @param validatorsPath the path of the file of the validators
+     * @throws IOException in case of input/output error while reading the validators
+     */
+    public TileFetcher(String baseUri, Path validatorsPath) throws IOException {
+        this(baseUri, validatorsPath, DEFAULT_MAX_CONCURRENT_REQUESTS, DEFAULT_INITIAL_BACKOFF_MILLIS,
+                System::currentTimeMillis);
+        loadValidators();
+    }
+
+    /**
+     * Constructs a tile fetcher downloading tiles from the given server with at most the given number
+     * of simultaneous requests, and saving the validators of the tiles in the given file when closed.
+     * Meant for bulk downloads from servers allowing them.
+     *
+     * @param baseUri               the base URI of the tile server
+     * @param validatorsPath        the path of the file of the validators, or null
+     * @param maxConcurrentRequests the maximal number of simultaneous requests to a host
+     * @throws IOException              in case of input/output error while reading the validators
+     * @throws IllegalArgumentException if the number of requests is not strictly positive
+     */
+    public TileFetcher(String baseUri, Path validatorsPath, int maxConcurrentRequests) throws IOException {
+        this(baseUri, validatorsPath, maxConcurrentRequests, DEFAULT_INITIAL_BACKOFF_MILLIS, System::currentTimeMillis);
+        if (validatorsPath != null) loadValidators();
+    }
+
+    /**
+     * Constructs a tile fetcher with the given limits, whose time is given in milliseconds by the
+     * given clock
+     */
+    TileFetcher(String baseUri, Path validatorsPath, int maxConcurrentRequests, long initialBackoffMillis,
+                LongSupplier clock) {
+        Preconditions.checkArgument(maxConcurrentRequests > 0 && initialBackoffMillis >= 0);
+        this.baseUri = baseUri;
+        this.validatorsPath = validatorsPath;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.clock = clock;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.hostPermits = new ConcurrentHashMap<>();
+        this.validators = new ConcurrentHashMap<>();
+        this.unknownSince = clock.getAsLong();
+    }
+
+    /**
+     * Downloads the image of the given tile
+     *
+     * @param tileId the tileId of the image
+     * @return the compressed image
+     * @throws IOException if the image cannot be downloaded
+     */
+    @Override
+    public byte[] fetch(TileManager.TileId tileId) throws IOException {
+        return request(tileId, false);
+    }
+
+    /**
+     * Returns true iff the cached image of the given tile has expired and must be revalidated
+     *
+     * @param tileId the tileId of the image
+     * @return true iff the cached image has expired
+     */
+    @Override
+    public boolean isStale(TileManager.TileId tileId) {
+        Validators known = validators.get(tileId);
+        long expiresAt = known == null ? unknownSince + DEFAULT_LIFETIME_MILLIS : known.expiresAt();
+        return expiresAt <= clock.getAsLong();
+    }
+
+    /**
+     * Drops the validators of the tiles which are not in the given store, typically because they have
+     * been evicted from it
+     *
+     * @param store the tile store
+     * @throws IOException in case of input/output error while reading the store
+     */
+    public void retainValidators(TileStore store) throws IOException {
+        for (TileManager.TileId tileId : validators.keySet()) {
+            if (!store.contains(tileId)) validators.remove(tileId);
+        }
+    }
+
+    /**
+     * Returns the number of tiles whose validators are known
+     *
+     * @return the number of tiles whose validators are known
+     */
+    int validatorsCount() {
+        return validators.size();
+    }
+
+    /**
+     * Revalidates the cached image of the given tile, with a conditional request if its validators are
+     * known
+     *
+     * @param tileId the tileId of the image
+     * @return the new compressed image, or null if the cached one has not changed
+     * @throws IOException if the image cannot be revalidated
+     */
+    @Override
+    public byte[] revalidate(TileManager.TileId tileId) throws IOException {
+        return request(tileId, true);
+    }
+
+    /**
+     * Sends the request for the image of the given tile, conditional if asked and possible, retrying
+     * it if it fails because of the network or of the server
+     */
+    private byte[] request(TileManager.TileId tileId, boolean conditional) throws IOException {
+        URI uri = URI.create(baseUri + "/" + tileId.zoomLevel() + "/" + tileId.x() + "/" + tileId.y() + ".png");
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(REQUEST_TIMEOUT)
+                .header("User-Agent", USER_AGENT)
+                .GET();
+        Validators known = validators.get(tileId);
+        if (conditional && known != null) {
+            if (known.eTag() != null) builder.header("If-None-Match", known.eTag());
+            if (known.lastModified() != null) builder.header("If-Modified-Since", known.lastModified());
+        }
+        HttpRequest request = builder.build();
+
+        Semaphore permits = hostPermits.computeIfAbsent(uri.getHost(), h -> new Semaphore(maxConcurrentRequests));
+        IOException failure = null;
+        long retryAfterMillis = -1;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            if (attempt > 0) sleep(retryAfterMillis >= 0 ? retryAfterMillis : initialBackoffMillis << (attempt - 1));
+            retryAfterMillis = -1;
+            HttpResponse<byte[]> response;
+            try {
+                permits.acquire();
+                try {
+                    response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                } finally {
+                    permits.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while downloading " + tileId);
+            } catch (IOException e) {
+                failure = e;
+                continue;
+            }
+
+            int status = response.statusCode();
+            if (status == HTTP_OK) {
+                validators.put(tileId, validatorsOf(response.headers(), known));
+                return response.body();
+            } else if (status == HTTP_NOT_MODIFIED && conditional) {
+                validators.put(tileId, validatorsOf(response.headers(), known));
+                return null;
+            } else if (status == HTTP_TOO_MANY_REQUESTS || status >= HTTP_SERVER_ERROR) {
+                failure = new IOException("HTTP status " + status + " for " + uri);
+                if (status == HTTP_TOO_MANY_REQUESTS || status == HTTP_SERVICE_UNAVAILABLE) {
+                    retryAfterMillis = retryAfterMillis(response.headers());
+                    if (retryAfterMillis > MAX_RETRY_AFTER_MILLIS) throw failure;
+                }
+            } else {
+                throw new IOException("HTTP status " + status + " for " + uri);
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * Returns the delay in milliseconds asked by the Retry-After header of a response, given in seconds
+     * or as a date, or -1 if there is none
+     */
+    private long retryAfterMillis(HttpHeaders headers) {
+        String retryAfter = headers.firstValue("Retry-After").orElse(null);
+        if (retryAfter == null) return -1;
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                long date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+                        .toInstant().toEpochMilli();
+                return Math.max(0, date - clock.getAsLong());
+            } catch (DateTimeParseException e2) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Sleeps during the given number of milliseconds
+     */
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Returns the validators given by the headers of a response, the previous ones being kept if the
+     * response does not contain new ones
+     */
+    private Validators validatorsOf(HttpHeaders headers, Validators previous) {
+        String eTag = headers.firstValue("ETag").orElse(previous == null ? null : previous.eTag());
+        String lastModified = headers.firstValue("Last-Modified")
+                .orElse(previous == null ? null : previous.lastModified());
+
+        long now = clock.getAsLong();
+        long expiresAt = now + DEFAULT_LIFETIME_MILLIS;
+        Matcher maxAge = MAX_AGE.matcher(headers.firstValue("Cache-Control").orElse(""));
+        if (maxAge.find()) {
+            expiresAt = now + Long.parseLong(maxAge.group(1)) * 1000;
+        } else if (headers.firstValue("Expires").isPresent()) {
+            try {
+                expiresAt = ZonedDateTime.parse(headers.firstValue("Expires").get(),
+                        DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                //the default lifetime is used
+            }
+        }
+        return new Validators(eTag, lastModified, expiresAt);
+    }
+
+    /**
+     * Reads the validators saved in the file, if it exists, followed by the time from which the tiles
+     * whose validators are unknown are considered as downloaded
+     */
+    void loadValidators() throws IOException {
+        if (!Files.exists(validatorsPath)) return;
+        try (DataInputStream stream = new DataInputStream(new BufferedInputStream(Files.newInputStream(validatorsPath)))) {
+            int count = stream.readInt();
+            for (int i = 0; i < count; i++) {
+                TileManager.TileId tileId = new TileManager.TileId(stream.readInt(), stream.readInt(), stream.readInt());
+                String eTag = stream.readUTF();
+                String lastModified = stream.readUTF();
+                long expiresAt = stream.readLong();
+                validators.put(tileId, new Validators(
+                        eTag.isEmpty() ? null : eTag, lastModified.isEmpty() ? null : lastModified, expiresAt));
+            }
+            unknownSince = stream.readLong();
+        } catch (EOFException e) {
+            //a truncated file only loses the validators which were not read
+        }
+    }
+
+    /**
+     * Saves the validators to the file, if one was given
+     *
+     * @throws IOException in case of input/output error
+     */
+    @Override
+    public void close() throws IOException {
+        if (validatorsPath == null) return;
+        Map<TileManager.TileId, Validators> snapshot = Map.copyOf(validators);
+        Path temporary = validatorsPath.resolveSibling(validatorsPath.getFileName() + ".tmp");
+        try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            stream.writeInt(snapshot.size());
+            for (Map.Entry<TileManager.TileId, Validators> e : snapshot.entrySet()) {
+                stream.writeInt(e.getKey().zoomLevel());
+                stream.writeInt(e.getKey().x());
+                stream.writeInt(e.getKey().y());
+                stream.writeUTF(e.getValue().eTag() == null ? "" : e.getValue().eTag());
+                stream.writeUTF(e.getValue().lastModified() == null ? "" : e.getValue().lastModified());
+                stream.writeLong(e.getValue().expiresAt());
+            }
+            stream.writeLong(unknownSince);
+        }
+        Files.move(temporary, validatorsPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -2,86 +2,202 @@ package ch.epfl.javelo.gui;
 
 import javafx.scene.image.Image;
 import java.io.*;
-import java.net.URL;
-import java.net.URLConnection;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
-import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * Un gestionnaire de tuiles OSM
  *
+ * <p>Tiles can either be obtained synchronously, with imageForTileAt, or asynchronously, with
+ * cachedImageForTileAt: in the latter case, tiles which are not in the memory cache are read from
+ * the disk or downloaded, and decoded, by a bounded pool of background threads, a single load being
+ * started for a given tile whatever the number of requests. Once a tile is in the memory cache,
+ * the tile loaded listener is notified, from the background thread.</p>
+ *
+ * <p>The memory cache has two tiers: the decoded images, weighed by their size in bytes, and the much
+ * smaller compressed PNG images, so that recently seen tiles are decoded again instead of being read
+ * from the disk or downloaded. Both tiers evict their least recently used tiles, except the visible
+ * ones which are pinned.</p>
+ *
+ * <p>The disk cache is a tile store, by default one keeping each tile in its own file. Missing tiles
+ * are obtained from a tile source, typically a tile fetcher downloading them; cached tiles which have
+ * expired are still used, while being revalidated in the background, and replaced once the new image
+ * has been obtained, if it changed.</p>
+ *
  * @author Elias Mir(341277)
  * @author Jan Staszewicz(341201)
  */
 public final class TileManager {
 
-    private final Path basePath;
-    private final String tileServerName;
-    private final LinkedHashMap<TileId, Image> memoryCache;
-
-    private final static int MAX_CAPACITY = 100;
+    private final TileStore tileStore;
+    private final TileSource tileSource;
+    private final WeightedLruCache<TileId, Image> memoryCache;
+    private final WeightedLruCache<TileId, ByteBuffer> compressedCache;
+    private final ExecutorService loadExecutor;
+    //loads started and not finished yet, at most one per tile
+    private final Map<TileId, Load> pendingLoads;
+    //revalidations started and not finished yet
+    private final Set<TileId> pendingRevalidations;
+    private volatile Consumer<TileId> tileLoadedListener;
+    //the tiles being prefetched, whose loads are not cancelled when they are not visible
+    private volatile Set<TileId> prefetchedTiles;
+
+    private final static int LOAD_THREADS = 4;
+    private final static int BYTES_PER_PIXEL = 4;
+    //about 500 decoded tiles of 256x256 pixels, and 4000 compressed ones
+    private final static long DEFAULT_MEMORY_CACHE_BYTES = 128L << 20;
+    private final static long DEFAULT_COMPRESSED_CACHE_BYTES = 64L << 20;
 
     /**
-     * Builds the tile manager
+     * Builds the tile manager, with the default memory cache sizes
      *
      * @param basePath       the access path to the directory containing the disk cache
      * @param tileServerName the name of the tile server
      */
     public TileManager(Path basePath, String tileServerName) {
-        this.basePath = basePath;
-        this.tileServerName = "https://" + tileServerName;
+        this(basePath, tileServerName, DEFAULT_MEMORY_CACHE_BYTES, DEFAULT_COMPRESSED_CACHE_BYTES);
+    }
 
-        this.memoryCache = new LinkedHashMap() {
-            //Set size limit to 100 and remove the eldest Entry when we exceed limit.
-            protected boolean removeEldestEntry(Map.Entry eldest) {
-                return size() > MAX_CAPACITY;
-            }
-        };
+    /**
+     * Builds the tile manager, with the default memory cache sizes
+     *
+     * @param tileStore      the tile store used as disk cache
+     * @param tileServerName the name of the tile server
+     */
+    public TileManager(TileStore tileStore, String tileServerName) {
+        this(tileStore, tileServerName, DEFAULT_MEMORY_CACHE_BYTES, DEFAULT_COMPRESSED_CACHE_BYTES);
+    }
 
+    /**
+     * Builds the tile manager
+     *
+     * @param basePath             the access path to the directory containing the disk cache
+     * @param tileServerName       the name of the tile server
+     * @param memoryCacheBytes     the size in bytes of the decoded images kept in memory
+     * @param compressedCacheBytes the size in bytes of the compressed images kept in memory
+     * @throws IllegalArgumentException if one of the sizes is not strictly positive
+     */
+    public TileManager(Path basePath, String tileServerName, long memoryCacheBytes, long compressedCacheBytes) {
+        this(new DirectoryTileStore(basePath), tileServerName, memoryCacheBytes, compressedCacheBytes);
     }
 
     /**
-     * Loads image from server and place it in the disk cache
+     * Builds the tile manager
      *
-     * @param tileId the tileId of the desired image
-     * @param path   the path to where the image is supposed to be saved
-     * @throws IOException if there is an error with the image loading or saving
+     * @param tileStore            the tile store used as disk cache
+     * @param tileServerName       the name of the tile server
+     * @param memoryCacheBytes     the size in bytes of the decoded images kept in memory
+     * @param compressedCacheBytes the size in bytes of the compressed images kept in memory
+     * @throws IllegalArgumentException if one of the sizes is not strictly positive
      */
-    private void loadImageFromServer(TileId tileId, String path) throws IOException {
+    public TileManager(TileStore tileStore, String tileServerName, long memoryCacheBytes, long compressedCacheBytes) {
+        this(tileStore, new TileFetcher("https://" + tileServerName), memoryCacheBytes, compressedCacheBytes);
+    }
 
-        URL u = new URL(
-                tileServerName
-                        + "/" + tileId.zoomLevel
-                        + "/" + tileId.x
-                        + "/" + tileId.y
-                        + ".png");
+    /**
+     * Builds the tile manager, with the default memory cache sizes
+     *
+     * @param tileStore   the tile store used as disk cache
+     * @param tileSource the source of the missing or expired tiles, for example a tile fetcher
+     */
+    public TileManager(TileStore tileStore, TileSource tileSource) {
+        this(tileStore, tileSource, DEFAULT_MEMORY_CACHE_BYTES, DEFAULT_COMPRESSED_CACHE_BYTES);
+    }
 
-        URLConnection c = u.openConnection();
-        c.setRequestProperty("User-Agent", "JaVelo");
+    /**
+     * Builds the tile manager
+     *
+     * @param tileStore            the tile store used as disk cache
+     * @param tileSource           the source of the missing or expired tiles, for example a tile fetcher
+     * @param memoryCacheBytes     the size in bytes of the decoded images kept in memory
+     * @param compressedCacheBytes the size in bytes of the compressed images kept in memory
+     * @throws IllegalArgumentException if one of the sizes is not strictly positive
+     */
+    public TileManager(TileStore tileStore, TileSource tileSource, long memoryCacheBytes, long compressedCacheBytes) {
+        this.tileStore = tileStore;
+        this.tileSource = tileSource;
+
+        this.memoryCache = new WeightedLruCache<>(memoryCacheBytes,
+                image -> (long) image.getWidth() * (long) image.getHeight() * BYTES_PER_PIXEL);
+        this.compressedCache = new WeightedLruCache<>(compressedCacheBytes, ByteBuffer::remaining);
+
+        this.loadExecutor = Executors.newFixedThreadPool(LOAD_THREADS, r -> {
+            //the loading threads must not prevent the application from exiting
+            Thread thread = new Thread(r, "tile-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pendingLoads = new ConcurrentHashMap<>();
+        this.pendingRevalidations = ConcurrentHashMap.newKeySet();
+        this.tileLoadedListener = tileId -> {};
+        this.prefetchedTiles = Set.of();
+    }
 
-        try (InputStream imageStream = c.getInputStream();) {
-            placeInDiskCache(imageStream, path);
-        }
+    /**
+     * Sets the listener notified, from a background thread, each time a tile requested with
+     * cachedImageForTileAt has been placed in the memory cache
+     *
+     * @param tileLoadedListener the listener, receiving the identity of the loaded tile
+     */
+    public void setTileLoadedListener(Consumer<TileId> tileLoadedListener) {
+        this.tileLoadedListener = tileLoadedListener;
+    }
+
+    /**
+     * Loads image from the tile source and place it in the disk cache
+     *
+     * @param tileId the tileId of the desired image
+     * @return the compressed image
+     * @throws IOException if there is an error with the image loading or saving
+     */
+    private ByteBuffer loadImageFromSource(TileId tileId) throws IOException {
+
+        byte[] image = tileSource.fetch(tileId);
+        tileStore.write(tileId, image);
+        return ByteBuffer.wrap(image).asReadOnlyBuffer();
 
     }
 
     /**
-     * Checks if the given image is in the memory cache
+     * Revalidates in the background the expired image of the given tile, unless it is already being
+     * revalidated. If the image has changed, the new one replaces it in the caches, and the tile loaded
+     * listener is notified.
      *
      * @param tileId the tileId of the image
-     * @return boolean true if image is in the memory cache, else false
      */
-    private boolean isInMemoryCache(TileId tileId) {
-        return memoryCache.containsKey(tileId);
+    private void revalidateInBackground(TileId tileId) {
+        if (!pendingRevalidations.add(tileId)) return;
+        loadExecutor.execute(() -> {
+            try {
+                byte[] image = tileSource.revalidate(tileId);
+                if (image != null) {
+                    tileStore.write(tileId, image);
+                    compressedCache.put(tileId, ByteBuffer.wrap(image).asReadOnlyBuffer());
+                    loadImage(tileId);
+                    tileLoadedListener.accept(tileId);
+                }
+            } catch (IOException e) {
+                //the expired image is used until the next revalidation
+            } finally {
+                pendingRevalidations.remove(tileId);
+            }
+        });
     }
 
     /**
      * Loads image from memory cache.
      *
      * @param tileId the tileId of the desired image
-     * @return the desired image
+     * @return the desired image, or null if it is not in the memory cache
      */
     private Image getFromMemoryCache(TileId tileId) {
         return memoryCache.get(tileId);
@@ -98,44 +214,40 @@ public final class TileManager {
     }
 
     /**
-     * Checks if the image is in the disk cache
+     * Returns the compressed image of the given tile, from the compressed memory cache or from the
+     * disk cache, after having downloaded it if needed
      *
-     * @param path the path to the image
-     * @return boolean true if the image is in the disk cache, else false
+     * @param tileId the tileId of the image
+     * @return the compressed image
+     * @throws IOException in case of stream errors
      */
-    private boolean isInDisk(String path) {
-        return Files.exists(Path.of(path));
-    }
+    private ByteBuffer loadCompressedImage(TileId tileId) throws IOException {
 
-    /**
-     * Places the image in the disk cache given its InputStream
-     *
-     * @param imageStream the InputStream of the image
-     * @param path        the path to where the image is supposed to be saved
-     * @throws IOException if there is an error while saving the image
-     */
-    private void placeInDiskCache(InputStream imageStream, String path) throws IOException {
+        ByteBuffer compressed = compressedCache.get(tileId);
+        if (compressed != null) return compressed;
 
-        try (OutputStream outputStream = new FileOutputStream(path)) {
-            imageStream.transferTo(outputStream);
-        }
+        compressed = tileStore.read(tileId);
+        if (compressed == null) compressed = loadImageFromSource(tileId);
+        else if (tileSource.isStale(tileId)) revalidateInBackground(tileId);
 
+        compressedCache.put(tileId, compressed);
+        return compressed;
     }
 
     /**
-     * Loads image from the disk cache
+     * Decodes the compressed image of the given tile and places it in the memory cache
      *
-     * @param path   the path to the image
+     * @param tileId the tileId of the image
      * @return the image
-     * @throws IOException if there is an error while loading the image
+     * @throws IOException in case of stream errors
      */
-    private Image getImageFromDiskCache(String path) throws IOException {
+    private Image loadImage(TileId tileId) throws IOException {
 
-        File file = new File(path);
+        Image image = new Image(new ByteBufferInputStream(loadCompressedImage(tileId)));
+        if (image.isError()) throw new IOException("invalid image for tile " + tileId);
+        placeInMemoryCache(tileId, image);
 
-        try (FileInputStream imageStream = new FileInputStream(file)) {
-            return new Image(imageStream);
-        }
+        return image;
     }
 
     /**
@@ -150,36 +262,187 @@ public final class TileManager {
 
         if(!TileId.isValid(tileId.zoomLevel, tileId.x, tileId.y))return null;
 
-        if (isInMemoryCache(tileId)) {
+        Image image = getFromMemoryCache(tileId);
+        return image != null ? image : loadImage(tileId);
+    }
+
+    /**
+     * Returns the image given its tileId if it is in the memory cache, without ever blocking. Otherwise,
+     * starts loading it in the background, unless it is already being loaded, and returns null; the
+     * tile loaded listener is notified once the image is available.
+     *
+     * @param tileId the image tileId
+     * @return the image which has the tileId given, or null if it is not loaded yet or the tileId
+     * isn't valid
+     */
+    public Image cachedImageForTileAt(TileId tileId) {
+
+        if(!TileId.isValid(tileId.zoomLevel, tileId.x, tileId.y))return null;
+
+        Image image = getFromMemoryCache(tileId);
+        if (image == null) loadLater(tileId);
+        return image;
+    }
+
+    /**
+     * Returns the image of the given tile if it is in the memory cache, without loading it otherwise.
+     * Used to draw placeholders for the tiles which are not loaded yet.
+     *
+     * @param tileId the tileId of the image
+     * @return the image, or null if it is not in the memory cache
+     */
+    public Image memoryImageForTileAt(TileId tileId) {
+
+        if(!TileId.isValid(tileId.zoomLevel, tileId.x, tileId.y))return null;
+
+        return getFromMemoryCache(tileId);
+    }
+
+    /**
+     * Loads in the background the images of the given tiles which are not in the memory cache, so that
+     * they are available once visible. The tiles given to a previous call are not prefetched anymore.
+     *
+     * @param tileIds the tileIds of the images
+     */
+    public void prefetch(Set<TileId> tileIds) {
+        prefetchedTiles = Set.copyOf(tileIds);
+        for (TileId tileId : tileIds) {
+            if (TileId.isValid(tileId.zoomLevel, tileId.x, tileId.y) && getFromMemoryCache(tileId) == null)
+                loadLater(tileId);
+        }
+    }
+
+    /**
+     * Downloads in the background the compressed image of the given tile into the disk cache, unless it
+     * is already there. The image is neither decoded nor kept in memory.
+     *
+     * @param tileId the tileId of the image
+     * @return a future completed with true if the image was downloaded, with false if it was already
+     * in the disk cache, or exceptionally if it could not be downloaded
+     */
+    public CompletableFuture<Boolean> storeInBackground(TileId tileId) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                if (tileStore.contains(tileId)) return false;
+                loadImageFromSource(tileId);
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, loadExecutor);
+    }
+
+    /**
+     * Starts loading the image of the given tile in the background, unless it is already being loaded
+     *
+     * @param tileId the tileId of the image
+     */
+    private void loadLater(TileId tileId) {
+        if (pendingLoads.containsKey(tileId)) return;
+        Load load = new Load(tileId);
+        if (pendingLoads.putIfAbsent(tileId, load) == null) loadExecutor.execute(load);
+    }
+
+    /**
+     * Loads the image of the given tile on a background thread, and notifies the listener
+     *
+     * @param tileId the tileId of the image
+     */
+    private void loadInBackground(TileId tileId) {
+        try {
+            loadImage(tileId);
+            tileLoadedListener.accept(tileId);
+        } catch (IOException e) {
+            //the tile will be requested again on the next redraw
+        }
+    }
+
+    /**
+     * Sets the tiles currently visible: their images are pinned in the memory cache, and the background
+     * loads of all the other tiles, which have left the visible part of the map and are not prefetched,
+     * are cancelled
+     *
+     * @param tileIds the visible tiles
+     */
+    public void setVisibleTiles(Set<TileId> tileIds) {
+        memoryCache.pin(tileIds);
+        compressedCache.pin(tileIds);
+        cancelLoadsExcept(tileIds);
+    }
 
-            return getFromMemoryCache(tileId);
+    /**
+     * Cancels the background loads of all the tiles which do not belong to the given set. Loads which
+     * have already started are not interrupted, so that no image is left half written in the disk cache,
+     * and stay pending until they finish, so that the tile is not loaded twice at the same time.
+     *
+     * @param tileIds the tiles whose load must go on
+     */
+    private void cancelLoadsExcept(Set<TileId> tileIds) {
+        Set<TileId> prefetched = prefetchedTiles;
+        pendingLoads.entrySet().removeIf(e ->
+                !tileIds.contains(e.getKey()) && !prefetched.contains(e.getKey()) && e.getValue().cancelIfNotStarted());
+    }
 
-        } else {
+    /**
+     * The background load of the image of a tile, which is pending until it has finished or been cancelled
+     */
+    private final class Load extends FutureTask<Void> {
+        private final TileId tileId;
+        //set once the load has either started or been cancelled, whichever happens first
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private Load(TileId tileId) {
+            super(() -> loadInBackground(tileId), null);
+            this.tileId = tileId;
+        }
 
-            String path = basePath.toString()
-                    + "/" + tileId.zoomLevel
-                    + "/" + tileId.x
-                    + "/" + tileId.y + ".png";
+        @Override
+        public void run() {
+            if (claimed.compareAndSet(false, true)) super.run();
+        }
 
-            if (isInDisk(path + "/" + tileId.y + ".png")) {
+        /**
+         * Cancels the load if it has not started yet
+         *
+         * @return true iff the load has been cancelled
+         */
+        boolean cancelIfNotStarted() {
+            return claimed.compareAndSet(false, true) && cancel(false);
+        }
 
-                Image image = getImageFromDiskCache(path);
-                placeInMemoryCache(tileId, image);
+        @Override
+        protected void done() {
+            pendingLoads.remove(tileId, this);
+        }
+    }
 
-                return image;
+    /**
+     * An input stream reading the remaining bytes of a buffer, without copying them
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
 
-            } else {
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer.duplicate();
+        }
 
-                Files.createDirectories(Path.of(basePath.toString()
-                        + "/" + tileId.zoomLevel
-                        + "/" + tileId.x ));
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? Byte.toUnsignedInt(buffer.get()) : -1;
+        }
 
-                loadImageFromServer(tileId, path);
-                Image image = getImageFromDiskCache(path);
-                placeInMemoryCache(tileId, image);
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
 
-                return image;
-            }
+        @Override
+        public int available() {
+            return buffer.remaining();
         }
     }
 
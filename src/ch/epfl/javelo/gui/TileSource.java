@@ -0,0 +1,44 @@
+package ch.epfl.javelo.gui;
+
+import java.io.IOException;
+
+/**
+ * A source of the compressed (PNG) images of tiles, from which the tile manager obtains the tiles
+ * missing from its disk cache
+ *
+ * @author Elias Mir(341277)
+ * @author Jan Staszewicz(341201)
+ */
+public interface TileSource {
+
+    /**
+     * Returns the compressed image of the given tile
+     *
+     * @param tileId the tileId of the image
+     * @return the compressed image
+     * @throws IOException if the image cannot be obtained
+     */
+    byte[] fetch(TileManager.TileId tileId) throws IOException;
+
+    /**
+     * Returns true iff the cached image of the given tile has expired and must be revalidated. By
+     * default, images never expire.
+     *
+     * @param tileId the tileId of the image
+     * @return true iff the cached image has expired
+     */
+    default boolean isStale(TileManager.TileId tileId) {
+        return false;
+    }
+
+    /**
+     * Revalidates the cached image of the given tile. By default, obtains the image again.
+     *
+     * @param tileId the tileId of the image
+     * @return the new compressed image, or null if the cached one has not changed
+     * @throws IOException if the image cannot be revalidated
+     */
+    default byte[] revalidate(TileManager.TileId tileId) throws IOException {
+        return fetch(tileId);
+    }
+}
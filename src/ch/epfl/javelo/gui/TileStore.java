@@ -0,0 +1,70 @@
+package ch.epfl.javelo.gui;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.BiConsumer;
+
+/**
+ * A persistent store of compressed (PNG) tile images, used as the disk cache of the tile manager
+ *
+ * @author Elias Mir(341277)
+ * @author Jan Staszewicz(341201)
+ */
+public interface TileStore extends Closeable {
+
+    /**
+     * Returns the compressed image of the given tile, as a read-only buffer whose content goes from its
+     * position to its limit, or null if the store does not contain the tile
+     *
+     * @param tileId the tileId of the image
+     * @return the compressed image, or null if it is not in the store
+     * @throws IOException in case of input/output error
+     */
+    ByteBuffer read(TileManager.TileId tileId) throws IOException;
+
+    /**
+     * Returns true iff the store contains the image of the given tile. By default, reads the image.
+     *
+     * @param tileId the tileId of the image
+     * @return true iff the store contains the image
+     * @throws IOException in case of input/output error
+     */
+    default boolean contains(TileManager.TileId tileId) throws IOException {
+        return read(tileId) != null;
+    }
+
+    /**
+     * Writes the compressed image of the given tile to the store, replacing the previous one if any
+     *
+     * @param tileId the tileId of the image
+     * @param image  the compressed image
+     * @throws IOException in case of input/output error
+     */
+    void write(TileManager.TileId tileId, byte[] image) throws IOException;
+
+    /**
+     * Deletes the compressed image of the given tile from the store, if it contains it
+     *
+     * @param tileId the tileId of the image
+     * @throws IOException in case of input/output error
+     */
+    void delete(TileManager.TileId tileId) throws IOException;
+
+    /**
+     * Passes the identity and the size in bytes of the compressed image of every tile of the store
+     * to the given consumer
+     *
+     * @param consumer the consumer
+     * @throws IOException in case of input/output error
+     */
+    void forEachTile(BiConsumer<TileManager.TileId, Integer> consumer) throws IOException;
+
+    /**
+     * Frees, if needed, the disk space still used by the images which have been deleted or replaced.
+     * By default, does nothing.
+     *
+     * @throws IOException in case of input/output error
+     */
+    default void reclaimSpace() throws IOException {}
+}
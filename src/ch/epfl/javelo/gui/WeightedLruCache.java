@@ -0,0 +1,113 @@
+package ch.epfl.javelo.gui;
+
+import ch.epfl.javelo.Preconditions;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+
+/**
+ * A thread-safe cache evicting its least recently used values once their total weight exceeds
+ * its capacity
+ *
+ * <p>Pinned keys are never evicted, so that the total weight can exceed the capacity if the pinned
+ * values are heavier than it; the cache is brought back under its capacity as soon as they are
+ * unpinned.</p>
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ * @author Elias Mir(341277)
+ * @author Jan Staszewicz(341201)
+ */
+final class WeightedLruCache<K, V> {
+
+    private final long capacity;
+    private final ToLongFunction<V> weigher;
+    //entries in access order, the least recently used first
+    private final LinkedHashMap<K, V> entries;
+    private Set<K> pinnedKeys;
+    private long weight;
+
+    /**
+     * Constructs an empty cache
+     *
+     * @param capacity the maximal total weight of the unpinned values
+     * @param weigher  the function giving the weight of a value, which must not change over time
+     * @throws IllegalArgumentException if the capacity is not strictly positive
+     */
+    WeightedLruCache(long capacity, ToLongFunction<V> weigher) {
+        Preconditions.checkArgument(capacity > 0);
+        this.capacity = capacity;
+        this.weigher = weigher;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.pinnedKeys = Set.of();
+    }
+
+    /**
+     * Returns the value associated with the given key, which becomes the most recently used one
+     *
+     * @param key the key
+     * @return the value associated with the key, or null if there is none
+     */
+    synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Associates the given value with the given key, then evicts the least recently used unpinned
+     * values until the total weight is at most the capacity
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    synchronized void put(K key, V value) {
+        V previous = entries.put(key, value);
+        if (previous != null) weight -= weigher.applyAsLong(previous);
+        weight += weigher.applyAsLong(value);
+        evict();
+    }
+
+    /**
+     * Replaces the set of pinned keys by the given one
+     *
+     * @param keys the keys whose values must not be evicted
+     */
+    synchronized void pin(Set<K> keys) {
+        pinnedKeys = Set.copyOf(keys);
+        evict();
+    }
+
+    /**
+     * Returns the number of values in the cache
+     *
+     * @return the number of values in the cache
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the total weight of the values in the cache
+     *
+     * @return the total weight of the values in the cache
+     */
+    synchronized long weight() {
+        return weight;
+    }
+
+    /**
+     * Evicts the least recently used unpinned values until the total weight is at most the capacity
+     */
+    private void evict() {
+        Iterator<Map.Entry<K, V>> iterator = entries.entrySet().iterator();
+        while (weight > capacity && iterator.hasNext()) {
+            Map.Entry<K, V> entry = iterator.next();
+            if (!pinnedKeys.contains(entry.getKey())) {
+                weight -= weigher.applyAsLong(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package ch.epfl.javelo.routing;
+
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.projection.PointCh;
+
+import java.util.List;
+
+/**
+ * Curseur parcourant les arêtes d'un itinéraire quelconque, utilisé par défaut par Route.cursor
+ *
+ * @author Elias Mir(341277)
+ */
+final class EdgeRouteCursor implements RouteCursor {
+
+    private final List<Edge> edges;
+    private final double length;
+    private int edgeIndex;
+    //position du début de l'arête courante le long de l'itinéraire
+    private double edgeStart;
+    private double position;
+
+    /**
+     * Construit un curseur au début de l'itinéraire donné
+     *
+     * @param route itinéraire
+     */
+    EdgeRouteCursor(Route route) {
+        this.edges = route.edges();
+        this.length = route.length();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void moveTo(double position) {
+        position = Math2.clamp(0, position, length);
+        if (position < edgeStart) {
+            edgeIndex = 0;
+            edgeStart = 0;
+        }
+        //une position se trouvant à l'extrémité d'une arête appartient à l'arête suivante, sauf à la fin de l'itinéraire
+        int lastEdgeIndex = edges.size() - 1;
+        while (edgeIndex < lastEdgeIndex && position >= edgeStart + edges.get(edgeIndex).length()) {
+            edgeStart += edges.get(edgeIndex).length();
+            edgeIndex++;
+        }
+        this.position = position;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double position() {
+        return position;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int edgeIndex() {
+        return edgeIndex;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PointCh point() {
+        return edges.get(edgeIndex).pointAt(position - edgeStart);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double elevation() {
+        return edges.get(edgeIndex).elevationAt(position - edgeStart);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int nodeClosest() {
+        Edge edge = edges.get(edgeIndex);
+        return position - edgeStart <= edgeStart + edge.length() - position ? edge.fromNodeId() : edge.toNodeId();
+    }
+}
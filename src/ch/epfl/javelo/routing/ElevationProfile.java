@@ -1,19 +1,36 @@
 package ch.epfl.javelo.routing;
 
 import ch.epfl.javelo.Functions;
+import ch.epfl.javelo.Math2;
 import ch.epfl.javelo.Preconditions;
 
-import java.util.DoubleSummaryStatistics;
+import java.util.function.DoubleUnaryOperator;
 
 /**
  * Le profil en long d'un itinéraire simple ou multiple
  *
+ * <p>Les statistiques du profil sont calculées une fois pour toutes à sa construction. Une pyramide
+ * des minimums et maximums des échantillons, dont chaque niveau regroupe les éléments du précédent
+ * deux à deux, et les sommes cumulées des dénivelés permettent de plus d'obtenir les altitudes extrêmes
+ * d'une partie du profil en temps logarithmique, et ses dénivelés en temps constant.</p>
+ *
  * @author Elias Mir(341277)
  */
 public final class ElevationProfile {
 
     private final double length;
     private final float[] elevationSamples;
+    private final DoubleUnaryOperator profile;
+    private final double minElevation;
+    private final double maxElevation;
+    private final double totalAscent;
+    private final double totalDescent;
+    //dénivelés positif et négatif cumulés entre le premier échantillon et chaque échantillon
+    private final double[] ascentPrefix;
+    private final double[] descentPrefix;
+    //minimums et maximums de chaque niveau de la pyramide, le niveau 0 étant formé des échantillons
+    private final float[][] minPyramid;
+    private final float[][] maxPyramid;
 
     /**
      * Construit le profil en long d'un itinéraire de longueur length (en mètres) et dont les échantillons d'altitude,
@@ -31,6 +48,50 @@ public final class ElevationProfile {
         );
         this.length = length;
         this.elevationSamples = elevationSamples;
+        this.profile = Functions.sampled(elevationSamples, length);
+
+        int count = elevationSamples.length;
+        this.ascentPrefix = new double[count];
+        this.descentPrefix = new double[count];
+        double min = elevationSamples[0];
+        double max = elevationSamples[0];
+        double ascent = 0;
+        double descent = 0;
+        for (int i = 1; i < count; i++) {
+            min = Math.min(min, elevationSamples[i]);
+            max = Math.max(max, elevationSamples[i]);
+            double difference = elevationSamples[i] - elevationSamples[i - 1];
+            if (difference >= 0) ascent += difference;
+            if (difference <= 0) descent -= difference;
+            ascentPrefix[i] = ascent;
+            descentPrefix[i] = descent;
+        }
+        this.minElevation = min;
+        this.maxElevation = max;
+        this.totalAscent = ascent;
+        this.totalDescent = descent;
+
+        //le dernier niveau de la pyramide ne contient qu'un élément
+        int levels = 1;
+        for (int size = count; size > 1; size = (size + 1) / 2) {
+            levels++;
+        }
+        this.minPyramid = new float[levels][];
+        this.maxPyramid = new float[levels][];
+        minPyramid[0] = elevationSamples;
+        maxPyramid[0] = elevationSamples;
+        for (int level = 1; level < levels; level++) {
+            float[] previousMin = minPyramid[level - 1];
+            float[] previousMax = maxPyramid[level - 1];
+            int size = (previousMin.length + 1) / 2;
+            minPyramid[level] = new float[size];
+            maxPyramid[level] = new float[size];
+            for (int i = 0; i < size; i++) {
+                int right = Math.min(2 * i + 1, previousMin.length - 1);
+                minPyramid[level][i] = Math.min(previousMin[2 * i], previousMin[right]);
+                maxPyramid[level][i] = Math.max(previousMax[2 * i], previousMax[right]);
+            }
+        }
     }
 
     /**
@@ -48,11 +109,7 @@ public final class ElevationProfile {
      * @return l'altitude minimum du profil, en mètres
      */
     public double minElevation() {
-        DoubleSummaryStatistics s = new DoubleSummaryStatistics();
-        for (float elevationSample : elevationSamples) {
-            s.accept(elevationSample);
-        }
-        return s.getMin();
+        return minElevation;
     }
 
     /**
@@ -61,11 +118,7 @@ public final class ElevationProfile {
      * @return l'altitude maximum du profil, en mètres
      */
     public double maxElevation() {
-        DoubleSummaryStatistics s = new DoubleSummaryStatistics();
-        for (float elevationSample : elevationSamples) {
-            s.accept(elevationSample);
-        }
-        return s.getMax();
+        return maxElevation;
     }
 
     /**
@@ -74,12 +127,6 @@ public final class ElevationProfile {
      * @return le dénivelé positif total du profil, en mètres
      */
     public double totalAscent() {
-        double totalAscent = 0;
-        for (int i = 1; i < elevationSamples.length; i++) {
-            if ((elevationSamples[i] - elevationSamples[i - 1]) >= 0) {
-                totalAscent += elevationSamples[i] - elevationSamples[i - 1];
-            }
-        }
         return totalAscent;
     }
 
@@ -89,12 +136,6 @@ public final class ElevationProfile {
      * @return le dénivelé négatif total du profil, en mètres
      */
     public double totalDescent() {
-        double totalDescent = 0;
-        for (int i = 1; i < elevationSamples.length; i++) {
-            if ((elevationSamples[i] - elevationSamples[i - 1]) <= 0) {
-                totalDescent += elevationSamples[i - 1] - elevationSamples[i];
-            }
-        }
         return totalDescent;
     }
 
@@ -105,8 +146,117 @@ public final class ElevationProfile {
      * @return l'altitude du profil à la position donnée
      */
     public double elevationAt(double position) {
-        return Functions
-                .sampled(elevationSamples, length)
-                .applyAsDouble(position);
+        return profile.applyAsDouble(position);
+    }
+
+    /**
+     * Retourne l'altitude minimum du profil entre les positions données, ramenées à l'intervalle [0, longueur]
+     *
+     * @param from position de début
+     * @param to   position de fin
+     * @return l'altitude minimum du profil entre les positions données
+     * @throws IllegalArgumentException si la position de début est plus grande que celle de fin
+     */
+    public double minElevation(double from, double to) {
+        return extremeElevation(from, to, minPyramid, false);
+    }
+
+    /**
+     * Retourne l'altitude maximum du profil entre les positions données, ramenées à l'intervalle [0, longueur]
+     *
+     * @param from position de début
+     * @param to   position de fin
+     * @return l'altitude maximum du profil entre les positions données
+     * @throws IllegalArgumentException si la position de début est plus grande que celle de fin
+     */
+    public double maxElevation(double from, double to) {
+        return extremeElevation(from, to, maxPyramid, true);
+    }
+
+    /**
+     * Retourne le dénivelé positif du profil entre les positions données, ramenées à l'intervalle [0, longueur]
+     *
+     * @param from position de début
+     * @param to   position de fin
+     * @return le dénivelé positif du profil entre les positions données
+     * @throws IllegalArgumentException si la position de début est plus grande que celle de fin
+     */
+    public double ascent(double from, double to) {
+        return elevationChange(from, to, ascentPrefix, 1);
+    }
+
+    /**
+     * Retourne le dénivelé négatif du profil entre les positions données, ramenées à l'intervalle [0, longueur]
+     *
+     * @param from position de début
+     * @param to   position de fin
+     * @return le dénivelé négatif du profil entre les positions données
+     * @throws IllegalArgumentException si la position de début est plus grande que celle de fin
+     */
+    public double descent(double from, double to) {
+        return elevationChange(from, to, descentPrefix, -1);
+    }
+
+    /**
+     * Retourne l'altitude extrême (maximum si max est vrai, minimum sinon) du profil entre les positions
+     * données. Le profil étant linéaire entre deux échantillons, elle est atteinte soit à l'une des deux
+     * positions, soit en l'un des échantillons se trouvant entre elles, dont l'extrême est obtenu à l'aide
+     * de la pyramide donnée.
+     */
+    private double extremeElevation(double from, double to, float[][] pyramid, boolean max) {
+        Preconditions.checkArgument(from <= to);
+        from = Math2.clamp(0, from, length);
+        to = Math2.clamp(0, to, length);
+        double extreme = max
+                ? Math.max(elevationAt(from), elevationAt(to))
+                : Math.min(elevationAt(from), elevationAt(to));
+
+        int lo = firstSampleAfter(from);
+        int hi = lastSampleBefore(to);
+        for (int level = 0; lo <= hi; level++) {
+            float[] values = pyramid[level];
+            if ((lo & 1) == 1) {
+                extreme = max ? Math.max(extreme, values[lo]) : Math.min(extreme, values[lo]);
+                lo++;
+            }
+            if ((hi & 1) == 0) {
+                extreme = max ? Math.max(extreme, values[hi]) : Math.min(extreme, values[hi]);
+                hi--;
+            }
+            lo >>= 1;
+            hi >>= 1;
+        }
+        return extreme;
+    }
+
+    /**
+     * Retourne le dénivelé (positif si sign vaut 1, négatif s'il vaut -1) du profil entre les positions données,
+     * obtenu à l'aide des dénivelés cumulés donnés pour la partie se trouvant entre deux échantillons
+     */
+    private double elevationChange(double from, double to, double[] prefix, int sign) {
+        Preconditions.checkArgument(from <= to);
+        from = Math2.clamp(0, from, length);
+        to = Math2.clamp(0, to, length);
+        double fromElevation = elevationAt(from);
+        double toElevation = elevationAt(to);
+
+        int lo = firstSampleAfter(from);
+        int hi = lastSampleBefore(to);
+        if (lo > hi) return Math.max(0, sign * (toElevation - fromElevation));
+        return Math.max(0, sign * (elevationSamples[lo] - fromElevation))
+                + prefix[hi] - prefix[lo]
+                + Math.max(0, sign * (toElevation - elevationSamples[hi]));
+    }
+
+    //Index du premier echantillon se trouvant strictement apres la position donnee
+    private int firstSampleAfter(double position) {
+        double spacing = length / (elevationSamples.length - 1);
+        return (int) Math.floor(position / spacing) + 1;
+    }
+
+    //Index du dernier echantillon se trouvant strictement avant la position donnee
+    private int lastSampleBefore(double position) {
+        double spacing = length / (elevationSamples.length - 1);
+        return Math.min((int) Math.ceil(position / spacing) - 1, elevationSamples.length - 1);
     }
 }
@@ -16,6 +16,9 @@ import java.util.function.DoubleUnaryOperator;
  */
 public final class ElevationProfileComputer {
 
+    //samples per pixel of the adaptive mode, enough to draw each column's min and max
+    private static final int SAMPLES_PER_PIXEL = 2;
+
     //non-instantiable
     private ElevationProfileComputer() {}
 
@@ -64,67 +67,45 @@ public final class ElevationProfileComputer {
     }
 
     /**
-     * Finds previous index with a value
-     *
-     * @param i                starting index
-     * @param elevationSamples the elevations samples array
-     * @return next valid index
-     */
-    private static int findPreviousValueIndex(int i, float[] elevationSamples) {
-
-        while (i >= 0 && Float.isNaN(elevationSamples[i])) {
-            i--;
-        }
-
-        return i;
-    }
-
-
-    /**
-     * Fills NaN values in elevation samples by reference
+     * Fills NaN values in elevation samples by reference, in a single pass: holes at the beginning
+     * and at the end take the closest known value, intermediary holes are interpolated linearly
+     * and a profile without any known value is filled with 0
      *
      * @param elevationSamples the elevation samples array
      */
-    private static void fillHoles(float[] elevationSamples, double spacing) {
-
-        int nextValueIndex = 0;
+    private static void fillHoles(float[] elevationSamples) {
 
-        //check if hole at the beginning
-        if (Float.isNaN(elevationSamples[0])) {
-            nextValueIndex = findNextValueIndex(0, elevationSamples);
+        int firstValueIndex = findNextValueIndex(0, elevationSamples);
 
-            if (nextValueIndex == elevationSamples.length) {
-                Arrays.fill(elevationSamples, 0, elevationSamples.length, 0);
-            } else {
-                Arrays.fill(elevationSamples, 0, nextValueIndex, elevationSamples[nextValueIndex]);
-            }
+        //check if no value at all
+        if (firstValueIndex == elevationSamples.length) {
+            Arrays.fill(elevationSamples, 0);
+            return;
         }
 
-        //check if ends with hole
-        if (Float.isNaN(elevationSamples[elevationSamples.length - 1])) {
-            int previousValueIndex = findPreviousValueIndex(elevationSamples.length - 2, elevationSamples);
-            Arrays.fill(elevationSamples, previousValueIndex + 1, elevationSamples.length, elevationSamples[previousValueIndex]);
-        }
+        //fill hole at the beginning
+        Arrays.fill(elevationSamples, 0, firstValueIndex, elevationSamples[firstValueIndex]);
 
-        //file intermediary holes
-        for (int i = nextValueIndex; i < elevationSamples.length; i++) {
-            int nextNaNIndex = findNextNaNIndex(0, elevationSamples);
-            int nextValueIndexI = findNextValueIndex(nextNaNIndex + 1, elevationSamples);
+        //fill intermediary holes and hole at the end, each of them being visited once
+        int nextNaNIndex = findNextNaNIndex(firstValueIndex, elevationSamples);
+        while (nextNaNIndex < elevationSamples.length) {
+            int nextValueIndex = findNextValueIndex(nextNaNIndex + 1, elevationSamples);
+            float y0 = elevationSamples[nextNaNIndex - 1];
 
-            if (nextNaNIndex == elevationSamples.length) {
+            if (nextValueIndex == elevationSamples.length) {
+                Arrays.fill(elevationSamples, nextNaNIndex, elevationSamples.length, y0);
                 break;
             }
 
-            float y0 = elevationSamples[nextNaNIndex - 1];
-            float y1 = elevationSamples[nextValueIndexI];
-            int n = nextValueIndexI - nextNaNIndex + 1;
+            float y1 = elevationSamples[nextValueIndex];
+            int n = nextValueIndex - nextNaNIndex + 1;
 
             //interpolate on hole
-            for (int j = 0; j < nextValueIndexI - nextNaNIndex; j++) {
+            for (int j = 0; j < nextValueIndex - nextNaNIndex; j++) {
                 elevationSamples[nextNaNIndex + j] = (float) Math2.interpolate(y0, y1, (j + 1.0) / n);
             }
 
-            i = nextValueIndex;
+            nextNaNIndex = findNextNaNIndex(nextValueIndex, elevationSamples);
         }
     }
 
@@ -147,16 +128,47 @@ public final class ElevationProfileComputer {
 
         float[] elevationSamples = new float[number_of_samples];
 
-        //fill with elevationAt
+        //fill with elevations, read by a cursor moving forward along the route
+        RouteCursor cursor = route.cursor();
         for (int l = 0; l < number_of_samples; l++) {
-            elevationSamples[l] = (float) route.elevationAt(l * spacing);
+            cursor.moveTo(l * spacing);
+            elevationSamples[l] = (float) cursor.elevation();
         }
 
         //fill all holes
-        fillHoles(elevationSamples, spacing);
+        fillHoles(elevationSamples);
 
         return new ElevationProfile(length, elevationSamples);
     }
 
+    /**
+     * Gets the step length adapted to the display of a route of the given length on the given width,
+     * i.e. giving SAMPLES_PER_PIXEL samples per pixel, but never smaller than minStepLength.
+     *
+     * @param length        the route's length
+     * @param displayWidth  the display width, in pixels
+     * @param minStepLength the min step length
+     * @return the adapted step length
+     * @throws IllegalArgumentException if the display width is not strictly positive
+     */
+    public static double adaptiveStepLength(double length, int displayWidth, double minStepLength) {
+        Preconditions.checkArgument(displayWidth > 0);
+        return Math.max(minStepLength, length / ((double) displayWidth * SAMPLES_PER_PIXEL));
+    }
+
+    /**
+     * Gets route elevation profile with a resolution adapted to its display on the given width
+     * (see adaptiveStepLength). Long routes are then sampled much less often than every minStepLength,
+     * which bounds the computation time, at the cost of smoothing the total ascent and descent.
+     *
+     * @param route         the route
+     * @param displayWidth  the display width, in pixels
+     * @param minStepLength the min step length
+     * @return new ElevationProfile
+     */
+    public static ElevationProfile adaptiveElevationProfile(Route route, int displayWidth, double minStepLength) {
+        return elevationProfile(route, adaptiveStepLength(route.length(), displayWidth, minStepLength));
+    }
+
 
 }
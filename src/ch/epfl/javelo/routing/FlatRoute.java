@@ -0,0 +1,410 @@
+package ch.epfl.javelo.routing;
+
+import ch.epfl.javelo.Functions;
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.Preconditions;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.projection.PointCh;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Un itinéraire stocké dans des tableaux de types primitifs
+ *
+ * <p>Contrairement à SingleRoute et MultiRoute, qui stockent leurs arêtes sous la forme d'objets Edge,
+ * cet itinéraire stocke les identités de ses nœuds et arêtes, la position et les coordonnées de chacun
+ * de ses nœuds, et les échantillons des profils de toutes ses arêtes mis bout à bout. Les méthodes
+ * pointAt, elevationAt et nodeClosestTo se contentent donc d'une seule recherche dichotomique, et
+ * les arêtes ne sont construites que si elles sont demandées.</p>
+ *
+ * <p>L'itinéraire peut être découpé en segments, comme le serait une route multiple. Une position
+ * se trouvant à la limite entre deux segments appartient au premier d'entre eux.</p>
+ *
+ * @author Elias Mir(341277)
+ */
+public final class FlatRoute implements Route {
+
+    private final int[] nodeIds;
+    private final int[] edgeIds;
+    //position le long de l'itinéraire et coordonnées de chaque nœud
+    private final double[] positions;
+    private final double[] pointsE;
+    private final double[] pointsN;
+    private final double[] lengths;
+    //les échantillons du profil de l'arête i sont ceux de la plage [elevationOffsets[i], elevationOffsets[i + 1][
+    private final float[] elevations;
+    private final int[] elevationOffsets;
+    //position du début de chaque segment, suivie de la longueur de l'itinéraire
+    private final double[] segmentPositions;
+    private final List<PointCh> points;
+    //arêtes et index des arêtes, construits lors du premier appel (voir edges et segmentIndex)
+    private List<Edge> edges;
+    private RouteSegmentIndex segmentIndex;
+
+    /**
+     * Construit l'itinéraire d'un seul segment partant du nœud donné et empruntant les arêtes données du graphe
+     *
+     * @param graph       graphe
+     * @param startNodeId identité du nœud de départ
+     * @param edgeIds     identités des arêtes de l'itinéraire
+     * @throws IllegalArgumentException si la liste d'arêtes est vide, ou si l'une des arêtes
+     *                                  ne part pas du nœud d'arrivée de la précédente
+     */
+    public FlatRoute(Graph graph, int startNodeId, int[] edgeIds) {
+        this(graph, startNodeId, edgeIds, new int[]{0});
+    }
+
+    /**
+     * Construit l'itinéraire partant du nœud donné et empruntant les arêtes données du graphe,
+     * chaque segment commençant à l'index d'arête donné par segmentStarts
+     */
+    private FlatRoute(Graph graph, int startNodeId, int[] edgeIds, int[] segmentStarts) {
+        Preconditions.checkArgument(edgeIds.length > 0 && 0 <= startNodeId && startNodeId < graph.nodeCount());
+        int count = edgeIds.length;
+        this.edgeIds = edgeIds.clone();
+        this.nodeIds = new int[count + 1];
+        this.positions = new double[count + 1];
+        this.pointsE = new double[count + 1];
+        this.pointsN = new double[count + 1];
+        this.lengths = new double[count];
+        this.elevationOffsets = new int[count + 1];
+
+        nodeIds[0] = startNodeId;
+        float[][] profiles = new float[count][];
+        for (int i = 0; i < count; i++) {
+            Preconditions.checkArgument(isOutEdge(graph, nodeIds[i], this.edgeIds[i]));
+            nodeIds[i + 1] = graph.edgeTargetNodeId(this.edgeIds[i]);
+            lengths[i] = graph.edgeLength(this.edgeIds[i]);
+            positions[i + 1] = positions[i] + lengths[i];
+            profiles[i] = graph.edgeProfileSamples(this.edgeIds[i]);
+            elevationOffsets[i + 1] = elevationOffsets[i] + profiles[i].length;
+        }
+        for (int i = 0; i <= count; i++) {
+            PointCh point = graph.nodePoint(nodeIds[i]);
+            pointsE[i] = point.e();
+            pointsN[i] = point.n();
+        }
+        this.elevations = new float[elevationOffsets[count]];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(profiles[i], 0, elevations, elevationOffsets[i], profiles[i].length);
+        }
+
+        this.segmentPositions = new double[segmentStarts.length + 1];
+        for (int i = 0; i < segmentStarts.length; i++) {
+            segmentPositions[i] = positions[segmentStarts[i]];
+        }
+        segmentPositions[segmentStarts.length] = positions[count];
+
+        this.points = new Points();
+    }
+
+    /**
+     * Retourne l'itinéraire équivalent à l'itinéraire donné, dont les arêtes appartiennent au graphe donné,
+     * et qui est découpé en les mêmes segments
+     *
+     * @param graph graphe
+     * @param route itinéraire
+     * @return l'itinéraire stocké dans des tableaux équivalent à l'itinéraire donné
+     * @throws IllegalArgumentException si l'une des arêtes de l'itinéraire n'appartient pas au graphe
+     */
+    public static FlatRoute of(Graph graph, Route route) {
+        List<Edge> routeEdges = route.edges();
+        int[] edgeIds = new int[routeEdges.size()];
+        List<Integer> segmentStarts = new ArrayList<>();
+        double position = 0;
+        for (int i = 0; i < edgeIds.length; i++) {
+            Edge edge = routeEdges.get(i);
+            edgeIds[i] = edgeId(graph, edge);
+            //le segment d'une arête est celui de son milieu, les limites appartenant au segment précédent
+            int segment = route.indexOfSegmentAt(position + edge.length() / 2);
+            if (segment >= segmentStarts.size()) segmentStarts.add(i);
+            position += edge.length();
+        }
+        int[] starts = new int[segmentStarts.size()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = segmentStarts.get(i);
+        }
+        return new FlatRoute(graph, routeEdges.get(0).fromNodeId(), edgeIds, starts);
+    }
+
+    /**
+     * Retourne l'identité, dans le graphe donné, de l'arête donnée. Si plusieurs arêtes relient les
+     * mêmes nœuds, celle ayant la même longueur et la même altitude en son milieu est choisie.
+     *
+     * @param graph graphe
+     * @param edge  arête
+     * @return l'identité de l'arête dans le graphe
+     * @throws IllegalArgumentException si aucune arête du graphe ne relie les nœuds de l'arête donnée
+     */
+    static int edgeId(Graph graph, Edge edge) {
+        int nodeId = edge.fromNodeId();
+        int edgeId = -1;
+        int edgeIdMatches = -1;
+        for (int i = 0; i < graph.nodeOutDegree(nodeId); i++) {
+            int candidate = graph.nodeOutEdgeId(nodeId, i);
+            if (graph.edgeTargetNodeId(candidate) != edge.toNodeId()) continue;
+
+            int matches = 0;
+            if (graph.edgeLength(candidate) == edge.length()) {
+                double middle = edge.length() / 2;
+                matches = Double.compare(graph.edgeProfile(candidate).applyAsDouble(middle),
+                        edge.profile().applyAsDouble(middle)) == 0 ? 2 : 1;
+            }
+            if (matches > edgeIdMatches) {
+                edgeId = candidate;
+                edgeIdMatches = matches;
+            }
+        }
+        Preconditions.checkArgument(edgeId != -1);
+        return edgeId;
+    }
+
+    private static boolean isOutEdge(Graph graph, int nodeId, int edgeId) {
+        for (int i = 0; i < graph.nodeOutDegree(nodeId); i++) {
+            if (graph.nodeOutEdgeId(nodeId, i) == edgeId) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Retourne l'identité de l'arête d'index donné de l'itinéraire
+     *
+     * @param edgeIndex index de l'arête
+     * @return l'identité de l'arête d'index donné
+     * @throws IndexOutOfBoundsException si l'index est invalide
+     */
+    public int edgeIdAt(int edgeIndex) {
+        return edgeIds[edgeIndex];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int indexOfSegmentAt(double position) {
+        position = Math2.clamp(0, position, length());
+        int index = Arrays.binarySearch(segmentPositions, position);
+        int segmentIndex = index >= 0 ? index - 1 : -index - 2;
+        return Math2.clamp(0, segmentIndex, segmentPositions.length - 2);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double length() {
+        return positions[positions.length - 1];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Edge> edges() {
+        List<Edge> list = edges;
+        if (list == null) {
+            Edge[] array = new Edge[edgeIds.length];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = new Edge(nodeIds[i], nodeIds[i + 1], points.get(i), points.get(i + 1),
+                        lengths[i], profile(i));
+            }
+            list = List.of(array);
+            edges = list;
+        }
+        return list;
+    }
+
+    /**
+     * Retourne le profil de l'arête d'index donné, construit comme le fait Graph.edgeProfile
+     */
+    private DoubleUnaryOperator profile(int edgeIndex) {
+        int from = elevationOffsets[edgeIndex];
+        int to = elevationOffsets[edgeIndex + 1];
+        return from == to
+                ? Functions.constant(Double.NaN)
+                : Functions.sampled(Arrays.copyOfRange(elevations, from, to), lengths[edgeIndex]);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<PointCh> points() {
+        return points;
+    }
+
+    //Trouve l'arete ou la position donne se trouve
+    private int edgeIndexAt(double position) {
+        int index = Arrays.binarySearch(positions, position);
+        if (position == length()) {
+            return lengths.length - 1;
+        } else if (index >= 0) {
+            return index;
+        } else {
+            return -index - 2;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PointCh pointAt(double position) {
+        position = Math2.clamp(0, position, length());
+        return pointAt(edgeIndexAt(position), position);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double elevationAt(double position) {
+        position = Math2.clamp(0, position, length());
+        return elevationAt(edgeIndexAt(position), position);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int nodeClosestTo(double position) {
+        position = Math2.clamp(0, position, length());
+        return nodeClosestTo(edgeIndexAt(position), position);
+    }
+
+    //Point a la position donnee, se trouvant sur l'arete d'index i
+    private PointCh pointAt(int i, double position) {
+        if (lengths[i] == 0) return points.get(i);
+
+        double x = (position - positions[i]) / lengths[i];
+        return new PointCh(
+                Math2.interpolate(pointsE[i], pointsE[i + 1], x),
+                Math2.interpolate(pointsN[i], pointsN[i + 1], x));
+    }
+
+    //Altitude a la position donnee, se trouvant sur l'arete d'index i
+    private double elevationAt(int i, double position) {
+        int from = elevationOffsets[i];
+        int samplesCount = elevationOffsets[i + 1] - from;
+        if (samplesCount == 0) return Double.NaN;
+
+        //même calcul que celui de Functions.sampled
+        double x = position - positions[i];
+        if (x < 0) {
+            return elevations[from];
+        } else if (x >= lengths[i]) {
+            return elevations[from + samplesCount - 1];
+        }
+        double delta = lengths[i] / (samplesCount - 1);
+        int leftIndex = Math.min((int) Math.floor(x / delta), samplesCount - 2);
+        return Math2.interpolate(
+                elevations[from + leftIndex],
+                elevations[from + leftIndex + 1],
+                (x - leftIndex * delta) / delta);
+    }
+
+    //Noeud le plus proche de la position donnee, se trouvant sur l'arete d'index i
+    private int nodeClosestTo(int i, double position) {
+        return position - positions[i] <= positions[i + 1] - position ? nodeIds[i] : nodeIds[i + 1];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RoutePoint pointClosestTo(PointCh point) {
+        return segmentIndex().pointClosestTo(point);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RouteCursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Retourne l'index des arêtes de la route, construit au premier appel. L'index étant immuable,
+     * il peut au pire être construit plusieurs fois par des appels concurrents.
+     *
+     * @return l'index des arêtes de la route
+     */
+    private RouteSegmentIndex segmentIndex() {
+        RouteSegmentIndex index = segmentIndex;
+        if (index == null) {
+            int count = lengths.length;
+            index = new RouteSegmentIndex(
+                    Arrays.copyOf(pointsE, count), Arrays.copyOf(pointsN, count),
+                    Arrays.copyOfRange(pointsE, 1, count + 1), Arrays.copyOfRange(pointsN, 1, count + 1),
+                    lengths);
+            segmentIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Curseur parcourant les tableaux de l'itinéraire
+     */
+    private final class Cursor implements RouteCursor {
+        private int edgeIndex;
+        private double position;
+
+        @Override
+        public void moveTo(double position) {
+            position = Math2.clamp(0, position, length());
+            if (position < positions[edgeIndex]) edgeIndex = 0;
+            //une position se trouvant à l'extrémité d'une arête appartient à l'arête suivante, sauf à la fin de l'itinéraire
+            int lastEdgeIndex = lengths.length - 1;
+            while (edgeIndex < lastEdgeIndex && position >= positions[edgeIndex + 1]) {
+                edgeIndex++;
+            }
+            this.position = position;
+        }
+
+        @Override
+        public double position() {
+            return position;
+        }
+
+        @Override
+        public int edgeIndex() {
+            return edgeIndex;
+        }
+
+        @Override
+        public PointCh point() {
+            return pointAt(edgeIndex, position);
+        }
+
+        @Override
+        public double elevation() {
+            return elevationAt(edgeIndex, position);
+        }
+
+        @Override
+        public int nodeClosest() {
+            return nodeClosestTo(edgeIndex, position);
+        }
+    }
+
+    /**
+     * Liste des nœuds de l'itinéraire, dont les points sont construits à la demande
+     */
+    private final class Points extends AbstractList<PointCh> implements RandomAccess {
+        @Override
+        public PointCh get(int index) {
+            return new PointCh(pointsE[index], pointsN[index]);
+        }
+
+        @Override
+        public int size() {
+            return pointsE.length;
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package ch.epfl.javelo.routing;
+
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.projection.PointCh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Mise en correspondance (map-matching) de traces GPS avec les arêtes du graphe
+ *
+ * <p>Une trace est vue comme la suite des observations d'un modèle de Markov caché dont les états
+ * sont les positions possibles sur les arêtes proches de chaque point. La probabilité d'un état
+ * décroît avec sa distance au point observé, celle d'une transition avec l'écart entre la longueur
+ * du chemin reliant les deux positions dans le graphe et la distance à vol d'oiseau entre les deux
+ * points observés. La suite d'états la plus probable est déterminée par l'algorithme de Viterbi.</p>
+ *
+ * <p>Les longueurs des chemins sont calculées par des recherches bornées dont les tableaux sont
+ * alloués une seule fois, une instance ne doit donc pas être partagée entre plusieurs fils d'exécution.</p>
+ *
+ * @author Elias Mir(341277)
+ */
+public final class MapMatcher {
+
+    private final Graph graph;
+    private final CostFunction costFunction;
+    //distance du plus court chemin connu jusqu'à chaque nœud, valable ssi visit[nœud] == currentVisit
+    private final float[] distance;
+    private final int[] visit;
+    //arête et nœud précédant chaque nœud dans le plus court chemin connu jusqu'à lui
+    private final int[] predecessorEdge;
+    private final int[] predecessorNode;
+    private int currentVisit;
+    //tas binaire des nœuds en cours d'exploration, encodés avec leur distance (voir heapEntry)
+    private long[] heap;
+    private int heapSize;
+
+    //rayon de recherche des arêtes candidates autour d'un point, en mètres
+    private static final double SEARCH_RADIUS = 50;
+    //marge ajoutée au rayon de recherche des nœuds, pour trouver les arêtes dont les extrémités sont plus loin
+    private static final double NODE_SEARCH_MARGIN = 100;
+    private static final int MAX_CANDIDATES = 8;
+    //écart-type de l'erreur de positionnement GPS, en mètres
+    private static final double SIGMA = 10;
+    //paramètre de la loi exponentielle des écarts de longueur des transitions, en mètres
+    private static final double BETA = 10;
+    //les points plus proches que cette distance du dernier point retenu sont ignorés
+    private static final double MIN_POINT_DISTANCE = 2 * SIGMA;
+    private static final double MAX_DETOUR_FACTOR = 2;
+    //recul toléré, dû au bruit, entre deux positions successives sur une même arête
+    private static final double BACKWARD_TOLERANCE = 5;
+    private static final int INITIAL_HEAP_CAPACITY = 64;
+
+    /**
+     * Position possible sur une arête pour un point de la trace
+     *
+     * @param edgeId     identité de l'arête
+     * @param fromNodeId identité du nœud de départ de l'arête
+     * @param toNodeId   identité du nœud d'arrivée de l'arête
+     * @param position   position sur l'arête, en mètres
+     * @param distance   distance entre la position et le point de la trace, en mètres
+     */
+    private record Candidate(int edgeId, int fromNodeId, int toNodeId, double position, double distance) {}
+
+    /**
+     * Construit un map-matcher pour le graphe donné, qui n'emprunte que les arêtes de coût fini
+     * selon la fonction de coût donnée
+     *
+     * @param graph        graphe
+     * @param costFunction fonction de coût
+     */
+    public MapMatcher(Graph graph, CostFunction costFunction) {
+        this.graph = graph;
+        this.costFunction = costFunction;
+        this.distance = new float[graph.nodeCount()];
+        this.visit = new int[graph.nodeCount()];
+        this.predecessorEdge = new int[graph.nodeCount()];
+        this.predecessorNode = new int[graph.nodeCount()];
+        this.heap = new long[INITIAL_HEAP_CAPACITY];
+    }
+
+    /**
+     * Met en correspondance les traces données en parallèle. Chaque trace est mise en correspondance par un
+     * map-matcher emprunté à une réserve propre à l'appel, qui en contient au plus un par fil d'exécution
+     * simultané et est libérée au retour, de sorte que les fils du pool commun ne conservent pas les tableaux
+     * de recherche.
+     *
+     * @param graph        graphe
+     * @param costFunction fonction de coût
+     * @param tracks       traces
+     * @return les itinéraires correspondant à chacune des traces, dans le même ordre (voir match)
+     */
+    public static List<List<Route>> matchAll(Graph graph, CostFunction costFunction, List<List<PointCh>> tracks) {
+        Queue<MapMatcher> matchers = new ConcurrentLinkedQueue<>();
+        return tracks.parallelStream()
+                .map(track -> {
+                    MapMatcher matcher = matchers.poll();
+                    if (matcher == null) matcher = new MapMatcher(graph, costFunction);
+                    try {
+                        return matcher.match(track);
+                    } finally {
+                        matchers.offer(matcher);
+                    }
+                })
+                .toList();
+    }
+
+    /**
+     * Retourne les itinéraires les plus probables suivis par la trace donnée. La liste contient plusieurs
+     * itinéraires lorsque deux points successifs ne peuvent pas être reliés, et est vide si aucun point
+     * de la trace n'est proche du graphe.
+     *
+     * @param track points de la trace
+     * @return les itinéraires les plus probables suivis par la trace donnée
+     */
+    public List<Route> match(List<PointCh> track) {
+        List<PointCh> points = new ArrayList<>();
+        List<Candidate[]> candidates = new ArrayList<>();
+        for (PointCh point : track) {
+            if (!points.isEmpty() && point.distanceTo(points.get(points.size() - 1)) < MIN_POINT_DISTANCE) continue;
+            Candidate[] pointCandidates = candidates(point);
+            if (pointCandidates.length == 0) continue;
+            points.add(point);
+            candidates.add(pointCandidates);
+        }
+
+        List<Route> routes = new ArrayList<>();
+        if (points.isEmpty()) return routes;
+
+        //Algorithme de Viterbi, previous[t][j] est l'indice du meilleur prédécesseur du candidat j du point t,
+        //ou -1 si le point t commence un nouvel itinéraire
+        int[][] previous = new int[points.size()][];
+        double[] scores = initialScores(candidates.get(0));
+        previous[0] = startOfRoute(scores.length);
+        for (int t = 1; t < points.size(); t++) {
+            Candidate[] from = candidates.get(t - 1);
+            Candidate[] to = candidates.get(t);
+            double crowFliesDistance = points.get(t - 1).distanceTo(points.get(t));
+
+            double[] newScores = new double[to.length];
+            Arrays.fill(newScores, Double.NEGATIVE_INFINITY);
+            previous[t] = startOfRoute(to.length);
+            for (int i = 0; i < from.length; i++) {
+                if (scores[i] == Double.NEGATIVE_INFINITY) continue;
+                double[] lengths = pathLengths(from[i], to, MAX_DETOUR_FACTOR * crowFliesDistance + 2 * SEARCH_RADIUS);
+                for (int j = 0; j < to.length; j++) {
+                    if (lengths[j] == Double.POSITIVE_INFINITY) continue;
+                    double score = scores[i] - Math.abs(lengths[j] - crowFliesDistance) / BETA + emission(to[j]);
+                    if (score > newScores[j]) {
+                        newScores[j] = score;
+                        previous[t][j] = i;
+                    }
+                }
+            }
+
+            //Cas où aucun candidat ne peut être atteint : l'itinéraire s'arrête au point précédent
+            if (indexOfMax(newScores) == -1) {
+                routes.add(route(candidates, previous, t - 1, indexOfMax(scores)));
+                newScores = initialScores(to);
+            }
+            scores = newScores;
+        }
+        routes.add(route(candidates, previous, points.size() - 1, indexOfMax(scores)));
+        return routes;
+    }
+
+    /**
+     * Retourne les candidats du point donné, triés par distance croissante
+     *
+     * @param point point de la trace
+     * @return les candidats du point donné, triés par distance croissante
+     */
+    private Candidate[] candidates(PointCh point) {
+        List<Candidate> candidates = new ArrayList<>();
+        for (int nodeId : graph.nodesCloseTo(point, SEARCH_RADIUS + NODE_SEARCH_MARGIN)) {
+            PointCh fromPoint = graph.nodePoint(nodeId);
+            for (int i = 0; i < graph.nodeOutDegree(nodeId); i++) {
+                int edgeId = graph.nodeOutEdgeId(nodeId, i);
+                if (costFunction.costFactor(nodeId, edgeId) == Double.POSITIVE_INFINITY) continue;
+                int toNodeId = graph.edgeTargetNodeId(edgeId);
+                PointCh toPoint = graph.nodePoint(toNodeId);
+
+                //projection du point sur le segment de l'arête
+                double segmentLength = fromPoint.distanceTo(toPoint);
+                double x = segmentLength == 0 ? 0 : Math2.clamp(0, Math2.projectionLength(fromPoint.e(), fromPoint.n(),
+                        toPoint.e(), toPoint.n(), point.e(), point.n()), segmentLength) / segmentLength;
+                double projectedE = Math2.interpolate(fromPoint.e(), toPoint.e(), x);
+                double projectedN = Math2.interpolate(fromPoint.n(), toPoint.n(), x);
+                double d = Math2.norm(point.e() - projectedE, point.n() - projectedN);
+                if (d <= SEARCH_RADIUS) {
+                    candidates.add(new Candidate(edgeId, nodeId, toNodeId, x * graph.edgeLength(edgeId), d));
+                }
+            }
+        }
+        candidates.sort(Comparator.comparingDouble(Candidate::distance));
+        return candidates.subList(0, Math.min(candidates.size(), MAX_CANDIDATES)).toArray(new Candidate[0]);
+    }
+
+    /**
+     * Retourne le logarithme (à une constante près) de la probabilité d'observer le point depuis le candidat donné
+     */
+    private static double emission(Candidate candidate) {
+        double x = candidate.distance() / SIGMA;
+        return -0.5 * x * x;
+    }
+
+    private static double[] initialScores(Candidate[] candidates) {
+        double[] scores = new double[candidates.length];
+        for (int i = 0; i < candidates.length; i++) scores[i] = emission(candidates[i]);
+        return scores;
+    }
+
+    private static int[] startOfRoute(int candidatesCount) {
+        int[] previous = new int[candidatesCount];
+        Arrays.fill(previous, -1);
+        return previous;
+    }
+
+    /**
+     * Retourne l'indice du plus grand score fini, ou -1 s'il n'y en a aucun
+     */
+    private static int indexOfMax(double[] scores) {
+        int best = -1;
+        for (int i = 0; i < scores.length; i++) {
+            if (scores[i] != Double.NEGATIVE_INFINITY && (best == -1 || scores[i] > scores[best])) best = i;
+        }
+        return best;
+    }
+
+    /**
+     * Retourne les longueurs des plus courts chemins allant du candidat from à chacun des candidats to,
+     * l'infini positif pour ceux qui ne peuvent pas être atteints avec un chemin de longueur maximale donnée
+     *
+     * @param from      candidat de départ
+     * @param to        candidats d'arrivée
+     * @param maxLength longueur maximale des chemins
+     * @return les longueurs des plus courts chemins allant du candidat from à chacun des candidats to
+     */
+    private double[] pathLengths(Candidate from, Candidate[] to, double maxLength) {
+        double[] lengths = new double[to.length];
+        Arrays.fill(lengths, Double.POSITIVE_INFINITY);
+
+        int[] targets = new int[to.length];
+        int targetsCount = 0;
+        for (int j = 0; j < to.length; j++) {
+            if (isAheadOnSameEdge(from, to[j])) {
+                lengths[j] = Math.max(0, to[j].position() - from.position());
+            } else {
+                targets[targetsCount++] = to[j].fromNodeId();
+            }
+        }
+
+        //longueur restant à parcourir jusqu'au bout de l'arête de départ
+        double remaining = graph.edgeLength(from.edgeId()) - from.position();
+        if (targetsCount == 0 || remaining > maxLength) return lengths;
+
+        double bound = maxLength - remaining;
+        search(from.toNodeId(), bound, Arrays.copyOf(targets, targetsCount));
+        for (int j = 0; j < to.length; j++) {
+            if (lengths[j] != Double.POSITIVE_INFINITY) continue;
+            int nodeId = to[j].fromNodeId();
+            if (visit[nodeId] == currentVisit && distance[nodeId] <= bound) {
+                lengths[j] = remaining + distance[nodeId] + to[j].position();
+            }
+        }
+        return lengths;
+    }
+
+    private static boolean isAheadOnSameEdge(Candidate from, Candidate to) {
+        return to.edgeId() == from.edgeId() && to.position() >= from.position() - BACKWARD_TOLERANCE;
+    }
+
+    /**
+     * Retourne l'itinéraire se terminant au candidat d'indice donné du point t, en remontant les prédécesseurs
+     * jusqu'au début de l'itinéraire
+     *
+     * @param candidates candidats de chaque point
+     * @param previous   indices des meilleurs prédécesseurs
+     * @param t          indice du dernier point de l'itinéraire
+     * @param last       indice du candidat du dernier point
+     * @return l'itinéraire
+     */
+    private Route route(List<Candidate[]> candidates, int[][] previous, int t, int last) {
+        List<Candidate> states = new ArrayList<>();
+        for (int i = last; i != -1; i = previous[t--][i]) {
+            states.add(candidates.get(t)[i]);
+        }
+        Collections.reverse(states);
+
+        Candidate first = states.get(0);
+        List<Edge> edges = new ArrayList<>();
+        edges.add(Edge.of(graph, first.edgeId(), first.fromNodeId(), first.toNodeId()));
+        for (int k = 1; k < states.size(); k++) {
+            Candidate from = states.get(k - 1);
+            Candidate to = states.get(k);
+            if (isAheadOnSameEdge(from, to)) continue;
+
+            //la transition a été choisie, donc le nœud de départ de l'arête d'arrivée est atteignable
+            search(from.toNodeId(), Float.MAX_VALUE, new int[]{to.fromNodeId()});
+            List<Edge> path = new ArrayList<>();
+            for (int nodeId = to.fromNodeId(); nodeId != from.toNodeId(); nodeId = predecessorNode[nodeId]) {
+                path.add(Edge.of(graph, predecessorEdge[nodeId], predecessorNode[nodeId], nodeId));
+            }
+            Collections.reverse(path);
+            edges.addAll(path);
+            edges.add(Edge.of(graph, to.edgeId(), to.fromNodeId(), to.toNodeId()));
+        }
+        return new SingleRoute(edges);
+    }
+
+    /**
+     * Recherche les plus courts chemins (en longueur) partant du nœud donné, jusqu'à ce que tous les nœuds
+     * cibles soient atteints ou que la longueur maximale donnée soit dépassée
+     *
+     * @param startNodeId identité du nœud de départ
+     * @param bound       longueur maximale des chemins
+     * @param targets     identités des nœuds cibles
+     */
+    private void search(int startNodeId, double bound, int[] targets) {
+        currentVisit += 1;
+        heapSize = 0;
+        int targetsLeft = targets.length;
+
+        visit[startNodeId] = currentVisit;
+        distance[startNodeId] = 0;
+        push(0, startNodeId);
+        while (heapSize > 0 && targetsLeft > 0) {
+            long entry = pop();
+            int nodeId = (int) entry;
+            float d = Float.intBitsToFloat((int) (entry >>> Integer.SIZE));
+            if (d > bound) break;
+            //entrée obsolète, le nœud a déjà été atteint par un chemin plus court
+            if (d > distance[nodeId]) continue;
+
+            for (int i = 0; i < targets.length; i++) {
+                if (targets[i] == nodeId) {
+                    targets[i] = -1;
+                    targetsLeft -= 1;
+                }
+            }
+
+            for (int i = 0; i < graph.nodeOutDegree(nodeId); i++) {
+                int edgeId = graph.nodeOutEdgeId(nodeId, i);
+                if (costFunction.costFactor(nodeId, edgeId) == Double.POSITIVE_INFINITY) continue;
+                int neighbourId = graph.edgeTargetNodeId(edgeId);
+                float neighbourDistance = (float) (d + graph.edgeLength(edgeId));
+                if (visit[neighbourId] != currentVisit || neighbourDistance < distance[neighbourId]) {
+                    visit[neighbourId] = currentVisit;
+                    distance[neighbourId] = neighbourDistance;
+                    predecessorEdge[neighbourId] = edgeId;
+                    predecessorNode[neighbourId] = nodeId;
+                    push(neighbourDistance, neighbourId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ajoute au tas le nœud donné avec sa distance. La distance étant positive, l'ordre des entrées
+     * (bits de la distance dans les 32 bits de poids fort) est celui des distances.
+     */
+    private void push(float d, int nodeId) {
+        if (heapSize == heap.length) heap = Arrays.copyOf(heap, 2 * heapSize);
+        long entry = ((long) Float.floatToRawIntBits(d) << Integer.SIZE) | nodeId;
+        int i = heapSize++;
+        while (i > 0 && heap[(i - 1) / 2] > entry) {
+            heap[i] = heap[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heap[i] = entry;
+    }
+
+    private long pop() {
+        long top = heap[0];
+        long last = heap[--heapSize];
+        int i = 0;
+        while (2 * i + 1 < heapSize) {
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && heap[child + 1] < heap[child]) child += 1;
+            if (heap[child] >= last) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return top;
+    }
+}
@@ -21,6 +21,8 @@ public final class MultiRoute implements Route {
     private final double length;
     private final List<Edge> edges;
     private final List<PointCh> points;
+    //index des arêtes, construit lors de la première recherche du point le plus proche (voir segmentIndex)
+    private RouteSegmentIndex segmentIndex;
 
     /**
      * Construit une route multiple
@@ -152,15 +154,21 @@ public final class MultiRoute implements Route {
      */
     @Override
     public RoutePoint pointClosestTo(PointCh point) {
+        return segmentIndex().pointClosestTo(point);
+    }
 
-        RoutePoint bestRoutePoint = RoutePoint.NONE;
-        double l = 0;
-
-        for (Route route : segments) {
-            bestRoutePoint = bestRoutePoint.min(route.pointClosestTo(point).withPositionShiftedBy(l));
-            l += route.length();
+    /**
+     * Retourne l'index des arêtes de la route, aplaties, construit au premier appel. L'index étant immuable,
+     * il peut au pire être construit plusieurs fois par des appels concurrents.
+     *
+     * @return l'index des arêtes de la route
+     */
+    private RouteSegmentIndex segmentIndex() {
+        RouteSegmentIndex index = segmentIndex;
+        if (index == null) {
+            index = RouteSegmentIndex.of(edges);
+            segmentIndex = index;
         }
-
-        return bestRoutePoint;
+        return index;
     }
 }
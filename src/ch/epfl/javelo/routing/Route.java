@@ -66,4 +66,14 @@ public interface Route {
      * @return le point de l'itinéraire se trouvant le plus proche du point de référence donné.
      */
     abstract RoutePoint pointClosestTo(PointCh point);
+
+    /**
+     * Retourne un nouveau curseur, placé au début de l'itinéraire, permettant de le parcourir
+     * à des positions croissantes en temps constant amorti par position
+     *
+     * @return un nouveau curseur placé au début de l'itinéraire
+     */
+    default RouteCursor cursor() {
+        return new EdgeRouteCursor(this);
+    }
 }
@@ -0,0 +1,322 @@
+package ch.epfl.javelo.routing;
+
+import ch.epfl.javelo.Preconditions;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.projection.Ch1903;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.SwissBounds;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Encodage compact des itinéraires
+ *
+ * <p>Un itinéraire est encodé de manière exacte par l'identité de son nœud de départ suivie des différences
+ * entre les identités de ses arêtes successives, écrites en entiers de longueur variable (varint zigzag),
+ * précédées d'une empreinte du graphe, qui permet de refuser les itinéraires encodés avec une autre
+ * version du graphe. Ces octets peuvent aussi être représentés par un jeton en Base64 (URL).</p>
+ *
+ * <p>La géométrie d'un itinéraire peut d'autre part être encodée, indépendamment du graphe, au format
+ * « polyline » de Google étendu avec l'altitude : chaque point est représenté par les différences de
+ * latitude et de longitude (au cent-millième de degré) et d'altitude (au décimètre) avec le point précédent.
+ * La différence d'altitude est écrite doublée, une valeur impaire (1) indiquant que l'altitude du point est
+ * inconnue ; la différence suivante est alors relative au dernier point dont l'altitude est connue.</p>
+ *
+ * @author Elias Mir(341277)
+ */
+public final class RouteCodec {
+
+    private final Graph graph;
+    private final int graphFingerprint;
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final int FINGERPRINT_SAMPLES = 1024;
+    private static final double COORDINATE_PRECISION = 1e5;
+    private static final double ELEVATION_PRECISION = 1e1;
+    private static final int VARINT_PAYLOAD_BITS = 7;
+    private static final int VARINT_PAYLOAD_MASK = (1 << VARINT_PAYLOAD_BITS) - 1;
+    private static final int VARINT_CONTINUATION = 1 << VARINT_PAYLOAD_BITS;
+    private static final int POLYLINE_CHUNK_BITS = 5;
+    private static final int POLYLINE_CHUNK_MASK = (1 << POLYLINE_CHUNK_BITS) - 1;
+    private static final int POLYLINE_CONTINUATION = 1 << POLYLINE_CHUNK_BITS;
+    private static final int POLYLINE_OFFSET = 63;
+    //valeur du champ d'altitude d'un point dont l'altitude est inconnue, les autres valeurs étant paires
+    private static final long UNKNOWN_ELEVATION = 1;
+
+    /**
+     * Point de la géométrie encodée d'un itinéraire
+     *
+     * @param point     position du point
+     * @param elevation altitude du point, en mètres, NaN si elle est inconnue
+     */
+    public record ElevatedPoint(PointCh point, double elevation) {}
+
+    /**
+     * Construit un codec pour les itinéraires du graphe donné
+     *
+     * @param graph graphe
+     */
+    public RouteCodec(Graph graph) {
+        this.graph = graph;
+        this.graphFingerprint = fingerprint(graph);
+    }
+
+    /**
+     * Retourne l'empreinte du graphe donné, calculée à partir du nombre de ses nœuds et des positions
+     * et arêtes sortantes d'un échantillon d'entre eux
+     */
+    private static int fingerprint(Graph graph) {
+        CRC32 crc = new CRC32();
+        int nodeCount = graph.nodeCount();
+        updateLong(crc, nodeCount);
+        int stride = Math.max(1, nodeCount / FINGERPRINT_SAMPLES);
+        for (int nodeId = 0; nodeId < nodeCount; nodeId += stride) {
+            PointCh point = graph.nodePoint(nodeId);
+            updateLong(crc, Double.doubleToLongBits(point.e()));
+            updateLong(crc, Double.doubleToLongBits(point.n()));
+            for (int i = 0; i < graph.nodeOutDegree(nodeId); i++) {
+                int edgeId = graph.nodeOutEdgeId(nodeId, i);
+                updateLong(crc, ((long) edgeId << Integer.SIZE) | graph.edgeTargetNodeId(edgeId));
+                updateLong(crc, Double.doubleToLongBits(graph.edgeLength(edgeId)));
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    private static void updateLong(CRC32 crc, long value) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            crc.update((int) (value >>> (Byte.SIZE * i)));
+        }
+    }
+
+    /**
+     * Retourne l'encodage binaire exact de l'itinéraire donné
+     *
+     * @param route itinéraire
+     * @return l'encodage binaire exact de l'itinéraire donné
+     * @throws IllegalArgumentException si l'une des arêtes de l'itinéraire n'appartient pas au graphe
+     */
+    public byte[] encode(Route route) {
+        List<Edge> edges = route.edges();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Integer.BYTES + 2 * edges.size() + 8);
+        out.write(FORMAT_VERSION);
+        for (int i = 0; i < Integer.BYTES; i++) {
+            out.write(graphFingerprint >>> (Byte.SIZE * i));
+        }
+        writeVarint(out, edges.size());
+        writeVarint(out, edges.get(0).fromNodeId());
+
+        int previousEdgeId = 0;
+        for (Edge edge : edges) {
+            int edgeId = FlatRoute.edgeId(graph, edge);
+            writeVarint(out, zigzag(edgeId - previousEdgeId));
+            previousEdgeId = edgeId;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Retourne l'itinéraire correspondant à l'encodage binaire donné
+     *
+     * @param bytes encodage binaire d'un itinéraire
+     * @return l'itinéraire correspondant à l'encodage binaire donné
+     * @throws IllegalArgumentException si l'encodage est invalide ou a été produit avec une autre version du graphe
+     */
+    public Route decode(byte[] bytes) {
+        Reader in = new Reader(bytes);
+        Preconditions.checkArgument(in.readByte() == FORMAT_VERSION);
+        int fingerprint = 0;
+        for (int i = 0; i < Integer.BYTES; i++) {
+            fingerprint |= in.readByte() << (Byte.SIZE * i);
+        }
+        Preconditions.checkArgument(fingerprint == graphFingerprint);
+
+        int edgesCount = in.readVarint();
+        int nodeId = in.readVarint();
+        Preconditions.checkArgument(edgesCount > 0 && 0 <= nodeId && nodeId < graph.nodeCount());
+        //chaque arête occupe au moins un octet, ce qui borne la taille du tableau alloué
+        Preconditions.checkArgument(edgesCount <= in.remaining());
+
+        int[] edgeIds = new int[edgesCount];
+        int edgeId = 0;
+        for (int i = 0; i < edgesCount; i++) {
+            edgeId += unzigzag(in.readVarint());
+            edgeIds[i] = edgeId;
+        }
+        Preconditions.checkArgument(in.isAtEnd());
+        return new FlatRoute(graph, nodeId, edgeIds);
+    }
+
+    /**
+     * Retourne le jeton (Base64 utilisable dans une URL) représentant l'itinéraire donné
+     *
+     * @param route itinéraire
+     * @return le jeton représentant l'itinéraire donné
+     * @throws IllegalArgumentException si l'une des arêtes de l'itinéraire n'appartient pas au graphe
+     */
+    public String encodeToken(Route route) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(encode(route));
+    }
+
+    /**
+     * Retourne l'itinéraire représenté par le jeton donné
+     *
+     * @param token jeton
+     * @return l'itinéraire représenté par le jeton donné
+     * @throws IllegalArgumentException si le jeton est invalide ou a été produit avec une autre version du graphe
+     */
+    public Route decodeToken(String token) {
+        return decode(Base64.getUrlDecoder().decode(token));
+    }
+
+    /**
+     * Retourne la géométrie de l'itinéraire donné (ses nœuds), avec les altitudes du profil donné,
+     * encodée au format polyline étendu avec l'altitude. Une altitude NaN du profil est encodée comme inconnue.
+     *
+     * @param route   itinéraire
+     * @param profile profil de l'itinéraire
+     * @return la géométrie encodée de l'itinéraire
+     */
+    public static String encodePolyline(Route route, ElevationProfile profile) {
+        StringBuilder b = new StringBuilder();
+        long[] previous = new long[3];
+        double position = 0;
+        List<Edge> edges = route.edges();
+        writePolylinePoint(b, previous, edges.get(0).fromPoint(), profile.elevationAt(0));
+        for (Edge edge : edges) {
+            position += edge.length();
+            writePolylinePoint(b, previous, edge.toPoint(), profile.elevationAt(position));
+        }
+        return b.toString();
+    }
+
+    /**
+     * Retourne les points de la géométrie encodée au format polyline étendu avec l'altitude donnée
+     *
+     * @param polyline géométrie encodée
+     * @return les points de la géométrie
+     * @throws IllegalArgumentException si la géométrie est invalide ou contient des points hors de la Suisse
+     */
+    public static List<ElevatedPoint> decodePolyline(String polyline) {
+        List<ElevatedPoint> points = new ArrayList<>();
+        long[] values = new long[3];
+        int[] index = {0};
+        while (index[0] < polyline.length()) {
+            values[0] += readPolylineValue(polyline, index);
+            values[1] += readPolylineValue(polyline, index);
+            long elevationValue = readPolylineValue(polyline, index);
+            Preconditions.checkArgument(elevationValue % 2 == 0 || elevationValue == UNKNOWN_ELEVATION);
+            boolean knownElevation = elevationValue != UNKNOWN_ELEVATION;
+            if (knownElevation) values[2] += elevationValue / 2;
+            double lat = Math.toRadians(values[0] / COORDINATE_PRECISION);
+            double lon = Math.toRadians(values[1] / COORDINATE_PRECISION);
+            double e = Ch1903.e(lon, lat);
+            double n = Ch1903.n(lon, lat);
+            Preconditions.checkArgument(SwissBounds.containsEN(e, n));
+            points.add(new ElevatedPoint(new PointCh(e, n),
+                    knownElevation ? values[2] / ELEVATION_PRECISION : Double.NaN));
+        }
+        return points;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> (Integer.SIZE - 1));
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~VARINT_PAYLOAD_MASK) != 0) {
+            out.write((value & VARINT_PAYLOAD_MASK) | VARINT_CONTINUATION);
+            value >>>= VARINT_PAYLOAD_BITS;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Écrit le point donné, ses valeurs étant relatives aux précédentes, qui sont mises à jour. L'altitude
+     * précédente reste celle du dernier point dont l'altitude est connue.
+     */
+    private static void writePolylinePoint(StringBuilder b, long[] previous, PointCh point, double elevation) {
+        long lat = Math.round(Math.toDegrees(point.lat()) * COORDINATE_PRECISION);
+        long lon = Math.round(Math.toDegrees(point.lon()) * COORDINATE_PRECISION);
+        writePolylineValue(b, lat - previous[0]);
+        writePolylineValue(b, lon - previous[1]);
+        previous[0] = lat;
+        previous[1] = lon;
+        if (Double.isNaN(elevation)) {
+            writePolylineValue(b, UNKNOWN_ELEVATION);
+        } else {
+            long e = Math.round(elevation * ELEVATION_PRECISION);
+            writePolylineValue(b, 2 * (e - previous[2]));
+            previous[2] = e;
+        }
+    }
+
+    private static void writePolylineValue(StringBuilder b, long delta) {
+        long value = (delta << 1) ^ (delta >> (Long.SIZE - 1));
+        while (value >= POLYLINE_CONTINUATION) {
+            b.append((char) (((value & POLYLINE_CHUNK_MASK) | POLYLINE_CONTINUATION) + POLYLINE_OFFSET));
+            value >>>= POLYLINE_CHUNK_BITS;
+        }
+        b.append((char) (value + POLYLINE_OFFSET));
+    }
+
+    /**
+     * Lit une valeur de la géométrie encodée à partir de l'index donné, qui est avancé après la valeur
+     */
+    private static long readPolylineValue(String polyline, int[] index) {
+        long value = 0;
+        int shift = 0;
+        int chunk;
+        do {
+            Preconditions.checkArgument(index[0] < polyline.length() && shift < Long.SIZE);
+            chunk = polyline.charAt(index[0]++) - POLYLINE_OFFSET;
+            Preconditions.checkArgument(0 <= chunk && chunk < 2 * POLYLINE_CONTINUATION);
+            value |= (long) (chunk & POLYLINE_CHUNK_MASK) << shift;
+            shift += POLYLINE_CHUNK_BITS;
+        } while ((chunk & POLYLINE_CONTINUATION) != 0);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Lecteur des octets d'un encodage binaire
+     */
+    private static final class Reader {
+        private final byte[] bytes;
+        private int index;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int readByte() {
+            Preconditions.checkArgument(index < bytes.length);
+            return Byte.toUnsignedInt(bytes[index++]);
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; ; shift += VARINT_PAYLOAD_BITS) {
+                Preconditions.checkArgument(shift < Integer.SIZE);
+                int b = readByte();
+                value |= (b & VARINT_PAYLOAD_MASK) << shift;
+                if ((b & VARINT_CONTINUATION) == 0) return value;
+            }
+        }
+
+        boolean isAtEnd() {
+            return index == bytes.length;
+        }
+
+        int remaining() {
+            return bytes.length - index;
+        }
+    }
+}
@@ -9,12 +9,19 @@ import java.util.List;
 /**
  * Calculateur de la meilleur Route
  *
+ * <p>Les tableaux utilisés par la recherche sont alloués une seule fois puis réutilisés
+ * d'un appel à l'autre, une instance ne doit donc pas être partagée entre plusieurs fils d'exécution.</p>
+ *
  * @author Elias Mir(341277)
  */
 public final class RouteComputer {
 
     private final Graph graph;
     private final CostFunction costFunction;
+    //tableau qui donne ,pour chaque nœud, la distance du plus court chemin actuellement connu jusqu'à lui
+    private final float[] distance;
+    //tableau qui donne ,pour chaque noeud, son prédécesseur dans le plus court chemin menant jusqu'à lui
+    private final int[] predecessor;
 
     /**
      * Construit un planificateur d'itinéraire pour le graphe et la fonction de coût donnés
@@ -25,6 +32,8 @@ public final class RouteComputer {
     public RouteComputer(Graph graph, CostFunction costFunction) {
         this.graph = graph;
         this.costFunction = costFunction;
+        this.distance = new float[graph.nodeCount()];
+        this.predecessor = new int[graph.nodeCount()];
     }
 
     /**
@@ -47,10 +56,6 @@ public final class RouteComputer {
             }
         }
 
-        //tableau qui donne ,pour chaque nœud, la distance du plus court chemin actuellement connu jusqu'à lui
-        float[] distance = new float[graph.nodeCount()];
-        //tableau qui donne ,pour chaque noeud, son prédécesseur dans le plus court chemin menant jusqu'à lui
-        int[] predecessor = new int[graph.nodeCount()];
         //in_exploration contient les nœuds en cours d'exploration
         Queue<WeightedNode> in_exploration = new PriorityQueue<>();
 
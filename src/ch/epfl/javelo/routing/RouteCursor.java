@@ -0,0 +1,61 @@
+package ch.epfl.javelo.routing;
+
+import ch.epfl.javelo.projection.PointCh;
+
+/**
+ * Curseur parcourant un itinéraire dans le sens de sa longueur
+ *
+ * <p>Un curseur mémorise l'arête sur laquelle se trouve sa position, de sorte qu'une suite de
+ * déplacements à des positions croissantes ne parcourt qu'une seule fois les arêtes de l'itinéraire,
+ * en temps constant amorti par déplacement. Un déplacement vers une position inférieure recommence
+ * le parcours au début de l'itinéraire. Les positions, points, altitudes et nœuds d'un curseur
+ * sont ceux qu'obtiendraient les méthodes pointAt, elevationAt et nodeClosestTo de l'itinéraire.</p>
+ *
+ * <p>Un curseur n'est pas utilisable simultanément par plusieurs fils d'exécution.</p>
+ *
+ * @author Elias Mir(341277)
+ */
+public interface RouteCursor {
+
+    /**
+     * Déplace le curseur à la position donnée (en mètres), ramenée à l'intervalle [0, longueur de l'itinéraire]
+     *
+     * @param position position donnée
+     */
+    abstract void moveTo(double position);
+
+    /**
+     * Retourne la position du curseur le long de l'itinéraire, en mètres
+     *
+     * @return la position du curseur le long de l'itinéraire, en mètres
+     */
+    abstract double position();
+
+    /**
+     * Retourne l'index, dans la liste des arêtes de l'itinéraire, de l'arête sur laquelle se trouve le curseur
+     *
+     * @return l'index de l'arête sur laquelle se trouve le curseur
+     */
+    abstract int edgeIndex();
+
+    /**
+     * Retourne le point se trouvant à la position du curseur
+     *
+     * @return le point se trouvant à la position du curseur
+     */
+    abstract PointCh point();
+
+    /**
+     * Retourne l'altitude à la position du curseur
+     *
+     * @return l'altitude à la position du curseur
+     */
+    abstract double elevation();
+
+    /**
+     * Retourne l'identité du nœud de l'itinéraire se trouvant le plus proche de la position du curseur
+     *
+     * @return l'identité du nœud de l'itinéraire se trouvant le plus proche de la position du curseur
+     */
+    abstract int nodeClosest();
+}
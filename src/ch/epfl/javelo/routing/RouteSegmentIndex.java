@@ -0,0 +1,218 @@
+package ch.epfl.javelo.routing;
+
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.projection.PointCh;
+
+import java.util.List;
+
+/**
+ * Hiérarchie de volumes englobants sur les arêtes d'un itinéraire, permettant de trouver le point
+ * de l'itinéraire le plus proche d'un point donné sans examiner toutes les arêtes
+ *
+ * <p>Chaque nœud de l'arbre couvre une plage contiguë d'arêtes et stocke le rectangle englobant
+ * leurs extrémités, les feuilles couvrant au plus LEAF_SIZE arêtes. Une recherche ignore les nœuds
+ * dont le rectangle est plus loin que le meilleur point trouvé jusque-là. Les calculs faits pour
+ * chaque arête sont ceux de Edge, et à distance égale l'arête de plus petit index est choisie,
+ * le résultat est donc le même que celui d'un parcours de toutes les arêtes.</p>
+ *
+ * @author Elias Mir(341277)
+ */
+final class RouteSegmentIndex {
+
+    //position du début de chaque arête le long de l'itinéraire
+    private final double[] edgeStarts;
+    private final double[] fromE;
+    private final double[] fromN;
+    private final double[] toE;
+    private final double[] toN;
+    private final double[] lengths;
+
+    //plage d'arêtes [firstEdge, endEdge[ et rectangle englobant de chaque nœud de l'arbre,
+    //les enfants du nœud i étant les nœuds 2i+1 et 2i+2
+    private final int[] firstEdge;
+    private final int[] endEdge;
+    private final double[] minE;
+    private final double[] maxE;
+    private final double[] minN;
+    private final double[] maxN;
+
+    private static final int LEAF_SIZE = 8;
+    //marge des rectangles englobants, couvrant les erreurs d'arrondi des interpolations
+    private static final double BOX_MARGIN = 1e-6;
+
+    /**
+     * Meilleur point trouvé par une recherche
+     */
+    private static final class Search {
+        private final double e;
+        private final double n;
+        private int edgeIndex = -1;
+        private double position;
+        private double distance = Double.POSITIVE_INFINITY;
+
+        private Search(double e, double n) {
+            this.e = e;
+            this.n = n;
+        }
+    }
+
+    /**
+     * Construit l'index des arêtes données, qui se suivent le long d'un itinéraire
+     *
+     * @param edges arêtes de l'itinéraire
+     * @return l'index des arêtes données
+     */
+    static RouteSegmentIndex of(List<Edge> edges) {
+        int count = edges.size();
+        double[] fromE = new double[count];
+        double[] fromN = new double[count];
+        double[] toE = new double[count];
+        double[] toN = new double[count];
+        double[] lengths = new double[count];
+        for (int i = 0; i < count; i++) {
+            Edge edge = edges.get(i);
+            fromE[i] = edge.fromPoint().e();
+            fromN[i] = edge.fromPoint().n();
+            toE[i] = edge.toPoint().e();
+            toN[i] = edge.toPoint().n();
+            lengths[i] = edge.length();
+        }
+        return new RouteSegmentIndex(fromE, fromN, toE, toN, lengths);
+    }
+
+    /**
+     * Construit l'index des arêtes, qui se suivent le long d'un itinéraire, dont les extrémités
+     * et les longueurs sont données. Les tableaux ne sont pas copiés et ne doivent plus être modifiés.
+     *
+     * @param fromE   coordonnée est du point de départ de chaque arête
+     * @param fromN   coordonnée nord du point de départ de chaque arête
+     * @param toE     coordonnée est du point d'arrivée de chaque arête
+     * @param toN     coordonnée nord du point d'arrivée de chaque arête
+     * @param lengths longueur de chaque arête
+     */
+    RouteSegmentIndex(double[] fromE, double[] fromN, double[] toE, double[] toN, double[] lengths) {
+        int count = lengths.length;
+        this.edgeStarts = new double[count];
+        this.fromE = fromE;
+        this.fromN = fromN;
+        this.toE = toE;
+        this.toN = toN;
+        this.lengths = lengths;
+
+        double l = 0;
+        for (int i = 0; i < count; i++) {
+            edgeStarts[i] = l;
+            l += lengths[i];
+        }
+
+        int treeSize = 4 * Math2.ceilDiv(count, LEAF_SIZE);
+        this.firstEdge = new int[treeSize];
+        this.endEdge = new int[treeSize];
+        this.minE = new double[treeSize];
+        this.maxE = new double[treeSize];
+        this.minN = new double[treeSize];
+        this.maxN = new double[treeSize];
+        build(0, 0, count);
+    }
+
+    /**
+     * Construit le sous-arbre de racine donnée, couvrant les arêtes de la plage [first, end[
+     */
+    private void build(int node, int first, int end) {
+        firstEdge[node] = first;
+        endEdge[node] = end;
+        if (end - first <= LEAF_SIZE) {
+            minE[node] = minN[node] = Double.POSITIVE_INFINITY;
+            maxE[node] = maxN[node] = Double.NEGATIVE_INFINITY;
+            for (int i = first; i < end; i++) {
+                minE[node] = Math.min(minE[node], Math.min(fromE[i], toE[i]) - BOX_MARGIN);
+                maxE[node] = Math.max(maxE[node], Math.max(fromE[i], toE[i]) + BOX_MARGIN);
+                minN[node] = Math.min(minN[node], Math.min(fromN[i], toN[i]) - BOX_MARGIN);
+                maxN[node] = Math.max(maxN[node], Math.max(fromN[i], toN[i]) + BOX_MARGIN);
+            }
+        } else {
+            int middle = (first + end) >>> 1;
+            int left = 2 * node + 1;
+            int right = 2 * node + 2;
+            build(left, first, middle);
+            build(right, middle, end);
+            minE[node] = Math.min(minE[left], minE[right]);
+            maxE[node] = Math.max(maxE[left], maxE[right]);
+            minN[node] = Math.min(minN[left], minN[right]);
+            maxN[node] = Math.max(maxN[left], maxN[right]);
+        }
+    }
+
+    /**
+     * Retourne le point de l'itinéraire se trouvant le plus proche du point de référence donné
+     *
+     * @param point point de référence
+     * @return le point de l'itinéraire se trouvant le plus proche du point de référence donné
+     */
+    RoutePoint pointClosestTo(PointCh point) {
+        Search search = new Search(point.e(), point.n());
+        search(0, search);
+        if (search.edgeIndex == -1) return RoutePoint.NONE;
+
+        int i = search.edgeIndex;
+        PointCh closest = new PointCh(fromE[i], fromN[i]);
+        if (lengths[i] != 0) {
+            closest = new PointCh(
+                    Math2.interpolate(fromE[i], toE[i], search.position / lengths[i]),
+                    Math2.interpolate(fromN[i], toN[i], search.position / lengths[i]));
+        }
+        return new RoutePoint(closest, edgeStarts[i] + search.position, search.distance);
+    }
+
+    private void search(int node, Search search) {
+        if (endEdge[node] - firstEdge[node] <= LEAF_SIZE) {
+            for (int i = firstEdge[node]; i < endEdge[node]; i++) {
+                searchEdge(i, search);
+            }
+            return;
+        }
+
+        //le sous-arbre le plus proche est parcouru en premier, pour élaguer davantage l'autre
+        int left = 2 * node + 1;
+        int right = 2 * node + 2;
+        double leftDistance = boxDistance(left, search);
+        double rightDistance = boxDistance(right, search);
+        if (leftDistance <= rightDistance) {
+            if (leftDistance <= search.distance) search(left, search);
+            if (rightDistance <= search.distance) search(right, search);
+        } else {
+            if (rightDistance <= search.distance) search(right, search);
+            if (leftDistance <= search.distance) search(left, search);
+        }
+    }
+
+    /**
+     * Met à jour la recherche avec le point de l'arête d'index donné le plus proche du point de référence,
+     * calculé comme le font Edge.positionClosestTo et Edge.pointAt
+     */
+    private void searchEdge(int i, Search search) {
+        double position = Math2.clamp(0,
+                Math2.projectionLength(fromE[i], fromN[i], toE[i], toN[i], search.e, search.n), lengths[i]);
+        double e = fromE[i];
+        double n = fromN[i];
+        if (lengths[i] != 0) {
+            e = Math2.interpolate(fromE[i], toE[i], position / lengths[i]);
+            n = Math2.interpolate(fromN[i], toN[i], position / lengths[i]);
+        }
+        double distance = Math.sqrt(Math2.squaredNorm(e - search.e, n - search.n));
+        if (distance < search.distance || (distance == search.distance && i < search.edgeIndex)) {
+            search.edgeIndex = i;
+            search.position = position;
+            search.distance = distance;
+        }
+    }
+
+    /**
+     * Retourne la distance entre le point de référence et le rectangle englobant du nœud donné
+     */
+    private double boxDistance(int node, Search search) {
+        double dE = Math.max(0, Math.max(minE[node] - search.e, search.e - maxE[node]));
+        double dN = Math.max(0, Math.max(minN[node] - search.n, search.n - maxN[node]));
+        return Math.sqrt(Math2.squaredNorm(dE, dN));
+    }
+}
@@ -18,6 +18,8 @@ public final class SingleRoute implements Route {
     private final double[] positionsAtEveryNode;
     private final double length;
     private final List<PointCh> points;
+    //index des arêtes, construit lors de la première recherche du point le plus proche (voir segmentIndex)
+    private RouteSegmentIndex segmentIndex;
 
     /**
      * Construit l'itinéraire simple composé des arêtes données
@@ -137,20 +139,21 @@ public final class SingleRoute implements Route {
      */
     @Override
     public RoutePoint pointClosestTo(PointCh point) {
+        return segmentIndex().pointClosestTo(point);
+    }
 
-        RoutePoint bestRoutePoint = RoutePoint.NONE;
-        double l = 0;
-
-        for (Edge edge : edges) {
-            double position = Math2.clamp(0, edge.positionClosestTo(point), edge.length());
-            PointCh edgePoint = edge.pointAt(position);
-            double distanceToEdgePoint = point.distanceTo(edgePoint);
-
-            bestRoutePoint = bestRoutePoint.min(edgePoint, l + position, distanceToEdgePoint);
-
-            l += edge.length();
+    /**
+     * Retourne l'index des arêtes de la route, construit au premier appel. L'index étant immuable,
+     * il peut au pire être construit plusieurs fois par des appels concurrents.
+     *
+     * @return l'index des arêtes de la route
+     */
+    private RouteSegmentIndex segmentIndex() {
+        RouteSegmentIndex index = segmentIndex;
+        if (index == null) {
+            index = RouteSegmentIndex.of(edges);
+            segmentIndex = index;
         }
-
-        return bestRoutePoint;
+        return index;
     }
 }
@@ -0,0 +1,430 @@
+package ch.epfl.javelo.server;
+
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.gui.GpxGenerator;
+import ch.epfl.javelo.projection.Ch1903;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.SwissBounds;
+import ch.epfl.javelo.routing.ElevationProfile;
+import ch.epfl.javelo.routing.ElevationProfileComputer;
+import ch.epfl.javelo.routing.MultiRoute;
+import ch.epfl.javelo.routing.Route;
+import ch.epfl.javelo.routing.RouteCodec;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Headless HTTP routing service for JaVelo
+ *
+ * <p>The graph is loaded once and shared by all requests. Coordinates are given in
+ * WGS 84 degrees as {@code lat,lon}, waypoints being separated by {@code ;}, at most 50 of them.
+ * The following GET endpoints are available:</p>
+ * <ul>
+ *     <li>{@code /route?waypoints=...[&format=polyline]} : the route going through the waypoints,
+ *     with its points or its encoded polyline, and its token,</li>
+ *     <li>{@code /profile?waypoints=...[&step=5][&width=...]} : its elevation profile, whose step
+ *     is adapted to the given display width (in pixels) when it is given,</li>
+ *     <li>{@code /node?point=...[&distance=500]} : the node closest to the point,</li>
+ *     <li>{@code /gpx?waypoints=...} : the route as a GPX document.</li>
+ * </ul>
+ *
+ * <p>The {@code waypoints} parameter of {@code /route}, {@code /profile} and {@code /gpx} can be
+ * replaced by the {@code token} of a previously computed route (see {@link RouteCodec}).</p>
+ *
+ * <p>Requests are handled by one virtual thread each when the runtime supports them
+ * (Java 21 and later), by a fixed thread pool otherwise.</p>
+ *
+ * @author Elias Mir(341277)
+ * @author Jan Staszewicz(341201)
+ */
+public final class JaVeloServer {
+
+    private final Graph graph;
+    private final RouteComputerPool routeComputers;
+    private final RouteCodec codec;
+    private final HttpServer server;
+    private final ExecutorService requestExecutor;
+
+    private static final int DEFAULT_PORT = 8080;
+    private static final int BACKLOG = 4096;
+    private static final int SEARCH_DISTANCE = 500;
+    private static final double MAX_STEP_LENGTH = 5;
+    private static final double MIN_STEP_LENGTH = 1;
+    private static final int FALLBACK_THREADS = 256;
+    //each pair of successive waypoints costs a route search, so their number per request is bounded
+    private static final int MAX_WAYPOINTS = 50;
+
+    private static final int OK = 200;
+    private static final int BAD_REQUEST = 400;
+    private static final int NOT_FOUND = 404;
+    private static final int METHOD_NOT_ALLOWED = 405;
+    private static final int INTERNAL_SERVER_ERROR = 500;
+    private static final int SERVICE_UNAVAILABLE = 503;
+
+    /**
+     * Constructs (without starting it) a server for the given graph
+     *
+     * @param graph   the graph
+     * @param address the address on which the server listens
+     * @throws IOException if the server cannot be bound to the address
+     */
+    public JaVeloServer(Graph graph, InetSocketAddress address) throws IOException {
+        this.graph = graph;
+        this.routeComputers = new RouteComputerPool(graph, Runtime.getRuntime().availableProcessors());
+        this.codec = new RouteCodec(graph);
+        this.server = HttpServer.create(address, BACKLOG);
+
+        server.createContext("/route", e -> handle(e, this::route));
+        server.createContext("/profile", e -> handle(e, this::profile));
+        server.createContext("/node", e -> handle(e, this::node));
+        server.createContext("/gpx", e -> handle(e, this::gpx));
+        this.requestExecutor = newRequestExecutor();
+        server.setExecutor(requestExecutor);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Graph graph = Graph.loadFrom(Path.of(args.length > 0 ? args[0] : "javelo-data"));
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        JaVeloServer server = new JaVeloServer(graph, new InetSocketAddress(port));
+        server.start();
+        System.out.printf("JaVelo server listening on port %d%n", server.port());
+    }
+
+    /**
+     * Starts the server
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server, waiting at most the given delay for the current requests to complete
+     *
+     * @param delay the maximal delay, in seconds
+     */
+    public void stop(int delay) {
+        server.stop(delay);
+        requestExecutor.shutdown();
+    }
+
+    /**
+     * Returns the port on which the server listens
+     *
+     * @return the port on which the server listens
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Writes the route going through the given waypoints
+     */
+    private void route(Map<String, String> parameters, HttpExchange exchange) throws IOException {
+        Route route = requestedRoute(parameters);
+        boolean polyline = "polyline".equals(parameters.get("format"));
+
+        JsonWriter json = jsonResponse(exchange);
+        json.beginObject()
+                .name("length").value(route.length())
+                .name("token").value(codec.encodeToken(route));
+        if (polyline) {
+            ElevationProfile profile = ElevationProfileComputer.elevationProfile(route, MAX_STEP_LENGTH);
+            json.name("polyline").value(RouteCodec.encodePolyline(route, profile));
+        } else {
+            json.name("points").beginArray();
+            for (PointCh point : route.points()) {
+                writePoint(json, point);
+            }
+            json.endArray();
+        }
+        json.endObject().flush();
+    }
+
+    /**
+     * Writes the elevation profile of the route going through the given waypoints
+     */
+    private void profile(Map<String, String> parameters, HttpExchange exchange) throws IOException {
+        Route route = requestedRoute(parameters);
+        double maxStepLength = parameters.containsKey("step")
+                ? Math.max(MIN_STEP_LENGTH, parsePositive(parameters.get("step")))
+                : MAX_STEP_LENGTH;
+        if (parameters.containsKey("width")) {
+            int width = parseInt(parameters.get("width"));
+            if (width <= 0) throw new RequestException(BAD_REQUEST, "invalid width " + width);
+            maxStepLength = ElevationProfileComputer.adaptiveStepLength(route.length(), width, maxStepLength);
+        }
+        ElevationProfile profile = ElevationProfileComputer.elevationProfile(route, maxStepLength);
+
+        int samplesCount = (int) Math.ceil(profile.length() / maxStepLength) + 1;
+        double spacing = profile.length() / (samplesCount - 1);
+
+        JsonWriter json = jsonResponse(exchange);
+        json.beginObject()
+                .name("length").value(profile.length())
+                .name("minElevation").value(profile.minElevation())
+                .name("maxElevation").value(profile.maxElevation())
+                .name("totalAscent").value(profile.totalAscent())
+                .name("totalDescent").value(profile.totalDescent())
+                .name("spacing").value(spacing)
+                .name("elevations").beginArray();
+        for (int i = 0; i < samplesCount; i++) {
+            json.value(profile.elevationAt(i * spacing));
+        }
+        json.endArray().endObject().flush();
+    }
+
+    /**
+     * Writes the node closest to the given point
+     */
+    private void node(Map<String, String> parameters, HttpExchange exchange) throws IOException {
+        PointCh point = parsePoint(required(parameters, "point"));
+        double distance = parameters.containsKey("distance")
+                ? parsePositive(parameters.get("distance"))
+                : SEARCH_DISTANCE;
+        int nodeId = graph.nodeClosestTo(point, distance);
+        if (nodeId == -1) throw new RequestException(NOT_FOUND, "no node near the given point");
+
+        JsonWriter json = jsonResponse(exchange);
+        json.beginObject().name("nodeId").value(nodeId).name("point");
+        writePoint(json, graph.nodePoint(nodeId));
+        json.endObject().flush();
+    }
+
+    /**
+     * Writes the GPX document of the route going through the given waypoints
+     */
+    private void gpx(Map<String, String> parameters, HttpExchange exchange) throws IOException {
+        Route route = requestedRoute(parameters);
+        ElevationProfile profile = ElevationProfileComputer.elevationProfile(route, MAX_STEP_LENGTH);
+
+        String acceptedEncodings = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        boolean compressed = acceptedEncodings != null && acceptedEncodings.contains("gzip");
+
+        exchange.getResponseHeaders().set("Content-Type", "application/gpx+xml; charset=utf-8");
+        if (compressed) exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        exchange.sendResponseHeaders(OK, 0);
+        OutputStream out = exchange.getResponseBody();
+        GpxGenerator.writeGpx(out, route, profile, compressed);
+        out.flush();
+    }
+
+    /**
+     * Returns the route designated by the token parameter if there is one, the route going
+     * through the waypoints otherwise
+     *
+     * @param parameters the request parameters
+     * @return the route
+     * @throws RequestException if the token is invalid, or if the route cannot be computed
+     */
+    private Route requestedRoute(Map<String, String> parameters) {
+        String token = parameters.get("token");
+        if (token == null) return routeThrough(waypoints(parameters));
+        try {
+            return codec.decodeToken(token);
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(BAD_REQUEST, "invalid route token");
+        }
+    }
+
+    /**
+     * Returns the route going through the given waypoints, built the same way as in the GUI
+     *
+     * @param waypoints the waypoints
+     * @return the route
+     * @throws RequestException if a waypoint is too far from the network or if there is no route
+     */
+    private Route routeThrough(List<PointCh> waypoints) {
+        int[] nodeIds = new int[waypoints.size()];
+        for (int i = 0; i < nodeIds.length; i++) {
+            nodeIds[i] = graph.nodeClosestTo(waypoints.get(i), SEARCH_DISTANCE);
+            if (nodeIds[i] == -1) throw new RequestException(NOT_FOUND, "no road near waypoint " + i);
+        }
+
+        List<Route> segments = new ArrayList<>();
+        for (int i = 0; i < nodeIds.length - 1; i++) {
+            if (nodeIds[i] == nodeIds[i + 1]) continue;
+            Route segment;
+            try {
+                segment = routeComputers.bestRouteBetween(nodeIds[i], nodeIds[i + 1]);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RequestException(SERVICE_UNAVAILABLE, "request interrupted");
+            }
+            if (segment == null) throw new RequestException(NOT_FOUND, "no route after waypoint " + i);
+            segments.add(segment);
+        }
+        if (segments.isEmpty()) throw new RequestException(BAD_REQUEST, "all waypoints are on the same node");
+        return new MultiRoute(segments);
+    }
+
+    /**
+     * Handles a request: parses its parameters and lets the handler write the response,
+     * errors detected before the response is sent are reported as a JSON error object, invalid
+     * arguments as a bad request and any other failure as an internal error
+     */
+    private static void handle(HttpExchange exchange, Handler handler) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendError(exchange, METHOD_NOT_ALLOWED, "only GET is supported");
+                return;
+            }
+            try {
+                handler.handle(parameters(exchange.getRequestURI().getRawQuery()), exchange);
+            } catch (RequestException e) {
+                sendError(exchange, e.status, e.getMessage());
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, BAD_REQUEST, "invalid request");
+            } catch (RuntimeException e) {
+                System.err.printf("%s: %s%n", exchange.getRequestURI(), e);
+                sendError(exchange, INTERNAL_SERVER_ERROR, "internal error");
+            }
+        }
+    }
+
+    /**
+     * Sends a JSON error object with the given status, unless the response has already been started,
+     * in which case it is only closed
+     */
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        if (exchange.getResponseCode() != -1) return;
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0);
+        Writer w = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8);
+        new JsonWriter(w).beginObject().name("error").value(message).endObject().flush();
+    }
+
+    private static JsonWriter jsonResponse(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(OK, 0);
+        return new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8)));
+    }
+
+    private static void writePoint(JsonWriter json, PointCh point) throws IOException {
+        json.beginArray()
+                .value(Math.toDegrees(point.lat()))
+                .value(Math.toDegrees(point.lon()))
+                .endArray();
+    }
+
+    private static Map<String, String> parameters(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null) return parameters;
+        for (String parameter : rawQuery.split("&")) {
+            int equal = parameter.indexOf('=');
+            if (equal <= 0) continue;
+            parameters.put(
+                    URLDecoder.decode(parameter.substring(0, equal), StandardCharsets.UTF_8),
+                    URLDecoder.decode(parameter.substring(equal + 1), StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static String required(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null) throw new RequestException(BAD_REQUEST, "missing parameter " + name);
+        return value;
+    }
+
+    private static List<PointCh> waypoints(Map<String, String> parameters) {
+        String[] points = required(parameters, "waypoints").split(";");
+        if (points.length > MAX_WAYPOINTS)
+            throw new RequestException(BAD_REQUEST, "at most " + MAX_WAYPOINTS + " waypoints are allowed");
+        List<PointCh> waypoints = new ArrayList<>();
+        for (String point : points) {
+            waypoints.add(parsePoint(point));
+        }
+        if (waypoints.size() < 2) throw new RequestException(BAD_REQUEST, "at least two waypoints are needed");
+        return waypoints;
+    }
+
+    /**
+     * Parses a point given as "lat,lon" in WGS 84 degrees
+     */
+    private static PointCh parsePoint(String s) {
+        String[] coordinates = s.split(",");
+        if (coordinates.length != 2) throw new RequestException(BAD_REQUEST, "invalid point " + s);
+        double lat = Math.toRadians(parseDouble(coordinates[0]));
+        double lon = Math.toRadians(parseDouble(coordinates[1]));
+        double e = Ch1903.e(lon, lat);
+        double n = Ch1903.n(lon, lat);
+        if (!SwissBounds.containsEN(e, n)) throw new RequestException(BAD_REQUEST, "point outside Switzerland " + s);
+        return new PointCh(e, n);
+    }
+
+    private static double parseDouble(String s) {
+        try {
+            return Double.parseDouble(s.trim());
+        } catch (NumberFormatException e) {
+            throw new RequestException(BAD_REQUEST, "invalid number " + s);
+        }
+    }
+
+    /**
+     * Parses a finite and strictly positive number
+     */
+    private static double parsePositive(String s) {
+        double value = parseDouble(s);
+        if (!(value > 0 && Double.isFinite(value))) throw new RequestException(BAD_REQUEST, "invalid number " + s);
+        return value;
+    }
+
+    private static int parseInt(String s) {
+        try {
+            return Integer.parseInt(s.trim());
+        } catch (NumberFormatException e) {
+            throw new RequestException(BAD_REQUEST, "invalid number " + s);
+        }
+    }
+
+    /**
+     * Returns the executor handling the requests: one virtual thread per request if available
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(FALLBACK_THREADS);
+        }
+    }
+
+    /**
+     * Handler of an endpoint
+     */
+    @FunctionalInterface
+    private interface Handler {
+        void handle(Map<String, String> parameters, HttpExchange exchange) throws IOException;
+    }
+
+    /**
+     * Error of a request, reported to the client with the given HTTP status
+     */
+    private static final class RequestException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        private RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
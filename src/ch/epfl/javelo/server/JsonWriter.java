@@ -0,0 +1,192 @@
+package ch.epfl.javelo.server;
+
+import ch.epfl.javelo.Preconditions;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Streaming JSON writer, values are written directly to the underlying writer
+ * without building an object tree
+ *
+ * @author Elias Mir(341277)
+ * @author Jan Staszewicz(341201)
+ */
+public final class JsonWriter {
+
+    private final Writer w;
+    //hasElements[d] is true iff the container at depth d already contains an element
+    private boolean[] hasElements;
+    private int depth;
+    private boolean afterName;
+
+    private static final int INITIAL_MAX_DEPTH = 8;
+
+    /**
+     * Constructs a JSON writer writing to the given writer
+     *
+     * @param w the writer
+     */
+    public JsonWriter(Writer w) {
+        this.w = w;
+        this.hasElements = new boolean[INITIAL_MAX_DEPTH];
+    }
+
+    /**
+     * Begins a new object
+     *
+     * @return this writer
+     * @throws IOException in case of writing error
+     */
+    public JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    /**
+     * Ends the current object
+     *
+     * @return this writer
+     * @throws IOException in case of writing error
+     */
+    public JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    /**
+     * Begins a new array
+     *
+     * @return this writer
+     * @throws IOException in case of writing error
+     */
+    public JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    /**
+     * Ends the current array
+     *
+     * @return this writer
+     * @throws IOException in case of writing error
+     */
+    public JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    /**
+     * Writes the name of the next member of the current object
+     *
+     * @param name the name
+     * @return this writer
+     * @throws IOException in case of writing error
+     */
+    public JsonWriter name(String name) throws IOException {
+        Preconditions.checkArgument(depth > 0 && !afterName);
+        separate();
+        writeString(name);
+        w.write(':');
+        afterName = true;
+        return this;
+    }
+
+    /**
+     * Writes a number, non-finite values being written as null
+     *
+     * @param value the value
+     * @return this writer
+     * @throws IOException in case of writing error
+     */
+    public JsonWriter value(double value) throws IOException {
+        separate();
+        w.write(Double.isFinite(value) ? Double.toString(value) : "null");
+        return this;
+    }
+
+    /**
+     * Writes an integer
+     *
+     * @param value the value
+     * @return this writer
+     * @throws IOException in case of writing error
+     */
+    public JsonWriter value(long value) throws IOException {
+        separate();
+        w.write(Long.toString(value));
+        return this;
+    }
+
+    /**
+     * Writes a string
+     *
+     * @param value the value
+     * @return this writer
+     * @throws IOException in case of writing error
+     */
+    public JsonWriter value(String value) throws IOException {
+        separate();
+        writeString(value);
+        return this;
+    }
+
+    /**
+     * Flushes the underlying writer
+     *
+     * @throws IOException in case of writing error
+     */
+    public void flush() throws IOException {
+        w.flush();
+    }
+
+    private JsonWriter open(char c) throws IOException {
+        separate();
+        w.write(c);
+        depth += 1;
+        if (depth == hasElements.length) {
+            boolean[] newHasElements = new boolean[2 * hasElements.length];
+            System.arraycopy(hasElements, 0, newHasElements, 0, hasElements.length);
+            hasElements = newHasElements;
+        }
+        hasElements[depth] = false;
+        return this;
+    }
+
+    private JsonWriter close(char c) throws IOException {
+        Preconditions.checkArgument(depth > 0 && !afterName);
+        depth -= 1;
+        w.write(c);
+        return this;
+    }
+
+    /**
+     * Writes the separator needed before a new element of the current container
+     */
+    private void separate() throws IOException {
+        if (afterName) {
+            afterName = false;
+        } else {
+            if (hasElements[depth]) w.write(',');
+            hasElements[depth] = true;
+        }
+    }
+
+    private void writeString(String s) throws IOException {
+        w.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> w.write("\\\"");
+                case '\\' -> w.write("\\\\");
+                case '\n' -> w.write("\\n");
+                case '\r' -> w.write("\\r");
+                case '\t' -> w.write("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        w.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        w.write(c);
+                    }
+                }
+            }
+        }
+        w.write('"');
+    }
+}
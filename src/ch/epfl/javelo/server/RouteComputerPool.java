@@ -0,0 +1,65 @@
+package ch.epfl.javelo.server;
+
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.routing.CityBikeCF;
+import ch.epfl.javelo.routing.CostFunction;
+import ch.epfl.javelo.routing.Route;
+import ch.epfl.javelo.routing.RouteComputer;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Pool of route computers shared by concurrent requests
+ *
+ * <p>A route computer owns search arrays as large as the graph, so they are reused
+ * from one request to the next instead of being allocated per request (or per thread,
+ * which would not help with one virtual thread per request). The number of searches
+ * running at the same time is bounded by the size of the pool, other requests wait
+ * for a computer to be released.</p>
+ *
+ * @author Elias Mir(341277)
+ * @author Jan Staszewicz(341201)
+ */
+final class RouteComputerPool {
+
+    private final Graph graph;
+    private final CostFunction costFunction;
+    private final Semaphore permits;
+    private final ConcurrentLinkedQueue<RouteComputer> idleComputers;
+
+    /**
+     * Constructs a pool of at most maxComputers route computers, created lazily
+     *
+     * @param graph        the graph
+     * @param maxComputers the maximal number of route computers (and of concurrent searches)
+     */
+    RouteComputerPool(Graph graph, int maxComputers) {
+        this.graph = graph;
+        this.costFunction = new CityBikeCF(graph);
+        this.permits = new Semaphore(maxComputers, true);
+        this.idleComputers = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Returns the best route between the two given nodes, computed by one of the computers of the pool
+     *
+     * @param startNodeId the start node identity
+     * @param endNodeId   the end node identity
+     * @return the best route between the two nodes, or null if there is none
+     * @throws InterruptedException if the thread is interrupted while waiting for a computer
+     */
+    Route bestRouteBetween(int startNodeId, int endNodeId) throws InterruptedException {
+        permits.acquire();
+        RouteComputer computer = null;
+        try {
+            computer = idleComputers.poll();
+            if (computer == null) computer = new RouteComputer(graph, costFunction);
+            return computer.bestRouteBetween(startNodeId, endNodeId);
+        } finally {
+            //the permit is released even if the computer could not be created
+            if (computer != null) idleComputers.add(computer);
+            permits.release();
+        }
+    }
+}
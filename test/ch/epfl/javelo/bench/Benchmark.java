@@ -0,0 +1,90 @@
+package ch.epfl.javelo.bench;
+
+import java.util.Locale;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Minimal micro-benchmark harness (warm-up, measurement iterations, sink)
+ * modelled after JMH's average-time mode
+ *
+ * <p>Each iteration calls the benchmarked operation repeatedly during a fixed
+ * amount of time and reports the mean time per operation. The values returned
+ * by the operation are accumulated into a sink so that the JIT cannot remove
+ * the benchmarked code.</p>
+ *
+ * <p>The harness can be tuned with the system properties {@code bench.warmup}
+ * (warm-up iterations), {@code bench.iterations} (measured iterations),
+ * {@code bench.time} (duration of one iteration, in milliseconds) and
+ * {@code bench.filter} (regular expression selecting the benchmarks to run).</p>
+ *
+ * @author Elias Mir(341277)
+ * @author Jan Staszewicz(341201)
+ */
+public final class Benchmark {
+
+    private static final int WARMUP_ITERATIONS = Integer.getInteger("bench.warmup", 5);
+    private static final int MEASURED_ITERATIONS = Integer.getInteger("bench.iterations", 10);
+    private static final long ITERATION_NANOS = Long.getLong("bench.time", 1_000) * 1_000_000L;
+    private static final String FILTER = System.getProperty("bench.filter", ".*");
+
+    //keeps the results of the operations alive
+    private static volatile double sink;
+
+    private Benchmark() {}
+
+    /**
+     * Prints the header of the result table
+     */
+    public static void printHeader() {
+        System.out.printf(Locale.ROOT, "%-50s %6s %14s %12s%n", "Benchmark", "Cnt", "Score", "Error");
+    }
+
+    /**
+     * Runs the given operation and prints its mean time per operation (in nanoseconds).
+     * The operation receives the index of the call, which can be used to cycle through inputs.
+     *
+     * @param name      the name of the benchmark
+     * @param operation the benchmarked operation
+     */
+    public static void run(String name, IntToDoubleFunction operation) {
+        if (!name.matches(FILTER)) return;
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(operation);
+        }
+
+        double[] scores = new double[MEASURED_ITERATIONS];
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            scores[i] = iteration(operation);
+        }
+
+        double mean = 0;
+        for (double score : scores) mean += score;
+        mean /= scores.length;
+
+        double variance = 0;
+        for (double score : scores) variance += (score - mean) * (score - mean);
+        double error = scores.length > 1 ? Math.sqrt(variance / (scores.length - 1)) : Double.NaN;
+
+        System.out.printf(Locale.ROOT, "%-50s %6d %14.3f +- %10.3f ns/op%n", name, scores.length, mean, error);
+    }
+
+    /**
+     * Runs a single iteration
+     *
+     * @param operation the benchmarked operation
+     * @return the mean time per operation during this iteration, in nanoseconds
+     */
+    private static double iteration(IntToDoubleFunction operation) {
+        double accumulator = 0;
+        int count = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            accumulator += operation.applyAsDouble(count++);
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < ITERATION_NANOS);
+        sink += accumulator;
+        return (double) elapsed / count;
+    }
+}
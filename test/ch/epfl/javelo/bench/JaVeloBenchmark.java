@@ -0,0 +1,204 @@
+package ch.epfl.javelo.bench;
+
+import ch.epfl.javelo.Bits;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.data.GraphEdges;
+import ch.epfl.javelo.gui.GpxGenerator;
+import ch.epfl.javelo.projection.Ch1903;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.SwissBounds;
+import ch.epfl.javelo.routing.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+import static ch.epfl.test.TestRandomizer.newRandom;
+
+/**
+ * Benchmarks of the hot paths of JaVelo, run against a graph directory (lausanne by default)
+ *
+ * <p>Usage: {@code java -cp <classes> ch.epfl.javelo.bench.JaVeloBenchmark [graphDirectory]},
+ * see {@link Benchmark} for the available tuning properties. All inputs are generated
+ * with the fixed seed of {@link ch.epfl.test.TestRandomizer} so that runs are reproducible.</p>
+ *
+ * @author Elias Mir(341277)
+ * @author Jan Staszewicz(341201)
+ */
+public final class JaVeloBenchmark {
+
+    //same routes as in RouteComputerTest
+    private static final int MEDIUM_START_NODE = 159049;
+    private static final int MEDIUM_END_NODE = 117669;
+    private static final int LONG_START_NODE = 210641;
+    private static final int LONG_END_NODE = 43713;
+    private static final double SHORT_ROUTE_LENGTH = 1500;
+
+    private static final int INPUTS_COUNT = 1 << 10;
+    private static final int INPUTS_MASK = INPUTS_COUNT - 1;
+    private static final double SEARCH_DISTANCE = 500;
+    private static final double MAX_STEP_LENGTH = 5;
+    private static final int[] PROFILE_TYPES = {1, 2, 3};
+    private static final String[] PROFILE_NAMES = {"uncompressed", "compressedQ4_4", "compressedQ0_4"};
+
+    private JaVeloBenchmark() {}
+
+    public static void main(String[] args) throws IOException {
+        Path basePath = Path.of(args.length > 0 ? args[0] : "lausanne");
+        Graph graph = Graph.loadFrom(basePath);
+        GraphEdges graphEdges = loadGraphEdges(basePath);
+        RouteComputer routeComputer = new RouteComputer(graph, new CityBikeCF(graph));
+        RandomGenerator rng = newRandom();
+
+        Route mediumRoute = routeComputer.bestRouteBetween(MEDIUM_START_NODE, MEDIUM_END_NODE);
+        Route longRoute = routeComputer.bestRouteBetween(LONG_START_NODE, LONG_END_NODE);
+        int shortEndNode = mediumRoute.nodeClosestTo(SHORT_ROUTE_LENGTH);
+        Route multiRoute = new MultiRoute(List.of(
+                mediumRoute,
+                routeComputer.bestRouteBetween(MEDIUM_END_NODE, LONG_END_NODE)));
+
+        Benchmark.printHeader();
+
+        //routing
+        Benchmark.run("RouteComputer.bestRouteBetween.short",
+                i -> routeComputer.bestRouteBetween(MEDIUM_START_NODE, shortEndNode).length());
+        Benchmark.run("RouteComputer.bestRouteBetween.medium",
+                i -> routeComputer.bestRouteBetween(MEDIUM_START_NODE, MEDIUM_END_NODE).length());
+        Benchmark.run("RouteComputer.bestRouteBetween.long",
+                i -> routeComputer.bestRouteBetween(LONG_START_NODE, LONG_END_NODE).length());
+
+        //graph
+        PointCh[] nearNodes = pointsAround(graph, rng);
+        Benchmark.run("Graph.nodeClosestTo",
+                i -> graph.nodeClosestTo(nearNodes[i & INPUTS_MASK], SEARCH_DISTANCE));
+
+        for (int t = 0; t < PROFILE_TYPES.length; t++) {
+            int[] edgeIds = edgesWithProfileType(graphEdges, PROFILE_TYPES[t]);
+            if (edgeIds.length == 0) continue;
+            Benchmark.run("GraphEdges.profileSamples." + PROFILE_NAMES[t],
+                    i -> graphEdges.profileSamples(edgeIds[i % edgeIds.length]).length);
+        }
+
+        //elevation profiles
+        Benchmark.run("ElevationProfileComputer.elevationProfile.medium",
+                i -> ElevationProfileComputer.elevationProfile(mediumRoute, MAX_STEP_LENGTH).totalAscent());
+        Benchmark.run("ElevationProfileComputer.elevationProfile.long",
+                i -> ElevationProfileComputer.elevationProfile(longRoute, MAX_STEP_LENGTH).totalAscent());
+
+        //closest points
+        PointCh[] nearLongRoute = pointsAround(longRoute, rng);
+        Benchmark.run("SingleRoute.pointClosestTo",
+                i -> longRoute.pointClosestTo(nearLongRoute[i & INPUTS_MASK]).position());
+        PointCh[] nearMultiRoute = pointsAround(multiRoute, rng);
+        Benchmark.run("MultiRoute.pointClosestTo",
+                i -> multiRoute.pointClosestTo(nearMultiRoute[i & INPUTS_MASK]).position());
+
+        //projections
+        double[] lons = new double[INPUTS_COUNT];
+        double[] lats = new double[INPUTS_COUNT];
+        for (int i = 0; i < INPUTS_COUNT; i++) {
+            PointCh p = nearNodes[i];
+            lons[i] = p.lon();
+            lats[i] = p.lat();
+        }
+        Benchmark.run("Ch1903.toWgs84",
+                i -> Ch1903.lon(nearNodes[i & INPUTS_MASK].e(), nearNodes[i & INPUTS_MASK].n())
+                        + Ch1903.lat(nearNodes[i & INPUTS_MASK].e(), nearNodes[i & INPUTS_MASK].n()));
+        Benchmark.run("Ch1903.toCh1903",
+                i -> Ch1903.e(lons[i & INPUTS_MASK], lats[i & INPUTS_MASK])
+                        + Ch1903.n(lons[i & INPUTS_MASK], lats[i & INPUTS_MASK]));
+
+        //export
+        ElevationProfile mediumProfile = ElevationProfileComputer.elevationProfile(mediumRoute, MAX_STEP_LENGTH);
+        Benchmark.run("GpxGenerator.createGpx.medium",
+                i -> GpxGenerator.createGpx(mediumRoute, mediumProfile).getDocumentElement().getChildNodes().getLength());
+        Benchmark.run("GpxGenerator.writeGpx.medium", i -> {
+            try {
+                GpxGenerator.writeGpx(OutputStream.nullOutputStream(), mediumRoute, mediumProfile, false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return i;
+        });
+    }
+
+    /**
+     * Returns random points located at most SEARCH_DISTANCE meters away from random nodes of the graph
+     *
+     * @param graph the graph
+     * @param rng   the random generator
+     * @return the points
+     */
+    private static PointCh[] pointsAround(Graph graph, RandomGenerator rng) {
+        PointCh[] points = new PointCh[INPUTS_COUNT];
+        for (int i = 0; i < INPUTS_COUNT; i++) {
+            points[i] = shifted(graph.nodePoint(rng.nextInt(graph.nodeCount())), rng);
+        }
+        return points;
+    }
+
+    /**
+     * Returns random points located at most SEARCH_DISTANCE meters away from random points of the route
+     *
+     * @param route the route
+     * @param rng   the random generator
+     * @return the points
+     */
+    private static PointCh[] pointsAround(Route route, RandomGenerator rng) {
+        PointCh[] points = new PointCh[INPUTS_COUNT];
+        for (int i = 0; i < INPUTS_COUNT; i++) {
+            points[i] = shifted(route.pointAt(rng.nextDouble(route.length())), rng);
+        }
+        return points;
+    }
+
+    private static PointCh shifted(PointCh point, RandomGenerator rng) {
+        double e = point.e() + rng.nextDouble(-SEARCH_DISTANCE, SEARCH_DISTANCE);
+        double n = point.n() + rng.nextDouble(-SEARCH_DISTANCE, SEARCH_DISTANCE);
+        return SwissBounds.containsEN(e, n) ? new PointCh(e, n) : point;
+    }
+
+    /**
+     * Returns (at most INPUTS_COUNT) identities of edges having the given profile type
+     *
+     * @param edges       the edges of the graph
+     * @param profileType the profile type (1, 2 or 3)
+     * @return the identities of the edges
+     */
+    private static int[] edgesWithProfileType(GraphEdges edges, int profileType) {
+        int[] edgeIds = new int[INPUTS_COUNT];
+        int count = 0;
+        for (int edgeId = 0; edgeId < edges.profileIds().capacity() && count < INPUTS_COUNT; edgeId++) {
+            if (Bits.extractUnsigned(edges.profileIds().get(edgeId), 30, 2) == profileType) {
+                edgeIds[count++] = edgeId;
+            }
+        }
+        return Arrays.copyOf(edgeIds, count);
+    }
+
+    /**
+     * Maps the edge files of the graph found in the given directory
+     *
+     * @param basePath the graph directory
+     * @return the edges of the graph
+     * @throws IOException in case of input/output error
+     */
+    private static GraphEdges loadGraphEdges(Path basePath) throws IOException {
+        return new GraphEdges(
+                map(basePath.resolve("edges.bin")),
+                map(basePath.resolve("profile_ids.bin")).asIntBuffer(),
+                map(basePath.resolve("elevations.bin")).asShortBuffer());
+    }
+
+    private static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
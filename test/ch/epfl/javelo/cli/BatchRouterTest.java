@@ -0,0 +1,130 @@
+package ch.epfl.javelo.cli;
+
+import ch.epfl.javelo.routing.GridGraph;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchRouterTest {
+
+    private static final String HEADER = "id,status,length,ascent,descent";
+    private static final String FROM = GridGraph.ORIGIN_E + "," + GridGraph.ORIGIN_N;
+    private static final String TO = (GridGraph.ORIGIN_E + 5 * GridGraph.SPACING) + ","
+            + (GridGraph.ORIGIN_N + 3 * GridGraph.SPACING);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void batchRouterRoutesLinesInInputOrder() throws Exception {
+        var input = String.join("\n",
+                "id,e1,n1,e2,n2",
+                "a," + FROM + "," + TO,
+                "",
+                "b,foo," + FROM + "," + TO,
+                "c," + FROM + "," + FROM,
+                "d," + FROM + ",1,1",
+                "e," + FROM);
+        var output = run(new BatchRouter(GridGraph.newGraph(), null, true), input, 4);
+        assertEquals(String.join("\n",
+                HEADER,
+                "a,ok,320.00,0.0,0.0",
+                "b,invalid,,,",
+                "c,same_node,,,",
+                "d,invalid,,,",
+                "e,invalid,,,",
+                ""), output);
+    }
+
+    @Test
+    void batchRouterDoesNotSkipMalformedFirstLine() throws Exception {
+        var input = "x,abc," + TO + "\n" + "a," + FROM + "," + TO;
+        var output = run(new BatchRouter(GridGraph.newGraph(), null, true), input, 2);
+        assertEquals(HEADER + "\nx,invalid,,,\na,ok,320.00,0.0,0.0\n", output);
+    }
+
+    @Test
+    void batchRouterKeepsRoutingAfterFailedLine() throws Exception {
+        var gpxDirectory = directory.resolve("gpx");
+        Files.createDirectories(gpxDirectory.resolve("bad.gpx"));
+        var input = String.join("\n",
+                "bad," + FROM + "," + TO,
+                "good," + FROM + "," + TO);
+        var output = run(new BatchRouter(GridGraph.newGraph(), gpxDirectory, true), input, 2);
+        assertEquals(HEADER + "\nbad,error,,,\ngood,ok,320.00,0.0,0.0\n", output);
+        assertTrue(Files.isRegularFile(gpxDirectory.resolve("good.gpx")));
+    }
+
+    @Test
+    void batchRouterRejectsIdsLeavingTheGpxDirectory() throws Exception {
+        var gpxDirectory = directory.resolve("gpx");
+        Files.createDirectories(gpxDirectory);
+        var input = String.join("\n",
+                "../escaped," + FROM + "," + TO,
+                "sub/route," + FROM + "," + TO,
+                ".., " + FROM + "," + TO,
+                "route-1.v2," + FROM + "," + TO);
+        var output = run(new BatchRouter(GridGraph.newGraph(), gpxDirectory, true), input, 2);
+        assertEquals(String.join("\n",
+                HEADER,
+                "../escaped,invalid_id,,,",
+                "sub/route,invalid_id,,,",
+                "..,invalid_id,,,",
+                "route-1.v2,ok,320.00,0.0,0.0",
+                ""), output);
+        assertFalse(Files.exists(directory.resolve("escaped.gpx")));
+        try (var files = Files.list(gpxDirectory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void batchRouterStopsReadingOnOutputError() {
+        var lineCount = 1_000_000;
+        var readLines = new AtomicLong();
+        var reader = new BufferedReader(new StringReader("")) {
+            @Override
+            public String readLine() {
+                var i = readLines.getAndIncrement();
+                return i < lineCount ? i + "," + FROM + "," + FROM : null;
+            }
+        };
+        var writer = new Writer() {
+            private int written;
+
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                written += length;
+                if (written > 10_000) throw new IOException("disk full");
+            }
+
+            @Override
+            public void flush() {}
+
+            @Override
+            public void close() {}
+        };
+        var router = new BatchRouter(GridGraph.newGraph(), null, true);
+        assertThrows(IOException.class, () -> router.run(reader, writer, 2));
+        assertTrue(readLines.get() < lineCount);
+    }
+
+    private static String run(BatchRouter router, String input, int threads) throws Exception {
+        var output = new StringWriter();
+        router.run(new BufferedReader(new StringReader(input)), output, threads);
+        return output.toString();
+    }
+}
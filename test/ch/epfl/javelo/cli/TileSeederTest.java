@@ -0,0 +1,171 @@
+package ch.epfl.javelo.cli;
+
+import ch.epfl.javelo.gui.PackedTileStore;
+import ch.epfl.javelo.gui.TileFetcher;
+import ch.epfl.javelo.gui.TileManager;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.PointWebMercator;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TileSeederTest {
+
+    private static final double MIN_E = 2_532_000;
+    private static final double MIN_N = 1_152_000;
+    private static final double MAX_E = 2_534_000;
+    private static final double MAX_N = 1_153_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void tileRangeCoversTheRectangle() {
+        for (int zoomLevel = 10; zoomLevel <= 17; zoomLevel += 1) {
+            var range = TileSeeder.tileRange(zoomLevel, MIN_E, MIN_N, MAX_E, MAX_N);
+            var tiles = new HashSet<TileManager.TileId>();
+            for (long i = 0; i < range.size(); i += 1) tiles.add(range.tileAt(i));
+            assertEquals(range.size(), tiles.size());
+            for (var e = MIN_E; e <= MAX_E; e += 100) {
+                for (var n = MIN_N; n <= MAX_N; n += 100) {
+                    assertTrue(tiles.contains(tileAt(new PointCh(e, n), zoomLevel)));
+                }
+            }
+        }
+        // A single point is covered by a single tile
+        assertEquals(1, TileSeeder.tileRange(12, MIN_E, MIN_N, MIN_E, MIN_N).size());
+        // The rectangle is clamped to the bounds of Switzerland
+        assertEquals(TileSeeder.tileRange(8, 2_400_000, 1_000_000, 2_900_000, 1_400_000),
+                TileSeeder.tileRange(8, 0, 0, 1e7, 1e7));
+    }
+
+    @Test
+    void tileSeederDownloadsMissingTilesOnly() throws Exception {
+        var requested = ConcurrentHashMap.<String>newKeySet();
+        var server = startServer(requested, Set.of());
+        try (var store = PackedTileStore.open(directory);
+             var fetcher = newFetcher(server)) {
+            var cached = tileAt(new PointCh(MIN_E, MIN_N), 14);
+            store.write(cached, new byte[]{9});
+
+            var seeder = new TileSeeder(store, fetcher, 4, 0);
+            var total = seeder.seed(MIN_E, MIN_N, MAX_E, MAX_N, 13, 15);
+            assertEquals(expectedTileCount(13, 15), total);
+            assertEquals(1, seeder.cachedTiles());
+            assertEquals(total - 1, seeder.downloadedTiles());
+            assertEquals(0, seeder.failedTiles());
+            assertEquals(total - 1, requested.size());
+            assertFalse(requested.contains(path(cached)));
+            assertEquals(total, store.tileCount());
+
+            // A second seeding finds all the tiles in the store
+            var again = new TileSeeder(store, fetcher, 4, 0);
+            again.seed(MIN_E, MIN_N, MAX_E, MAX_N, 13, 15);
+            assertEquals(total, again.cachedTiles());
+            assertEquals(0, again.downloadedTiles());
+            assertEquals(total - 1, requested.size());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void tileSeederCountsFailedTiles() throws Exception {
+        var missing = tileAt(new PointCh(MAX_E, MAX_N), 15);
+        var server = startServer(ConcurrentHashMap.newKeySet(), Set.of(path(missing)));
+        try (var store = PackedTileStore.open(directory);
+             var fetcher = newFetcher(server)) {
+            var seeder = new TileSeeder(store, fetcher, 2, 0);
+            var total = seeder.seed(MIN_E, MIN_N, MAX_E, MAX_N, 15, 15);
+            assertEquals(1, seeder.failedTiles());
+            assertEquals(total - 1, seeder.downloadedTiles());
+            assertFalse(store.contains(missing));
+            assertEquals(total - 1, store.tileCount());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void tileSeederLimitsItsRate() throws Exception {
+        var server = startServer(ConcurrentHashMap.newKeySet(), Set.of());
+        try (var store = PackedTileStore.open(directory);
+             var fetcher = newFetcher(server)) {
+            var tilesPerSecond = 40;
+            var seeder = new TileSeeder(store, fetcher, 4, tilesPerSecond);
+            var t0 = System.nanoTime();
+            var total = seeder.seed(MIN_E, MIN_N, MAX_E, MAX_N, 13, 15);
+            var seconds = (System.nanoTime() - t0) / 1e9;
+            assertEquals(total, seeder.downloadedTiles());
+            assertTrue(seconds >= (total - 1) / (double) tilesPerSecond, "seeded too fast: " + seconds + " s");
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void tileSeederThrowsOnInvalidArguments() throws IOException {
+        try (var store = PackedTileStore.open(directory)) {
+            assertThrows(IllegalArgumentException.class, () -> new TileSeeder(store, null, 0, 1));
+            assertThrows(IllegalArgumentException.class, () -> new TileSeeder(store, null, 1, -1));
+            var seeder = new TileSeeder(store, null, 1, 0);
+            assertThrows(IllegalArgumentException.class, () -> seeder.seed(MAX_E, MIN_N, MIN_E, MAX_N, 10, 12));
+            assertThrows(IllegalArgumentException.class, () -> seeder.seed(MIN_E, MIN_N, MAX_E, MAX_N, 12, 10));
+            assertThrows(IllegalArgumentException.class, () -> seeder.seed(MIN_E, MIN_N, MAX_E, MAX_N, 10, 20));
+        }
+    }
+
+    private static long expectedTileCount(int minZoomLevel, int maxZoomLevel) {
+        var count = 0L;
+        for (int zoomLevel = minZoomLevel; zoomLevel <= maxZoomLevel; zoomLevel += 1)
+            count += TileSeeder.tileRange(zoomLevel, MIN_E, MIN_N, MAX_E, MAX_N).size();
+        return count;
+    }
+
+    private static TileManager.TileId tileAt(PointCh point, int zoomLevel) {
+        var p = PointWebMercator.ofPointCh(point);
+        return new TileManager.TileId(zoomLevel,
+                (int) (p.xAtZoomLevel(zoomLevel) / 256),
+                (int) (p.yAtZoomLevel(zoomLevel) / 256));
+    }
+
+    private static String path(TileManager.TileId tileId) {
+        return "/" + tileId.zoomLevel() + "/" + tileId.x() + "/" + tileId.y() + ".png";
+    }
+
+    private static HttpServer startServer(Set<String> requested, Set<String> missing) throws IOException {
+        var server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            var path = exchange.getRequestURI().getPath();
+            requested.add(path);
+            if (missing.contains(path)) {
+                // Not found is not retried by the fetcher
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                exchange.sendResponseHeaders(200, 1);
+                exchange.getResponseBody().write(1);
+            }
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        return server;
+    }
+
+    private static TileFetcher newFetcher(HttpServer server) throws IOException {
+        return new TileFetcher("http://localhost:" + server.getAddress().getPort(), null, 4);
+    }
+}
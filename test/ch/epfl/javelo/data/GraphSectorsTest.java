@@ -6,6 +6,7 @@ import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Comparator;
 import java.util.List;
@@ -130,6 +131,39 @@ class GraphSectorsTest {
         assertEquals(List.of(new GraphSectors.Sector(0, maxSectorSize)), sectors);
     }
 
+    @Test
+    void graphSectorsSectorsInRectangleWorks() {
+        var graphSectors = new GraphSectors(SECTORS_BUFFER);
+        var sectors = graphSectors.sectorsInRectangle(
+                SWISS_MIN_E + 3.5 * SECTOR_WIDTH, SWISS_MIN_N + 10.2 * SECTOR_HEIGHT,
+                SWISS_MIN_E + 5.1 * SECTOR_WIDTH, SWISS_MIN_N + 11.9 * SECTOR_HEIGHT);
+        var expectedSectors = new ArrayList<GraphSectors.Sector>();
+        for (int y = 10; y <= 11; y += 1) {
+            for (int x = 3; x <= 5; x += 1) {
+                var i = sectorIndex(x, y);
+                expectedSectors.add(new GraphSectors.Sector(i, i + 1));
+            }
+        }
+        assertEquals(expectedSectors, sectors);
+    }
+
+    @Test
+    void graphSectorsSectorsInRectangleIsLimitedToSwitzerland() {
+        var graphSectors = new GraphSectors(SECTORS_BUFFER);
+        var corner = graphSectors.sectorsInRectangle(
+                SWISS_MIN_E - 10_000, SWISS_MIN_N + SWISS_HEIGHT - 10,
+                SWISS_MIN_E + 10, SWISS_MIN_N + SWISS_HEIGHT + 10_000);
+        var i = sectorIndex(0, SUBDIVISIONS_PER_SIDE - 1);
+        assertEquals(List.of(new GraphSectors.Sector(i, i + 1)), corner);
+
+        var all = graphSectors.sectorsInRectangle(0, 0, 1e7, 1e7);
+        assertEquals(SECTORS_COUNT, all.size());
+
+        var outside = graphSectors.sectorsInRectangle(
+                SWISS_MIN_E - 10_000, SWISS_MIN_N, SWISS_MIN_E - 1, SWISS_MIN_N + 1000);
+        assertEquals(List.of(), outside);
+    }
+
     @Disabled
     @Test
     void graphSectorsSectorsInAreaWorksForAllOfThem() {
@@ -395,4 +395,26 @@ class GraphTest {
             }
         }
     }
+
+    @Test
+    void graphEdgeProfileIsDecodedOnFirstEvaluation() {
+        var graphNodes = new GraphNodes(IntBuffer.allocate(3));
+        var graphSectors = new GraphSectors(SECTORS_BUFFER);
+        var edgesBuffer = ByteBuffer.allocate(10);
+        edgesBuffer.putShort(4, (short) (4 << 4));
+        var profileIds = IntBuffer.wrap(new int[]{1 << 30});
+        var elevations = ShortBuffer.allocate(3);
+        var graph = new Graph(graphNodes, graphSectors, new GraphEdges(edgesBuffer, profileIds, elevations), List.of());
+
+        var edgeProfile = graph.edgeProfile(0);
+        elevations.put(0, (short) (100 << 4));
+        elevations.put(1, (short) (200 << 4));
+        elevations.put(2, (short) (300 << 4));
+        assertEquals(150, edgeProfile.applyAsDouble(1));
+        assertEquals(300, edgeProfile.applyAsDouble(4));
+
+        // Once decoded, the profile does not change anymore
+        elevations.put(0, (short) 0);
+        assertEquals(100, edgeProfile.applyAsDouble(0));
+    }
 }
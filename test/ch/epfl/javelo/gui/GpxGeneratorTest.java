@@ -2,15 +2,23 @@ package ch.epfl.javelo.gui;
 
 import ch.epfl.javelo.data.Graph;
 import ch.epfl.javelo.projection.PointCh;
-import ch.epfl.javelo.routing.CityBikeCF;
-import ch.epfl.javelo.routing.ElevationProfile;
-import ch.epfl.javelo.routing.ElevationProfileComputer;
-import ch.epfl.javelo.routing.RouteComputer;
+import ch.epfl.javelo.routing.*;
+import org.junit.jupiter.api.Test;
 
-import java.io.IOException;
-import java.io.UncheckedIOException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public class GpxGeneratorTest {
 
@@ -39,4 +47,48 @@ public class GpxGeneratorTest {
         ElevationProfile elevationProfile2 = ElevationProfileComputer.elevationProfile(route2, 1);
         GpxGenerator.writeGpx("itinerary2.gpx", route2, elevationProfile2);
     }
+
+    @Test
+    void writeGpxWritesTheSameDocumentAsTheDomSerialization() throws Exception {
+        var route = randomRoute(500);
+        var profile = ElevationProfileComputer.elevationProfile(route, 2);
+
+        Transformer transformer = TransformerFactory.newDefaultInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        var expected = new StringWriter();
+        transformer.transform(new DOMSource(GpxGenerator.createGpx(route, profile)), new StreamResult(expected));
+
+        var actual = new StringWriter();
+        GpxGenerator.writeGpx(actual, route, profile);
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    void writeGpxCompressedWritesTheSameDocumentGzipped() throws IOException {
+        var route = randomRoute(100);
+        var profile = ElevationProfileComputer.elevationProfile(route, 2);
+
+        var expected = new StringWriter();
+        GpxGenerator.writeGpx(expected, route, profile);
+
+        var compressed = new ByteArrayOutputStream();
+        GpxGenerator.writeGpx(compressed, route, profile, true);
+        try (var in = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            assertEquals(expected.toString(), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static Route randomRoute(int edgesCount) {
+        var rng = newRandom();
+        var edges = new ArrayList<Edge>();
+        var from = new PointCh(2_600_000, 1_200_000);
+        for (int i = 0; i < edgesCount; i += 1) {
+            var to = new PointCh(from.e() + rng.nextDouble(-50, 50), from.n() + rng.nextDouble(-50, 50));
+            var base = rng.nextDouble(400, 800);
+            var slope = rng.nextDouble(-0.1, 0.1);
+            edges.add(new Edge(i, i + 1, from, to, from.distanceTo(to), x -> base + slope * x));
+            from = to;
+        }
+        return new SingleRoute(edges);
+    }
 }
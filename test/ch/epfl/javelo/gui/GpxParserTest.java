@@ -0,0 +1,83 @@
+package ch.epfl.javelo.gui;
+
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.routing.Edge;
+import ch.epfl.javelo.routing.ElevationProfileComputer;
+import ch.epfl.javelo.routing.SingleRoute;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GpxParserTest {
+    // Ch1903 conversions are approximate, they are precise to about one meter
+    private static final double DELTA_DEGREES = 1e-5;
+    private static final double DELTA_METERS = 1;
+
+    @Test
+    void gpxParserReadsTrackSegments() throws IOException {
+        var gpx = """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <gpx version="1.1" creator="test" xmlns="http://www.topografix.com/GPX/1/1">
+                  <trk>
+                    <name>Ride</name>
+                    <trkseg>
+                      <trkpt lat="46.51906591210284" lon="6.561577226011527"><ele>400</ele></trkpt>
+                      <trkpt lat="46.5376322879081" lon="6.638994452771649"><ele>500</ele></trkpt>
+                    </trkseg>
+                    <trkseg>
+                      <trkpt lat="10" lon="10"/>
+                    </trkseg>
+                    <trkseg>
+                      <trkpt lat="46.48192028235536" lon="6.776493591626262"/>
+                      <trkpt lat="invalid" lon="6.7"/>
+                    </trkseg>
+                  </trk>
+                </gpx>
+                """;
+        var tracks = GpxParser.readTracks(new ByteArrayInputStream(gpx.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(2, tracks.size());
+        assertEquals(2, tracks.get(0).size());
+        assertEquals(1, tracks.get(1).size());
+        assertEquals(46.51906591210284, Math.toDegrees(tracks.get(0).get(0).lat()), DELTA_DEGREES);
+        assertEquals(6.561577226011527, Math.toDegrees(tracks.get(0).get(0).lon()), DELTA_DEGREES);
+        assertEquals(46.48192028235536, Math.toDegrees(tracks.get(1).get(0).lat()), DELTA_DEGREES);
+    }
+
+    @Test
+    void gpxParserReadsRoutesWrittenByGpxGenerator() throws IOException {
+        var points = new ArrayList<PointCh>();
+        for (int i = 0; i <= 10; i += 1) points.add(new PointCh(2_600_000 + 100 * i, 1_200_000 + 37 * i));
+        var edges = new ArrayList<Edge>();
+        for (int i = 0; i < 10; i += 1) {
+            edges.add(new Edge(i, i + 1, points.get(i), points.get(i + 1),
+                    points.get(i).distanceTo(points.get(i + 1)), x -> 500));
+        }
+        var route = new SingleRoute(edges);
+
+        var out = new ByteArrayOutputStream();
+        GpxGenerator.writeGpx(out, route, ElevationProfileComputer.elevationProfile(route, 5), true);
+        var tracks = GpxParser.readTracks(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())));
+
+        assertEquals(1, tracks.size());
+        assertEquals(points.size(), tracks.get(0).size());
+        for (int i = 0; i < points.size(); i += 1) {
+            assertEquals(points.get(i).e(), tracks.get(0).get(i).e(), DELTA_METERS);
+            assertEquals(points.get(i).n(), tracks.get(0).get(i).n(), DELTA_METERS);
+        }
+    }
+
+    @Test
+    void gpxParserReturnsNoTrackForEmptyDocument() throws IOException {
+        var gpx = "<gpx version=\"1.1\" xmlns=\"http://www.topografix.com/GPX/1/1\"/>";
+        assertEquals(List.of(), GpxParser.readTracks(new ByteArrayInputStream(gpx.getBytes(StandardCharsets.UTF_8))));
+    }
+}
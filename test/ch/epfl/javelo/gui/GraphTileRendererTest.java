@@ -0,0 +1,145 @@
+package ch.epfl.javelo.gui;
+
+import ch.epfl.javelo.data.Attribute;
+import ch.epfl.javelo.data.AttributeSet;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.data.GraphEdges;
+import ch.epfl.javelo.data.GraphNodes;
+import ch.epfl.javelo.data.GraphSectors;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.PointWebMercator;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class GraphTileRendererTest {
+
+    private static final int BACKGROUND = 0xF2EFE9;
+    private static final int PRIMARY = 0xFCD6A4;
+    private static final int ORIGIN_E = 2_600_000;
+    private static final int ORIGIN_N = 1_200_000;
+    private static final int SECTOR_INDEX = 42 + 128 * 72;
+
+    // Nodes 0 and 1 are linked by a primary road in both directions, node 3 to node 2 by a gravel
+    // track in a single direction, and node 4 to node 5 by a 3 km long primary road
+    private static final int[][] NODES = {{100, 100}, {300, 100}, {100, 300}, {300, 300}, {-1400, 600}, {1600, 600}};
+    private static final int[][] EDGES = {{0, 1, 0}, {1, 0, 0}, {3, 2, 1}, {4, 5, 0}};
+    private static final List<AttributeSet> ATTRIBUTE_SETS = List.of(
+            AttributeSet.of(Attribute.HIGHWAY_PRIMARY),
+            AttributeSet.of(Attribute.HIGHWAY_TRACK, Attribute.SURFACE_GRAVEL));
+
+    @Test
+    void graphTileRendererDrawsRoadsWithTheirStyle() {
+        var renderer = new GraphTileRenderer(newGraph());
+        var zoomLevel = 16;
+        var primary = pixelOf(new PointCh(ORIGIN_E + 200, ORIGIN_N + 100), zoomLevel);
+        var image = renderer.render(primary.tileId);
+        assertEquals(PRIMARY, rgb(image, primary));
+
+        var track = pixelOf(new PointCh(ORIGIN_E + 200, ORIGIN_N + 300), zoomLevel);
+        var trackImage = renderer.render(track.tileId);
+        var trackColors = 0;
+        for (int d = -6; d <= 6; d += 1) {
+            if (rgb(trackImage, new Pixel(track.tileId, track.x + d, track.y)) != BACKGROUND) trackColors += 1;
+        }
+        // The track is drawn, dashed because it is unpaved
+        assertNotEquals(0, trackColors);
+        assertNotEquals(13, trackColors);
+
+        var empty = pixelOf(new PointCh(ORIGIN_E + 5000, ORIGIN_N + 5000), zoomLevel);
+        var emptyImage = renderer.render(empty.tileId);
+        for (int x = 0; x < 256; x += 1) {
+            for (int y = 0; y < 256; y += 1) assertEquals(BACKGROUND, emptyImage.getRGB(x, y) & 0xFFFFFF);
+        }
+    }
+
+    @Test
+    void graphTileRendererOmitsMinorRoadsAtLowZoomLevels() {
+        var renderer = new GraphTileRenderer(newGraph());
+        var zoomLevel = 12;
+        var primary = pixelOf(new PointCh(ORIGIN_E + 200, ORIGIN_N + 100), zoomLevel);
+        var track = pixelOf(new PointCh(ORIGIN_E + 200, ORIGIN_N + 300), zoomLevel);
+        var image = renderer.render(primary.tileId);
+        assertEquals(primary.tileId, track.tileId);
+        assertNotEquals(BACKGROUND, rgb(image, primary));
+        // At zoom 12, the roads are thin: the track, 200 m (about 7 pixels) north, is not drawn
+        assertEquals(BACKGROUND, rgb(image, track));
+    }
+
+    @Test
+    void graphTileRendererDrawsLongEdgesCrossingTheTile() {
+        var renderer = new GraphTileRenderer(newGraph());
+        // Both nodes of the long road are more than a kilometer away from the tile
+        for (int zoomLevel = 8; zoomLevel <= 18; zoomLevel += 1) {
+            var middle = pixelOf(new PointCh(ORIGIN_E + 100, ORIGIN_N + 600), zoomLevel);
+            assertNotEquals(BACKGROUND, rgb(renderer.render(middle.tileId), middle), "zoom " + zoomLevel);
+        }
+        var pixel = pixelOf(new PointCh(ORIGIN_E + 100, ORIGIN_N + 600), 17);
+        assertEquals(PRIMARY, rgb(renderer.render(pixel.tileId), pixel));
+    }
+
+    @Test
+    void graphTileRendererProducesPng() throws IOException {
+        var renderer = new GraphTileRenderer(newGraph());
+        var primary = pixelOf(new PointCh(ORIGIN_E + 200, ORIGIN_N + 100), 17);
+        var png = renderer.fetch(primary.tileId);
+        var image = ImageIO.read(new ByteArrayInputStream(png));
+        assertEquals(256, image.getWidth());
+        assertEquals(256, image.getHeight());
+        assertEquals(PRIMARY, rgb(image, primary));
+    }
+
+    private record Pixel(TileManager.TileId tileId, int x, int y) {}
+
+    private static Pixel pixelOf(PointCh point, int zoomLevel) {
+        var p = PointWebMercator.ofPointCh(point);
+        var x = (int) p.xAtZoomLevel(zoomLevel);
+        var y = (int) p.yAtZoomLevel(zoomLevel);
+        return new Pixel(new TileManager.TileId(zoomLevel, x / 256, y / 256), x % 256, y % 256);
+    }
+
+    private static int rgb(BufferedImage image, Pixel pixel) {
+        return image.getRGB(pixel.x, pixel.y) & 0xFFFFFF;
+    }
+
+    private static Graph newGraph() {
+        var nodesBuffer = IntBuffer.allocate(3 * NODES.length);
+        var firstEdgeId = 0;
+        for (int nodeId = 0; nodeId < NODES.length; nodeId += 1) {
+            var degree = 0;
+            for (int[] edge : EDGES) if (edge[0] == nodeId) degree += 1;
+            nodesBuffer.put(3 * nodeId, (ORIGIN_E + NODES[nodeId][0]) << 4);
+            nodesBuffer.put(3 * nodeId + 1, (ORIGIN_N + NODES[nodeId][1]) << 4);
+            nodesBuffer.put(3 * nodeId + 2, (degree << 28) | firstEdgeId);
+            firstEdgeId += degree;
+        }
+
+        var edgesBuffer = ByteBuffer.allocate(10 * EDGES.length);
+        for (int edgeId = 0; edgeId < EDGES.length; edgeId += 1) {
+            edgesBuffer.putInt(10 * edgeId, EDGES[edgeId][1]);
+            var from = NODES[EDGES[edgeId][0]];
+            var to = NODES[EDGES[edgeId][1]];
+            var length = (int) Math.round(Math.hypot(to[0] - from[0], to[1] - from[1]));
+            edgesBuffer.putShort(10 * edgeId + 4, (short) (length << 4));
+            edgesBuffer.putShort(10 * edgeId + 8, (short) EDGES[edgeId][2]);
+        }
+
+        var sectorsBuffer = ByteBuffer.allocate(128 * 128 * (Integer.BYTES + Short.BYTES));
+        sectorsBuffer.putShort(SECTOR_INDEX * (Integer.BYTES + Short.BYTES) + Integer.BYTES, (short) NODES.length);
+
+        return new Graph(new GraphNodes(nodesBuffer),
+                new GraphSectors(sectorsBuffer),
+                new GraphEdges(edgesBuffer, IntBuffer.allocate(EDGES.length), ShortBuffer.allocate(0)),
+                ATTRIBUTE_SETS);
+    }
+}
@@ -0,0 +1,308 @@
+package ch.epfl.javelo.gui;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.random.RandomGenerator;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PackedTileStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void packedTileStoreReadsWhatWasWritten() throws IOException {
+        var tile1 = new TileManager.TileId(19, 271725, 185422);
+        var tile2 = new TileManager.TileId(0, 0, 0);
+        try (var store = PackedTileStore.open(directory)) {
+            assertTrue(store.isEmpty());
+            assertNull(store.read(tile1));
+            store.write(tile1, new byte[]{1, 2, 3});
+            store.write(tile2, new byte[0]);
+            assertFalse(store.isEmpty());
+            assertArrayEquals(new byte[]{1, 2, 3}, bytes(store.read(tile1)));
+            assertArrayEquals(new byte[0], bytes(store.read(tile2)));
+            assertNull(store.read(new TileManager.TileId(19, 271725, 185423)));
+
+            store.write(tile1, new byte[]{4, 5});
+            assertArrayEquals(new byte[]{4, 5}, bytes(store.read(tile1)));
+            assertEquals(3 + 16, store.deadBytes());
+        }
+        try (var store = PackedTileStore.open(directory)) {
+            assertArrayEquals(new byte[]{4, 5}, bytes(store.read(tile1)));
+            assertArrayEquals(new byte[0], bytes(store.read(tile2)));
+        }
+    }
+
+    @Test
+    void packedTileStoreThrowsOnInvalidArguments() throws IOException {
+        try (var store = PackedTileStore.open(directory)) {
+            assertThrows(IllegalArgumentException.class, () -> store.write(new TileManager.TileId(30, 0, 0), new byte[1]));
+            assertThrows(IllegalArgumentException.class,
+                    () -> store.write(new TileManager.TileId(1, 0, 0), new byte[PackedTileStore.MAX_IMAGE_BYTES + 1]));
+        }
+    }
+
+    @Test
+    void packedTileStoreWorksLikeMapAcrossSegmentsAndReopenings() throws IOException {
+        var rng = newRandom();
+        var expected = new HashMap<TileManager.TileId, byte[]>();
+        var store = PackedTileStore.open(directory, 1000);
+        for (int i = 0; i < RANDOM_ITERATIONS; i += 1) {
+            var tileId = randomTileId(rng);
+            if (rng.nextInt(4) == 0) {
+                store.delete(tileId);
+                expected.remove(tileId);
+            } else {
+                var image = randomImage(rng);
+                store.write(tileId, image);
+                expected.put(tileId, image);
+            }
+            assertEquals(expected.size(), store.tileCount());
+            if (i % 100 == 0) {
+                // Reopen the store, half of the times without closing it, like after a crash
+                if (rng.nextBoolean()) store.close();
+                else store.abandon();
+                store = PackedTileStore.open(directory, 1000);
+            }
+            if (i % 333 == 0) store.compact();
+            var probe = randomTileId(rng);
+            assertArrayEquals(expected.get(probe), bytes(store.read(probe)));
+        }
+        assertSameContent(expected, store);
+        store.close();
+        try (var reopened = PackedTileStore.open(directory)) {
+            assertSameContent(expected, reopened);
+        }
+    }
+
+    @Test
+    void packedTileStoreCompactionFreesReplacedImages() throws IOException {
+        var rng = newRandom();
+        var expected = new HashMap<TileManager.TileId, byte[]>();
+        try (var store = PackedTileStore.open(directory)) {
+            for (int i = 0; i < 10; i += 1) {
+                for (int x = 0; x < 50; x += 1) {
+                    var tileId = new TileManager.TileId(10, x, 7);
+                    var image = randomImage(rng);
+                    store.write(tileId, image);
+                    expected.put(tileId, image);
+                }
+            }
+            var sizeBefore = dataSize();
+            assertTrue(store.deadBytes() > 0);
+            store.compact();
+            assertEquals(0, store.deadBytes());
+            assertTrue(dataSize() < sizeBefore);
+            assertSameContent(expected, store);
+
+            // The store can still be written to after compaction
+            var tileId = new TileManager.TileId(10, 100, 7);
+            store.write(tileId, new byte[]{42});
+            expected.put(tileId, new byte[]{42});
+            assertSameContent(expected, store);
+        }
+        try (var files = Files.list(directory)) {
+            assertEquals(1, files.filter(f -> f.getFileName().toString().endsWith(".dat")).count());
+        }
+        try (var reopened = PackedTileStore.open(directory)) {
+            assertSameContent(expected, reopened);
+        }
+    }
+
+    @Test
+    void packedTileStoreCompactionSurvivesFailedDeletionOfOldData() throws IOException {
+        var rng = newRandom();
+        var expected = new HashMap<TileManager.TileId, byte[]>();
+        try (var store = PackedTileStore.open(directory)) {
+            for (int x = 0; x < 50; x += 1) {
+                var tileId = new TileManager.TileId(10, x, 7);
+                var image = randomImage(rng);
+                store.write(tileId, image);
+                store.write(tileId, image);
+                expected.put(tileId, image);
+            }
+
+            // The old data file is replaced by a non-empty directory, which cannot be deleted
+            var oldData = dataFile();
+            Files.delete(oldData);
+            Files.createDirectory(oldData);
+            Files.createFile(oldData.resolve("blocker"));
+
+            store.compact();
+            assertEquals(0, store.deadBytes());
+            assertSameContent(expected, store);
+
+            var tileId = new TileManager.TileId(10, 100, 7);
+            store.write(tileId, new byte[]{42});
+            expected.put(tileId, new byte[]{42});
+            assertSameContent(expected, store);
+
+            Files.delete(oldData.resolve("blocker"));
+        }
+        try (var reopened = PackedTileStore.open(directory)) {
+            assertSameContent(expected, reopened);
+        }
+        try (var files = Files.list(directory)) {
+            assertEquals(1, files.filter(f -> f.getFileName().toString().endsWith(".dat")).count());
+        }
+    }
+
+    @Test
+    void packedTileStoreCannotBeOpenedTwice() throws IOException {
+        try (var store = PackedTileStore.open(directory)) {
+            assertThrows(IOException.class, () -> PackedTileStore.open(directory));
+            store.write(new TileManager.TileId(3, 1, 1), new byte[]{1});
+        }
+        try (var reopened = PackedTileStore.open(directory)) {
+            assertArrayEquals(new byte[]{1}, bytes(reopened.read(new TileManager.TileId(3, 1, 1))));
+        }
+    }
+
+    @Test
+    void packedTileStoreRecoversFromTruncatedOrCorruptedData() throws IOException {
+        var tile1 = new TileManager.TileId(12, 1, 2);
+        var tile2 = new TileManager.TileId(12, 1, 3);
+        var tile3 = new TileManager.TileId(12, 1, 4);
+        var store = PackedTileStore.open(directory);
+        store.write(tile1, new byte[]{1, 1, 1, 1});
+        store.close();
+        store = PackedTileStore.open(directory);
+        store.write(tile2, new byte[]{2, 2, 2, 2});
+        store.write(tile3, new byte[]{3, 3, 3, 3});
+        // The store is not closed, as if the program had crashed
+        store.abandon();
+
+        var dataFile = dataFile();
+        try (var channel = FileChannel.open(dataFile, StandardOpenOption.WRITE)) {
+            // The last record is cut in the middle of its image, and the one before is corrupted
+            channel.truncate(channel.size() - 2);
+            channel.write(ByteBuffer.wrap(new byte[]{9}), channel.size() - 20 - 3);
+        }
+        try (var recovered = PackedTileStore.open(directory)) {
+            assertArrayEquals(new byte[]{1, 1, 1, 1}, bytes(recovered.read(tile1)));
+            assertNull(recovered.read(tile2));
+            assertNull(recovered.read(tile3));
+
+            recovered.write(tile3, new byte[]{5});
+            assertArrayEquals(new byte[]{5}, bytes(recovered.read(tile3)));
+        }
+        try (var reopened = PackedTileStore.open(directory)) {
+            assertArrayEquals(new byte[]{1, 1, 1, 1}, bytes(reopened.read(tile1)));
+            assertNull(reopened.read(tile2));
+            assertArrayEquals(new byte[]{5}, bytes(reopened.read(tile3)));
+        }
+    }
+
+    @Test
+    void packedTileStoreEnumeratesItsTiles() throws IOException {
+        try (var store = PackedTileStore.open(directory)) {
+            store.write(new TileManager.TileId(12, 5, 1), new byte[3]);
+            store.write(new TileManager.TileId(11, 7, 2), new byte[2]);
+            store.write(new TileManager.TileId(12, 4, 9), new byte[1]);
+            store.write(new TileManager.TileId(12, 5, 1), new byte[4]);
+            store.delete(new TileManager.TileId(11, 7, 2));
+            store.delete(new TileManager.TileId(11, 7, 3));
+
+            var tiles = new StringBuilder();
+            store.forEachTile((tileId, size) -> tiles.append(tileId).append('=').append(size).append(' '));
+            assertEquals("TileId[zoomLevel=12, x=4, y=9]=1 TileId[zoomLevel=12, x=5, y=1]=4 ", tiles.toString());
+            assertEquals(2, store.tileCount());
+        }
+    }
+
+    @Test
+    void packedTileStoreCanBeWrittenDuringCompaction() throws Exception {
+        var rng = newRandom();
+        var expected = new HashMap<TileManager.TileId, byte[]>();
+        try (var store = PackedTileStore.open(directory)) {
+            for (int i = 0; i < 2000; i += 1) {
+                var tileId = new TileManager.TileId(14, i % 500, i / 500);
+                var image = randomImage(rng);
+                store.write(tileId, image);
+                expected.put(tileId, image);
+            }
+
+            var compaction = new Thread(() -> {
+                try {
+                    store.compact();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            compaction.start();
+            for (int i = 0; i < 2000; i += 1) {
+                var tileId = new TileManager.TileId(14, rng.nextInt(600), rng.nextInt(4));
+                if (rng.nextInt(5) == 0) {
+                    store.delete(tileId);
+                    expected.remove(tileId);
+                } else {
+                    var image = randomImage(rng);
+                    store.write(tileId, image);
+                    expected.put(tileId, image);
+                }
+            }
+            compaction.join();
+            assertSameContent(expected, store);
+            assertEquals(expected.size(), store.tileCount());
+        }
+        try (var reopened = PackedTileStore.open(directory)) {
+            assertSameContent(expected, reopened);
+            assertEquals(expected.size(), reopened.tileCount());
+        }
+    }
+
+    private static void assertSameContent(Map<TileManager.TileId, byte[]> expected, PackedTileStore store)
+            throws IOException {
+        for (var entry : expected.entrySet()) {
+            assertArrayEquals(entry.getValue(), bytes(store.read(entry.getKey())));
+        }
+    }
+
+    private Path dataFile() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(".dat")).findFirst().orElseThrow();
+        }
+    }
+
+    private long dataSize() throws IOException {
+        return Files.size(dataFile());
+    }
+
+    private static TileManager.TileId randomTileId(RandomGenerator rng) {
+        var zoomLevel = rng.nextInt(3, 20);
+        // Few distinct coordinates, so that tiles are often replaced
+        return new TileManager.TileId(zoomLevel, rng.nextInt(5), rng.nextInt(5));
+    }
+
+    private static byte[] randomImage(RandomGenerator rng) {
+        var image = new byte[rng.nextInt(0, 300)];
+        rng.nextBytes(image);
+        return image;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        if (buffer == null) return null;
+        var bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,144 @@
+package ch.epfl.javelo.gui;
+
+import ch.epfl.javelo.Functions;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.PointWebMercator;
+import ch.epfl.javelo.routing.Edge;
+import ch.epfl.javelo.routing.SingleRoute;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProjectedRouteTest {
+
+    @Test
+    void projectedRouteSimplifyRemovesCollinearPoints() {
+        var xs = new double[]{0, 1, 2, 3, 4, 4, 4};
+        var ys = new double[]{0, 0, 0, 0, 0, 1, 2};
+        assertArrayEquals(new int[]{0, 4, 6}, ProjectedRoute.simplify(xs, ys, 0.1));
+        assertArrayEquals(new int[]{0, 1}, ProjectedRoute.simplify(new double[]{0, 1}, new double[]{0, 1}, 1));
+        assertArrayEquals(new int[0], ProjectedRoute.simplify(new double[0], new double[0], 1));
+    }
+
+    @Test
+    void projectedRouteSimplifyKeepsRemovedPointsWithinTolerance() {
+        var rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS / 10; i += 1) {
+            var count = rng.nextInt(2, 2000);
+            var xs = new double[count];
+            var ys = new double[count];
+            for (int j = 1; j < count; j += 1) {
+                xs[j] = xs[j - 1] + rng.nextDouble(-1, 1);
+                ys[j] = ys[j - 1] + rng.nextDouble(-1, 1);
+            }
+            var tolerance = rng.nextDouble(0.1, 5);
+            var kept = ProjectedRoute.simplify(xs, ys, tolerance);
+
+            assertEquals(0, kept[0]);
+            assertEquals(count - 1, kept[kept.length - 1]);
+            for (int k = 1; k < kept.length; k += 1) {
+                assertTrue(kept[k - 1] < kept[k]);
+                for (int j = kept[k - 1] + 1; j < kept[k]; j += 1) {
+                    assertTrue(segmentDistance(xs, ys, kept[k - 1], kept[k], j) <= tolerance + 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    void projectedRouteSimplifiedCoordinatesWork() {
+        var points = new ArrayList<PointCh>();
+        var edges = new ArrayList<Edge>();
+        points.add(new PointCh(2_600_000, 1_200_000));
+        for (int i = 1; i <= 1000; i += 1) {
+            // A straight line, followed by a zigzag of amplitude 10 m
+            var e = 2_600_000 + 10 * i;
+            var n = 1_200_000 + (i > 500 ? 10 * (i % 2) : 0);
+            points.add(new PointCh(e, n));
+            var from = points.get(i - 1);
+            var to = points.get(i);
+            edges.add(new Edge(i - 1, i, from, to, from.distanceTo(to), Functions.constant(Double.NaN)));
+        }
+        var projected = new ProjectedRoute(new SingleRoute(edges));
+        assertEquals(points.size(), projected.size());
+
+        for (int zoomLevel = 8; zoomLevel <= 19; zoomLevel += 1) {
+            var coordinates = projected.simplifiedCoordinates(zoomLevel);
+            var first = PointWebMercator.ofPointCh(points.get(0));
+            var last = PointWebMercator.ofPointCh(points.get(points.size() - 1));
+            assertEquals(first.xAtZoomLevel(zoomLevel), coordinates[0]);
+            assertEquals(first.yAtZoomLevel(zoomLevel), coordinates[1]);
+            assertEquals(last.xAtZoomLevel(zoomLevel), coordinates[coordinates.length - 2]);
+            assertEquals(last.yAtZoomLevel(zoomLevel), coordinates[coordinates.length - 1]);
+            assertEquals(last.xAtZoomLevel(zoomLevel), projected.x(points.size() - 1, zoomLevel));
+            assertEquals(last.yAtZoomLevel(zoomLevel), projected.y(points.size() - 1, zoomLevel));
+            assertTrue(coordinates == projected.simplifiedCoordinates(zoomLevel));
+        }
+        // At low zoom levels the zigzag is flattened, at high ones it is fully kept
+        assertTrue(projected.simplifiedCoordinates(8).length / 2 < 10);
+        assertTrue(projected.simplifiedCoordinates(19).length / 2 > 500);
+        assertThrows(IndexOutOfBoundsException.class, () -> projected.simplifiedCoordinates(20));
+    }
+
+    @Test
+    void projectedRouteBlocksContainTheirSegments() {
+        var rng = newRandom();
+        var points = new ArrayList<PointCh>();
+        var edges = new ArrayList<Edge>();
+        points.add(new PointCh(2_600_000, 1_200_000));
+        for (int i = 1; i <= 2000; i += 1) {
+            var previous = points.get(i - 1);
+            var point = new PointCh(previous.e() + rng.nextDouble(-50, 50), previous.n() + rng.nextDouble(-50, 50));
+            points.add(point);
+            edges.add(new Edge(i - 1, i, previous, point, previous.distanceTo(point), Functions.constant(Double.NaN)));
+        }
+        var projected = new ProjectedRoute(new SingleRoute(edges));
+
+        for (int zoomLevel = 10; zoomLevel <= 19; zoomLevel += 1) {
+            var coordinates = projected.simplifiedCoordinates(zoomLevel);
+            var segmentsCount = coordinates.length / 2 - 1;
+            var blockCount = projected.blockCount(zoomLevel);
+            assertEquals((segmentsCount + ProjectedRoute.SEGMENTS_PER_BLOCK - 1) / ProjectedRoute.SEGMENTS_PER_BLOCK,
+                    blockCount);
+            for (int i = 0; i < RANDOM_ITERATIONS / 10; i += 1) {
+                // A random viewport around the route: every segment with a point inside it must be in a block
+                // intersecting it
+                var minX = rng.nextDouble(coordinates[0] - 2000, coordinates[0] + 1000);
+                var minY = rng.nextDouble(coordinates[1] - 2000, coordinates[1] + 1000);
+                var maxX = minX + rng.nextDouble(1, 1000);
+                var maxY = minY + rng.nextDouble(1, 1000);
+                for (int s = 0; s < segmentsCount; s += 1) {
+                    for (int p = s; p <= s + 1; p += 1) {
+                        var x = coordinates[2 * p];
+                        var y = coordinates[2 * p + 1];
+                        if (minX <= x && x <= maxX && minY <= y && y <= maxY) {
+                            assertTrue(projected.blockIntersects(
+                                    zoomLevel, s / ProjectedRoute.SEGMENTS_PER_BLOCK, minX, minY, maxX, maxY));
+                        }
+                    }
+                }
+            }
+            // A viewport far away from the route intersects no block
+            for (int b = 0; b < blockCount; b += 1) {
+                assertTrue(!projected.blockIntersects(zoomLevel, b, -10, -10, -1, -1));
+            }
+        }
+    }
+
+    private static double segmentDistance(double[] xs, double[] ys, int first, int last, int i) {
+        var dx = xs[last] - xs[first];
+        var dy = ys[last] - ys[first];
+        var squaredLength = dx * dx + dy * dy;
+        var t = squaredLength == 0
+                ? 0
+                : Math.max(0, Math.min(1, ((xs[i] - xs[first]) * dx + (ys[i] - ys[first]) * dy) / squaredLength));
+        return Math.hypot(xs[i] - xs[first] - t * dx, ys[i] - ys[first] - t * dy);
+    }
+}
@@ -0,0 +1,214 @@
+package ch.epfl.javelo.gui;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuotaTileStoreTest {
+    private static final long MINUTE = 60_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void quotaTileStoreThrowsOnInvalidQuota() throws IOException {
+        try (var packed = PackedTileStore.open(directory)) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> QuotaTileStore.open(packed, directory.resolve("access.idx"), 0));
+        }
+    }
+
+    @Test
+    void quotaTileStoreEvictsLeastRecentlyAccessedTiles() throws IOException {
+        var clock = new AtomicLong();
+        try (var store = QuotaTileStore.open(PackedTileStore.open(directory), directory.resolve("access.idx"),
+                1000, z -> 0, clock::get)) {
+            for (int i = 0; i < 5; i += 1) {
+                clock.set(i * MINUTE);
+                store.write(tile(15, i), new byte[200]);
+            }
+            store.awaitBackgroundWork();
+            assertEquals(1000, store.totalBytes());
+
+            // Tile 0 is read, so tiles 1 and 2 become the least recently accessed ones
+            clock.set(10 * MINUTE);
+            assertNotNull(store.read(tile(15, 0)));
+            clock.set(11 * MINUTE);
+            store.write(tile(15, 5), new byte[200]);
+            store.awaitBackgroundWork();
+
+            assertEquals(800, store.totalBytes());
+            for (int i : new int[]{0, 3, 4, 5}) assertNotNull(store.read(tile(15, i)));
+            for (int i : new int[]{1, 2}) assertNull(store.read(tile(15, i)));
+        }
+    }
+
+    @Test
+    void quotaTileStoreKeepsLowZoomLevelsLonger() throws IOException {
+        var clock = new AtomicLong();
+        try (var store = QuotaTileStore.open(PackedTileStore.open(directory), directory.resolve("access.idx"),
+                1000, QuotaTileStore.DEFAULT_RETENTION_BONUS, clock::get)) {
+            store.write(tile(8, 0), new byte[400]);
+            // Three days later, much less than the five weeks of bonus of zoom level 8
+            clock.set(3 * 24 * 60 * MINUTE);
+            store.write(tile(16, 0), new byte[400]);
+            store.write(tile(16, 1), new byte[400]);
+            store.awaitBackgroundWork();
+
+            assertNotNull(store.read(tile(8, 0)));
+            assertNull(store.read(tile(16, 0)));
+            assertNotNull(store.read(tile(16, 1)));
+            assertEquals(800, store.totalBytes());
+        }
+    }
+
+    @Test
+    void quotaTileStoreSavesAccessesAndIndexesExistingTiles() throws IOException {
+        var clock = new AtomicLong();
+        var accessIndex = directory.resolve("access.idx");
+        try (var store = QuotaTileStore.open(PackedTileStore.open(directory), accessIndex, 1000, z -> 0, clock::get)) {
+            store.write(tile(15, 0), new byte[300]);
+            clock.set(5 * MINUTE);
+            store.write(tile(15, 1), new byte[300]);
+        }
+        // Tiles written without the quota store are indexed when it is opened, as if just accessed
+        try (var packed = PackedTileStore.open(directory)) {
+            packed.write(tile(15, 2), new byte[300]);
+        }
+        clock.set(10 * MINUTE);
+        try (var store = QuotaTileStore.open(PackedTileStore.open(directory), accessIndex, 1000, z -> 0, clock::get)) {
+            store.awaitBackgroundWork();
+            assertEquals(900, store.totalBytes());
+
+            clock.set(20 * MINUTE);
+            store.write(tile(15, 3), new byte[300]);
+            store.awaitBackgroundWork();
+            // Evicting the oldest tile is enough to go under 90% of the quota
+            assertNull(store.read(tile(15, 0)));
+            assertNotNull(store.read(tile(15, 1)));
+            assertNotNull(store.read(tile(15, 2)));
+            assertNotNull(store.read(tile(15, 3)));
+            assertEquals(900, store.totalBytes());
+        }
+    }
+
+    @Test
+    void quotaTileStoreKeepsTilesReadDuringEvictionInTheSameMinute() throws IOException {
+        var clock = new AtomicLong();
+        var packed = PackedTileStore.open(directory);
+        var evicted = new TileManager.TileId[1];
+        var quota = new QuotaTileStore[1];
+        var hooked = new OnDeleteTileStore(packed, tileId -> {
+            if (evicted[0] != null) return;
+            evicted[0] = tileId;
+            // All the other tiles are read in the minute of their last access, while the first is evicted
+            try {
+                for (int i = 0; i <= 5; i += 1) if (!tile(15, i).equals(tileId)) quota[0].read(tile(15, i));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        try (var store = QuotaTileStore.open(hooked, directory.resolve("access.idx"), 1000, z -> 0, clock::get)) {
+            quota[0] = store;
+            for (int i = 0; i <= 5; i += 1) store.write(tile(15, i), new byte[200]);
+            store.awaitBackgroundWork();
+
+            assertNotNull(evicted[0]);
+            assertNull(store.read(evicted[0]));
+            for (int i = 0; i <= 5; i += 1) {
+                if (!tile(15, i).equals(evicted[0])) assertNotNull(store.read(tile(15, i)));
+            }
+            assertEquals(1000, store.totalBytes());
+        }
+    }
+
+    @Test
+    void quotaTileStoreKeepsTileWrittenDuringItsEviction() throws Exception {
+        var clock = new AtomicLong();
+        var packed = PackedTileStore.open(directory);
+        var quota = new QuotaTileStore[1];
+        var writer = new Thread[1];
+        var rewritten = new TileManager.TileId[1];
+        var hooked = new OnDeleteTileStore(packed, tileId -> {
+            if (writer[0] != null) return;
+            rewritten[0] = tileId;
+            // The tile being evicted is written again concurrently
+            writer[0] = new Thread(() -> {
+                try {
+                    quota[0].write(tileId, new byte[150]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer[0].start();
+        });
+        try (var store = QuotaTileStore.open(hooked, directory.resolve("access.idx"), 1000, z -> 0, clock::get)) {
+            quota[0] = store;
+            for (int i = 0; i <= 5; i += 1) {
+                clock.set(i * MINUTE);
+                store.write(tile(15, i), new byte[200]);
+            }
+            store.awaitBackgroundWork();
+            writer[0].join();
+            store.awaitBackgroundWork();
+
+            // The image written last is kept, and counted once
+            var image = store.read(rewritten[0]);
+            assertNotNull(image);
+            assertEquals(150, image.remaining());
+            var storedBytes = new long[1];
+            packed.forEachTile((tileId, size) -> storedBytes[0] += size);
+            assertEquals(storedBytes[0], store.totalBytes());
+            assertTrue(store.totalBytes() <= 1000);
+        }
+    }
+
+    /**
+     * A tile store calling a hook before deleting a tile
+     */
+    private record OnDeleteTileStore(TileStore store, Consumer<TileManager.TileId> onDelete) implements TileStore {
+        @Override
+        public ByteBuffer read(TileManager.TileId tileId) throws IOException {
+            return store.read(tileId);
+        }
+
+        @Override
+        public void write(TileManager.TileId tileId, byte[] image) throws IOException {
+            store.write(tileId, image);
+        }
+
+        @Override
+        public void delete(TileManager.TileId tileId) throws IOException {
+            onDelete.accept(tileId);
+            store.delete(tileId);
+        }
+
+        @Override
+        public void forEachTile(BiConsumer<TileManager.TileId, Integer> consumer) throws IOException {
+            store.forEachTile(consumer);
+        }
+
+        @Override
+        public void close() throws IOException {
+            store.close();
+        }
+    }
+
+    private static TileManager.TileId tile(int zoomLevel, int x) {
+        return new TileManager.TileId(zoomLevel, x, 0);
+    }
+}
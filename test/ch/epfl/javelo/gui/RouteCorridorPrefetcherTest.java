@@ -0,0 +1,166 @@
+package ch.epfl.javelo.gui;
+
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.PointWebMercator;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteCorridorPrefetcherTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void corridorTilesCoverTheCorridor() {
+        var rng = newRandom();
+        var points = List.of(
+                new PointCh(2532697, 1152350),
+                new PointCh(2535000, 1153000),
+                new PointCh(2538000, 1150000));
+        var buffer = 300d;
+        var tiles = RouteCorridorPrefetcher.corridorTiles(points, buffer, 13, 16);
+        assertEquals(tiles.size(), new HashSet<>(tiles).size());
+        for (int i = 1; i < tiles.size(); i += 1)
+            assertTrue(tiles.get(i - 1).zoomLevel() <= tiles.get(i).zoomLevel());
+
+        var tileSet = new HashSet<>(tiles);
+        for (int i = 0; i < RANDOM_ITERATIONS; i += 1) {
+            // A random point at most buffer meters away from a random point of the polyline
+            var segment = rng.nextInt(points.size() - 1);
+            var from = points.get(segment);
+            var to = points.get(segment + 1);
+            var t = rng.nextDouble();
+            var angle = rng.nextDouble(2 * Math.PI);
+            var distance = rng.nextDouble(buffer);
+            var point = new PointCh(
+                    from.e() + (to.e() - from.e()) * t + distance * Math.cos(angle),
+                    from.n() + (to.n() - from.n()) * t + distance * Math.sin(angle));
+            var zoomLevel = rng.nextInt(13, 17);
+            assertTrue(tileSet.contains(tileAt(point, zoomLevel)));
+        }
+
+        // The corridor is narrow compared to the route
+        var far = new PointCh(2535000, 1152350 + 2000);
+        assertFalse(tileSet.contains(tileAt(far, 16)));
+    }
+
+    @Test
+    void corridorTilesOfSinglePointSurroundIt() {
+        var point = new PointCh(2600000, 1200000);
+        var tiles = RouteCorridorPrefetcher.corridorTiles(List.of(point), 100, 10, 10);
+        assertTrue(tiles.contains(tileAt(point, 10)));
+        assertTrue(tiles.size() <= 4);
+        assertEquals(List.of(), RouteCorridorPrefetcher.corridorTiles(List.of(), 100, 10, 12));
+    }
+
+    @Test
+    void routeCorridorPrefetcherThrowsOnInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new RouteCorridorPrefetcher(null, 0, 10, 12, 1));
+        assertThrows(IllegalArgumentException.class, () -> new RouteCorridorPrefetcher(null, 100, 12, 10, 1));
+        assertThrows(IllegalArgumentException.class, () -> new RouteCorridorPrefetcher(null, 100, 10, 20, 1));
+        assertThrows(IllegalArgumentException.class, () -> new RouteCorridorPrefetcher(null, 100, 10, 12, 0));
+    }
+
+    @Test
+    void routeCorridorPrefetcherDownloadsMissingTilesOnly() throws Exception {
+        var requested = ConcurrentHashMap.<String>newKeySet();
+        var failures = new AtomicInteger();
+        var server = startServer(requested, failures, 1);
+        try (var store = PackedTileStore.open(directory.resolve("packed"))) {
+            var tileManager = new TileManager(store, newFetcher(server));
+            var cached = new TileManager.TileId(10, 1, 1);
+            store.write(cached, new byte[]{9});
+
+            var tiles = List.of(cached,
+                    new TileManager.TileId(10, 1, 2),
+                    new TileManager.TileId(10, 2, 1),
+                    new TileManager.TileId(11, 2, 2));
+            var prefetcher = new RouteCorridorPrefetcher(tileManager, 100, 10, 11, 1000);
+            prefetcher.prefetch(tiles);
+            prefetcher.awaitCompletion();
+            prefetcher.close();
+
+            assertEquals(0, prefetcher.remainingTiles());
+            assertEquals(Set.of("/10/1/2.png", "/10/2/1.png", "/11/2/2.png"), requested);
+            // The first download failed, and was attempted again
+            assertEquals(1, failures.get());
+            for (var tileId : tiles) assertTrue(store.contains(tileId));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void routeCorridorPrefetcherResumesAfterReopening() throws Exception {
+        var requested = ConcurrentHashMap.<String>newKeySet();
+        var server = startServer(requested, new AtomicInteger(), 0);
+        var statePath = directory.resolve("corridor");
+        try (var store = PackedTileStore.open(directory.resolve("packed"))) {
+            var tileManager = new TileManager(store, newFetcher(server));
+            var tiles = List.of(new TileManager.TileId(12, 5, 5), new TileManager.TileId(12, 5, 6));
+
+            var prefetcher = new RouteCorridorPrefetcher(tileManager, statePath, 100, 10, 12, 1000);
+            prefetcher.pause();
+            prefetcher.prefetch(tiles);
+            assertEquals(2, prefetcher.remainingTiles());
+            prefetcher.close();
+            assertTrue(requested.isEmpty());
+
+            var resumed = new RouteCorridorPrefetcher(tileManager, statePath, 100, 10, 12, 1000);
+            assertEquals(2, resumed.remainingTiles());
+            resumed.awaitCompletion();
+            resumed.close();
+            assertEquals(Set.of("/12/5/5.png", "/12/5/6.png"), requested);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static TileManager.TileId tileAt(PointCh point, int zoomLevel) {
+        var p = PointWebMercator.ofPointCh(point);
+        return new TileManager.TileId(zoomLevel,
+                (int) (p.xAtZoomLevel(zoomLevel) / 256),
+                (int) (p.yAtZoomLevel(zoomLevel) / 256));
+    }
+
+    private static HttpServer startServer(Set<String> requested, AtomicInteger failures, int failuresToSimulate)
+            throws IOException {
+        var server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            // Not found is not retried by the fetcher, but is by the prefetcher
+            if (failures.getAndUpdate(f -> f < failuresToSimulate ? f + 1 : f) < failuresToSimulate) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                requested.add(exchange.getRequestURI().getPath());
+                exchange.sendResponseHeaders(200, 1);
+                exchange.getResponseBody().write(1);
+            }
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        return server;
+    }
+
+    private static TileFetcher newFetcher(HttpServer server) {
+        return new TileFetcher("http://localhost:" + server.getAddress().getPort(), null, 2, 1, System::currentTimeMillis);
+    }
+}
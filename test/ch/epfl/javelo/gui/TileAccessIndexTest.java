@@ -0,0 +1,70 @@
+package ch.epfl.javelo.gui;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TileAccessIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void tileAccessIndexWorksLikeMap() throws IOException {
+        var rng = newRandom();
+        var index = new TileAccessIndex();
+        var expected = new HashMap<Long, int[]>();
+        for (int i = 0; i < 50 * RANDOM_ITERATIONS; i += 1) {
+            // Few distinct keys, so that entries are often replaced and removed
+            var key = rng.nextLong(5000);
+            switch (rng.nextInt(4)) {
+                case 0, 1 -> {
+                    var size = rng.nextInt(1000);
+                    var minute = rng.nextInt(1_000_000);
+                    index.put(key, size, minute);
+                    expected.put(key, new int[]{size, minute});
+                }
+                case 2 -> {
+                    index.remove(key);
+                    expected.remove(key);
+                }
+                default -> {
+                    var minute = rng.nextInt(1_000_000);
+                    var entry = expected.get(key);
+                    if (entry != null) entry[1] = Math.max(entry[1], minute);
+                    assertEquals(entry != null, index.touch(key, minute));
+                }
+            }
+            var probe = rng.nextLong(5000);
+            var entry = expected.get(probe);
+            assertEquals(entry == null ? -1 : entry[1], index.minuteOf(probe));
+        }
+        assertSameContent(expected, index);
+
+        var path = directory.resolve("access.idx");
+        index.save(path);
+        assertSameContent(expected, TileAccessIndex.load(path));
+        assertSameContent(expected, index.copy());
+        assertEquals(0, TileAccessIndex.load(directory.resolve("missing.idx")).size());
+    }
+
+    private static void assertSameContent(Map<Long, int[]> expected, TileAccessIndex index) {
+        assertEquals(expected.size(), index.size());
+        assertEquals(expected.values().stream().mapToLong(e -> e[0]).sum(), index.totalBytes());
+        var count = new int[1];
+        index.forEach((key, size, minute) -> {
+            assertEquals(expected.get(key)[0], size);
+            assertEquals(expected.get(key)[1], minute);
+            count[0] += 1;
+        });
+        assertEquals(expected.size(), count[0]);
+    }
+}
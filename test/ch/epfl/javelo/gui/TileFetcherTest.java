@@ -0,0 +1,270 @@
+package ch.epfl.javelo.gui;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TileFetcherTest {
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void tileFetcherDownloadsTiles() throws IOException {
+        var userAgent = new String[1];
+        var server = startServer(exchange -> {
+            userAgent[0] = exchange.getRequestHeaders().getFirst("User-Agent");
+            if (exchange.getRequestURI().getPath().equals("/12/2121/1448.png"))
+                respond(exchange, 200, new byte[]{1, 2, 3});
+            else
+                respond(exchange, 404, new byte[0]);
+        });
+        try (var fetcher = newFetcher(server, null, 2, new AtomicLong())) {
+            assertArrayEquals(new byte[]{1, 2, 3}, fetcher.fetch(new TileManager.TileId(12, 2121, 1448)));
+            assertEquals("JaVelo", userAgent[0]);
+            assertThrows(IOException.class, () -> fetcher.fetch(new TileManager.TileId(12, 2121, 1449)));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void tileFetcherRetriesFailedRequests() throws IOException {
+        var requests = new AtomicInteger();
+        var server = startServer(exchange -> {
+            if (requests.incrementAndGet() <= 2)
+                respond(exchange, 503, new byte[0]);
+            else
+                respond(exchange, 200, new byte[]{7});
+        });
+        try (var fetcher = newFetcher(server, null, 2, new AtomicLong())) {
+            assertArrayEquals(new byte[]{7}, fetcher.fetch(new TileManager.TileId(1, 0, 0)));
+            assertEquals(3, requests.get());
+
+            requests.set(-10);
+            assertThrows(IOException.class, () -> fetcher.fetch(new TileManager.TileId(1, 0, 0)));
+            assertEquals(-6, requests.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void tileFetcherRevalidatesExpiredTiles() throws IOException {
+        var version = new AtomicInteger(1);
+        var conditionalRequests = new AtomicInteger();
+        var server = startServer(exchange -> {
+            var eTag = "\"v" + version.get() + "\"";
+            exchange.getResponseHeaders().add("ETag", eTag);
+            exchange.getResponseHeaders().add("Cache-Control", "max-age=3600");
+            var ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            if (ifNoneMatch != null) conditionalRequests.incrementAndGet();
+            if (eTag.equals(ifNoneMatch))
+                respond(exchange, 304, null);
+            else
+                respond(exchange, 200, new byte[]{(byte) version.get()});
+        });
+        var clock = new AtomicLong(1_000_000);
+        var tileId = new TileManager.TileId(5, 3, 4);
+        try (var fetcher = newFetcher(server, null, 2, clock)) {
+            assertArrayEquals(new byte[]{1}, fetcher.fetch(tileId));
+            assertFalse(fetcher.isStale(tileId));
+            clock.addAndGet(3_600_000);
+            assertTrue(fetcher.isStale(tileId));
+
+            assertNull(fetcher.revalidate(tileId));
+            assertEquals(1, conditionalRequests.get());
+            assertFalse(fetcher.isStale(tileId));
+
+            clock.addAndGet(3_600_000);
+            version.set(2);
+            assertTrue(fetcher.isStale(tileId));
+            assertArrayEquals(new byte[]{2}, fetcher.revalidate(tileId));
+            assertEquals(2, conditionalRequests.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void tileFetcherConsidersUnknownTilesFreshDuringDefaultLifetime() throws IOException {
+        var clock = new AtomicLong(0);
+        var validatorsPath = directory.resolve("validators");
+        var tileId = new TileManager.TileId(19, 1, 2);
+        try (var fetcher = new TileFetcher("http://localhost", validatorsPath, 2, 0, clock::get)) {
+            assertFalse(fetcher.isStale(tileId));
+            clock.addAndGet(6 * DAY_MILLIS);
+            assertFalse(fetcher.isStale(tileId));
+            // Looking up unknown tiles does not remember them
+            assertEquals(0, fetcher.validatorsCount());
+        }
+        // The default lifetime starts when the validators were first saved, not when the program starts
+        var reopened = new TileFetcher("http://localhost", validatorsPath, 2, 0, clock::get);
+        reopened.loadValidators();
+        assertFalse(reopened.isStale(tileId));
+        clock.addAndGet(DAY_MILLIS);
+        assertTrue(reopened.isStale(tileId));
+    }
+
+    @Test
+    void tileFetcherHonorsRetryAfter() throws IOException {
+        var requests = new AtomicInteger();
+        var retryAfter = new String[]{"1"};
+        var server = startServer(exchange -> {
+            if (requests.incrementAndGet() == 1) {
+                exchange.getResponseHeaders().add("Retry-After", retryAfter[0]);
+                respond(exchange, 429, new byte[0]);
+            } else {
+                respond(exchange, 200, new byte[]{7});
+            }
+        });
+        try (var fetcher = newFetcher(server, null, 2, new AtomicLong())) {
+            var t0 = System.nanoTime();
+            assertArrayEquals(new byte[]{7}, fetcher.fetch(new TileManager.TileId(1, 0, 0)));
+            assertTrue(System.nanoTime() - t0 >= 1_000_000_000L);
+            assertEquals(2, requests.get());
+
+            // A delay too long makes the request fail at once
+            requests.set(0);
+            retryAfter[0] = "3600";
+            assertThrows(IOException.class, () -> fetcher.fetch(new TileManager.TileId(1, 0, 0)));
+            assertEquals(1, requests.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void tileFetcherDropsValidatorsOfTilesNotInStore() throws IOException {
+        var server = startServer(exchange -> {
+            exchange.getResponseHeaders().add("ETag", "\"abc\"");
+            respond(exchange, 200, new byte[]{1});
+        });
+        var kept = new TileManager.TileId(8, 1, 1);
+        var evicted = new TileManager.TileId(8, 1, 2);
+        try (var store = PackedTileStore.open(directory.resolve("packed"));
+             var fetcher = newFetcher(server, null, 2, new AtomicLong())) {
+            store.write(kept, fetcher.fetch(kept));
+            fetcher.fetch(evicted);
+            assertEquals(2, fetcher.validatorsCount());
+            fetcher.retainValidators(store);
+            assertEquals(1, fetcher.validatorsCount());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void tileFetcherBoundsSimultaneousRequests() throws Exception {
+        var active = new AtomicInteger();
+        var maxActive = new AtomicInteger();
+        var server = startServer(exchange -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            active.decrementAndGet();
+            respond(exchange, 200, new byte[]{1});
+        });
+        try (var fetcher = newFetcher(server, null, 2, new AtomicLong())) {
+            var threads = new ArrayList<Thread>();
+            var failures = new AtomicInteger();
+            for (int i = 0; i < 8; i += 1) {
+                var tileId = new TileManager.TileId(10, i, 0);
+                var thread = new Thread(() -> {
+                    try {
+                        fetcher.fetch(tileId);
+                    } catch (IOException e) {
+                        failures.incrementAndGet();
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            for (var thread : threads) thread.join();
+            assertEquals(0, failures.get());
+            assertTrue(maxActive.get() <= 2);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void tileFetcherSavesValidators() throws IOException {
+        var ifNoneMatch = new ArrayList<String>();
+        var server = startServer(exchange -> {
+            synchronized (ifNoneMatch) {
+                ifNoneMatch.add(exchange.getRequestHeaders().getFirst("If-None-Match"));
+            }
+            exchange.getResponseHeaders().add("ETag", "\"abc\"");
+            exchange.getResponseHeaders().add("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT");
+            exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+            respond(exchange, 200, new byte[]{1});
+        });
+        var clock = new AtomicLong(0);
+        var validatorsPath = directory.resolve("validators");
+        var tileId = new TileManager.TileId(8, 1, 1);
+        try {
+            try (var fetcher = newFetcher(server, validatorsPath, 2, clock)) {
+                fetcher.fetch(tileId);
+            }
+            try (var fetcher = newFetcher(server, validatorsPath, 2, clock)) {
+                assertFalse(fetcher.isStale(tileId));
+                clock.addAndGet(60_000);
+                assertTrue(fetcher.isStale(tileId));
+                fetcher.revalidate(tileId);
+            }
+            assertEquals(List.of("", "\"abc\""), ifNoneMatch.stream().map(s -> s == null ? "" : s).toList());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static HttpServer startServer(HttpHandler handler) throws IOException {
+        var server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", handler);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        return server;
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        if (body == null || body.length == 0) {
+            exchange.sendResponseHeaders(status, -1);
+        } else {
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+        }
+        exchange.close();
+    }
+
+    private static TileFetcher newFetcher(HttpServer server, Path validatorsPath, int maxConcurrentRequests,
+                                          AtomicLong clock) throws IOException {
+        var baseUri = "http://localhost:" + server.getAddress().getPort();
+        var fetcher = new TileFetcher(baseUri, validatorsPath, maxConcurrentRequests, 1, clock::get);
+        if (validatorsPath != null) fetcher.loadValidators();
+        return fetcher;
+    }
+}
@@ -0,0 +1,75 @@
+package ch.epfl.javelo.gui;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TileManagerTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void tileManagerFetchesEachTileOnceWhileVisibleTilesChange() throws Exception {
+        var fetches = new ConcurrentHashMap<TileManager.TileId, Integer>();
+        var release = new CountDownLatch(1);
+        var png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), "png", png);
+        TileSource source = tileId -> {
+            fetches.merge(tileId, 1, Integer::sum);
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return png.toByteArray();
+        };
+        try (var store = PackedTileStore.open(directory)) {
+            var tileManager = new TileManager(store, source);
+            // Fewer tiles than loading threads, so that a second load of a tile would start at once
+            var tiles = new ArrayList<TileManager.TileId>();
+            for (int x = 0; x < 3; x += 1) tiles.add(new TileManager.TileId(10, x, 0));
+
+            for (int round = 0; round < 10; round += 1) {
+                for (var tile : tiles) tileManager.cachedImageForTileAt(tile);
+                tileManager.setVisibleTiles(Set.of());
+                tileManager.setVisibleTiles(Set.of(tiles.get(round % tiles.size())));
+                Thread.sleep(20);
+            }
+            for (var tile : tiles) tileManager.cachedImageForTileAt(tile);
+            // The loads started before being cancelled are still blocked in the source, and not duplicated
+            assertOnlyOnce(fetches);
+
+            release.countDown();
+            var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!allStored(store, tiles) && System.nanoTime() < deadline) Thread.sleep(10);
+            assertTrue(allStored(store, tiles));
+            assertEquals(tiles.size(), fetches.size());
+            assertOnlyOnce(fetches);
+        }
+    }
+
+    private static boolean allStored(TileStore store, List<TileManager.TileId> tiles) throws IOException {
+        for (var tile : tiles) if (!store.contains(tile)) return false;
+        return true;
+    }
+
+    private static void assertOnlyOnce(Map<TileManager.TileId, Integer> fetches) {
+        for (var entry : fetches.entrySet()) assertEquals(1, entry.getValue(), "fetches of " + entry.getKey());
+    }
+}
@@ -0,0 +1,101 @@
+package ch.epfl.javelo.gui;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Set;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WeightedLruCacheTest {
+
+    @Test
+    void weightedLruCacheConstructorThrowsOnInvalidCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new WeightedLruCache<Integer, String>(0, String::length));
+        assertThrows(IllegalArgumentException.class, () -> new WeightedLruCache<Integer, String>(-1, String::length));
+    }
+
+    @Test
+    void weightedLruCacheEvictsLeastRecentlyUsedValues() {
+        var cache = new WeightedLruCache<Integer, String>(10, String::length);
+        cache.put(1, "aaaa");
+        cache.put(2, "bbbb");
+        assertEquals(8, cache.weight());
+        // Accessing 1 makes 2 the least recently used value
+        assertEquals("aaaa", cache.get(1));
+        cache.put(3, "cc");
+        assertEquals(10, cache.weight());
+        cache.put(4, "d");
+        assertNull(cache.get(2));
+        assertEquals("aaaa", cache.get(1));
+        assertEquals("cc", cache.get(3));
+        assertEquals("d", cache.get(4));
+        assertEquals(7, cache.weight());
+
+        // Replacing a value updates the weight
+        cache.put(4, "dddd");
+        assertEquals(10, cache.weight());
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    void weightedLruCacheNeverEvictsPinnedValues() {
+        var cache = new WeightedLruCache<Integer, String>(10, String::length);
+        cache.put(1, "aaaaa");
+        cache.put(2, "bbbbb");
+        cache.pin(Set.of(1, 2));
+        cache.put(3, "ccccc");
+        assertEquals("aaaaa", cache.get(1));
+        assertEquals("bbbbb", cache.get(2));
+        assertNull(cache.get(3));
+
+        // Pinned values heavier than the capacity are kept until they are unpinned
+        cache.pin(Set.of(1, 2, 4));
+        cache.put(4, "ddddddddddd");
+        assertEquals(21, cache.weight());
+        cache.pin(Set.of(4));
+        assertEquals(11, cache.weight());
+        assertEquals("ddddddddddd", cache.get(4));
+        cache.pin(Set.of());
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weight());
+    }
+
+    @Test
+    void weightedLruCacheWorksLikeReferenceImplementation() {
+        var rng = newRandom();
+        var capacity = 100;
+        var cache = new WeightedLruCache<Integer, String>(capacity, String::length);
+        // Reference: the keys in access order, the least recently used first
+        var order = new ArrayDeque<Integer>();
+        var values = new HashMap<Integer, String>();
+        for (int i = 0; i < RANDOM_ITERATIONS; i += 1) {
+            var key = rng.nextInt(50);
+            if (rng.nextBoolean()) {
+                var value = "x".repeat(rng.nextInt(1, 30));
+                cache.put(key, value);
+                order.remove(key);
+                order.addLast(key);
+                values.put(key, value);
+                var weight = values.values().stream().mapToInt(String::length).sum();
+                while (weight > capacity) {
+                    weight -= values.remove(order.removeFirst()).length();
+                }
+            } else {
+                assertEquals(values.get(key), cache.get(key));
+                if (values.containsKey(key)) {
+                    order.remove(key);
+                    order.addLast(key);
+                }
+            }
+            assertEquals(values.size(), cache.size());
+            assertTrue(cache.weight() <= capacity);
+        }
+    }
+}
@@ -130,6 +130,35 @@ class ElevationProfileComputerTest {
         }
     }
 
+    @Test
+    void elevationProfileComputerAdaptiveStepLengthWorks() {
+        assertEquals(5, ElevationProfileComputer.adaptiveStepLength(1_000, 600, 5));
+        assertEquals(100, ElevationProfileComputer.adaptiveStepLength(120_000, 600, 5));
+        assertThrows(IllegalArgumentException.class, () -> {
+            ElevationProfileComputer.adaptiveStepLength(1_000, 0, 5);
+        });
+    }
+
+    @Test
+    void elevationProfileComputerAdaptiveElevationProfileWorks() {
+        DoubleUnaryOperator edgeProfile = x -> x < 200 || x > 700 ? Double.NaN : 600d + x / 10;
+        var route = new FakeRoute(9, edgeProfile);
+        var width = 300;
+        var step = ElevationProfileComputer.adaptiveStepLength(route.length(), width, 1);
+        var expected = elevationProfile(route, step);
+        var actual = ElevationProfileComputer.adaptiveElevationProfile(route, width, 1);
+        assertEquals(expected.length(), actual.length());
+        assertEquals(expected.minElevation(), actual.minElevation());
+        assertEquals(expected.maxElevation(), actual.maxElevation());
+        assertEquals(expected.totalAscent(), actual.totalAscent());
+        for (double p = 0; p < route.length(); p += 7) {
+            assertEquals(expected.elevationAt(p), actual.elevationAt(p));
+        }
+        // Samples are 15 m apart, on a slope of 0.1
+        assertEquals(620, actual.minElevation(), 1.5);
+        assertEquals(670, actual.maxElevation(), 1.5);
+    }
+
     private static final class FakeRoute implements Route {
         private static final double ORIGIN_E = 2_600_000;
         private static final double ORIGIN_N = 1_200_000;
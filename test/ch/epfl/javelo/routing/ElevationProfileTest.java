@@ -142,4 +142,65 @@ class ElevationProfileTest {
         var expected7 = 294.125;
         assertEquals(expected7, actual7);
     }
+
+    @Test
+    void elevationProfileRangeQueriesWorkLikeBruteForce() {
+        var rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; i += 1) {
+            var sampleCount = rng.nextInt(2, 500);
+            var length = rng.nextDouble(10, 10_000);
+            var profile = new ElevationProfile(length, randomSamples(rng, sampleCount));
+            var from = rng.nextDouble(-100, length + 100);
+            var to = rng.nextDouble(from, length + 200);
+
+            var spacing = length / (sampleCount - 1);
+            var clampedFrom = Math.max(0, Math.min(from, length));
+            var clampedTo = Math.max(0, Math.min(to, length));
+            var min = Math.min(profile.elevationAt(clampedFrom), profile.elevationAt(clampedTo));
+            var max = Math.max(profile.elevationAt(clampedFrom), profile.elevationAt(clampedTo));
+            var ascent = 0d;
+            var descent = 0d;
+            var previous = profile.elevationAt(clampedFrom);
+            for (int j = 0; j < sampleCount; j += 1) {
+                if (clampedFrom < j * spacing && j * spacing < clampedTo) {
+                    var elevation = profile.elevationAt(j * spacing);
+                    min = Math.min(min, elevation);
+                    max = Math.max(max, elevation);
+                    ascent += Math.max(0, elevation - previous);
+                    descent += Math.max(0, previous - elevation);
+                    previous = elevation;
+                }
+            }
+            ascent += Math.max(0, profile.elevationAt(clampedTo) - previous);
+            descent += Math.max(0, previous - profile.elevationAt(clampedTo));
+
+            assertEquals(min, profile.minElevation(from, to), 1e-3);
+            assertEquals(max, profile.maxElevation(from, to), 1e-3);
+            assertEquals(ascent, profile.ascent(from, to), 1e-2);
+            assertEquals(descent, profile.descent(from, to), 1e-2);
+        }
+    }
+
+    @Test
+    void elevationProfileRangeQueriesOnWholeProfileReturnTotals() {
+        var rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; i += 1) {
+            var sampleCount = rng.nextInt(2, 1000);
+            var length = rng.nextDouble(10, 10_000);
+            var profile = new ElevationProfile(length, randomSamples(rng, sampleCount));
+            assertEquals(profile.minElevation(), profile.minElevation(0, length));
+            assertEquals(profile.maxElevation(), profile.maxElevation(-1, length + 1));
+            assertEquals(profile.totalAscent(), profile.ascent(0, length), 1e-2);
+            assertEquals(profile.totalDescent(), profile.descent(0, length), 1e-2);
+        }
+    }
+
+    @Test
+    void elevationProfileRangeQueriesThrowOnInvalidRange() {
+        var profile = new ElevationProfile(100, new float[]{1, 2, 3});
+        assertThrows(IllegalArgumentException.class, () -> profile.minElevation(50, 40));
+        assertThrows(IllegalArgumentException.class, () -> profile.ascent(50, 40));
+        assertEquals(2, profile.minElevation(50, 50));
+        assertEquals(0, profile.descent(50, 50));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,116 @@
+package ch.epfl.javelo.routing;
+
+import ch.epfl.javelo.projection.PointCh;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+import static ch.epfl.javelo.routing.GridGraph.*;
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FlatRouteTest {
+    private static final CostFunction UNIFORM_COST = (nodeId, edgeId) -> 1;
+
+    @Test
+    void flatRouteConstructorThrowsOnInvalidEdges() {
+        var graph = newGraph();
+        assertThrows(IllegalArgumentException.class, () -> new FlatRoute(graph, 0, new int[0]));
+        assertThrows(IllegalArgumentException.class, () -> new FlatRoute(graph, -1, new int[]{0}));
+        // Edge 0 leaves node 0, not node 1
+        assertThrows(IllegalArgumentException.class, () -> new FlatRoute(graph, 1, new int[]{0}));
+    }
+
+    @Test
+    void flatRouteEdgeIdAtWorks() {
+        var graph = newGraph();
+        var nodeId = nodeId(3, 3);
+        var edgeIds = new int[4];
+        for (int i = 0; i < edgeIds.length; i += 1) {
+            edgeIds[i] = graph.nodeOutEdgeId(nodeId, 0);
+            nodeId = graph.edgeTargetNodeId(edgeIds[i]);
+        }
+        var route = new FlatRoute(graph, nodeId(3, 3), edgeIds);
+        for (int i = 0; i < edgeIds.length; i += 1) assertEquals(edgeIds[i], route.edgeIdAt(i));
+        assertEquals(nodeId(7, 3), route.edges().get(3).toNodeId());
+        assertEquals(4 * SPACING, route.length());
+    }
+
+    @Test
+    void flatRouteWorksLikeSingleRoute() {
+        var graph = newGraph(true);
+        var routeComputer = new RouteComputer(graph, UNIFORM_COST);
+        var rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS / 10; i += 1) {
+            var from = rng.nextInt(SIZE * SIZE);
+            var to = rng.nextInt(SIZE * SIZE - 1);
+            if (to >= from) to += 1;
+            var expected = routeComputer.bestRouteBetween(from, to);
+            var actual = FlatRoute.of(graph, expected);
+            assertSameRoute(expected, actual, rng);
+        }
+    }
+
+    @Test
+    void flatRouteWorksLikeMultiRoute() {
+        var graph = newGraph(true);
+        var routeComputer = new RouteComputer(graph, UNIFORM_COST);
+        var expected = new MultiRoute(List.of(
+                routeComputer.bestRouteBetween(nodeId(0, 0), nodeId(7, 3)),
+                new MultiRoute(List.of(
+                        routeComputer.bestRouteBetween(nodeId(7, 3), nodeId(2, 15)),
+                        routeComputer.bestRouteBetween(nodeId(2, 15), nodeId(2, 16)))),
+                routeComputer.bestRouteBetween(nodeId(2, 16), nodeId(19, 19))));
+        var actual = FlatRoute.of(graph, expected);
+        var rng = newRandom();
+        assertSameRoute(expected, actual, rng);
+
+        for (int i = 0; i < RANDOM_ITERATIONS; i += 1) {
+            var position = rng.nextDouble(-100, expected.length() + 100);
+            assertEquals(expected.indexOfSegmentAt(position), actual.indexOfSegmentAt(position));
+        }
+        // Positions at the limit between two segments belong to the first one
+        for (double position = -SPACING; position <= expected.length() + SPACING; position += SPACING) {
+            assertEquals(expected.indexOfSegmentAt(position), actual.indexOfSegmentAt(position));
+        }
+    }
+
+    private static void assertSameRoute(Route expected, Route actual, RandomGenerator rng) {
+        assertEquals(expected.length(), actual.length());
+        assertEquals(expected.points(), actual.points());
+        assertEquals(expected.edges().size(), actual.edges().size());
+        for (int j = 0; j < expected.edges().size(); j += 1) {
+            var expectedEdge = expected.edges().get(j);
+            var actualEdge = actual.edges().get(j);
+            assertEquals(expectedEdge.fromNodeId(), actualEdge.fromNodeId());
+            assertEquals(expectedEdge.toNodeId(), actualEdge.toNodeId());
+            assertEquals(expectedEdge.fromPoint(), actualEdge.fromPoint());
+            assertEquals(expectedEdge.toPoint(), actualEdge.toPoint());
+            assertEquals(expectedEdge.length(), actualEdge.length());
+            for (double x = 0; x <= expectedEdge.length(); x += 1.5) {
+                assertEquals(expectedEdge.elevationAt(x), actualEdge.elevationAt(x));
+            }
+        }
+
+        for (double position = -1; position <= expected.length() + 1; position += 0.5) {
+            assertSameAt(expected, actual, position);
+        }
+        for (int j = 0; j < RANDOM_ITERATIONS; j += 1) {
+            assertSameAt(expected, actual, rng.nextDouble(-10, expected.length() + 10));
+
+            var point = new PointCh(
+                    ORIGIN_E + rng.nextDouble(-SPACING, SIZE * SPACING),
+                    ORIGIN_N + rng.nextDouble(-SPACING, SIZE * SPACING));
+            assertEquals(expected.pointClosestTo(point), actual.pointClosestTo(point));
+        }
+    }
+
+    private static void assertSameAt(Route expected, Route actual, double position) {
+        assertEquals(expected.pointAt(position), actual.pointAt(position));
+        assertEquals(expected.elevationAt(position), actual.elevationAt(position));
+        assertEquals(expected.nodeClosestTo(position), actual.nodeClosestTo(position));
+    }
+}
@@ -0,0 +1,81 @@
+package ch.epfl.javelo.routing;
+
+import ch.epfl.javelo.data.*;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Square grid graph of SIZE x SIZE nodes, all located in the same sector, whose
+ * nodes are linked to their (up to) four neighbours by edges of length SPACING,
+ * optionally with (uncompressed) elevation profiles
+ */
+public final class GridGraph {
+    public static final int SIZE = 20;
+    public static final int SPACING = 40;
+    public static final int ORIGIN_E = 2_600_000;
+    public static final int ORIGIN_N = 1_200_000;
+    private static final int SECTOR_INDEX = 42 + 128 * 72;
+    // One sample every 2 m on an edge of length SPACING
+    private static final int PROFILE_SAMPLES = SPACING / 2 + 1;
+
+    private GridGraph() {}
+
+    public static int nodeId(int x, int y) {
+        return y * SIZE + x;
+    }
+
+    public static Graph newGraph() {
+        return newGraph(false);
+    }
+
+    public static Graph newGraph(boolean withProfiles) {
+        var nodesCount = SIZE * SIZE;
+        var nodesBuffer = IntBuffer.allocate(3 * nodesCount);
+        var targets = new ArrayList<Integer>();
+        int[][] directions = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+        for (int y = 0; y < SIZE; y += 1) {
+            for (int x = 0; x < SIZE; x += 1) {
+                var firstEdgeId = targets.size();
+                for (int[] d : directions) {
+                    int x1 = x + d[0], y1 = y + d[1];
+                    if (0 <= x1 && x1 < SIZE && 0 <= y1 && y1 < SIZE) targets.add(nodeId(x1, y1));
+                }
+                var nodeId = nodeId(x, y);
+                nodesBuffer.put(3 * nodeId, (ORIGIN_E + x * SPACING) << 4);
+                nodesBuffer.put(3 * nodeId + 1, (ORIGIN_N + y * SPACING) << 4);
+                nodesBuffer.put(3 * nodeId + 2, ((targets.size() - firstEdgeId) << 28) | firstEdgeId);
+            }
+        }
+
+        var edgesCount = targets.size();
+        var edgesBuffer = ByteBuffer.allocate(10 * edgesCount);
+        for (int edgeId = 0; edgeId < edgesCount; edgeId += 1) {
+            edgesBuffer.putInt(10 * edgeId, targets.get(edgeId));
+            edgesBuffer.putShort(10 * edgeId + 4, (short) (SPACING << 4));
+        }
+
+        var sectorsBuffer = ByteBuffer.allocate(128 * 128 * (Integer.BYTES + Short.BYTES));
+        sectorsBuffer.putShort(SECTOR_INDEX * (Integer.BYTES + Short.BYTES) + Integer.BYTES, (short) nodesCount);
+
+        var profileIds = IntBuffer.allocate(edgesCount);
+        var elevations = ShortBuffer.allocate(withProfiles ? PROFILE_SAMPLES * edgesCount : 0);
+        if (withProfiles) {
+            for (int edgeId = 0; edgeId < edgesCount; edgeId += 1) {
+                profileIds.put(edgeId, (1 << 30) | PROFILE_SAMPLES * edgeId);
+                for (int i = 0; i < PROFILE_SAMPLES; i += 1) {
+                    var elevation = 400 + (edgeId * 7 + i * i * 3) % 50;
+                    elevations.put(PROFILE_SAMPLES * edgeId + i, (short) (elevation << 4));
+                }
+            }
+        }
+
+        return new Graph(new GraphNodes(nodesBuffer),
+                new GraphSectors(sectorsBuffer),
+                new GraphEdges(edgesBuffer, profileIds, elevations),
+                List.of(new AttributeSet(0)));
+    }
+}
@@ -0,0 +1,103 @@
+package ch.epfl.javelo.routing;
+
+import ch.epfl.javelo.projection.PointCh;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static ch.epfl.javelo.routing.GridGraph.*;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MapMatcherTest {
+    private static final CostFunction UNIFORM_COST = (nodeId, edgeId) -> 1;
+
+    @Test
+    void mapMatcherMatchesStraightNoisyTrack() {
+        var graph = newGraph();
+        var matcher = new MapMatcher(graph, UNIFORM_COST);
+        var rng = newRandom();
+
+        var track = new ArrayList<PointCh>();
+        for (double x = 0.5 * SPACING; x <= 18.5 * SPACING; x += 10) {
+            track.add(new PointCh(ORIGIN_E + x, ORIGIN_N + 5 * SPACING + rng.nextDouble(-5, 5)));
+        }
+
+        var routes = matcher.match(track);
+        assertEquals(1, routes.size());
+        var expected = new ArrayList<Integer>();
+        for (int x = 0; x <= 19; x += 1) expected.add(nodeId(x, 5));
+        assertEquals(expected, nodeIds(routes.get(0)));
+    }
+
+    @Test
+    void mapMatcherMatchesTrackWithTurn() {
+        var graph = newGraph();
+        var matcher = new MapMatcher(graph, UNIFORM_COST);
+        var rng = newRandom();
+
+        var track = new ArrayList<PointCh>();
+        for (double x = 0.5 * SPACING; x < 10 * SPACING; x += 8) {
+            track.add(new PointCh(ORIGIN_E + x + rng.nextDouble(-3, 3), ORIGIN_N + 2 * SPACING + rng.nextDouble(-6, 6)));
+        }
+        for (double y = 2 * SPACING; y <= 12.5 * SPACING; y += 8) {
+            track.add(new PointCh(ORIGIN_E + 10 * SPACING + rng.nextDouble(-6, 6), ORIGIN_N + y + rng.nextDouble(-3, 3)));
+        }
+
+        var routes = matcher.match(track);
+        assertEquals(1, routes.size());
+        var expected = new ArrayList<Integer>();
+        for (int x = 0; x <= 10; x += 1) expected.add(nodeId(x, 2));
+        for (int y = 3; y <= 13; y += 1) expected.add(nodeId(10, y));
+        assertEquals(expected, nodeIds(routes.get(0)));
+    }
+
+    @Test
+    void mapMatcherIgnoresPointsFarFromTheGraph() {
+        var matcher = new MapMatcher(newGraph(), UNIFORM_COST);
+        assertEquals(List.of(), matcher.match(List.of()));
+        assertEquals(List.of(), matcher.match(List.of(
+                new PointCh(ORIGIN_E - 500, ORIGIN_N - 500),
+                new PointCh(ORIGIN_E - 400, ORIGIN_N - 500))));
+    }
+
+    @Test
+    void mapMatcherMatchAllWorksLikeMatch() {
+        var graph = newGraph();
+        var rng = newRandom();
+        var tracks = new ArrayList<List<PointCh>>();
+        for (int i = 0; i < 20; i += 1) {
+            var row = 1 + rng.nextInt(SIZE - 2);
+            var track = new ArrayList<PointCh>();
+            for (double x = 0.5 * SPACING; x <= 15.5 * SPACING; x += 12) {
+                track.add(new PointCh(ORIGIN_E + x, ORIGIN_N + row * SPACING + rng.nextDouble(-5, 5)));
+            }
+            tracks.add(track);
+        }
+
+        var matcher = new MapMatcher(graph, UNIFORM_COST);
+        var actual = MapMatcher.matchAll(graph, UNIFORM_COST, tracks);
+        assertEquals(tracks.size(), actual.size());
+        for (int i = 0; i < tracks.size(); i += 1) {
+            var expected = matcher.match(tracks.get(i));
+            assertEquals(expected.size(), actual.get(i).size());
+            for (int j = 0; j < expected.size(); j += 1) {
+                assertEquals(nodeIds(expected.get(j)), nodeIds(actual.get(i).get(j)));
+            }
+        }
+    }
+
+    private static List<Integer> nodeIds(Route route) {
+        var nodeIds = new ArrayList<Integer>();
+        var edges = route.edges();
+        nodeIds.add(edges.get(0).fromNodeId());
+        for (Edge edge : edges) {
+            assertEquals(nodeIds.get(nodeIds.size() - 1), edge.fromNodeId());
+            nodeIds.add(edge.toNodeId());
+        }
+        assertTrue(route.length() > 0);
+        return nodeIds;
+    }
+}
@@ -6,6 +6,7 @@ import org.junit.jupiter.api.Test;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.random.RandomGenerator;
 
 import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
 import static ch.epfl.test.TestRandomizer.newRandom;
@@ -304,6 +305,54 @@ class MultiRouteTest {
         }
     }
 
+    @Test
+    void multiRoutePointClosestToWorksLikeExhaustiveSearchOnNestedRandomWalks() {
+        var rng = newRandom();
+        for (int i = 0; i < 20; i += 1) {
+            var edges = new ArrayList<Edge>();
+            var segments = new ArrayList<Route>();
+            var start = new PointCh(ORIGIN_E, ORIGIN_N);
+            for (int s = 0; s < 1 + rng.nextInt(6); s += 1) {
+                var innerSegments = new ArrayList<Route>();
+                for (int t = 0; t < 1 + rng.nextInt(4); t += 1) {
+                    var segmentEdges = randomWalkEdges(rng, start, 1 + rng.nextInt(300));
+                    edges.addAll(segmentEdges);
+                    start = segmentEdges.get(segmentEdges.size() - 1).toPoint();
+                    innerSegments.add(new SingleRoute(segmentEdges));
+                }
+                segments.add(new MultiRoute(innerSegments));
+            }
+            var route = new MultiRoute(segments);
+
+            for (int j = 0; j < RANDOM_ITERATIONS / 10; j += 1) {
+                var p = new PointCh(ORIGIN_E + rng.nextDouble(-5_000, 5_000), ORIGIN_N + rng.nextDouble(-5_000, 5_000));
+                var expected = RoutePoint.NONE;
+                var l = 0d;
+                for (Edge edge : edges) {
+                    var position = Math.max(0, Math.min(edge.positionClosestTo(p), edge.length()));
+                    var edgePoint = edge.pointAt(position);
+                    expected = expected.min(edgePoint, l + position, p.distanceTo(edgePoint));
+                    l += edge.length();
+                }
+                var actual = route.pointClosestTo(p);
+                assertEquals(expected.point(), actual.point());
+                assertEquals(expected.position(), actual.position(), 1e-6);
+                assertEquals(expected.distanceToReference(), actual.distanceToReference());
+            }
+        }
+    }
+
+    private static List<Edge> randomWalkEdges(RandomGenerator rng, PointCh start, int edgesCount) {
+        var edges = new ArrayList<Edge>(edgesCount);
+        var p1 = start;
+        for (int i = 0; i < edgesCount; i += 1) {
+            var p2 = new PointCh(p1.e() + rng.nextDouble(-100, 100), p1.n() + rng.nextDouble(-100, 100));
+            edges.add(new Edge(i, i + 1, p1, p2, p1.distanceTo(p2), x -> Double.NaN));
+            p1 = p2;
+        }
+        return edges;
+    }
+
     private static List<Edge> verticalEdges(int edgesCount) {
         var edges = new ArrayList<Edge>(edgesCount);
         for (int i = 0; i < edgesCount; i += 1) {
@@ -0,0 +1,163 @@
+package ch.epfl.javelo.routing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+import static ch.epfl.javelo.routing.GridGraph.*;
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteCodecTest {
+    private static final CostFunction UNIFORM_COST = (nodeId, edgeId) -> 1;
+
+    @Test
+    void routeCodecDecodeTokenWorksOnEncodedRoutes() {
+        var graph = newGraph();
+        var codec = new RouteCodec(graph);
+        var routeComputer = new RouteComputer(graph, UNIFORM_COST);
+        var rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; i += 1) {
+            var route = randomRoute(routeComputer, rng);
+            var token = codec.encodeToken(route);
+            assertEquals(edgeSummary(route), edgeSummary(codec.decodeToken(token)));
+            assertTrue(token.length() <= 16 + 3 * route.edges().size());
+        }
+    }
+
+    @Test
+    void routeCodecDecodeWorksOnMultiRoutes() {
+        var graph = newGraph();
+        var codec = new RouteCodec(graph);
+        var routeComputer = new RouteComputer(graph, UNIFORM_COST);
+        var route = new MultiRoute(List.of(
+                routeComputer.bestRouteBetween(nodeId(0, 0), nodeId(7, 3)),
+                routeComputer.bestRouteBetween(nodeId(7, 3), nodeId(2, 15)),
+                routeComputer.bestRouteBetween(nodeId(2, 15), nodeId(19, 19))));
+        var decoded = codec.decode(codec.encode(route));
+        assertEquals(edgeSummary(route), edgeSummary(decoded));
+        assertEquals(route.length(), decoded.length(), 1e-9);
+    }
+
+    @Test
+    void routeCodecDecodeThrowsOnInvalidBytes() {
+        var graph = newGraph();
+        var codec = new RouteCodec(graph);
+        var route = new RouteComputer(graph, UNIFORM_COST).bestRouteBetween(nodeId(0, 0), nodeId(9, 9));
+        var bytes = codec.encode(route);
+
+        var otherVersion = bytes.clone();
+        otherVersion[1] ^= 1;
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(otherVersion));
+
+        var truncated = Arrays.copyOf(bytes, bytes.length - 1);
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(truncated));
+
+        var extended = Arrays.copyOf(bytes, bytes.length + 1);
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(extended));
+
+        // Jump to an edge which does not leave the current node
+        var disconnected = bytes.clone();
+        disconnected[disconnected.length - 1] ^= 0x10;
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(disconnected));
+    }
+
+    @Test
+    void routeCodecDecodeThrowsOnHugeEdgesCount() {
+        var graph = newGraph();
+        var codec = new RouteCodec(graph);
+        var route = new RouteComputer(graph, UNIFORM_COST).bestRouteBetween(nodeId(0, 0), nodeId(9, 9));
+        var bytes = codec.encode(route);
+
+        // The version and the fingerprint of the graph, followed by 2^31 - 1 edges starting at node 0
+        var forged = Arrays.copyOf(bytes, 12);
+        var count = new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 0, 0};
+        System.arraycopy(count, 0, forged, 5, count.length);
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(forged));
+        assertThrows(IllegalArgumentException.class,
+                () -> codec.decodeToken(Base64.getUrlEncoder().withoutPadding().encodeToString(forged)));
+    }
+
+    @Test
+    void routeCodecDecodePolylineWorksOnEncodedPolylines() {
+        var graph = newGraph();
+        var routeComputer = new RouteComputer(graph, UNIFORM_COST);
+        var rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS / 10; i += 1) {
+            var route = randomRoute(routeComputer, rng);
+            var base = rng.nextDouble(300, 3000);
+            var profile = new ElevationProfile(route.length(), new float[]{
+                    (float) base, (float) (base + 100), (float) (base - 50.25)});
+
+            var points = RouteCodec.decodePolyline(RouteCodec.encodePolyline(route, profile));
+            var expectedPoints = route.points();
+            assertEquals(expectedPoints.size(), points.size());
+            var position = 0d;
+            for (int j = 0; j < points.size(); j += 1) {
+                // Coordinates are rounded to 1e-5 degrees, and Ch1903 conversions are approximate
+                assertTrue(expectedPoints.get(j).distanceTo(points.get(j).point()) < 2);
+                assertEquals(profile.elevationAt(position), points.get(j).elevation(), 0.05 + 1e-9);
+                if (j < route.edges().size()) position += route.edges().get(j).length();
+            }
+        }
+    }
+
+    @Test
+    void routeCodecDecodePolylineKeepsUnknownElevations() {
+        var graph = newGraph();
+        var routeComputer = new RouteComputer(graph, UNIFORM_COST);
+        var rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS / 10; i += 1) {
+            var route = randomRoute(routeComputer, rng);
+            // The elevation of the first point is unknown, those of the others are unknown at random
+            var samples = new float[rng.nextInt(2, 10)];
+            samples[0] = Float.NaN;
+            for (int j = 1; j < samples.length; j += 1)
+                samples[j] = rng.nextBoolean() ? Float.NaN : (float) rng.nextDouble(300, 3000);
+            var profile = new ElevationProfile(route.length(), samples);
+
+            var points = RouteCodec.decodePolyline(RouteCodec.encodePolyline(route, profile));
+            assertEquals(route.points().size(), points.size());
+            assertTrue(Double.isNaN(points.get(0).elevation()));
+            var position = 0d;
+            for (int j = 0; j < points.size(); j += 1) {
+                var expected = profile.elevationAt(position);
+                if (Double.isNaN(expected)) assertTrue(Double.isNaN(points.get(j).elevation()));
+                else assertEquals(expected, points.get(j).elevation(), 0.05 + 1e-9);
+                if (j < route.edges().size()) position += route.edges().get(j).length();
+            }
+        }
+    }
+
+    @Test
+    void routeCodecDecodePolylineThrowsOnInvalidPolyline() {
+        assertThrows(IllegalArgumentException.class, () -> RouteCodec.decodePolyline("_"));
+        assertThrows(IllegalArgumentException.class, () -> RouteCodec.decodePolyline(" "));
+        // A point at 46.5°N 6.6°E of unknown elevation, then with an odd elevation difference other than 1
+        assertTrue(Double.isNaN(RouteCodec.decodePolyline("_`yzG_ahg@A").get(0).elevation()));
+        assertThrows(IllegalArgumentException.class, () -> RouteCodec.decodePolyline("_`yzG_ahg@E"));
+        assertEquals(List.of(), RouteCodec.decodePolyline(""));
+    }
+
+    private static Route randomRoute(RouteComputer routeComputer, RandomGenerator rng) {
+        var from = rng.nextInt(SIZE * SIZE);
+        var to = rng.nextInt(SIZE * SIZE - 1);
+        if (to >= from) to += 1;
+        return routeComputer.bestRouteBetween(from, to);
+    }
+
+    private static List<String> edgeSummary(Route route) {
+        var summary = new ArrayList<String>();
+        for (Edge edge : route.edges()) {
+            summary.add(edge.fromNodeId() + "->" + edge.toNodeId() + ":" + edge.length());
+        }
+        return summary;
+    }
+}
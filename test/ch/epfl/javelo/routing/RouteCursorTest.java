@@ -0,0 +1,97 @@
+package ch.epfl.javelo.routing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+import static ch.epfl.javelo.routing.GridGraph.*;
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteCursorTest {
+    private static final CostFunction UNIFORM_COST = (nodeId, edgeId) -> 1;
+
+    @Test
+    void routeCursorWorksLikeRouteOnSingleAndFlatRoutes() {
+        var graph = newGraph(true);
+        var routeComputer = new RouteComputer(graph, UNIFORM_COST);
+        var rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS / 10; i += 1) {
+            var from = rng.nextInt(SIZE * SIZE);
+            var to = rng.nextInt(SIZE * SIZE - 1);
+            if (to >= from) to += 1;
+            var route = routeComputer.bestRouteBetween(from, to);
+            assertCursorWorksLikeRoute(route, rng);
+            assertCursorWorksLikeRoute(FlatRoute.of(graph, route), rng);
+        }
+    }
+
+    @Test
+    void routeCursorWorksLikeRouteOnMultiRoutes() {
+        var graph = newGraph(true);
+        var routeComputer = new RouteComputer(graph, UNIFORM_COST);
+        var route = new MultiRoute(List.of(
+                routeComputer.bestRouteBetween(nodeId(0, 0), nodeId(7, 3)),
+                new MultiRoute(List.of(
+                        routeComputer.bestRouteBetween(nodeId(7, 3), nodeId(2, 15)),
+                        routeComputer.bestRouteBetween(nodeId(2, 15), nodeId(2, 16)))),
+                routeComputer.bestRouteBetween(nodeId(2, 16), nodeId(19, 19))));
+        var rng = newRandom();
+        assertCursorWorksLikeRoute(route, rng);
+        assertCursorWorksLikeRoute(FlatRoute.of(graph, route), rng);
+    }
+
+    @Test
+    void routeCursorCanMoveBackwards() {
+        var graph = newGraph(true);
+        var route = new RouteComputer(graph, UNIFORM_COST).bestRouteBetween(nodeId(0, 0), nodeId(12, 9));
+        var rng = newRandom();
+        for (Route r : List.of(route, FlatRoute.of(graph, route))) {
+            var cursor = r.cursor();
+            for (int i = 0; i < RANDOM_ITERATIONS; i += 1) {
+                var position = rng.nextDouble(-10, r.length() + 10);
+                cursor.moveTo(position);
+                assertEquals(r.pointAt(position), cursor.point());
+                assertEquals(r.elevationAt(position), cursor.elevation());
+                assertEquals(r.nodeClosestTo(position), cursor.nodeClosest());
+            }
+        }
+    }
+
+    private static void assertCursorWorksLikeRoute(Route route, RandomGenerator rng) {
+        var cursor = route.cursor();
+        assertEquals(0, cursor.position());
+        assertEquals(0, cursor.edgeIndex());
+
+        var positions = new double[RANDOM_ITERATIONS];
+        for (int i = 0; i < positions.length; i += 1) {
+            positions[i] = rng.nextDouble(-10, route.length() + 10);
+        }
+        Arrays.sort(positions);
+        for (double position : positions) {
+            cursor.moveTo(position);
+            assertSameAt(route, cursor, position);
+        }
+
+        // Positions located exactly on the nodes of the route
+        cursor = route.cursor();
+        for (double position = 0; position <= route.length(); position += SPACING / 2d) {
+            cursor.moveTo(position);
+            assertSameAt(route, cursor, position);
+        }
+        assertEquals(route.edges().size() - 1, cursor.edgeIndex());
+    }
+
+    private static void assertSameAt(Route route, RouteCursor cursor, double position) {
+        var edge = route.edges().get(cursor.edgeIndex());
+        assertEquals(Math.max(0, Math.min(position, route.length())), cursor.position());
+        assertTrue(edge.fromPoint().distanceTo(cursor.point()) <= edge.length() + 1e-9);
+        assertEquals(route.pointAt(position), cursor.point());
+        assertEquals(route.elevationAt(position), cursor.elevation());
+        assertEquals(route.nodeClosestTo(position), cursor.nodeClosest());
+    }
+}
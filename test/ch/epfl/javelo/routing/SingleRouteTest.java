@@ -6,6 +6,7 @@ import org.junit.jupiter.api.Test;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.random.RandomGenerator;
 
 import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
 import static ch.epfl.test.TestRandomizer.newRandom;
@@ -231,6 +232,46 @@ class SingleRouteTest {
         }
     }
 
+    @Test
+    void singleRoutePointClosestToWorksLikeExhaustiveSearchOnRandomWalks() {
+        var rng = newRandom();
+        for (int i = 0; i < 20; i += 1) {
+            var edges = randomWalkEdges(rng, 1 + rng.nextInt(2_000));
+            var route = new SingleRoute(edges);
+            for (int j = 0; j < RANDOM_ITERATIONS / 10; j += 1) {
+                var p = new PointCh(ORIGIN_E + rng.nextDouble(-5_000, 5_000), ORIGIN_N + rng.nextDouble(-5_000, 5_000));
+                var expected = exhaustivePointClosestTo(edges, p);
+                var actual = route.pointClosestTo(p);
+                assertEquals(expected.point(), actual.point());
+                assertEquals(expected.position(), actual.position());
+                assertEquals(expected.distanceToReference(), actual.distanceToReference());
+            }
+        }
+    }
+
+    private static RoutePoint exhaustivePointClosestTo(List<Edge> edges, PointCh point) {
+        var best = RoutePoint.NONE;
+        var l = 0d;
+        for (Edge edge : edges) {
+            var position = Math.max(0, Math.min(edge.positionClosestTo(point), edge.length()));
+            var edgePoint = edge.pointAt(position);
+            best = best.min(edgePoint, l + position, point.distanceTo(edgePoint));
+            l += edge.length();
+        }
+        return best;
+    }
+
+    private static List<Edge> randomWalkEdges(RandomGenerator rng, int edgesCount) {
+        var edges = new ArrayList<Edge>(edgesCount);
+        var p1 = new PointCh(ORIGIN_E, ORIGIN_N);
+        for (int i = 0; i < edgesCount; i += 1) {
+            var p2 = new PointCh(p1.e() + rng.nextDouble(-100, 100), p1.n() + rng.nextDouble(-100, 100));
+            edges.add(new Edge(i, i + 1, p1, p2, p1.distanceTo(p2), x -> Double.NaN));
+            p1 = p2;
+        }
+        return edges;
+    }
+
     private static List<Edge> verticalEdges(int edgesCount) {
         var edges = new ArrayList<Edge>(edgesCount);
         for (int i = 0; i < edgesCount; i += 1) {
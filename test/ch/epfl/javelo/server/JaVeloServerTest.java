@@ -0,0 +1,142 @@
+package ch.epfl.javelo.server;
+
+import ch.epfl.javelo.projection.Ch1903;
+import ch.epfl.javelo.routing.GridGraph;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JaVeloServerTest {
+
+    private static final String FROM = point(GridGraph.ORIGIN_E, GridGraph.ORIGIN_N);
+    private static final String TO = point(GridGraph.ORIGIN_E + 5 * GridGraph.SPACING,
+            GridGraph.ORIGIN_N + 3 * GridGraph.SPACING);
+    private static final Pattern TOKEN = Pattern.compile("\"token\":\"([^\"]+)\"");
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void routeEndpointReturnsRouteAndToken() throws Exception {
+        var server = startServer();
+        try {
+            var response = get(server, "/route?waypoints=" + encode(FROM + ";" + TO));
+            assertEquals(200, response.statusCode());
+            assertTrue(response.body().startsWith("{\"length\":320.0,\"token\":"));
+            assertTrue(response.body().contains("\"points\":[["));
+
+            var polyline = get(server, "/route?format=polyline&waypoints=" + encode(FROM + ";" + TO));
+            assertEquals(200, polyline.statusCode());
+            assertTrue(polyline.body().contains("\"polyline\":\""));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void profileEndpointAcceptsTokens() throws Exception {
+        var server = startServer();
+        try {
+            var matcher = TOKEN.matcher(get(server, "/route?waypoints=" + encode(FROM + ";" + TO)).body());
+            assertTrue(matcher.find());
+            var byToken = get(server, "/profile?step=10&token=" + encode(matcher.group(1)));
+            var byWaypoints = get(server, "/profile?step=10&waypoints=" + encode(FROM + ";" + TO));
+            assertEquals(200, byToken.statusCode());
+            assertEquals(byWaypoints.body(), byToken.body());
+            assertTrue(byToken.body().contains("\"elevations\":["));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void nodeEndpointReturnsClosestNode() throws Exception {
+        var server = startServer();
+        try {
+            var response = get(server, "/node?point=" + encode(TO));
+            assertEquals(200, response.statusCode());
+            assertTrue(response.body().startsWith("{\"nodeId\":" + GridGraph.nodeId(5, 3) + ","));
+
+            var far = get(server, "/node?point=" + encode(point(GridGraph.ORIGIN_E + 5000, GridGraph.ORIGIN_N)));
+            assertEquals(404, far.statusCode());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void gpxEndpointReturnsGpxDocument() throws Exception {
+        var server = startServer();
+        try {
+            var response = get(server, "/gpx?waypoints=" + encode(FROM + ";" + TO));
+            assertEquals(200, response.statusCode());
+            assertTrue(response.headers().firstValue("Content-Type").orElseThrow().startsWith("application/gpx+xml"));
+            assertTrue(response.body().contains("<gpx"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void serverReportsInvalidRequestsAsJsonErrors() throws Exception {
+        var server = startServer();
+        try {
+            assertError(server, 400, "/route");
+            assertError(server, 400, "/route?waypoints=" + encode(FROM));
+            assertError(server, 400, "/route?waypoints=" + encode(FROM + ";" + FROM));
+            assertError(server, 400, "/route?waypoints=" + encode("0,0;" + TO));
+            assertError(server, 400, "/route?waypoints=" + encode((FROM + ";" + TO + ";").repeat(26)));
+            assertError(server, 400, "/route?token=notatoken");
+            assertError(server, 400, "/profile?step=NaN&waypoints=" + encode(FROM + ";" + TO));
+            assertError(server, 400, "/profile?step=-1&waypoints=" + encode(FROM + ";" + TO));
+            assertError(server, 400, "/profile?width=0&waypoints=" + encode(FROM + ";" + TO));
+            assertError(server, 400, "/node?distance=Infinity&point=" + encode(FROM));
+
+            var post = client.send(HttpRequest.newBuilder(uri(server, "/route"))
+                    .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(405, post.statusCode());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static JaVeloServer startServer() throws IOException {
+        var server = new JaVeloServer(GridGraph.newGraph(true), new InetSocketAddress("localhost", 0));
+        server.start();
+        return server;
+    }
+
+    private void assertError(JaVeloServer server, int status, String path) throws Exception {
+        var response = get(server, path);
+        assertEquals(status, response.statusCode(), path);
+        assertTrue(response.body().startsWith("{\"error\":"), path);
+    }
+
+    private HttpResponse<String> get(JaVeloServer server, String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(uri(server, path)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static URI uri(JaVeloServer server, String path) {
+        return URI.create("http://localhost:" + server.port() + path);
+    }
+
+    private static String encode(String s) {
+        return URLEncoder.encode(s, StandardCharsets.UTF_8);
+    }
+
+    private static String point(double e, double n) {
+        return String.format(Locale.ROOT, "%.9f,%.9f",
+                Math.toDegrees(Ch1903.lat(e, n)), Math.toDegrees(Ch1903.lon(e, n)));
+    }
+}
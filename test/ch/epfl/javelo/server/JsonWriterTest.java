@@ -0,0 +1,62 @@
+package ch.epfl.javelo.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JsonWriterTest {
+
+    @Test
+    void jsonWriterWritesNestedContainers() throws IOException {
+        var w = new StringWriter();
+        new JsonWriter(w).beginObject()
+                .name("a").value(1)
+                .name("b").beginArray().value(1.5).value("x").beginArray().endArray().endArray()
+                .name("c").beginObject().endObject()
+                .endObject().flush();
+        assertEquals("{\"a\":1,\"b\":[1.5,\"x\",[]],\"c\":{}}", w.toString());
+    }
+
+    @Test
+    void jsonWriterWritesNonFiniteNumbersAsNull() throws IOException {
+        var w = new StringWriter();
+        new JsonWriter(w).beginArray()
+                .value(Double.NaN).value(Double.POSITIVE_INFINITY).value(-0.25)
+                .endArray();
+        assertEquals("[null,null,-0.25]", w.toString());
+    }
+
+    @Test
+    void jsonWriterEscapesStrings() throws IOException {
+        var w = new StringWriter();
+        new JsonWriter(w).value("a\"b\\c\nd\re\tf\u0001gé");
+        assertEquals("\"a\\\"b\\\\c\\nd\\re\\tf\\u0001gé\"", w.toString());
+    }
+
+    @Test
+    void jsonWriterWorksBeyondInitialDepth() throws IOException {
+        var w = new StringWriter();
+        var json = new JsonWriter(w);
+        for (int i = 0; i < 20; i += 1) json.beginArray().value(i);
+        for (int i = 0; i < 20; i += 1) json.endArray();
+        var expected = new StringBuilder();
+        for (int i = 0; i < 20; i += 1) expected.append('[').append(i).append(',');
+        expected.setLength(expected.length() - 1);
+        expected.append("]".repeat(20));
+        assertEquals(expected.toString(), w.toString());
+    }
+
+    @Test
+    void jsonWriterThrowsOnMisplacedNamesAndEnds() throws IOException {
+        var json = new JsonWriter(new StringWriter());
+        assertThrows(IllegalArgumentException.class, () -> json.name("a"));
+        assertThrows(IllegalArgumentException.class, json::endObject);
+        json.beginObject().name("a");
+        assertThrows(IllegalArgumentException.class, () -> json.name("b"));
+        assertThrows(IllegalArgumentException.class, json::endObject);
+    }
+}
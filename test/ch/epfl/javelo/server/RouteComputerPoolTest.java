@@ -0,0 +1,42 @@
+package ch.epfl.javelo.server;
+
+import ch.epfl.javelo.routing.CityBikeCF;
+import ch.epfl.javelo.routing.GridGraph;
+import ch.epfl.javelo.routing.RouteComputer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class RouteComputerPoolTest {
+
+    @Test
+    void routeComputerPoolComputesSameRoutesAsRouteComputer() throws Exception {
+        var graph = GridGraph.newGraph();
+        var pool = new RouteComputerPool(graph, 3);
+        var computer = new RouteComputer(graph, new CityBikeCF(graph));
+        var threads = Executors.newFixedThreadPool(8);
+        try {
+            var tasks = new ArrayList<Callable<Double>>();
+            for (int i = 0; i < 100; i += 1) {
+                var start = GridGraph.nodeId(i % GridGraph.SIZE, 0);
+                var end = GridGraph.nodeId((7 * i) % GridGraph.SIZE, GridGraph.SIZE - 1);
+                tasks.add(() -> pool.bestRouteBetween(start, end).length());
+            }
+            var results = threads.invokeAll(tasks);
+            for (int i = 0; i < results.size(); i += 1) {
+                var start = GridGraph.nodeId(i % GridGraph.SIZE, 0);
+                var end = GridGraph.nodeId((7 * i) % GridGraph.SIZE, GridGraph.SIZE - 1);
+                var expected = computer.bestRouteBetween(start, end);
+                assertNotNull(expected);
+                assertEquals(expected.length(), results.get(i).get(), 1e-9);
+            }
+        } finally {
+            threads.shutdown();
+        }
+    }
+}